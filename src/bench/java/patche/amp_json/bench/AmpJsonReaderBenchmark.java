@@ -0,0 +1,160 @@
+package patche.amp_json.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.FileMetaDataScanner;
+import patche.amp_json.reader.ScannedRecord;
+import patche.amp_json.reader.StructuralIndex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ *     Per line cost of the reader hot paths, every invocation goes through a batch of {@value #BATCH} lines.
+ *     Scores are lines per second, run with -prof gc for the allocation rate per line.
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-bench.xml")
+public class AmpJsonReaderBenchmark {
+
+    static final int BATCH = 1024;
+
+    @Param({"VALID_ONLY", "MOSTLY_VALID", "HALF_INVALID"})
+    public LogLineGenerator.Mix mix;
+
+    private final AmpJsonReader jsonReader = new AmpJsonReader();
+    private final FileMetaDataScanner scanner = new FileMetaDataScanner();
+    private final ScannedRecord record = new ScannedRecord();
+    private final StructuralIndex index = new StructuralIndex();
+
+    private String[] lines;
+    private byte[][] lineBytes;
+    private String[] validLines;
+    private String[] fileNames;
+    private byte[] block;
+
+    @Setup
+    public void setUp() {
+        LogLineGenerator generator = new LogLineGenerator(42, mix);
+        lines = generator.lines(BATCH).toArray(new String[0]);
+        lineBytes = new byte[BATCH][];
+        for (int i = 0; i < BATCH; i++) {
+            lineBytes[i] = lines[i].getBytes(StandardCharsets.UTF_8);
+        }
+        block = (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+
+        List<String> valid = new LogLineGenerator(42, LogLineGenerator.Mix.VALID_ONLY).lines(BATCH);
+        validLines = valid.toArray(new String[0]);
+        fileNames = valid.stream().map(line -> jsonReader.fromJson(line).getFileName()).toArray(String[]::new);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void isValidFileMetaData(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(jsonReader.isValidFileMetaData(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void tryDecode(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(jsonReader.tryDecode(line));
+        }
+    }
+
+    /**
+     * Validation followed by {@link AmpJsonReader#fromJson(String)}, the two pass way lines used to be read.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void isValidThenFromJson(Blackhole blackhole) {
+        for (String line : lines) {
+            if (jsonReader.isValidFileMetaData(line)) {
+                blackhole.consume(jsonReader.fromJson(line));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void fromJson(Blackhole blackhole) {
+        for (String line : validLines) {
+            blackhole.consume(jsonReader.fromJson(line));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void scan(Blackhole blackhole) {
+        for (byte[] line : lineBytes) {
+            blackhole.consume(scanner.scan(line, 0, line.length, record));
+        }
+    }
+
+    /**
+     * Splits the batch as one newline separated block and scans every line, looking at every byte.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void scanBlock(Blackhole blackhole) {
+        int lineStart = 0;
+        for (int i = 0; i < block.length; i++) {
+            if (block[i] == '\n') {
+                blackhole.consume(scanner.scan(block, lineStart, i - lineStart, record));
+                lineStart = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Splits and scans the same block through its {@link StructuralIndex}, built once per invocation.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void scanBlockIndexed(Blackhole blackhole) {
+        index.build(block, 0, block.length);
+        int lineStart = 0;
+        for (int i = 0; i < index.getNewlineCount(); i++) {
+            int newline = index.getNewline(i);
+            blackhole.consume(scanner.scan(block, lineStart, newline - lineStart, index, record));
+            lineStart = newline + 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void getFileExt(Blackhole blackhole) {
+        for (String fileName : fileNames) {
+            blackhole.consume(jsonReader.getFileExt(fileName));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void getFilenameWithoutExt(Blackhole blackhole) {
+        for (String fileName : fileNames) {
+            blackhole.consume(jsonReader.getFilenameWithoutExt(fileName));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package patche.amp_json.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import patche.amp_json.JsonProcessingApp;
+import patche.amp_json.columnar.ColumnarWriter;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ *     End to end cost of the reports over a generated log file, from reading the file to printing the report.
+ *     Logging is switched off by log4j2-bench.xml so the printing does not dominate.
+ *     Scores are files per second, the line count is a parameter to turn them into lines per second.
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dlog4j2.configurationFile=log4j2-bench.xml")
+public class JsonProcessingAppBenchmark {
+
+    @Param({"200000"})
+    public int lineCount;
+
+    @Param({"MOSTLY_VALID"})
+    public LogLineGenerator.Mix mix;
+
+    @Param({"4"})
+    public int workers;
+
+    private final AmpJsonReader jsonReader = new AmpJsonReader();
+    private Path file;
+    private Path columnarFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("amp-bench", ".jsonl");
+        new LogLineGenerator(42, mix).write(file, lineCount);
+        columnarFile = Files.createTempFile("amp-bench", ".amp");
+        ColumnarWriter.convert(Collections.singletonList(file), columnarFile, jsonReader);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(columnarFile);
+    }
+
+    @Benchmark
+    public JsonProcessingApp processLogFile() {
+        JsonProcessingApp app = new JsonProcessingApp(jsonReader);
+        app.processLogFile(file.toString());
+        return app;
+    }
+
+    @Benchmark
+    public JsonProcessingApp processLogFileParallel() {
+        JsonProcessingApp app = new JsonProcessingApp(jsonReader);
+        app.processLogFile(file.toString(), workers);
+        return app;
+    }
+
+    @Benchmark
+    public JsonProcessingApp getUniqueSha() {
+        JsonProcessingApp app = new JsonProcessingApp(jsonReader);
+        app.getUniqueSha(file.toString());
+        return app;
+    }
+
+    @Benchmark
+    public JsonProcessingApp getUniqueShaParallel() {
+        JsonProcessingApp app = new JsonProcessingApp(jsonReader);
+        app.getUniqueSha(file.toString(), workers);
+        return app;
+    }
+
+    /**
+     * Both reports with reading, parsing and aggregating on separate threads.
+     */
+    @Benchmark
+    public JsonProcessingApp processLogFileStaged() {
+        JsonProcessingApp app = new JsonProcessingApp(jsonReader);
+        app.processLogFileStaged(file.toString(), workers, 1);
+        return app;
+    }
+
+    /**
+     * Both reports from the pre-parsed columnar copy of the file.
+     */
+    @Benchmark
+    public JsonProcessingApp processColumnarFile() {
+        JsonProcessingApp app = new JsonProcessingApp(jsonReader);
+        app.processColumnarFile(columnarFile.toString());
+        return app;
+    }
+}
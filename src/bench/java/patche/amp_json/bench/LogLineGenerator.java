@@ -0,0 +1,178 @@
+package patche.amp_json.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * <pre>
+ *     Generates realistic AMP log lines for the benchmarks, deterministic for a given seed.
+ *     Users, businesses, shas and file names are drawn from skewed pools so some repeat a lot and most rarely,
+ *     timestamps span a day and a configurable share of lines is invalid in one of the common ways:
+ *     malformed json, a duplicate key or a bad UUID.
+ * </pre>
+ */
+public class LogLineGenerator {
+
+    public enum LineKind {
+        VALID,
+        MALFORMED,
+        DUPLICATE_KEY,
+        BAD_UUID
+    }
+
+    /**
+     * The share of every line kind, in the order of {@link LineKind}.
+     */
+    public enum Mix {
+        VALID_ONLY(1, 0, 0, 0),
+        MOSTLY_VALID(0.97, 0.01, 0.01, 0.01),
+        HALF_INVALID(0.5, 0.2, 0.15, 0.15);
+
+        private final double[] cumulative = new double[LineKind.values().length];
+
+        Mix(double... shares) {
+            double sum = 0;
+            for (int i = 0; i < shares.length; i++) {
+                sum += shares[i];
+                cumulative[i] = sum;
+            }
+        }
+
+        LineKind pick(Random random) {
+            double r = random.nextDouble() * cumulative[cumulative.length - 1];
+            for (int i = 0; i < cumulative.length; i++) {
+                if (r < cumulative[i]) {
+                    return LineKind.values()[i];
+                }
+            }
+            return LineKind.VALID;
+        }
+    }
+
+    private static final long DAY_START = 1551139200L;
+    private static final String[] EXTENSIONS = {"pdf", "exe", "doc", "docx", "xls", "js", "dll", "zip", "ext", "txt"};
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Random random;
+    private final Mix mix;
+    private final UUID[] users;
+    private final UUID[] businesses;
+    private final String[] shas;
+    private final String[] fileNames;
+
+    public LogLineGenerator(long seed, Mix mix) {
+        this.random = new Random(seed);
+        this.mix = mix;
+        this.users = uuids(5000);
+        this.businesses = uuids(50);
+        this.shas = shas(20000);
+        this.fileNames = fileNames(50000);
+    }
+
+    /**
+     * @return the next line, without a line separator
+     */
+    public String nextLine() {
+        return nextLine(mix.pick(random));
+    }
+
+    public String nextLine(LineKind kind) {
+        StringBuilder line = new StringBuilder(384);
+        long ts = DAY_START + random.nextInt(86400);
+        String fileName = fileNames[skewed(fileNames.length)];
+        String sessionId = kind == LineKind.BAD_UUID
+                ? new UUID(random.nextLong(), random.nextLong()).toString().substring(0, 34) + "zz"
+                : new UUID(random.nextLong(), random.nextLong()).toString();
+
+        line.append("{\"ts\":").append(ts)
+                .append(",\"pt\":").append(1 + random.nextInt(random.nextInt(10) == 0 ? 5000 : 200))
+                .append(",\"si\":\"").append(sessionId)
+                .append("\",\"uu\":\"").append(users[skewed(users.length)])
+                .append("\",\"bg\":\"").append(businesses[skewed(businesses.length)])
+                .append("\",\"sha\":\"").append(shas[skewed(shas.length)])
+                .append("\",\"nm\":\"").append(fileName)
+                .append("\",\"ph\":\"/").append(fileName.hashCode() & 0xff).append("/users/app/").append(fileName)
+                .append("\",\"dp\":").append(1 + random.nextInt(3));
+        if (kind == LineKind.DUPLICATE_KEY) {
+            line.append(",\"nm\":\"").append(fileNames[random.nextInt(fileNames.length)]).append('"');
+        }
+        line.append('}');
+
+        if (kind == LineKind.MALFORMED) {
+            return line.substring(0, 1 + random.nextInt(line.length() - 2));
+        }
+        return line.toString();
+    }
+
+    public List<String> lines(int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(nextLine());
+        }
+        return lines;
+    }
+
+    /**
+     * Writes count lines to the file, \n separated.
+     */
+    public void write(Path file, int count) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < count; i++) {
+                writer.write(nextLine());
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * @return an index in [0, size) where low indexes are much more likely, roughly zipf like
+     */
+    private int skewed(int size) {
+        double r = random.nextDouble();
+        return (int) (size * r * r * r);
+    }
+
+    private UUID[] uuids(int count) {
+        UUID[] uuids = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            uuids[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+        return uuids;
+    }
+
+    private String[] shas(int count) {
+        String[] result = new String[count];
+        char[] sha = new char[64];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < sha.length; j++) {
+                sha[j] = HEX[random.nextInt(16)];
+            }
+            result[i] = new String(sha);
+        }
+        return result;
+    }
+
+    private String[] fileNames(int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = 3 + random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                name.append((char) ('a' + random.nextInt(26)));
+            }
+            if (random.nextInt(20) == 0) {
+                // a dotted name, e.g. an archive
+                name.append(".tar");
+            }
+            result[i] = name.append('.').append(EXTENSIONS[skewed(EXTENSIONS.length)]).toString();
+        }
+        return result;
+    }
+}
@@ -4,14 +4,53 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 
 import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.aggregate.BusinessGroupReport;
+import patche.amp_json.aggregate.DispositionReport;
+import patche.amp_json.aggregate.DispositionRollupReport;
+import patche.amp_json.aggregate.ExactUniqueCounter;
+import patche.amp_json.aggregate.ExtensionAggregator;
+import patche.amp_json.aggregate.HourlyShaAggregator;
+import patche.amp_json.aggregate.HyperLogLog;
+import patche.amp_json.aggregate.LongPairSet;
+import patche.amp_json.aggregate.MemoryBudget;
+import patche.amp_json.aggregate.OffHeapUniqueCounter;
+import patche.amp_json.aggregate.PerBusinessGroupReport;
+import patche.amp_json.aggregate.ProcessingTimeReport;
+import patche.amp_json.aggregate.Report;
+import patche.amp_json.aggregate.ReportPipeline;
+import patche.amp_json.aggregate.SessionUserReport;
+import patche.amp_json.aggregate.SpillingExtensionAggregator;
+import patche.amp_json.aggregate.SpillingHourlyShaAggregator;
+import patche.amp_json.aggregate.TimeBucketer;
+import patche.amp_json.aggregate.TopShaReport;
+import patche.amp_json.aggregate.UniqueCounter;
+import patche.amp_json.columnar.ColumnarReader;
+import patche.amp_json.columnar.ColumnarWriter;
+import patche.amp_json.ingest.BatchProcessor;
+import patche.amp_json.ingest.CheckpointedFileIngester;
+import patche.amp_json.ingest.DeadLetterSink;
+import patche.amp_json.ingest.LogFileFollower;
+import patche.amp_json.ingest.ParallelFileIngester;
+import patche.amp_json.ingest.ShardKey;
+import patche.amp_json.ingest.StagedFileIngester;
+import patche.amp_json.metrics.Counter;
+import patche.amp_json.metrics.JmxMetricsRegistry;
+import patche.amp_json.metrics.MetricsRegistry;
+import patche.amp_json.metrics.NoopMetricsRegistry;
+import patche.amp_json.pojos.IFileMetaData.Field;
 import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.DecodeResult;
+import patche.amp_json.reader.RejectReason;
 
 /**
  * Log line json processing app as per the documentation.
@@ -19,15 +58,52 @@ import patche.amp_json.reader.AmpJsonReader;
 public class JsonProcessingApp {
 
     private static final Logger LOG = LogManager.getLogger(JsonProcessingApp.class);
+    private static final RejectReason[] REJECT_REASONS = RejectReason.values();
 
     private final AmpJsonReader jsonReader;
-    private final Map<String, Set<String>> extensionToFilenames;
-    private final Map<Long, Map<String, Integer>> hourlyShas;
+    private final Supplier<UniqueCounter> uniqueCounterFactory;
+    private final TimeBucketer timeBucketer;
+    private final DeadLetterSink deadLetters;
+    private final MetricsRegistry metrics;
+    private final Counter linesRead;
+    private final Counter bytesRead;
+    private final Supplier<? extends Report<?>> extensionReportFactory;
+    private final Supplier<? extends Report<?>> shaReportFactory;
+    private final List<Supplier<? extends Report<?>>> addedReportFactories;
+    private final boolean structuralIndex;
 
     public JsonProcessingApp(AmpJsonReader ampJsonReader) {
-        jsonReader = ampJsonReader;
-        extensionToFilenames = new HashMap<>();
-        hourlyShas = new HashMap<>();
+        this(builder(ampJsonReader));
+    }
+
+    private JsonProcessingApp(Builder builder) {
+        jsonReader = builder.ampJsonReader;
+        this.deadLetters = builder.deadLetters;
+        this.metrics = builder.metrics;
+        this.linesRead = metrics.counter("app.lines");
+        this.bytesRead = metrics.counter("app.bytes");
+        this.uniqueCounterFactory = builder.uniqueCounterFactory;
+        this.timeBucketer = builder.timeBucketer;
+        this.structuralIndex = builder.structuralIndex;
+        this.addedReportFactories = List.copyOf(builder.addedReportFactories);
+        MemoryBudget budget = builder.memoryBudget;
+        Path spillDirectory = builder.spillDirectory;
+        if (budget == null) {
+            extensionReportFactory = () -> new ExtensionAggregator(jsonReader, uniqueCounterFactory);
+            shaReportFactory = () -> new HourlyShaAggregator(timeBucketer);
+        } else {
+            extensionReportFactory = () -> new SpillingExtensionAggregator(jsonReader, budget, spillDirectory);
+            shaReportFactory = () -> new SpillingHourlyShaAggregator(timeBucketer, budget, spillDirectory);
+        }
+    }
+
+    /**
+     * @param ampJsonReader - the log line reader
+     * @return a builder of an app counting exactly per hour of the day in the default zone, logging the
+     *         rejected lines and recording no metrics unless told otherwise
+     */
+    public static Builder builder(AmpJsonReader ampJsonReader) {
+        return new Builder(ampJsonReader);
     }
 
     /**
@@ -35,79 +111,485 @@ public class JsonProcessingApp {
      * @param filePath - the log file path
      */
     public void processLogFile(String filePath) {
-        Path path = Paths.get(filePath);
+        processSerial(filePath, extensionReportFactory.get());
+    }
 
-        try (BufferedReader bufferedReader = Files.newBufferedReader(path)) {
-            processLogFile(bufferedReader, extensionToFilenames);
-            printExtensionsAndUniqueCount(extensionToFilenames);
-        } catch (IOException e) {
-            LOG.error("Unable to read file: " + filePath);
-        }
+    /**
+     * Processes the log file on a pool of workers and prints the same output as {@link #processLogFile(String)}.
+     * The file is memory mapped and split into newline aligned chunks, see {@link ParallelFileIngester}.
+     * @param filePath - the log file path
+     * @param workers - the number of worker threads
+     */
+    public void processLogFile(String filePath, int workers) {
+        processParallel(filePath, workers, extensionReportFactory);
     }
 
     @VisibleForTesting
-    protected void processLogFile(BufferedReader reader, Map<String, Set<String>> extensionToFilenames) throws IOException {
+    protected void processLogFile(BufferedReader reader, Report<?> report) throws IOException {
+        Set<Field> fields = report.getFields();
+        long lines = 0;
         String line;
         while ((line = reader.readLine()) != null) {
-            if (jsonReader.isValidFileMetaData(line)) {
-                FileMetaData fileMetaData = jsonReader.fromJson(line);
-
-                String ext = jsonReader.getFileExt(fileMetaData.getFileName());
-                String filename = jsonReader.getFilenameWithoutExt(fileMetaData.getFileName());
-                Set<String> uniqueFilenames = extensionToFilenames.getOrDefault(ext, new HashSet<>());
-                uniqueFilenames.add(filename);
-
-                extensionToFilenames.put(ext, uniqueFilenames);
+            lines++;
+            DecodeResult result = jsonReader.tryDecode(line, fields);
+            if (result.isValid()) {
+                report.accept(result.getFileMetaData());
             } else {
-                LOG.error("skipping invalid log line (ideally send to a failure bin or text file or splunk etc)");
+                deadLetters.reject(line, result.getRejectReason());
             }
         }
+        linesRead.add(lines);
+        deadLetters.summarize();
     }
 
-    public void getUniqueSha(String filePath) {
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (jsonReader.isValidFileMetaData(line)) {
-                    FileMetaData metaData = jsonReader.fromJson(line);
-                    Date date = new Date(metaData.getTimestamp() * 1000); // epoch seconds
-                    Calendar calendar = Calendar.getInstance();
-                    calendar.setTime(date);
-
-                    String sha = metaData.getSha();
-                    long hourOfDay = calendar.get(Calendar.HOUR_OF_DAY);
-                    //LOG.info(hourOfDay);
-                    Map<String, Integer> hourToSha = hourlyShas.getOrDefault(hourOfDay, new HashMap<>());
-                    hourToSha.put(sha, hourToSha.getOrDefault(sha, 0) + 1);
-
-                    hourlyShas.put(hourOfDay, hourToSha);
+    /**
+     * Processes the log file like {@link #processLogFile(String)}, checkpointing the extension report so an
+     * interrupted run resumes where it was, see {@link CheckpointedFileIngester}.
+     * @param filePath - the log file path, plain or gzipped
+     * @param checkpointFile - the checkpoint of a previous run to resume from, if it exists, deleted once done
+     */
+    public void processLogFile(String filePath, Path checkpointFile) {
+        processResumable(filePath, checkpointFile, extensionReportFactory);
+    }
+
+    /**
+     * Counts the shas per hour like {@link #getUniqueSha(String)}, checkpointing the sha report so an
+     * interrupted run resumes where it was without counting any line twice, see {@link CheckpointedFileIngester}.
+     * @param filePath - the log file path, plain or gzipped
+     * @param checkpointFile - the checkpoint of a previous run to resume from, if it exists, deleted once done
+     */
+    public void getUniqueSha(String filePath, Path checkpointFile) {
+        processResumable(filePath, checkpointFile, shaReportFactory);
+    }
+
+    private void processResumable(String filePath, Path checkpointFile, Supplier<? extends Report<?>> reportFactory) {
+        Path path = Paths.get(filePath);
+        try (ReportPipeline report = ReportPipeline.create(List.of(reportFactory))) {
+            Set<Field> fields = report.getFields();
+            long lines = new CheckpointedFileIngester(checkpointFile).ingest(path, report, line -> {
+                DecodeResult result = jsonReader.tryDecode(line, fields);
+                if (result.isValid()) {
+                    report.accept(result.getFileMetaData());
+                } else {
+                    deadLetters.reject(line, result.getRejectReason());
                 }
+            });
+            deadLetters.summarize();
+            linesRead.add(lines);
+            bytesRead.add(Files.size(path));
+            recordReportMetrics(report);
+            report.print(LOG::info);
+        } catch (IOException e) {
+            LOG.error("failed to process file: " + filePath, e);
+        }
+    }
+
+    public void getUniqueSha(String filePath) {
+        processSerial(filePath, shaReportFactory.get());
+    }
+
+    /**
+     * Prints the k most seen shas per hour with their error bounds, in fixed memory per hour instead of
+     * every sha like {@link #getUniqueSha(String)}, see {@link TopShaReport}.
+     * @param filePath - the log file path
+     * @param k - the number of shas per hour
+     */
+    public void getTopSha(String filePath, int k) {
+        processSerial(filePath, new TopShaReport(timeBucketer, k, k * TopShaReport.DEFAULT_CAPACITY_PER_K));
+    }
+
+    /**
+     * Reads the log file into the report and prints it, then closes the report.
+     */
+    private void processSerial(String filePath, Report<?> report) {
+        Path path = Paths.get(filePath);
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            processLogFile(reader, report);
+            bytesRead.add(Files.size(path));
+            recordReportMetrics(report);
+            report.print(LOG::info);
+        } catch (IOException e) {
+            LOG.error("failed to read file: " + filePath);
+        } finally {
+            Report.closeAll(List.of(report));
+        }
+    }
+
+    /**
+     * Counts the shas per hour on a pool of workers and prints the same output as {@link #getUniqueSha(String)}.
+     * @param filePath - the log file path
+     * @param workers - the number of worker threads
+     */
+    public void getUniqueSha(String filePath, int workers) {
+        processParallel(filePath, workers, shaReportFactory);
+    }
+
+    private void processParallel(String filePath, int workers, Supplier<? extends Report<?>> reportFactory) {
+        Path path = Paths.get(filePath);
+        ScanMetrics scanMetrics = new ScanMetrics();
+        ParallelFileIngester ingester = new ParallelFileIngester(workers, structuralIndex, deadLetters);
+        try (ReportPipeline reports = ingester.ingest(path, () -> ReportPipeline.create(List.of(reportFactory)))) {
+            scanMetrics.update(ingester.getLineCount());
+            bytesRead.add(Files.size(path));
+            recordReportMetrics(reports);
+            reports.print(LOG::info);
+        } catch (IOException e) {
+            LOG.error("failed to read file: " + filePath);
+        }
+    }
+
+    /**
+     * Prints every registered report over the log file, plain or gzipped, reading, parsing and aggregating
+     * it on separate threads joined by bounded queues, see {@link StagedFileIngester}.
+     * @param filePath - the log file path
+     * @param parserThreads - the number of parser threads
+     * @param aggregatorThreads - the number of aggregator threads
+     */
+    public void processLogFileStaged(String filePath, int parserThreads, int aggregatorThreads) {
+        try {
+            Path path = Paths.get(filePath);
+            ScanMetrics scanMetrics = new ScanMetrics();
+            StagedFileIngester ingester = new StagedFileIngester(parserThreads, aggregatorThreads, deadLetters);
+            try (ReportPipeline reports = ingester.ingest(path, this::newReportPipeline)) {
+                scanMetrics.update(ingester.getLineCount());
+                bytesRead.add(Files.size(path));
+                recordReportMetrics(reports);
+                reports.print(LOG::info);
+            }
+        } catch (IOException e) {
+            LOG.error("Unable to read file: " + filePath);
+        }
+    }
+
+    /**
+     * Prints the extension and sha reports of every business group (bg) of the log file, plain or gzipped,
+     * reading and parsing it like {@link #processLogFileStaged(String, int, int)} with the records sharded over
+     * the aggregator threads by business group, so every thread owns the reports of its business groups and
+     * a hot business group is spread over all of them, see {@link PerBusinessGroupReport}.
+     * @param filePath - the log file path
+     * @param parserThreads - the number of parser threads
+     * @param aggregatorThreads - the number of aggregator threads, each owning a shard of the business groups
+     */
+    public void processLogFileByBusinessGroup(String filePath, int parserThreads, int aggregatorThreads) {
+        List<Supplier<? extends Report<?>>> groupReportFactories = List.of(extensionReportFactory, shaReportFactory);
+        try {
+            Path path = Paths.get(filePath);
+            ScanMetrics scanMetrics = new ScanMetrics();
+            StagedFileIngester ingester = new StagedFileIngester(parserThreads, aggregatorThreads, deadLetters);
+            try (PerBusinessGroupReport<ReportPipeline> reports = ingester.ingestSharded(path,
+                    () -> new PerBusinessGroupReport<>(() -> ReportPipeline.create(groupReportFactories)),
+                    ShardKey.BUSINESS_GROUP)) {
+                scanMetrics.update(ingester.getLineCount());
+                bytesRead.add(Files.size(path));
+                recordReportMetrics(reports);
+                reports.print(LOG::info);
             }
+        } catch (IOException e) {
+            LOG.error("Unable to read file: " + filePath);
+        }
+    }
 
-            for (Map.Entry<Long, Map<String, Integer>> entry : hourlyShas.entrySet()) {
-                LOG.info(entry.getKey() + " o'clock:");
-                for (Map.Entry<String, Integer> e1 : entry.getValue().entrySet()) {
-                    LOG.info("sha: " + e1.getKey() + ", count: " + e1.getValue());
+    /**
+     * Processes a batch of log files concurrently, plain or gzipped, and prints every registered report
+     * over all of them, all reports being built in the same pass.
+     * See {@link BatchProcessor#resolveFiles(String)} for how the files are found.
+     * @param pathOrGlob - a log file, a directory of log files or a glob
+     * @param maxConcurrentFiles - the number of files read at a time
+     */
+    public void processBatch(String pathOrGlob, int maxConcurrentFiles) {
+        try {
+            List<Path> files = BatchProcessor.resolveFiles(pathOrGlob);
+            ScanMetrics scanMetrics = new ScanMetrics();
+            BatchProcessor processor = new BatchProcessor(maxConcurrentFiles, deadLetters);
+            try (ReportPipeline reports = processor.process(files, this::newReportPipeline)) {
+                scanMetrics.update(processor.getLineCount());
+                for (Path file : files) {
+                    bytesRead.add(Files.size(file));
                 }
+                recordReportMetrics(reports);
+                reports.print(LOG::info);
             }
         } catch (IOException e) {
-            LOG.error("failed to read file: " + filePath);
+            LOG.error("failed to process batch: " + pathOrGlob);
+        }
+    }
+
+    /**
+     * Converts a batch of log files into one columnar file, so reports can be re-run without parsing json.
+     * @param pathOrGlob - a log file, a directory of log files or a glob
+     * @param columnarFile - the columnar file to write
+     */
+    public void convertToColumnar(String pathOrGlob, String columnarFile) {
+        try {
+            long rows = ColumnarWriter.convert(BatchProcessor.resolveFiles(pathOrGlob), Paths.get(columnarFile), jsonReader);
+            LOG.info("wrote {} records to {}", rows, columnarFile);
+        } catch (IOException e) {
+            LOG.error("failed to convert " + pathOrGlob + " to " + columnarFile, e);
+        }
+    }
+
+    /**
+     * Prints every registered report over a columnar file written by {@link #convertToColumnar(String, String)}.
+     * @param columnarFile - the columnar file
+     */
+    public void processColumnarFile(String columnarFile) {
+        try (ColumnarReader reader = new ColumnarReader(Paths.get(columnarFile));
+             ReportPipeline reports = reader.aggregate(newReportPipeline())) {
+            // the rows are the valid lines of the converted files
+            linesRead.add(reader.getRowCount());
+            bytesRead.add(Files.size(Paths.get(columnarFile)));
+            recordReportMetrics(reports);
+            reports.print(LOG::info);
+        } catch (IOException e) {
+            LOG.error("failed to read columnar file: " + columnarFile, e);
+        }
+    }
+
+    /**
+     * Follows a growing log file, or a directory of rotated *.jsonl log files, and prints every registered
+     * report every snapshot interval. Blocks until the calling thread is interrupted, see {@link LogFileFollower}.
+     * @param filePath - the log file or directory path
+     * @param snapshotInterval - how often the reports are printed
+     */
+    public void followLogFile(String filePath, Duration snapshotInterval) {
+        ScanMetrics scanMetrics = new ScanMetrics();
+        try (ReportPipeline reports = newReportPipeline();
+             LogFileFollower follower = new LogFileFollower(Paths.get(filePath), null, snapshotInterval,
+                reports::accept, () -> {
+                    scanMetrics.update();
+                    recordReportMetrics(reports);
+                    reports.print(LOG::info);
+                }, deadLetters)) {
+            scanMetrics.lineCount = follower::getLineCount;
+            follower.follow();
+        } catch (IOException e) {
+            LOG.error("failed to follow: " + filePath);
         }
     }
 
-    private void printExtensionsAndUniqueCount(Map<String, Set<String>> extAndFilenameCounts) {
-        for (Map.Entry<String, Set<String>> entry : extAndFilenameCounts.entrySet()) {
-            LOG.info("{}: {}", entry.getKey(), entry.getValue().size());
+    /**
+     * <pre>
+     *     Records the lines and rejections of a run scanning the bytes, which bypasses the {@link AmpJsonReader}:
+     *     app.lines like the serial runs and reader.rejected.&lt;reason&gt; like the reader, from the rejections
+     *     the dead letters received since the run started.
+     * </pre>
+     */
+    private final class ScanMetrics {
+
+        private final long[] rejected = new long[REJECT_REASONS.length];
+        private long lines;
+        private LongSupplier lineCount;
+
+        ScanMetrics() {
+            for (RejectReason reason : REJECT_REASONS) {
+                rejected[reason.ordinal()] = deadLetters.getCount(reason);
+            }
+        }
+
+        /**
+         * Records what was read since the last update, the run's lines read from its line count.
+         */
+        void update() {
+            update(lineCount.getAsLong());
+        }
+
+        /**
+         * Records what was read since the last update.
+         * @param totalLines the lines the run read so far
+         */
+        void update(long totalLines) {
+            linesRead.add(totalLines - lines);
+            lines = totalLines;
+            for (RejectReason reason : REJECT_REASONS) {
+                long count = deadLetters.getCount(reason);
+                metrics.counter("reader.rejected." + reason).add(count - rejected[reason.ordinal()]);
+                rejected[reason.ordinal()] = count;
+            }
         }
     }
 
+    /**
+     * Sets the cardinality and heap estimate gauges of the report, or of every report of a pipeline.
+     */
+    private void recordReportMetrics(Report<?> report) {
+        if (report instanceof ReportPipeline) {
+            ((ReportPipeline) report).getReports().forEach(this::recordReportMetrics);
+            return;
+        }
+        String name = "report." + report.getClass().getSimpleName();
+        metrics.gauge(name + ".cardinality").set(report.getCardinality());
+        metrics.gauge(name + ".heapBytes").set(report.estimateHeapBytes());
+    }
+
+    /**
+     * @return a pipeline of new registered reports
+     */
+    @VisibleForTesting
+    protected ReportPipeline newReportPipeline() {
+        List<Supplier<? extends Report<?>>> reportFactories = new ArrayList<>();
+        reportFactories.add(extensionReportFactory);
+        reportFactories.add(shaReportFactory);
+        reportFactories.addAll(addedReportFactories);
+        return ReportPipeline.create(reportFactories);
+    }
+
+    /**
+     * Without arguments runs the extension and sha reports on the bundled examples, otherwise runs them
+     * and the disposition, disposition rollup, business group, distinct user and session and processing time
+     * reports over a batch:
+     * main &lt;file, directory or glob&gt; [max concurrent files].
+     * With -Damp.deadLetterFile=&lt;file&gt; the rejected lines are appended to the file, with their reason.
+     * With -Damp.metrics=jmx the run's metrics are exposed as the patche.amp_json:type=Metrics,name=amp-json MBean.
+     * With -Damp.uniqueCounter=offheap the unique filenames are kept off the heap, with =hll they, the users
+     * and the sessions are estimated.
+     * With -Damp.memoryBudgetMiB=&lt;MiB&gt; the extension and sha reports spill to -Damp.spillDir, the temp
+     * directory by default, beyond that budget.
+     * With -Damp.topShas=&lt;k&gt; the batch also reports the k most seen shas per hour.
+     * With -Damp.structuralIndex=true the parallel runs scan the lines through a SWAR structural index.
+     */
     public static void main( String[] args ) {
+        String deadLetterFile = System.getProperty("amp.deadLetterFile");
+        try (DeadLetterSink deadLetters = deadLetterFile == null ? new DeadLetterSink()
+                : new DeadLetterSink(Paths.get(deadLetterFile))) {
+            run(args, deadLetters);
+        } catch (IOException e) {
+            LOG.error("failed to write dead letters to " + deadLetterFile, e);
+        }
+    }
+
+    private static void run(String[] args, DeadLetterSink deadLetters) {
+        MetricsRegistry metrics = "jmx".equals(System.getProperty("amp.metrics"))
+                ? new JmxMetricsRegistry("amp-json") : NoopMetricsRegistry.INSTANCE;
+        AmpJsonReader jsonReader = new AmpJsonReader(metrics);
+        String uniqueCounter = System.getProperty("amp.uniqueCounter", "exact");
+        Supplier<UniqueCounter> uniqueCounterFactory = "offheap".equals(uniqueCounter) ? OffHeapUniqueCounter::new
+                : "hll".equals(uniqueCounter) ? () -> new HyperLogLog(HyperLogLog.DEFAULT_PRECISION) : ExactUniqueCounter::new;
+        Builder builder = builder(jsonReader)
+                .uniqueCounterFactory(uniqueCounterFactory)
+                .deadLetters(deadLetters)
+                .metrics(metrics)
+                .structuralIndex(Boolean.getBoolean("amp.structuralIndex"));
+
+        String memoryBudgetMiB = System.getProperty("amp.memoryBudgetMiB");
+        if (memoryBudgetMiB != null) {
+            builder.memoryBudget(new MemoryBudget(Long.parseLong(memoryBudgetMiB) * 1024 * 1024),
+                    Paths.get(System.getProperty("amp.spillDir", System.getProperty("java.io.tmpdir"))));
+        }
+
+        if (args.length > 0) {
+            int maxConcurrentFiles = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            builder.addReport(DispositionReport::new);
+            builder.addReport(() -> new DispositionRollupReport(jsonReader, TimeBucketer.hourOfDay(ZoneId.systemDefault())));
+            builder.addReport(BusinessGroupReport::new);
+            Supplier<UniqueCounter> uuidCounterFactory = "hll".equals(uniqueCounter)
+                    ? () -> new HyperLogLog(HyperLogLog.DEFAULT_PRECISION) : LongPairSet::new;
+            builder.addReport(() -> new SessionUserReport(TimeBucketer.hourOfDay(ZoneId.systemDefault()), uuidCounterFactory));
+            builder.addReport(() -> new ProcessingTimeReport(jsonReader, TimeBucketer.hourOfDay(ZoneId.systemDefault())));
+            Integer topShas = Integer.getInteger("amp.topShas");
+            if (topShas != null) {
+                builder.addReport(() -> new TopShaReport(TimeBucketer.hourOfDay(ZoneId.systemDefault()), topShas,
+                        topShas * TopShaReport.DEFAULT_CAPACITY_PER_K));
+            }
+            builder.build().processBatch(args[0], maxConcurrentFiles);
+            return;
+        }
+
+        JsonProcessingApp app = builder.build();
         File resourceDir = new File("src/test/resources");
-        AmpJsonReader jsonReader = new AmpJsonReader();
-        JsonProcessingApp app = new JsonProcessingApp(jsonReader);
 
         app.processLogFile(resourceDir + "/test.example");
 
         app.getUniqueSha(resourceDir + "/inputData_std.jsonl");
     }
+
+    /**
+     * Options of a {@link JsonProcessingApp}, all but the reader having a default, see {@link #builder(AmpJsonReader)}.
+     */
+    public static final class Builder {
+
+        private final AmpJsonReader ampJsonReader;
+        private Supplier<UniqueCounter> uniqueCounterFactory = ExactUniqueCounter::new;
+        private TimeBucketer timeBucketer = TimeBucketer.hourOfDay(ZoneId.systemDefault());
+        private DeadLetterSink deadLetters = new DeadLetterSink();
+        private MetricsRegistry metrics = NoopMetricsRegistry.INSTANCE;
+        private final List<Supplier<? extends Report<?>>> addedReportFactories = new ArrayList<>();
+        private boolean structuralIndex;
+        private MemoryBudget memoryBudget;
+        private Path spillDirectory;
+
+        private Builder(AmpJsonReader ampJsonReader) {
+            this.ampJsonReader = ampJsonReader;
+        }
+
+        /**
+         * @param uniqueCounterFactory - creates the unique filename counter of an extension,
+         *                             e.g. a {@link HyperLogLog} to bound the memory per extension
+         */
+        public Builder uniqueCounterFactory(Supplier<UniqueCounter> uniqueCounterFactory) {
+            this.uniqueCounterFactory = uniqueCounterFactory;
+            return this;
+        }
+
+        /**
+         * @param timeBucketer - the time buckets of the sha report
+         */
+        public Builder timeBucketer(TimeBucketer timeBucketer) {
+            this.timeBucketer = timeBucketer;
+            return this;
+        }
+
+        /**
+         * @param deadLetters - receives the rejected lines of every run, closed by the caller
+         */
+        public Builder deadLetters(DeadLetterSink deadLetters) {
+            this.deadLetters = deadLetters;
+            return this;
+        }
+
+        /**
+         * @param metrics - receives app.lines and app.bytes, the lines and bytes read, reader.rejected.&lt;reason&gt;
+         *                for the runs scanning bytes instead of going through the reader, and the
+         *                report.&lt;report&gt;.cardinality and report.&lt;report&gt;.heapBytes gauges, set after
+         *                every run
+         */
+        public Builder metrics(MetricsRegistry metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Registers another report for the single pass runs, which start with the extension and sha reports.
+         * @param reportFactory - creates an empty report, called once per worker
+         */
+        public Builder addReport(Supplier<? extends Report<?>> reportFactory) {
+            addedReportFactories.add(reportFactory);
+            return this;
+        }
+
+        /**
+         * @param structuralIndex - true to split and scan the lines of the parallel runs through a SWAR structural
+         *                        index of every block, see {@link ParallelFileIngester#ParallelFileIngester(int, boolean)}
+         */
+        public Builder structuralIndex(boolean structuralIndex) {
+            this.structuralIndex = structuralIndex;
+            return this;
+        }
+
+        /**
+         * Makes the extension and sha reports of every run keep within the memory budget, spilling
+         * sorted runs to the directory when it is exceeded, so they stay exact however many keys there are.
+         * See {@link SpillingExtensionAggregator} and {@link SpillingHourlyShaAggregator}.
+         * @param budget - the heap shared by the extension and sha reports of all workers
+         * @param spillDirectory - where the runs are written, they are deleted once the reports are printed
+         */
+        public Builder memoryBudget(MemoryBudget budget, Path spillDirectory) {
+            this.memoryBudget = budget;
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
+
+        public JsonProcessingApp build() {
+            return new JsonProcessingApp(this);
+        }
+    }
 }
@@ -0,0 +1,28 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+
+/**
+ * <pre>
+ *     Accumulates a report over decoded log records.
+ *     An aggregator is owned by a single thread, parallel drivers give every worker its own aggregator
+ *     and combine them with {@link #merge(Aggregator)} once the workers are done, so no locking is needed.
+ *     Merging is associative, the merged result equals aggregating all records serially.
+ * </pre>
+ * @param <A> the aggregator type
+ */
+public interface Aggregator<A extends Aggregator<A>> {
+
+    /**
+     * Adds a valid record. The record may be reused by the caller, so only copies of its values may be kept.
+     * @param record the decoded log record
+     */
+    void accept(IFileMetaData record);
+
+    /**
+     * Merges the other aggregator into this one. The other aggregator must not be used afterwards.
+     * @param other the aggregator to merge
+     * @return this aggregator
+     */
+    A merge(A other);
+}
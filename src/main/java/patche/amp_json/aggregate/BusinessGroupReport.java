@@ -0,0 +1,76 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Counts the records per business group (bg).
+ */
+public class BusinessGroupReport implements Report<BusinessGroupReport> {
+
+    /** a map node, its table slot, the UUID and its one long count array */
+    private static final long BYTES_PER_GROUP = 96;
+
+    private final Map<UUID, long[]> counts = new HashMap<>();
+
+    @Override
+    public void accept(IFileMetaData record) {
+        counts.computeIfAbsent(record.getBusinessID(), k -> new long[1])[0]++;
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.BUSINESS_ID);
+    }
+
+    @Override
+    public BusinessGroupReport merge(BusinessGroupReport other) {
+        for (Map.Entry<UUID, long[]> entry : other.counts.entrySet()) {
+            long[] count = counts.putIfAbsent(entry.getKey(), entry.getValue());
+            if (count != null) {
+                count[0] += entry.getValue()[0];
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public long getCardinality() {
+        return counts.size();
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return counts.size() * BYTES_PER_GROUP;
+    }
+
+    /**
+     * @return the business groups seen so far
+     */
+    public Set<UUID> getBusinessGroups() {
+        return Collections.unmodifiableSet(counts.keySet());
+    }
+
+    /**
+     * @param businessID the business group
+     * @return the number of records of the business group
+     */
+    public long getCount(UUID businessID) {
+        long[] count = counts.get(businessID);
+        return count == null ? 0 : count[0];
+    }
+
+    @Override
+    public void print(Consumer<String> out) {
+        out.accept("business groups:");
+        counts.forEach((businessID, count) -> out.accept(businessID + ": " + count[0]));
+    }
+}
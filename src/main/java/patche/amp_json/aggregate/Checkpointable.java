@@ -0,0 +1,47 @@
+package patche.amp_json.aggregate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <pre>
+ *     State that can be written to a checkpoint and read back, so an interrupted run can resume
+ *     instead of starting over. Reading a checkpoint adds its state to this one, like a merge,
+ *     so it is read into an empty instance created the same way as the one that wrote it.
+ * </pre>
+ */
+public interface Checkpointable {
+
+    /**
+     * @param out where the state is written
+     * @throws IOException if writing fails
+     */
+    void writeCheckpoint(DataOutput out) throws IOException;
+
+    /**
+     * Adds the state written by {@link #writeCheckpoint(DataOutput)} to this one.
+     * @param in where the state is read from
+     * @throws IOException if reading fails or the state was written by something else
+     */
+    void readCheckpoint(DataInput in) throws IOException;
+
+    /**
+     * Writes a String of any length, unlike {@link DataOutput#writeUTF(String)}, as an int length and UTF-8 bytes.
+     */
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a String written by {@link #writeString(DataOutput, String)}.
+     */
+    static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,53 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Disposition;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Counts the records per disposition.
+ */
+public class DispositionReport implements Report<DispositionReport> {
+
+    private static final Disposition[] DISPOSITIONS = Disposition.values();
+
+    private final long[] counts = new long[DISPOSITIONS.length];
+
+    @Override
+    public void accept(IFileMetaData record) {
+        counts[record.getDisposition().ordinal()]++;
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.DISPOSITION);
+    }
+
+    @Override
+    public DispositionReport merge(DispositionReport other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        return this;
+    }
+
+    /**
+     * @param disposition the disposition
+     * @return the number of records with the disposition
+     */
+    public long getCount(Disposition disposition) {
+        return counts[disposition.ordinal()];
+    }
+
+    @Override
+    public void print(Consumer<String> out) {
+        out.accept("dispositions:");
+        for (Disposition disposition : DISPOSITIONS) {
+            out.accept(disposition + ": " + counts[disposition.ordinal()]);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Disposition;
+import patche.amp_json.pojos.IFileMetaData.Field;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     Counts the records per disposition for every file extension, time bucket and business group (bg).
+ *
+ *     Every dimension numbers its keys densely and keeps the counts in one long array, the disposition counts
+ *     of a key next to each other at key number * dispositions + disposition ordinal. The extensions are
+ *     numbered by a map, the business groups by a {@link LongPairSet} of their two halves, and the buckets of a
+ *     cyclic bucketer, e.g. the hour of the day, are their own numbers, the absolute buckets numbered by a
+ *     {@link LongPairSet} too. A record costs one map lookup, two pair lookups at most and three array
+ *     increments, creating no UUID and boxing nothing.
+ * </pre>
+ */
+public class DispositionRollupReport implements Report<DispositionRollupReport> {
+
+    private static final Disposition[] DISPOSITIONS = Disposition.values();
+    private static final int SECONDS_PER_DAY = 86400;
+    /** a map node, its table slot, the key, its boxed number and its list slot */
+    private static final long BYTES_PER_EXTENSION = 128;
+
+    private final AmpJsonReader jsonReader;
+    private final TimeBucketer timeBucketer;
+    private final Map<String, Integer> extensionNumbers = new HashMap<>();
+    private final List<String> extensions = new ArrayList<>();
+    private final DispositionCounts byExtension = new DispositionCounts(0);
+    /** the number of buckets of a cyclic bucketer, 0 for absolute buckets numbered by {@link #buckets} */
+    private final int cyclicBuckets;
+    private final LongPairSet buckets = new LongPairSet();
+    private final DispositionCounts byBucket;
+    private final LongPairSet businessGroups = new LongPairSet();
+    private final DispositionCounts byBusinessGroup = new DispositionCounts(0);
+
+    /**
+     * @param jsonReader the reader used to split the filenames
+     */
+    public DispositionRollupReport(AmpJsonReader jsonReader) {
+        this(jsonReader, TimeBucketer.hourOfDay(ZoneId.systemDefault()));
+    }
+
+    /**
+     * @param jsonReader the reader used to split the filenames
+     * @param timeBucketer the time buckets
+     */
+    public DispositionRollupReport(AmpJsonReader jsonReader, TimeBucketer timeBucketer) {
+        this.jsonReader = jsonReader;
+        this.timeBucketer = timeBucketer;
+        this.cyclicBuckets = timeBucketer.isCyclic() ? SECONDS_PER_DAY / timeBucketer.getGranularity().getSeconds() : 0;
+        this.byBucket = new DispositionCounts(cyclicBuckets);
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        int disposition = record.getDisposition().ordinal();
+        String ext = record.getFileExtension();
+        byExtension.increment(extensionNumber(ext == null ? jsonReader.getFileExt(record.getFileName()) : ext),
+                disposition);
+        byBucket.increment(bucketNumber(timeBucketer.bucket(record.getTimestamp())), disposition);
+        byBusinessGroup.increment(businessGroups.intern(record.getBusinessIDMostSigBits(),
+                record.getBusinessIDLeastSigBits()), disposition);
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.TIMESTAMP, Field.BUSINESS_ID, Field.FILE_NAME, Field.DISPOSITION);
+    }
+
+    @Override
+    public DispositionRollupReport merge(DispositionRollupReport other) {
+        for (int i = 0; i < other.extensions.size(); i++) {
+            byExtension.add(extensionNumber(other.extensions.get(i)), other.byExtension, i);
+        }
+        for (int i = 0; i < other.bucketNumbers(); i++) {
+            if (!other.byBucket.isEmpty(i)) {
+                byBucket.add(bucketNumber(other.bucketOf(i)), other.byBucket, i);
+            }
+        }
+        for (int i = 0; i < other.businessGroups.count(); i++) {
+            int group = businessGroups.intern(other.businessGroups.getMostSigBits(i),
+                    other.businessGroups.getLeastSigBits(i));
+            byBusinessGroup.add(group, other.byBusinessGroup, i);
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of extensions, time buckets and business groups
+     */
+    @Override
+    public long getCardinality() {
+        return extensions.size() + getBuckets().size() + businessGroups.count();
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return extensions.size() * BYTES_PER_EXTENSION + byExtension.estimateHeapBytes()
+                + buckets.estimateHeapBytes() + byBucket.estimateHeapBytes()
+                + businessGroups.estimateHeapBytes() + byBusinessGroup.estimateHeapBytes();
+    }
+
+    public Set<String> getExtensions() {
+        return Collections.unmodifiableSet(extensionNumbers.keySet());
+    }
+
+    /**
+     * @return the buckets with records, cyclic ones in order, absolute ones in the order first seen
+     */
+    public Set<Long> getBuckets() {
+        Set<Long> seen = new LinkedHashSet<>();
+        for (int i = 0; i < bucketNumbers(); i++) {
+            if (!byBucket.isEmpty(i)) {
+                seen.add(bucketOf(i));
+            }
+        }
+        return seen;
+    }
+
+    public Set<UUID> getBusinessGroups() {
+        Set<UUID> groups = new LinkedHashSet<>();
+        for (int i = 0; i < businessGroups.count(); i++) {
+            groups.add(new UUID(businessGroups.getMostSigBits(i), businessGroups.getLeastSigBits(i)));
+        }
+        return groups;
+    }
+
+    /**
+     * @return the number of records with the extension and disposition
+     */
+    public long getExtensionCount(String ext, Disposition disposition) {
+        Integer number = extensionNumbers.get(ext);
+        return number == null ? 0 : byExtension.get(number, disposition.ordinal());
+    }
+
+    /**
+     * @return the number of records in the time bucket with the disposition
+     */
+    public long getBucketCount(long bucket, Disposition disposition) {
+        int number;
+        if (cyclicBuckets > 0) {
+            number = bucket >= 0 && bucket < cyclicBuckets ? (int) bucket : -1;
+        } else {
+            number = buckets.indexOf(bucket, 0);
+        }
+        return number < 0 ? 0 : byBucket.get(number, disposition.ordinal());
+    }
+
+    /**
+     * @return the number of records of the business group with the disposition
+     */
+    public long getBusinessGroupCount(UUID businessID, Disposition disposition) {
+        int group = businessGroups.indexOf(businessID.getMostSignificantBits(), businessID.getLeastSignificantBits());
+        return group < 0 ? 0 : byBusinessGroup.get(group, disposition.ordinal());
+    }
+
+    /**
+     * Prints the disposition counts of every extension, time bucket and business group.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        out.accept("dispositions per extension:");
+        for (int i = 0; i < extensions.size(); i++) {
+            out.accept(byExtension.line(extensions.get(i), i));
+        }
+        out.accept("dispositions per time bucket:");
+        for (int i = 0; i < bucketNumbers(); i++) {
+            if (!byBucket.isEmpty(i)) {
+                out.accept(byBucket.line(timeBucketer.label(bucketOf(i)), i));
+            }
+        }
+        out.accept("dispositions per business group:");
+        for (int i = 0; i < businessGroups.count(); i++) {
+            UUID businessID = new UUID(businessGroups.getMostSigBits(i), businessGroups.getLeastSigBits(i));
+            out.accept(byBusinessGroup.line(businessID.toString(), i));
+        }
+    }
+
+    private int extensionNumber(String ext) {
+        Integer number = extensionNumbers.get(ext);
+        if (number == null) {
+            number = extensions.size();
+            extensionNumbers.put(ext, number);
+            extensions.add(ext);
+        }
+        return number;
+    }
+
+    private int bucketNumber(long bucket) {
+        return cyclicBuckets > 0 ? (int) bucket : buckets.intern(bucket, 0);
+    }
+
+    private long bucketOf(int number) {
+        return cyclicBuckets > 0 ? number : buckets.getMostSigBits(number);
+    }
+
+    /**
+     * @return the bucket numbers in use, every cyclic bucket whether it has records or not
+     */
+    private int bucketNumbers() {
+        return cyclicBuckets > 0 ? cyclicBuckets : (int) buckets.count();
+    }
+
+    /**
+     * Disposition counts of densely numbered keys.
+     */
+    private static final class DispositionCounts {
+
+        private long[] counts;
+
+        /**
+         * @param keys the number of keys held before growing
+         */
+        DispositionCounts(int keys) {
+            this.counts = new long[Math.max(16, keys) * DISPOSITIONS.length];
+        }
+
+        void increment(int key, int disposition) {
+            int slot = key * DISPOSITIONS.length + disposition;
+            if (slot >= counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, slot + DISPOSITIONS.length));
+            }
+            counts[slot]++;
+        }
+
+        /**
+         * Adds the counts of the other's key to the key.
+         */
+        void add(int key, DispositionCounts other, int otherKey) {
+            int base = key * DISPOSITIONS.length;
+            if (base + DISPOSITIONS.length > counts.length) {
+                counts = Arrays.copyOf(counts, Math.max(counts.length * 2, base + DISPOSITIONS.length));
+            }
+            int otherBase = otherKey * DISPOSITIONS.length;
+            for (int disposition = 0; disposition < DISPOSITIONS.length; disposition++) {
+                counts[base + disposition] += other.counts[otherBase + disposition];
+            }
+        }
+
+        long get(int key, int disposition) {
+            int slot = key * DISPOSITIONS.length + disposition;
+            return slot < counts.length ? counts[slot] : 0;
+        }
+
+        boolean isEmpty(int key) {
+            for (int disposition = 0; disposition < DISPOSITIONS.length; disposition++) {
+                if (get(key, disposition) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long estimateHeapBytes() {
+            return counts.length * 8L;
+        }
+
+        String line(String label, int key) {
+            StringJoiner line = new StringJoiner(", ", label + ": ", "");
+            for (Disposition disposition : DISPOSITIONS) {
+                line.add(disposition + "=" + get(key, disposition.ordinal()));
+            }
+            return line.toString();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package patche.amp_json.aggregate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Exact {@link UniqueCounter} keeping every distinct value, memory grows with the cardinality.
+ */
+public class ExactUniqueCounter implements UniqueCounter {
+
+    /** a hash set node, its table slot and a short String */
+    private static final long BYTES_PER_VALUE = 96;
+
+    private final Set<String> values = new HashSet<>();
+
+    @Override
+    public void add(String value) {
+        values.add(value);
+    }
+
+    @Override
+    public long count() {
+        return values.size();
+    }
+
+    @Override
+    public double relativeError() {
+        return 0;
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return values.size() * BYTES_PER_VALUE;
+    }
+
+    @Override
+    public UniqueCounter merge(UniqueCounter other) {
+        values.addAll(((ExactUniqueCounter) other).values);
+        return this;
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            Checkpointable.writeString(out, value);
+        }
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        for (int i = in.readInt(); i > 0; i--) {
+            values.add(Checkpointable.readString(in));
+        }
+    }
+}
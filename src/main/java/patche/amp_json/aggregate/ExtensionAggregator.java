@@ -0,0 +1,162 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ *     Counts the unique filenames (without extension) per file extension.
+ *     Every extension is backed by a {@link UniqueCounter}, exact by default or a {@link HyperLogLog}
+ *     sketch when memory has to stay fixed per extension.
+ *     Closing the aggregator closes the counters holding resources, e.g. {@link OffHeapUniqueCounter}s.
+ * </pre>
+ */
+public class ExtensionAggregator implements Report<ExtensionAggregator>, Checkpointable, Closeable {
+
+    /** a map node, its table slot and a short String */
+    private static final long BYTES_PER_EXTENSION = 96;
+
+    private final AmpJsonReader jsonReader;
+    private final Supplier<UniqueCounter> counterFactory;
+    private final Map<String, UniqueCounter> extensionToFilenames;
+
+    public ExtensionAggregator(AmpJsonReader jsonReader) {
+        this(jsonReader, ExactUniqueCounter::new);
+    }
+
+    /**
+     * @param jsonReader the reader used to split the filenames
+     * @param counterFactory creates the unique filename counter of an extension
+     */
+    public ExtensionAggregator(AmpJsonReader jsonReader, Supplier<UniqueCounter> counterFactory) {
+        this.jsonReader = jsonReader;
+        this.counterFactory = counterFactory;
+        this.extensionToFilenames = new HashMap<>();
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        String ext = record.getFileExtension();
+        if (ext == null) {
+            ext = jsonReader.getFileExt(record.getFileName());
+        }
+        String filename = jsonReader.getFilenameWithoutExt(record.getFileName());
+        extensionToFilenames.computeIfAbsent(ext, k -> counterFactory.get()).add(filename);
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.FILE_NAME);
+    }
+
+    /**
+     * Merges the other's counters into counters of this aggregator's own, new ones for the extensions it has not
+     * seen, so the two never share a counter and closing one leaves the other intact.
+     */
+    @Override
+    public ExtensionAggregator merge(ExtensionAggregator other) {
+        for (Map.Entry<String, UniqueCounter> entry : other.extensionToFilenames.entrySet()) {
+            extensionToFilenames.computeIfAbsent(entry.getKey(), k -> counterFactory.get()).merge(entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Writes every extension followed by its counter, which the counter factory must be able to read back.
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(extensionToFilenames.size());
+        for (Map.Entry<String, UniqueCounter> entry : extensionToFilenames.entrySet()) {
+            Checkpointable.writeString(out, entry.getKey());
+            entry.getValue().writeCheckpoint(out);
+        }
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        for (int remaining = in.readInt(); remaining > 0; remaining--) {
+            String ext = Checkpointable.readString(in);
+            extensionToFilenames.computeIfAbsent(ext, k -> counterFactory.get()).readCheckpoint(in);
+        }
+    }
+
+    @Override
+    public void close() {
+        Report.closeAll(extensionToFilenames.values());
+    }
+
+    /**
+     * @return the number of distinct extension and filename pairs, estimated in approximate mode
+     */
+    @Override
+    public long getCardinality() {
+        long cardinality = 0;
+        for (UniqueCounter filenames : extensionToFilenames.values()) {
+            cardinality += filenames.count();
+        }
+        return cardinality;
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        long bytes = 0;
+        for (UniqueCounter filenames : extensionToFilenames.values()) {
+            bytes += BYTES_PER_EXTENSION + filenames.estimateHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the extensions seen so far
+     */
+    public Set<String> getExtensions() {
+        return Collections.unmodifiableSet(extensionToFilenames.keySet());
+    }
+
+    /**
+     * @param ext the file extension
+     * @return the number of unique filenames seen with the extension, an estimate in approximate mode
+     */
+    public long getUniqueCount(String ext) {
+        UniqueCounter filenames = extensionToFilenames.get(ext);
+        return filenames == null ? 0 : filenames.count();
+    }
+
+    /**
+     * @param ext the file extension
+     * @return the relative standard error of {@link #getUniqueCount(String)}, 0 when it is exact
+     */
+    public double getRelativeError(String ext) {
+        UniqueCounter filenames = extensionToFilenames.get(ext);
+        return filenames == null ? 0 : filenames.relativeError();
+    }
+
+    /**
+     * Prints every extension and its unique filename count, with the error margin of approximate counts.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        for (String ext : extensionToFilenames.keySet()) {
+            double relativeError = getRelativeError(ext);
+            if (relativeError == 0) {
+                out.accept(ext + ": " + getUniqueCount(ext));
+            } else {
+                out.accept(ext + ": ~" + getUniqueCount(ext) + " (±" + String.format("%.2f", relativeError * 100) + "%)");
+            }
+        }
+    }
+}
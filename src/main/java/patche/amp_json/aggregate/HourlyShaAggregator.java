@@ -0,0 +1,146 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * <pre>
+ *     Counts how often every sha is seen per time bucket, see {@link ShaCounter}.
+ *     The buckets are the hours of the day in the default zone unless another {@link TimeBucketer} is given.
+ * </pre>
+ */
+public class HourlyShaAggregator implements Report<HourlyShaAggregator>, Checkpointable {
+
+    /** a map node, its table slot, a boxed Long and an empty ShaCounter */
+    private static final long BYTES_PER_BUCKET = 128;
+
+    private final TimeBucketer timeBucketer;
+    private final Map<Long, ShaCounter> hourlyShas;
+
+    public HourlyShaAggregator() {
+        this(TimeBucketer.hourOfDay(ZoneId.systemDefault()));
+    }
+
+    public HourlyShaAggregator(TimeBucketer timeBucketer) {
+        this.timeBucketer = timeBucketer;
+        this.hourlyShas = new HashMap<>();
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        long bucket = timeBucketer.bucket(record.getTimestamp());
+        hourlyShas.computeIfAbsent(bucket, k -> new ShaCounter()).add(record.getSha());
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.TIMESTAMP, Field.SHA);
+    }
+
+    /**
+     * Merges the other's sha counts into counters of this aggregator's own, so the two never share a counter.
+     */
+    @Override
+    public HourlyShaAggregator merge(HourlyShaAggregator other) {
+        for (Map.Entry<Long, ShaCounter> entry : other.hourlyShas.entrySet()) {
+            hourlyShas.computeIfAbsent(entry.getKey(), k -> new ShaCounter()).merge(entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Writes every time bucket followed by its sha counts, which must be read back with the same {@link TimeBucketer}.
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(hourlyShas.size());
+        for (Map.Entry<Long, ShaCounter> entry : hourlyShas.entrySet()) {
+            out.writeLong(entry.getKey());
+            entry.getValue().writeCheckpoint(out);
+        }
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        for (int remaining = in.readInt(); remaining > 0; remaining--) {
+            hourlyShas.computeIfAbsent(in.readLong(), k -> new ShaCounter()).readCheckpoint(in);
+        }
+    }
+
+    /**
+     * @return the number of distinct time bucket and sha pairs
+     */
+    @Override
+    public long getCardinality() {
+        long cardinality = 0;
+        for (ShaCounter shaCounts : hourlyShas.values()) {
+            cardinality += shaCounts.size();
+        }
+        return cardinality;
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        long bytes = 0;
+        for (ShaCounter shaCounts : hourlyShas.values()) {
+            bytes += BYTES_PER_BUCKET + shaCounts.estimateHeapBytes();
+        }
+        return bytes;
+    }
+
+    public TimeBucketer getTimeBucketer() {
+        return timeBucketer;
+    }
+
+    /**
+     * @return the time buckets seen so far
+     */
+    public Set<Long> getBuckets() {
+        return Collections.unmodifiableSet(hourlyShas.keySet());
+    }
+
+    /**
+     * @param bucket the time bucket
+     * @param sha the sha
+     * @return how often the sha was seen in the bucket
+     */
+    public int getCount(long bucket, String sha) {
+        ShaCounter shaCounts = hourlyShas.get(bucket);
+        return shaCounts == null ? 0 : shaCounts.get(sha);
+    }
+
+    /**
+     * Calls the consumer with every sha seen in the bucket and its count.
+     * @param bucket the time bucket
+     * @param consumer the sha and count consumer
+     */
+    public void forEachSha(long bucket, ObjIntConsumer<String> consumer) {
+        ShaCounter shaCounts = hourlyShas.get(bucket);
+        if (shaCounts != null) {
+            shaCounts.forEach(consumer);
+        }
+    }
+
+    /**
+     * Prints every time bucket followed by its shas and their counts.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        for (long bucket : hourlyShas.keySet()) {
+            out.accept(timeBucketer.label(bucket) + ":");
+            forEachSha(bucket, (sha, count) -> out.accept("sha: " + sha + ", count: " + count));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package patche.amp_json.aggregate;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <pre>
+ *     HyperLogLog cardinality sketch with 2^precision one byte registers.
+ *     Memory is fixed whatever the number of values added, the estimate has a relative standard error
+ *     of about 1.04 / sqrt(2^precision), e.g. 0.81% at precision 14 for 16 KB.
+ *     Sketches of the same precision merge exactly.
+ * </pre>
+ */
+public class HyperLogLog implements UniqueCounter {
+
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+    public static final int DEFAULT_PRECISION = 14;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    @Override
+    public void add(String value) {
+        addHash(HASH.hashString(value, StandardCharsets.UTF_8).asLong());
+    }
+
+    /**
+     * Adds a UUID by a mix of its halves instead of the hash of its String form.
+     */
+    @Override
+    public void add(long mostSigBits, long leastSigBits) {
+        addHash(mix(mostSigBits ^ mix(leastSigBits)));
+    }
+
+    /**
+     * Adds a value by its 64 bit hash, the hash must be well mixed.
+     * @param hash the hash of the value
+     */
+    public void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // the guard bit caps the rank when the remaining bits are all zero
+        long remaining = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    @Override
+    public long count() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting is more accurate for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    @Override
+    public double relativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return registers.length + 32;
+    }
+
+    @Override
+    public UniqueCounter merge(UniqueCounter other) {
+        HyperLogLog that = (HyperLogLog) other;
+        if (that.precision != precision) {
+            throw new IllegalArgumentException("cannot merge sketches of precision " + precision + " and " + that.precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (that.registers[i] > registers[i]) {
+                registers[i] = that.registers[i];
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeByte(precision);
+        out.write(registers);
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        int checkpointPrecision = in.readByte();
+        if (checkpointPrecision != precision) {
+            throw new IOException("cannot read a sketch of precision " + checkpointPrecision + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            byte register = in.readByte();
+            if (register > registers[i]) {
+                registers[i] = register;
+            }
+        }
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return the murmur3 64 bit finalizer of the value, so every bit of the value flips every bit of the hash
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16: return 0.673;
+            case 32: return 0.697;
+            case 64: return 0.709;
+            default: return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package patche.amp_json.aggregate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <pre>
+ *     A number of heap bytes shared by the spilling aggregators of a run, see {@link SpillingCounts}.
+ *     Aggregators reserve an estimate of every entry they keep and spill their entries to disk once the
+ *     budget is exceeded, so the budget bounds the sum over all workers rather than each of them.
+ *     Instances are thread safe.
+ * </pre>
+ */
+public final class MemoryBudget {
+
+    private final long limitBytes;
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * @param limitBytes the heap bytes the aggregators may hold together
+     */
+    public MemoryBudget(long limitBytes) {
+        if (limitBytes <= 0) {
+            throw new IllegalArgumentException("the memory budget must be positive");
+        }
+        this.limitBytes = limitBytes;
+    }
+
+    /**
+     * Reserves the bytes even if they exceed the budget, the caller is expected to spill then.
+     * @param bytes the bytes to reserve
+     * @return false if the budget is exceeded
+     */
+    public boolean reserve(long bytes) {
+        return usedBytes.addAndGet(bytes) <= limitBytes;
+    }
+
+    /**
+     * @param bytes previously reserved bytes that are no longer held
+     */
+    public void release(long bytes) {
+        usedBytes.addAndGet(-bytes);
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+}
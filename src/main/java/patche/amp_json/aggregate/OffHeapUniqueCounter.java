@@ -0,0 +1,269 @@
+package patche.amp_json.aggregate;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.DataInput;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * <pre>
+ *     Exact {@link UniqueCounter} keeping its values off the Java heap, so tens of millions of distinct
+ *     filenames cost the garbage collector nothing to trace.
+ *
+ *     Every distinct value is stored once as its UTF-8 bytes, prefixed by their length, in direct byte buffer
+ *     chunks. An open addressing table, itself a direct buffer, holds a 64 bit hash and a reference to the bytes
+ *     per value: lookups compare the hash first and the bytes only when the hashes are equal, so the count stays
+ *     exact under hash collisions. On the heap there is only the list of chunks.
+ *     A counter holds at most 3 * 2^24 (about 50 million) distinct values, a value beyond that is refused
+ *     before it is stored.
+ *
+ *     Closing the counter drops its buffers so their memory is freed as soon as the collector finds them
+ *     unreachable, instead of whenever the counter itself is collected. A closed counter keeps its count.
+ * </pre>
+ */
+public class OffHeapUniqueCounter implements UniqueCounter, Closeable {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+    private static final int SLOT_BYTES = 16;
+    private static final int DEFAULT_INITIAL_SLOTS = 64;
+    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    private static final int LENGTH_BYTES = 4;
+    /** a direct buffer is at most 2GB, so is the table */
+    private static final int MAX_SLOTS = 1 << 26;
+
+    private final int chunkSize;
+    private final LongUnaryOperator hashMixer;
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer table;
+    private int slots;
+    private long size;
+
+    public OffHeapUniqueCounter() {
+        this(DEFAULT_INITIAL_SLOTS, DEFAULT_CHUNK_SIZE, LongUnaryOperator.identity());
+    }
+
+    /**
+     * @param initialSlots the initial table size, rounded up to a power of two
+     * @param chunkSize the size of the direct buffers holding the values, larger values get a chunk of their own
+     * @param hashMixer applied to the hash of every value, lets tests force collisions
+     */
+    @VisibleForTesting
+    OffHeapUniqueCounter(int initialSlots, int chunkSize, LongUnaryOperator hashMixer) {
+        this.chunkSize = chunkSize;
+        this.hashMixer = hashMixer;
+        this.slots = Math.max(2, Integer.highestOneBit(Math.max(1, initialSlots - 1)) << 1);
+        this.table = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+    }
+
+    @Override
+    public void add(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        add(bytes, 0, bytes.length, hash(bytes, 0, bytes.length));
+    }
+
+    @Override
+    public long count() {
+        return size;
+    }
+
+    @Override
+    public double relativeError() {
+        return 0;
+    }
+
+    /**
+     * @return the chunk list, the table and the values are off heap, see {@link #offHeapBytes()}
+     */
+    @Override
+    public long estimateHeapBytes() {
+        return 64 + chunks.size() * 64L;
+    }
+
+    /**
+     * @return the direct memory held by the table and the value chunks
+     */
+    public long offHeapBytes() {
+        long bytes = table == null ? 0 : table.capacity();
+        for (ByteBuffer chunk : chunks) {
+            bytes += chunk.capacity();
+        }
+        return bytes;
+    }
+
+    @Override
+    public UniqueCounter merge(UniqueCounter other) {
+        OffHeapUniqueCounter that = (OffHeapUniqueCounter) other;
+        that.checkOpen();
+        byte[] bytes = new byte[64];
+        for (int slot = 0; slot < that.slots; slot++) {
+            long reference = that.table.getLong(slot * SLOT_BYTES + 8);
+            if (reference == 0) {
+                continue;
+            }
+            ByteBuffer chunk = that.chunk(reference);
+            int position = position(reference);
+            int length = chunk.getInt(position);
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            chunk.duplicate().position(position + LENGTH_BYTES).get(bytes, 0, length);
+            add(bytes, 0, length, that.table.getLong(slot * SLOT_BYTES));
+        }
+        return this;
+    }
+
+    /**
+     * Writes the count and every value as written by {@link Checkpointable#writeString(DataOutput, String)}.
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        checkOpen();
+        out.writeLong(size);
+        byte[] bytes = new byte[64];
+        for (int slot = 0; slot < slots; slot++) {
+            long reference = table.getLong(slot * SLOT_BYTES + 8);
+            if (reference == 0) {
+                continue;
+            }
+            ByteBuffer chunk = chunk(reference);
+            int position = position(reference);
+            int length = chunk.getInt(position);
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            chunk.duplicate().position(position + LENGTH_BYTES).get(bytes, 0, length);
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+        }
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        byte[] bytes = new byte[64];
+        for (long i = in.readLong(); i > 0; i--) {
+            int length = in.readInt();
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            in.readFully(bytes, 0, length);
+            add(bytes, 0, length, hash(bytes, 0, length));
+        }
+    }
+
+    private long hash(byte[] bytes, int offset, int length) {
+        return hashMixer.applyAsLong(HASH.hashBytes(bytes, offset, length).asLong());
+    }
+
+    /**
+     * Releases the table and the value chunks, the counter cannot be added to afterwards.
+     */
+    @Override
+    public void close() {
+        table = null;
+        chunks.clear();
+    }
+
+    private void checkOpen() {
+        if (table == null) {
+            throw new IllegalStateException("counter is closed");
+        }
+    }
+
+    private void add(byte[] bytes, int offset, int length, long hash) {
+        checkOpen();
+        int mask = slots - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+            int base = slot * SLOT_BYTES;
+            long reference = table.getLong(base + 8);
+            if (reference == 0) {
+                if (size + 1 > slots / 4 * 3) {
+                    // grows first, a full table refuses the value before anything is stored
+                    resize();
+                    add(bytes, offset, length, hash);
+                    return;
+                }
+                table.putLong(base, hash);
+                table.putLong(base + 8, store(bytes, offset, length));
+                size++;
+                return;
+            }
+            if (table.getLong(base) == hash && equalBytes(reference, bytes, offset, length)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean equalBytes(long reference, byte[] bytes, int offset, int length) {
+        ByteBuffer chunk = chunk(reference);
+        int position = position(reference);
+        if (chunk.getInt(position) != length) {
+            return false;
+        }
+        position += LENGTH_BYTES;
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(position + i) != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the reference of the stored bytes: the chunk index in the high int, the position in the low one,
+     *         plus one so that 0 marks an empty slot
+     */
+    private long store(byte[] bytes, int offset, int length) {
+        int needed = LENGTH_BYTES + length;
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (chunk == null || chunk.remaining() < needed) {
+            chunk = ByteBuffer.allocateDirect(Math.max(chunkSize, needed));
+            chunks.add(chunk);
+        }
+        int position = chunk.position();
+        chunk.putInt(length).put(bytes, offset, length);
+        return (((long) (chunks.size() - 1) << 32) | position) + 1;
+    }
+
+    private ByteBuffer chunk(long reference) {
+        return chunks.get((int) ((reference - 1) >>> 32));
+    }
+
+    private static int position(long reference) {
+        return (int) (reference - 1);
+    }
+
+    private void resize() {
+        if (slots == MAX_SLOTS) {
+            throw new IllegalStateException("more than " + MAX_SLOTS / 4 * 3 + " distinct values");
+        }
+        ByteBuffer oldTable = table;
+        int oldSlots = slots;
+        slots = oldSlots * 2;
+        table = ByteBuffer.allocateDirect(slots * SLOT_BYTES);
+        int mask = slots - 1;
+        for (int oldSlot = 0; oldSlot < oldSlots; oldSlot++) {
+            long reference = oldTable.getLong(oldSlot * SLOT_BYTES + 8);
+            if (reference == 0) {
+                continue;
+            }
+            long hash = oldTable.getLong(oldSlot * SLOT_BYTES);
+            int slot = (int) (hash ^ (hash >>> 32)) & mask;
+            while (table.getLong(slot * SLOT_BYTES + 8) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table.putLong(slot * SLOT_BYTES, hash);
+            table.putLong(slot * SLOT_BYTES + 8, reference);
+        }
+    }
+}
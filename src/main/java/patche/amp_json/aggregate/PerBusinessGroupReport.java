@@ -0,0 +1,173 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.io.Closeable;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * <pre>
+ *     A report per business group (bg), e.g. a {@link ReportPipeline} of the extension and sha reports, so every
+ *     customer of a multi-customer log gets its own.
+ *
+ *     Built in parallel by sharding the records by business group, see
+ *     {@link patche.amp_json.ingest.StagedFileIngester#ingestSharded(java.nio.file.Path, Supplier, patche.amp_json.ingest.ShardKey)},
+ *     a business group's report is only touched by the thread owning it and those of a hot business group,
+ *     spread over several threads, are merged at the end. The business groups are read as pairs of longs and
+ *     numbered by a {@link LongPairSet}, their reports kept in a list by number, so no UUID is created per record.
+ *     The reports of the business groups are rendered in parallel and printed in business group order.
+ *     Closing the report closes the business group reports holding resources, e.g. spilled runs.
+ * </pre>
+ */
+public class PerBusinessGroupReport<R extends Report<R>> implements Report<PerBusinessGroupReport<R>>, Closeable {
+
+    /** the list slot and the pair of longs */
+    private static final long BYTES_PER_GROUP = 32;
+
+    private final Supplier<R> reportFactory;
+    private final Set<Field> fields;
+    private final LongPairSet businessGroups = new LongPairSet();
+    private final List<R> reports = new ArrayList<>();
+    /** the report built to read the fields, handed to the first business group */
+    private R spare;
+
+    /**
+     * @param reportFactory creates the empty report of a business group
+     */
+    public PerBusinessGroupReport(Supplier<R> reportFactory) {
+        this.reportFactory = reportFactory;
+        this.spare = reportFactory.get();
+        this.fields = EnumSet.of(Field.BUSINESS_ID);
+        this.fields.addAll(spare.getFields());
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        int group = businessGroups.intern(record.getBusinessIDMostSigBits(), record.getBusinessIDLeastSigBits());
+        if (group == reports.size()) {
+            reports.add(newReport());
+        }
+        reports.get(group).accept(record);
+    }
+
+    /**
+     * @return the business group and the fields of the business group reports
+     */
+    @Override
+    public Set<Field> getFields() {
+        return Collections.unmodifiableSet(fields);
+    }
+
+    @Override
+    public PerBusinessGroupReport<R> merge(PerBusinessGroupReport<R> other) {
+        for (int i = 0; i < other.reports.size(); i++) {
+            int group = businessGroups.intern(other.businessGroups.getMostSigBits(i),
+                    other.businessGroups.getLeastSigBits(i));
+            if (group == reports.size()) {
+                reports.add(newReport().merge(other.reports.get(i)));
+            } else {
+                reports.get(group).merge(other.reports.get(i));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the sum of the business group reports' cardinalities
+     */
+    @Override
+    public long getCardinality() {
+        long cardinality = 0;
+        for (R report : reports) {
+            cardinality += report.getCardinality();
+        }
+        return cardinality;
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        long bytes = businessGroups.estimateHeapBytes();
+        for (R report : reports) {
+            bytes += BYTES_PER_GROUP + report.estimateHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the business groups seen so far, in order
+     */
+    public Set<UUID> getBusinessGroups() {
+        return Collections.unmodifiableSet(new TreeSet<>(byBusinessGroup().keySet()));
+    }
+
+    /**
+     * @param businessID the business group
+     * @return the report of the business group, or null if it has no records
+     */
+    public R getReport(UUID businessID) {
+        int group = businessGroups.indexOf(businessID.getMostSignificantBits(), businessID.getLeastSignificantBits());
+        return group < 0 ? null : reports.get(group);
+    }
+
+    /**
+     * Prints every business group followed by its report, the reports being rendered in parallel.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        List<List<String>> rendered = new ArrayList<>(byBusinessGroup().entrySet()).parallelStream()
+                .map(entry -> {
+                    List<String> lines = new ArrayList<>();
+                    lines.add("business group " + entry.getKey() + ":");
+                    entry.getValue().print(lines::add);
+                    return lines;
+                })
+                .collect(Collectors.toList());
+        for (List<String> lines : rendered) {
+            lines.forEach(out);
+        }
+    }
+
+    /**
+     * Closes every {@link Closeable} business group report, all of them even if one fails.
+     * @throws UncheckedIOException if a report fails to close
+     */
+    @Override
+    public void close() {
+        List<R> owned = new ArrayList<>(reports);
+        if (spare != null) {
+            owned.add(spare);
+        }
+        Report.closeAll(owned);
+    }
+
+    private R newReport() {
+        R report = spare != null ? spare : reportFactory.get();
+        spare = null;
+        return report;
+    }
+
+    /**
+     * @return the reports by business group, in business group order
+     */
+    private Map<UUID, R> byBusinessGroup() {
+        Map<UUID, R> byBusinessGroup = new TreeMap<>();
+        for (int i = 0; i < reports.size(); i++) {
+            byBusinessGroup.put(new UUID(businessGroups.getMostSigBits(i), businessGroups.getLeastSigBits(i)),
+                    reports.get(i));
+        }
+        return byBusinessGroup;
+    }
+}
@@ -0,0 +1,148 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.metrics.LogHistogram;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     Distribution of the processing time (pt) per time bucket and per file extension, to spot scanning
+ *     slowdowns. Every bucket and extension is a {@link LogHistogram}, a fixed 488 counters whatever the
+ *     number of records, giving p50, p95 and p99 within 12.5% and the exact max. Recording costs an array
+ *     increment and histograms merge by adding their counters.
+ * </pre>
+ */
+public class ProcessingTimeReport implements Report<ProcessingTimeReport> {
+
+    /** the counters of a histogram, a map node, its table slot and the key */
+    private static final long BYTES_PER_HISTOGRAM = 8 * 488 + 112;
+
+    private final AmpJsonReader jsonReader;
+    private final TimeBucketer timeBucketer;
+    private final Map<Long, LogHistogram> buckets = new TreeMap<>();
+    private final Map<String, LogHistogram> extensions = new HashMap<>();
+
+    /**
+     * @param jsonReader the reader used to split the filenames
+     */
+    public ProcessingTimeReport(AmpJsonReader jsonReader) {
+        this(jsonReader, TimeBucketer.hourOfDay(ZoneId.systemDefault()));
+    }
+
+    /**
+     * @param jsonReader the reader used to split the filenames
+     * @param timeBucketer the time buckets
+     */
+    public ProcessingTimeReport(AmpJsonReader jsonReader, TimeBucketer timeBucketer) {
+        this.jsonReader = jsonReader;
+        this.timeBucketer = timeBucketer;
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        long processingTime = record.getProcessingTime();
+        long bucket = timeBucketer.bucket(record.getTimestamp());
+        LogHistogram histogram = buckets.get(bucket);
+        if (histogram == null) {
+            histogram = new LogHistogram();
+            buckets.put(bucket, histogram);
+        }
+        histogram.record(processingTime);
+
+        String ext = record.getFileExtension();
+        if (ext == null) {
+            ext = jsonReader.getFileExt(record.getFileName());
+        }
+        histogram = extensions.get(ext);
+        if (histogram == null) {
+            histogram = new LogHistogram();
+            extensions.put(ext, histogram);
+        }
+        histogram.record(processingTime);
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.TIMESTAMP, Field.PROCESSING_TIME, Field.FILE_NAME);
+    }
+
+    @Override
+    public ProcessingTimeReport merge(ProcessingTimeReport other) {
+        merge(buckets, other.buckets);
+        merge(extensions, other.extensions);
+        return this;
+    }
+
+    /**
+     * @return the number of time buckets and extensions
+     */
+    @Override
+    public long getCardinality() {
+        return buckets.size() + extensions.size();
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return (buckets.size() + extensions.size()) * BYTES_PER_HISTOGRAM;
+    }
+
+    /**
+     * @return the time buckets seen so far, in ascending order
+     */
+    public Set<Long> getBuckets() {
+        return Collections.unmodifiableSet(buckets.keySet());
+    }
+
+    public Set<String> getExtensions() {
+        return Collections.unmodifiableSet(extensions.keySet());
+    }
+
+    /**
+     * @return the processing times of the time bucket, or null if it has no records
+     */
+    public LogHistogram getBucketHistogram(long bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @return the processing times of the extension, or null if it has no records
+     */
+    public LogHistogram getExtensionHistogram(String ext) {
+        return extensions.get(ext);
+    }
+
+    /**
+     * Prints the processing time percentiles of every time bucket, then of every extension.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        out.accept("processing time per time bucket:");
+        buckets.forEach((bucket, histogram) -> out.accept(timeBucketer.label(bucket) + ": " + format(histogram)));
+        out.accept("processing time per extension:");
+        new TreeMap<>(extensions).forEach((ext, histogram) -> out.accept(ext + ": " + format(histogram)));
+    }
+
+    private static <K> void merge(Map<K, LogHistogram> histograms, Map<K, LogHistogram> other) {
+        for (Map.Entry<K, LogHistogram> entry : other.entrySet()) {
+            histograms.computeIfAbsent(entry.getKey(), k -> new LogHistogram()).merge(entry.getValue());
+        }
+    }
+
+    private static String format(LogHistogram histogram) {
+        return "count: " + histogram.getCount()
+                + ", p50: " + histogram.getValueAtPercentile(50)
+                + ", p95: " + histogram.getValueAtPercentile(95)
+                + ", p99: " + histogram.getValueAtPercentile(99)
+                + ", max: " + histogram.getMax();
+    }
+}
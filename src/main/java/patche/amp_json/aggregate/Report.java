@@ -0,0 +1,73 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     An {@link Aggregator} that can print itself.
+ *     Reports are registered in a {@link ReportPipeline} so any number of them are built in one read and parse pass.
+ * </pre>
+ * @param <R> the report type
+ */
+public interface Report<R extends Report<R>> extends Aggregator<R> {
+
+    /**
+     * Prints the report, one call per line.
+     * @param out the line printer, e.g. a logger
+     */
+    void print(Consumer<String> out);
+
+    /**
+     * The fields the report reads, so decoders can skip materializing the others.
+     * @return the fields read by {@link #accept(patche.amp_json.pojos.IFileMetaData)}, all of them by default
+     */
+    default Set<Field> getFields() {
+        return EnumSet.allOf(Field.class);
+    }
+
+    /**
+     * @return the number of distinct keys the report holds, for monitoring, 0 if the report does not tell
+     */
+    default long getCardinality() {
+        return 0;
+    }
+
+    /**
+     * @return a rough estimate of the heap held by the report in bytes, for monitoring, 0 if the report does not tell
+     */
+    default long estimateHeapBytes() {
+        return 0;
+    }
+
+    /**
+     * Closes every {@link Closeable} report, all of them even if one fails.
+     * @param reports the reports, those holding no resources are skipped
+     * @throws UncheckedIOException if a report fails to close
+     */
+    static void closeAll(Iterable<?> reports) {
+        IOException failure = null;
+        for (Object report : reports) {
+            if (report instanceof Closeable) {
+                try {
+                    ((Closeable) report).close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("failed to close the reports", failure);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ *     Feeds every record to a list of reports, so all of them are built from a single pass over the input.
+ *     Parallel drivers create one pipeline per worker from the same report factories and merge the pipelines,
+ *     which merges their reports position by position.
+ *     Closing the pipeline closes the reports holding resources, e.g. spilled runs.
+ * </pre>
+ */
+public class ReportPipeline implements Report<ReportPipeline>, Checkpointable, Closeable {
+
+    private final List<Report<?>> reports;
+
+    public ReportPipeline(List<? extends Report<?>> reports) {
+        this.reports = new ArrayList<>(reports);
+    }
+
+    /**
+     * @param reportFactories creates the reports, in print order
+     * @return a pipeline of new reports
+     */
+    public static ReportPipeline create(List<? extends Supplier<? extends Report<?>>> reportFactories) {
+        List<Report<?>> reports = new ArrayList<>(reportFactories.size());
+        for (Supplier<? extends Report<?>> reportFactory : reportFactories) {
+            reports.add(reportFactory.get());
+        }
+        return new ReportPipeline(reports);
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        for (Report<?> report : reports) {
+            report.accept(record);
+        }
+    }
+
+    /**
+     * @return the fields read by any of the reports
+     */
+    @Override
+    public Set<Field> getFields() {
+        Set<Field> fields = EnumSet.noneOf(Field.class);
+        for (Report<?> report : reports) {
+            fields.addAll(report.getFields());
+        }
+        return fields;
+    }
+
+    /**
+     * @return the sum of the reports' cardinalities
+     */
+    @Override
+    public long getCardinality() {
+        long cardinality = 0;
+        for (Report<?> report : reports) {
+            cardinality += report.getCardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return the sum of the reports' heap estimates
+     */
+    @Override
+    public long estimateHeapBytes() {
+        long bytes = 0;
+        for (Report<?> report : reports) {
+            bytes += report.estimateHeapBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public ReportPipeline merge(ReportPipeline other) {
+        if (other.reports.size() != reports.size()) {
+            throw new IllegalArgumentException("cannot merge pipelines of different reports");
+        }
+        for (int i = 0; i < reports.size(); i++) {
+            mergeReport(reports.get(i), other.reports.get(i));
+        }
+        return this;
+    }
+
+    /**
+     * Writes the state of every report, in order.
+     * @throws IllegalStateException if one of the reports is not {@link Checkpointable}
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(reports.size());
+        for (Report<?> report : reports) {
+            checkpointable(report).writeCheckpoint(out);
+        }
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size != reports.size()) {
+            throw new IOException("cannot read a checkpoint of " + size + " reports into " + reports.size());
+        }
+        for (Report<?> report : reports) {
+            checkpointable(report).readCheckpoint(in);
+        }
+    }
+
+    @Override
+    public void print(Consumer<String> out) {
+        for (Report<?> report : reports) {
+            report.print(out);
+        }
+    }
+
+    public List<Report<?>> getReports() {
+        return Collections.unmodifiableList(reports);
+    }
+
+    /**
+     * @param type the report class
+     * @return the first report of the type, or null if there is none
+     */
+    public <R extends Report<R>> R getReport(Class<R> type) {
+        for (Report<?> report : reports) {
+            if (type.isInstance(report)) {
+                return type.cast(report);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes every {@link Closeable} report, all of them even if one fails.
+     * @throws UncheckedIOException if a report fails to close
+     */
+    @Override
+    public void close() {
+        Report.closeAll(reports);
+    }
+
+    private static Checkpointable checkpointable(Report<?> report) {
+        if (!(report instanceof Checkpointable)) {
+            throw new IllegalStateException(report.getClass().getSimpleName() + " cannot be checkpointed");
+        }
+        return (Checkpointable) report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R extends Report<R>> void mergeReport(Report<R> report, Report<?> other) {
+        if (report.getClass() != other.getClass()) {
+            throw new IllegalArgumentException("cannot merge " + other.getClass().getSimpleName()
+                    + " into " + report.getClass().getSimpleName());
+        }
+        report.merge((R) other);
+    }
+}
@@ -0,0 +1,208 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ *     Counts the distinct users (uu) and sessions (si) per time bucket and per business group (bg).
+ *
+ *     The UUIDs are read as pairs of longs, see {@link IFileMetaData#getSessionIDMostSigBits()}, and added to
+ *     counters of pairs, exactly to {@link LongPairSet}s by default or approximately to {@link HyperLogLog}s,
+ *     so no UUID is created per record when the records hold them as primitives. The business groups are
+ *     numbered by a {@link LongPairSet} too, their counters kept in a list by number.
+ * </pre>
+ */
+public class SessionUserReport implements Report<SessionUserReport> {
+
+    /** a tree map node, a boxed Long and the array of two counters */
+    private static final long BYTES_PER_BUCKET = 88;
+    /** the list slot and the array of two counters */
+    private static final long BYTES_PER_GROUP = 32;
+
+    private final TimeBucketer timeBucketer;
+    private final Supplier<UniqueCounter> counterFactory;
+    private final Map<Long, UniqueCounter[]> buckets = new TreeMap<>();
+    private final LongPairSet businessGroups = new LongPairSet();
+    private final List<UniqueCounter[]> groupCounters = new ArrayList<>();
+
+    /**
+     * Counts exactly per hour of the day, in the default zone.
+     */
+    public SessionUserReport() {
+        this(TimeBucketer.hourOfDay(ZoneId.systemDefault()), LongPairSet::new);
+    }
+
+    /**
+     * @param timeBucketer the time buckets
+     * @param counterFactory creates the counters of distinct users or sessions, fed pairs of longs, e.g.
+     *                       {@link LongPairSet} to count exactly or {@link HyperLogLog} to estimate
+     */
+    public SessionUserReport(TimeBucketer timeBucketer, Supplier<UniqueCounter> counterFactory) {
+        this.timeBucketer = timeBucketer;
+        this.counterFactory = counterFactory;
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        long userMost = record.getUserIDMostSigBits();
+        long userLeast = record.getUserIDLeastSigBits();
+        long sessionMost = record.getSessionIDMostSigBits();
+        long sessionLeast = record.getSessionIDLeastSigBits();
+
+        long bucketKey = timeBucketer.bucket(record.getTimestamp());
+        UniqueCounter[] bucket = buckets.get(bucketKey);
+        if (bucket == null) {
+            bucket = newCounters();
+            buckets.put(bucketKey, bucket);
+        }
+        bucket[0].add(userMost, userLeast);
+        bucket[1].add(sessionMost, sessionLeast);
+
+        int group = businessGroups.intern(record.getBusinessIDMostSigBits(), record.getBusinessIDLeastSigBits());
+        if (group == groupCounters.size()) {
+            groupCounters.add(newCounters());
+        }
+        UniqueCounter[] counters = groupCounters.get(group);
+        counters[0].add(userMost, userLeast);
+        counters[1].add(sessionMost, sessionLeast);
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.TIMESTAMP, Field.SESSION_ID, Field.USER_ID, Field.BUSINESS_ID);
+    }
+
+    @Override
+    public SessionUserReport merge(SessionUserReport other) {
+        for (Map.Entry<Long, UniqueCounter[]> entry : other.buckets.entrySet()) {
+            merge(buckets.computeIfAbsent(entry.getKey(), k -> newCounters()), entry.getValue());
+        }
+        for (int i = 0; i < other.groupCounters.size(); i++) {
+            int group = businessGroups.intern(other.businessGroups.getMostSigBits(i),
+                    other.businessGroups.getLeastSigBits(i));
+            if (group == groupCounters.size()) {
+                groupCounters.add(newCounters());
+            }
+            merge(groupCounters.get(group), other.groupCounters.get(i));
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of time buckets and business groups
+     */
+    @Override
+    public long getCardinality() {
+        return buckets.size() + groupCounters.size();
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        long bytes = businessGroups.estimateHeapBytes();
+        for (UniqueCounter[] bucket : buckets.values()) {
+            bytes += BYTES_PER_BUCKET + bucket[0].estimateHeapBytes() + bucket[1].estimateHeapBytes();
+        }
+        for (UniqueCounter[] counters : groupCounters) {
+            bytes += BYTES_PER_GROUP + counters[0].estimateHeapBytes() + counters[1].estimateHeapBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the time buckets seen so far, in ascending order
+     */
+    public Set<Long> getBuckets() {
+        return Collections.unmodifiableSet(buckets.keySet());
+    }
+
+    /**
+     * @return the number of distinct users in the time bucket, or an estimate of it
+     */
+    public long getUserCount(long bucket) {
+        UniqueCounter[] counters = buckets.get(bucket);
+        return counters == null ? 0 : counters[0].count();
+    }
+
+    /**
+     * @return the number of distinct sessions in the time bucket, or an estimate of it
+     */
+    public long getSessionCount(long bucket) {
+        UniqueCounter[] counters = buckets.get(bucket);
+        return counters == null ? 0 : counters[1].count();
+    }
+
+    /**
+     * @return the business groups seen so far, in the order they were first seen
+     */
+    public Set<UUID> getBusinessGroups() {
+        Set<UUID> groups = new LinkedHashSet<>();
+        for (int i = 0; i < groupCounters.size(); i++) {
+            groups.add(new UUID(businessGroups.getMostSigBits(i), businessGroups.getLeastSigBits(i)));
+        }
+        return groups;
+    }
+
+    /**
+     * @return the number of distinct users of the business group, or an estimate of it
+     */
+    public long getBusinessGroupUserCount(UUID businessID) {
+        int group = businessGroups.indexOf(businessID.getMostSignificantBits(), businessID.getLeastSignificantBits());
+        return group < 0 ? 0 : groupCounters.get(group)[0].count();
+    }
+
+    /**
+     * @return the number of distinct sessions of the business group, or an estimate of it
+     */
+    public long getBusinessGroupSessionCount(UUID businessID) {
+        int group = businessGroups.indexOf(businessID.getMostSignificantBits(), businessID.getLeastSignificantBits());
+        return group < 0 ? 0 : groupCounters.get(group)[1].count();
+    }
+
+    /**
+     * Prints the distinct users and sessions of every time bucket, then of every business group.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        out.accept("distinct users and sessions per time bucket:");
+        for (Map.Entry<Long, UniqueCounter[]> entry : buckets.entrySet()) {
+            out.accept(timeBucketer.label(entry.getKey()) + ": " + format(entry.getValue()));
+        }
+        out.accept("distinct users and sessions per business group:");
+        for (int i = 0; i < groupCounters.size(); i++) {
+            out.accept(new UUID(businessGroups.getMostSigBits(i), businessGroups.getLeastSigBits(i)) + ": "
+                    + format(groupCounters.get(i)));
+        }
+    }
+
+    private UniqueCounter[] newCounters() {
+        return new UniqueCounter[] {counterFactory.get(), counterFactory.get()};
+    }
+
+    private static void merge(UniqueCounter[] counters, UniqueCounter[] other) {
+        counters[0].merge(other[0]);
+        counters[1].merge(other[1]);
+    }
+
+    private static String format(UniqueCounter[] counters) {
+        return "users: " + format(counters[0]) + ", sessions: " + format(counters[1]);
+    }
+
+    private static String format(UniqueCounter counter) {
+        return counter.relativeError() == 0 ? Long.toString(counter.count())
+                : "~" + counter.count() + " (±" + String.format("%.2f", counter.relativeError() * 100) + "%)";
+    }
+}
@@ -0,0 +1,234 @@
+package patche.amp_json.aggregate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * <pre>
+ *     Counts sha occurrences without keeping a String, boxed Integer and map node per distinct sha.
+ *     A sha-256 in its canonical form (64 lowercase hex characters) is stored as its 32 raw bytes,
+ *     four longs in an open addressing table with an int counter next to it, and only turned back into
+ *     hex when it is read. Anything else the validation accepts as a sha is counted in a plain map.
+ * </pre>
+ */
+public class ShaCounter implements Checkpointable {
+
+    private static final int SHA_HEX_LENGTH = 64;
+    private static final int LONGS_PER_SHA = 4;
+    private static final int INITIAL_CAPACITY = 16;
+    /** a map node, its table slot, a 64 character String and a boxed count */
+    private static final long BYTES_PER_OTHER_SHA = 160;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private long[] keys;
+    private int[] counts;
+    private int size;
+    private final Map<String, Integer> otherShas;
+    private final long[] parsed = new long[LONGS_PER_SHA];
+
+    public ShaCounter() {
+        this.keys = new long[INITIAL_CAPACITY * LONGS_PER_SHA];
+        this.counts = new int[INITIAL_CAPACITY];
+        this.otherShas = new HashMap<>();
+    }
+
+    public void add(String sha) {
+        add(sha, 1);
+    }
+
+    /**
+     * @param sha the sha
+     * @param count how often the sha occurred, positive
+     * @throws IllegalArgumentException if the count is not positive, a zero count would be taken for an empty
+     *         slot of the table
+     */
+    public void add(String sha, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("count must be positive: " + count);
+        }
+        if (parseSha(sha, parsed)) {
+            add(parsed, 0, count);
+        } else {
+            otherShas.merge(sha, count, Integer::sum);
+        }
+    }
+
+    /**
+     * @param sha the sha
+     * @return how often the sha was added
+     */
+    public int get(String sha) {
+        if (!parseSha(sha, parsed)) {
+            return otherShas.getOrDefault(sha, 0);
+        }
+        return counts[findSlot(parsed, 0)];
+    }
+
+    /**
+     * @return the number of distinct shas
+     */
+    public int size() {
+        return size + otherShas.size();
+    }
+
+    /**
+     * @return a rough estimate of the heap held by the counter in bytes
+     */
+    public long estimateHeapBytes() {
+        return keys.length * 8L + counts.length * 4L + otherShas.size() * BYTES_PER_OTHER_SHA;
+    }
+
+    /**
+     * Calls the consumer with every distinct sha and its count.
+     * @param consumer the sha and count consumer
+     */
+    public void forEach(ObjIntConsumer<String> consumer) {
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0) {
+                consumer.accept(toHex(keys, slot * LONGS_PER_SHA), counts[slot]);
+            }
+        }
+        otherShas.forEach(consumer::accept);
+    }
+
+    /**
+     * Adds the counts of the other counter to this one.
+     * @param other the counter to merge
+     * @return this counter
+     */
+    public ShaCounter merge(ShaCounter other) {
+        for (int slot = 0; slot < other.counts.length; slot++) {
+            if (other.counts[slot] != 0) {
+                add(other.keys, slot * LONGS_PER_SHA, other.counts[slot]);
+            }
+        }
+        other.otherShas.forEach((sha, count) -> otherShas.merge(sha, count, Integer::sum));
+        return this;
+    }
+
+    /**
+     * Writes the canonical shas as their four longs and the others as Strings, each followed by its count.
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int slot = 0; slot < counts.length; slot++) {
+            if (counts[slot] != 0) {
+                for (int i = 0; i < LONGS_PER_SHA; i++) {
+                    out.writeLong(keys[slot * LONGS_PER_SHA + i]);
+                }
+                out.writeInt(counts[slot]);
+            }
+        }
+        out.writeInt(otherShas.size());
+        for (Map.Entry<String, Integer> entry : otherShas.entrySet()) {
+            Checkpointable.writeString(out, entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        long[] sha = new long[LONGS_PER_SHA];
+        for (int remaining = in.readInt(); remaining > 0; remaining--) {
+            for (int i = 0; i < LONGS_PER_SHA; i++) {
+                sha[i] = in.readLong();
+            }
+            add(sha, 0, in.readInt());
+        }
+        for (int remaining = in.readInt(); remaining > 0; remaining--) {
+            otherShas.merge(Checkpointable.readString(in), in.readInt(), Integer::sum);
+        }
+    }
+
+    private void add(long[] sha, int offset, int count) {
+        int slot = findSlot(sha, offset);
+        if (counts[slot] == 0) {
+            System.arraycopy(sha, offset, keys, slot * LONGS_PER_SHA, LONGS_PER_SHA);
+            size++;
+        }
+        counts[slot] += count;
+        if (size > counts.length * 3 / 4) {
+            resize();
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        for (int slot = 0; slot < oldCounts.length; slot++) {
+            if (oldCounts[slot] != 0) {
+                int newSlot = findSlot(oldKeys, slot * LONGS_PER_SHA);
+                System.arraycopy(oldKeys, slot * LONGS_PER_SHA, keys, newSlot * LONGS_PER_SHA, LONGS_PER_SHA);
+                counts[newSlot] = oldCounts[slot];
+            }
+        }
+    }
+
+    /**
+     * @return the slot holding the sha, or the empty slot where it belongs
+     */
+    private int findSlot(long[] sha, int offset) {
+        int mask = counts.length - 1;
+        int slot = mix(sha[offset] ^ sha[offset + 1]) & mask;
+        while (true) {
+            int base = slot * LONGS_PER_SHA;
+            if (counts[slot] == 0 || (keys[base] == sha[offset] && keys[base + 1] == sha[offset + 1]
+                    && keys[base + 2] == sha[offset + 2] && keys[base + 3] == sha[offset + 3])) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * @return true if the sha is 64 lowercase hex characters, in which case its bytes are written to out
+     */
+    private static boolean parseSha(String sha, long[] out) {
+        if (sha.length() != SHA_HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < LONGS_PER_SHA; i++) {
+            long value = 0;
+            for (int j = i * 16; j < i * 16 + 16; j++) {
+                char c = sha.charAt(j);
+                int digit;
+                if (c >= '0' && c <= '9') {
+                    digit = c - '0';
+                } else if (c >= 'a' && c <= 'f') {
+                    digit = c - 'a' + 10;
+                } else {
+                    return false;
+                }
+                value = value << 4 | digit;
+            }
+            out[i] = value;
+        }
+        return true;
+    }
+
+    private static String toHex(long[] sha, int offset) {
+        char[] hex = new char[SHA_HEX_LENGTH];
+        for (int i = 0; i < LONGS_PER_SHA; i++) {
+            long value = sha[offset + i];
+            for (int j = 15; j >= 0; j--) {
+                hex[i * 16 + j] = HEX_DIGITS[(int) (value & 0xf)];
+                value >>>= 4;
+            }
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,318 @@
+package patche.amp_json.aggregate;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <pre>
+ *     Space-Saving heavy hitters sketch (Metwally, Agrawal and El Abbadi) monitoring at most capacity items.
+ *
+ *     A monitored item's count is incremented, an unmonitored one takes over the counter of the least counted
+ *     item, inheriting its count as both a head start and an error. Every count is an upper bound of the item's
+ *     true count and count - error a lower bound, the error being at most total / capacity, so any item seen more
+ *     often than that is monitored. The counters sit in a min-heap so the least counted one is found in O(1)
+ *     and an update costs O(log capacity). Memory is fixed whatever the number of distinct items.
+ *
+ *     Sketches of the same capacity merge as mergeable summaries (Agarwal et al.): the counts of an item are
+ *     added, an item missing from a full sketch is counted with that sketch's minimum, its maximum possible
+ *     count, and the largest capacity counters are kept. The merged bounds still hold, with the error at most
+ *     the merged total / capacity.
+ * </pre>
+ */
+public class SpaceSaving implements Checkpointable {
+
+    /** a map node, its table slot, a 64 character String, the counter and its heap slot */
+    private static final long BYTES_PER_COUNTER = 232;
+
+    private final int capacity;
+    private final Map<String, ItemCounter> counters;
+    private final ItemCounter[] heap;
+    private int size;
+    private long total;
+
+    /**
+     * @param capacity the number of items monitored, the count error is at most the total count / capacity
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>();
+        this.heap = new ItemCounter[capacity];
+    }
+
+    public void add(String item) {
+        add(item, 1, 0);
+    }
+
+    /**
+     * @param item the item
+     * @param count how often the item was seen, positive
+     * @param error how much of the count may not be the item's
+     */
+    private void add(String item, long count, long error) {
+        total += count;
+        ItemCounter counter = counters.get(item);
+        if (counter != null) {
+            counter.count += count;
+            counter.error += error;
+            siftDown(counter.slot);
+            return;
+        }
+        if (size < capacity) {
+            counter = new ItemCounter(item, count, error);
+            counters.put(item, counter);
+            counter.slot = size;
+            heap[size++] = counter;
+            siftUp(counter.slot);
+            return;
+        }
+        counter = heap[0];
+        counters.remove(counter.item);
+        counter.item = item;
+        counter.error = counter.count + error;
+        counter.count += count;
+        counters.put(item, counter);
+        siftDown(0);
+    }
+
+    /**
+     * @return the number of items added, counting repeats
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of monitored items
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the largest possible error of any count, 0 while the sketch is not full and every count is exact
+     */
+    public long getMaxError() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    public long estimateHeapBytes() {
+        return capacity * 8L + size * BYTES_PER_COUNTER;
+    }
+
+    /**
+     * @param k the number of items
+     * @return the k most counted items, most counted first, ties by item
+     */
+    public List<HeavyHitter> top(int k) {
+        ItemCounter[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, Comparator.comparingLong((ItemCounter counter) -> -counter.count)
+                .thenComparing(counter -> counter.item));
+        int length = Math.min(k, sorted.length);
+        List<HeavyHitter> top = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            // an item is surely among the top if even its lower bound beats the next item's upper bound
+            long next = i + 1 < sorted.length ? sorted[i + 1].count : getMaxError();
+            boolean guaranteed = sorted[i].count - sorted[i].error >= next
+                    && (i == 0 || top.get(i - 1).isGuaranteed());
+            top.add(new HeavyHitter(sorted[i].item, sorted[i].count, sorted[i].error, guaranteed));
+        }
+        return top;
+    }
+
+    /**
+     * Merges a sketch of the same capacity into this one.
+     * @param other the sketch to merge
+     * @return this sketch
+     */
+    public SpaceSaving merge(SpaceSaving other) {
+        if (other.capacity != capacity) {
+            throw new IllegalArgumentException("cannot merge sketches of capacity " + capacity + " and " + other.capacity);
+        }
+        long thisMissing = getMaxError();
+        long otherMissing = other.getMaxError();
+        Map<String, ItemCounter> merged = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            ItemCounter counter = heap[i];
+            ItemCounter otherCounter = other.counters.get(counter.item);
+            merged.put(counter.item, otherCounter == null
+                    ? new ItemCounter(counter.item, counter.count + otherMissing, counter.error + otherMissing)
+                    : new ItemCounter(counter.item, counter.count + otherCounter.count, counter.error + otherCounter.error));
+        }
+        for (int i = 0; i < other.size; i++) {
+            ItemCounter counter = other.heap[i];
+            if (!merged.containsKey(counter.item)) {
+                merged.put(counter.item, new ItemCounter(counter.item, counter.count + thisMissing,
+                        counter.error + thisMissing));
+            }
+        }
+
+        ItemCounter[] sorted = merged.values().toArray(new ItemCounter[0]);
+        Arrays.sort(sorted, Comparator.comparingLong((ItemCounter counter) -> -counter.count));
+        long mergedTotal = total + other.total;
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        for (int i = 0; i < Math.min(capacity, sorted.length); i++) {
+            ItemCounter counter = sorted[i];
+            counters.put(counter.item, counter);
+            counter.slot = size;
+            heap[size++] = counter;
+            siftUp(counter.slot);
+        }
+        total = mergedTotal;
+        return this;
+    }
+
+    /**
+     * Writes the total and every monitored item with its count and error.
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            Checkpointable.writeString(out, heap[i].item);
+            out.writeLong(heap[i].count);
+            out.writeLong(heap[i].error);
+        }
+    }
+
+    /**
+     * Merges the checkpointed sketch into this one.
+     */
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        SpaceSaving checkpoint = new SpaceSaving(in.readInt());
+        if (checkpoint.capacity != capacity) {
+            throw new IOException("cannot read a sketch of capacity " + checkpoint.capacity + " into " + capacity);
+        }
+        long checkpointTotal = in.readLong();
+        for (int i = in.readInt(); i > 0; i--) {
+            checkpoint.add(Checkpointable.readString(in), in.readLong(), in.readLong());
+        }
+        checkpoint.total = checkpointTotal;
+        merge(checkpoint);
+    }
+
+    private void siftUp(int slot) {
+        ItemCounter counter = heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], slot);
+            slot = parent;
+        }
+        place(counter, slot);
+    }
+
+    private void siftDown(int slot) {
+        ItemCounter counter = heap[slot];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= counter.count) {
+                break;
+            }
+            place(heap[child], slot);
+            slot = child;
+        }
+        place(counter, slot);
+    }
+
+    private void place(ItemCounter counter, int slot) {
+        heap[slot] = counter;
+        counter.slot = slot;
+    }
+
+    /**
+     * An item with its count, an upper bound of how often it was seen, and the count's error.
+     */
+    public static final class HeavyHitter {
+
+        private final String item;
+        private final long count;
+        private final long error;
+        private final boolean guaranteed;
+
+        HeavyHitter(String item, long count, long error, boolean guaranteed) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.guaranteed = guaranteed;
+        }
+
+        public String getItem() {
+            return item;
+        }
+
+        /**
+         * @return an upper bound of how often the item was seen
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return how much the count may exceed how often the item was seen
+         */
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * @return a lower bound of how often the item was seen
+         */
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+
+        /**
+         * @return true if the item and every item before it are surely among the most seen items, in this order
+         *         or tied, false if the sketch cannot tell
+         */
+        public boolean isGuaranteed() {
+            return guaranteed;
+        }
+
+        @Override
+        public String toString() {
+            return item + ": " + count + (error == 0 ? "" : " (±" + error + ")");
+        }
+    }
+
+    private static final class ItemCounter {
+
+        private String item;
+        private long count;
+        private long error;
+        private int slot;
+
+        ItemCounter(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package patche.amp_json.aggregate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * <pre>
+ *     Sums long counts per String key within a {@link MemoryBudget}, spilling to disk when it is exceeded.
+ *
+ *     The keys are counted in a map. Once the budget is exceeded, and this instance holds at least a sixteenth
+ *     of it so that runs do not get tiny, the map is sorted by key and written to a temp file as a run of
+ *     (key, count) pairs and emptied. {@link #forEach(ObjLongConsumer)} merges the runs and the map in key
+ *     order, summing the counts of equal keys, so the result is exact however many keys there are. At most
+ *     {@link #MAX_MERGE_RUNS} runs are read at a time, more are first merged into larger runs.
+ *
+ *     Merging another instance adopts its runs without reading them and copies its counts. A checkpoint holds
+ *     the summed counts, merging the runs to write it. {@link #close()} deletes the runs.
+ * </pre>
+ */
+final class SpillingCounts implements Checkpointable, Closeable {
+
+    private static final Logger LOG = LogManager.getLogger(SpillingCounts.class);
+
+    static final int MAX_MERGE_RUNS = 64;
+    /** a map node, its table slot, the String and its array headers, and the long[1] count */
+    private static final long BYTES_PER_ENTRY = 120;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private final MemoryBudget budget;
+    private final Path spillDirectory;
+    private final long minSpillBytes;
+    private final List<Path> runs = new ArrayList<>();
+    private Map<String, long[]> counts = new HashMap<>();
+    private long reservedBytes;
+
+    /**
+     * @param budget the budget shared with the other aggregators of the run
+     * @param spillDirectory where the runs are written
+     */
+    SpillingCounts(MemoryBudget budget, Path spillDirectory) {
+        this.budget = budget;
+        this.spillDirectory = spillDirectory;
+        this.minSpillBytes = budget.getLimitBytes() / 16;
+    }
+
+    void add(String key, long count) {
+        long[] current = counts.get(key);
+        if (current != null) {
+            current[0] += count;
+            return;
+        }
+        counts.put(key, new long[] {count});
+        long bytes = BYTES_PER_ENTRY + 2L * key.length();
+        reservedBytes += bytes;
+        if (!budget.reserve(bytes) && reservedBytes >= minSpillBytes) {
+            spill();
+        }
+    }
+
+    /**
+     * Adopts the runs and adds the counts of the other instance, which must not be used afterwards.
+     */
+    void merge(SpillingCounts other) {
+        runs.addAll(other.runs);
+        other.runs.clear();
+        Map<String, long[]> otherCounts = other.counts;
+        other.clear();
+        // copied so that no count is shared with the other instance, reserving and spilling like add
+        for (Map.Entry<String, long[]> entry : otherCounts.entrySet()) {
+            add(entry.getKey(), entry.getValue()[0]);
+        }
+        if (reservedBytes >= minSpillBytes && budget.getUsedBytes() > budget.getLimitBytes()) {
+            spill();
+        }
+    }
+
+    /**
+     * Calls the consumer with every key and its summed count, in key order.
+     * @throws UncheckedIOException if a run cannot be read or written
+     */
+    void forEach(ObjLongConsumer<String> consumer) {
+        try {
+            while (runs.size() > MAX_MERGE_RUNS) {
+                List<Path> merged = new ArrayList<>(runs.subList(0, MAX_MERGE_RUNS));
+                Path run = newRun();
+                try (RunWriter writer = new RunWriter(run)) {
+                    mergeRuns(merged, Collections.emptyIterator(), writer::write);
+                }
+                runs.subList(0, MAX_MERGE_RUNS).clear();
+                runs.add(run);
+                delete(merged);
+            }
+            mergeRuns(runs, sortedCounts(), consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to merge the spilled runs", e);
+        }
+    }
+
+    /**
+     * Writes every key and its summed count in key order, each preceded by true, then false, the number of
+     * keys being only known once the runs are merged.
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        try {
+            forEach((key, count) -> {
+                try {
+                    out.writeBoolean(true);
+                    Checkpointable.writeString(out, key);
+                    out.writeLong(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.writeBoolean(false);
+    }
+
+    /**
+     * Adds the counts of the checkpoint, spilling like {@link #add(String, long)} when the budget is exceeded.
+     */
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        while (in.readBoolean()) {
+            add(Checkpointable.readString(in), in.readLong());
+        }
+    }
+
+    /**
+     * @return the keys held in memory, the same key may also be in the runs
+     */
+    int size() {
+        return counts.size();
+    }
+
+    long estimateHeapBytes() {
+        return reservedBytes;
+    }
+
+    int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Deletes the runs and releases the reserved memory.
+     */
+    @Override
+    public void close() {
+        delete(runs);
+        runs.clear();
+        clear();
+    }
+
+    private void clear() {
+        counts = new HashMap<>();
+        budget.release(reservedBytes);
+        reservedBytes = 0;
+    }
+
+    private void spill() {
+        Path run = null;
+        try {
+            run = newRun();
+            try (RunWriter writer = new RunWriter(run)) {
+                Iterator<Map.Entry<String, long[]>> entries = sortedCounts();
+                while (entries.hasNext()) {
+                    Map.Entry<String, long[]> entry = entries.next();
+                    writer.write(entry.getKey(), entry.getValue()[0]);
+                }
+            }
+        } catch (IOException e) {
+            if (run != null) {
+                delete(List.of(run));
+            }
+            throw new UncheckedIOException("failed to spill " + counts.size() + " entries to " + spillDirectory, e);
+        }
+        LOG.debug("spilled {} entries to {}", counts.size(), run);
+        runs.add(run);
+        clear();
+    }
+
+    private Iterator<Map.Entry<String, long[]>> sortedCounts() {
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        return entries.iterator();
+    }
+
+    private Path newRun() throws IOException {
+        return Files.createTempFile(spillDirectory, "amp-json-", ".run");
+    }
+
+    /**
+     * K-way merge of the sorted runs and the sorted in-memory entries, summing the counts of equal keys.
+     */
+    private static void mergeRuns(List<Path> runs, Iterator<Map.Entry<String, long[]>> memory,
+                                  ObjLongConsumer<String> consumer) throws IOException {
+        PriorityQueue<Source> heads = new PriorityQueue<>();
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try {
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run);
+                readers.add(reader);
+                if (reader.advance()) {
+                    heads.add(reader);
+                }
+            }
+            MemorySource memorySource = new MemorySource(memory);
+            if (memorySource.advance()) {
+                heads.add(memorySource);
+            }
+
+            while (!heads.isEmpty()) {
+                Source head = heads.poll();
+                String key = head.key;
+                long count = head.count;
+                if (head.advance()) {
+                    heads.add(head);
+                }
+                while (!heads.isEmpty() && heads.peek().key.equals(key)) {
+                    Source same = heads.poll();
+                    count += same.count;
+                    if (same.advance()) {
+                        heads.add(same);
+                    }
+                }
+                consumer.accept(key, count);
+            }
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void delete(List<Path> files) {
+        for (Path file : files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warn("failed to delete spilled run " + file, e);
+            }
+        }
+    }
+
+    /**
+     * The current key and count of a sorted source of entries.
+     */
+    private abstract static class Source implements Comparable<Source> {
+
+        String key;
+        long count;
+
+        /**
+         * @return false if the source is exhausted
+         */
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public int compareTo(Source other) {
+            return key.compareTo(other.key);
+        }
+    }
+
+    private static final class MemorySource extends Source {
+
+        private final Iterator<Map.Entry<String, long[]>> entries;
+
+        MemorySource(Iterator<Map.Entry<String, long[]>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        boolean advance() {
+            if (!entries.hasNext()) {
+                return false;
+            }
+            Map.Entry<String, long[]> entry = entries.next();
+            key = entry.getKey();
+            count = entry.getValue()[0];
+            return true;
+        }
+    }
+
+    /**
+     * Reads a run, every entry being the key as an int length and UTF-8 bytes followed by the count.
+     */
+    private static final class RunReader extends Source implements Closeable {
+
+        private final DataInputStream in;
+        private byte[] buffer = new byte[64];
+
+        RunReader(Path run) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), IO_BUFFER_SIZE));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            key = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            count = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class RunWriter implements Closeable {
+
+        private final DataOutputStream out;
+
+        RunWriter(Path run) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), IO_BUFFER_SIZE));
+        }
+
+        void write(String key, long count) {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            try {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.writeLong(count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package patche.amp_json.aggregate;
+
+import com.google.common.annotations.VisibleForTesting;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     Counts the unique filenames per file extension exactly, like {@link ExtensionAggregator}, within a
+ *     {@link MemoryBudget}: the extension and filename pairs are spilled to disk as sorted runs once the
+ *     budget is exceeded and merged when the report is read, see {@link SpillingCounts}. A pair is keyed by the
+ *     length of the extension, the extension and the filename, so any character, \u0000 included, may be in
+ *     either.
+ *     Close the report to delete its runs.
+ * </pre>
+ */
+public class SpillingExtensionAggregator implements Report<SpillingExtensionAggregator>, Checkpointable, Closeable {
+
+    private final AmpJsonReader jsonReader;
+    private final SpillingCounts pairs;
+
+    /**
+     * @param jsonReader the reader used to split the filenames
+     * @param budget the memory budget shared with the other aggregators of the run
+     * @param spillDirectory where the runs are written
+     */
+    public SpillingExtensionAggregator(AmpJsonReader jsonReader, MemoryBudget budget, Path spillDirectory) {
+        this.jsonReader = jsonReader;
+        this.pairs = new SpillingCounts(budget, spillDirectory);
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        String ext = record.getFileExtension();
+        if (ext == null) {
+            ext = jsonReader.getFileExt(record.getFileName());
+        }
+        String filename = jsonReader.getFilenameWithoutExt(record.getFileName());
+        pairs.add(pairKey(ext, filename), 1);
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.FILE_NAME);
+    }
+
+    @Override
+    public SpillingExtensionAggregator merge(SpillingExtensionAggregator other) {
+        pairs.merge(other.pairs);
+        return this;
+    }
+
+    /**
+     * @return the extension and filename pairs held in memory, not counting the spilled ones
+     */
+    @Override
+    public long getCardinality() {
+        return pairs.size();
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return pairs.estimateHeapBytes();
+    }
+
+    /**
+     * Merges the spilled runs, so it reads them all.
+     * @return the number of unique filenames per extension, sorted by extension
+     */
+    public Map<String, Long> getUniqueCounts() {
+        Map<String, Long> uniqueCounts = new TreeMap<>();
+        pairs.forEach((pair, count) -> uniqueCounts.merge(extensionOf(pair), 1L, Long::sum));
+        return uniqueCounts;
+    }
+
+    /**
+     * Writes the summed counts, merging the spilled runs.
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        pairs.writeCheckpoint(out);
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        pairs.readCheckpoint(in);
+    }
+
+    @VisibleForTesting
+    int getRunCount() {
+        return pairs.getRunCount();
+    }
+
+    /**
+     * Prints every extension and its unique filename count, in extension order.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        getUniqueCounts().forEach((ext, count) -> out.accept(ext + ": " + count));
+    }
+
+    /**
+     * @return the length of the extension in decimal and a ':', followed by the extension and the filename
+     */
+    private static String pairKey(String ext, String filename) {
+        return ext.length() + ":" + ext + filename;
+    }
+
+    private static String extensionOf(String pairKey) {
+        int colon = pairKey.indexOf(':');
+        int start = colon + 1;
+        return pairKey.substring(start, start + Integer.parseInt(pairKey, 0, colon, 10));
+    }
+
+    /**
+     * Deletes the spilled runs and releases the budget held.
+     */
+    @Override
+    public void close() {
+        pairs.close();
+    }
+}
@@ -0,0 +1,137 @@
+package patche.amp_json.aggregate;
+
+import com.google.common.annotations.VisibleForTesting;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     Counts how often every sha is seen per time bucket exactly, like {@link HourlyShaAggregator}, within a
+ *     {@link MemoryBudget}: the bucket and sha counts are spilled to disk as sorted runs once the budget is
+ *     exceeded and summed when the report is read, see {@link SpillingCounts}.
+ *     Close the report to delete its runs.
+ * </pre>
+ */
+public class SpillingHourlyShaAggregator implements Report<SpillingHourlyShaAggregator>, Checkpointable, Closeable {
+
+    /** sorts below the digits, so the shas of a bucket are contiguous in key order */
+    private static final char SEPARATOR = '\u0000';
+
+    /**
+     * Receives the summed counts in bucket order, the buckets ordered by their decimal representation.
+     */
+    @FunctionalInterface
+    public interface ShaCountConsumer {
+        void accept(long bucket, String sha, long count);
+    }
+
+    private final TimeBucketer timeBucketer;
+    private final SpillingCounts shaCounts;
+
+    /**
+     * @param timeBucketer the time buckets
+     * @param budget the memory budget shared with the other aggregators of the run
+     * @param spillDirectory where the runs are written
+     */
+    public SpillingHourlyShaAggregator(TimeBucketer timeBucketer, MemoryBudget budget, Path spillDirectory) {
+        this.timeBucketer = timeBucketer;
+        this.shaCounts = new SpillingCounts(budget, spillDirectory);
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        long bucket = timeBucketer.bucket(record.getTimestamp());
+        shaCounts.add(Long.toString(bucket) + SEPARATOR + record.getSha(), 1);
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.TIMESTAMP, Field.SHA);
+    }
+
+    @Override
+    public SpillingHourlyShaAggregator merge(SpillingHourlyShaAggregator other) {
+        shaCounts.merge(other.shaCounts);
+        return this;
+    }
+
+    /**
+     * @return the time bucket and sha pairs held in memory, not counting the spilled ones
+     */
+    @Override
+    public long getCardinality() {
+        return shaCounts.size();
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        return shaCounts.estimateHeapBytes();
+    }
+
+    public TimeBucketer getTimeBucketer() {
+        return timeBucketer;
+    }
+
+    /**
+     * Merges the spilled runs, so it reads them all.
+     * @param consumer receives every bucket, sha and count, the shas of a bucket one after the other
+     */
+    public void forEach(ShaCountConsumer consumer) {
+        shaCounts.forEach((key, count) -> {
+            int separator = key.indexOf(SEPARATOR);
+            consumer.accept(Long.parseLong(key.substring(0, separator)), key.substring(separator + 1), count);
+        });
+    }
+
+    /**
+     * Writes the summed counts, merging the spilled runs.
+     */
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        shaCounts.writeCheckpoint(out);
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        shaCounts.readCheckpoint(in);
+    }
+
+    @VisibleForTesting
+    int getRunCount() {
+        return shaCounts.getRunCount();
+    }
+
+    /**
+     * Prints every time bucket followed by its shas and their counts.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        long[] previous = {0};
+        boolean[] first = {true};
+        forEach((bucket, sha, count) -> {
+            if (first[0] || bucket != previous[0]) {
+                out.accept(timeBucketer.label(bucket) + ":");
+                previous[0] = bucket;
+                first[0] = false;
+            }
+            out.accept("sha: " + sha + ", count: " + count);
+        });
+    }
+
+    /**
+     * Deletes the spilled runs and releases the budget held.
+     */
+    @Override
+    public void close() {
+        shaCounts.close();
+    }
+}
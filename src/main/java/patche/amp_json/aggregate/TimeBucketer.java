@@ -0,0 +1,146 @@
+package patche.amp_json.aggregate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * <pre>
+ *     Maps epoch second timestamps to time buckets in a configured zone using integer arithmetic.
+ *     The zone offset is cached together with the span of time it is valid for, between two DST transitions,
+ *     so the zone rules are only looked up again when a timestamp falls outside that span.
+ *
+ *     Buckets are either cyclic, the hour or minute of the day merging all days together,
+ *     or absolute, the local start of the minute, hour or day in epoch seconds.
+ *     Instances are thread safe and can be shared between aggregators.
+ * </pre>
+ */
+public class TimeBucketer {
+
+    public enum Granularity {
+        MINUTE(60),
+        HOUR(3600),
+        DAY(86400);
+
+        private final int seconds;
+
+        Granularity(int seconds) {
+            this.seconds = seconds;
+        }
+
+        public int getSeconds() {
+            return seconds;
+        }
+    }
+
+    private static final int SECONDS_PER_DAY = 86400;
+    private static final long MAX_INSTANT_SECOND = Instant.MAX.getEpochSecond();
+
+    private final ZoneRules rules;
+    private final Granularity granularity;
+    private final boolean cyclic;
+    private volatile OffsetWindow window;
+
+    /**
+     * @param zone the zone the buckets are aligned to
+     * @param granularity the bucket size
+     * @param cyclic true to merge all days together, e.g. 24 hour of day buckets, false for absolute buckets
+     */
+    public TimeBucketer(ZoneId zone, Granularity granularity, boolean cyclic) {
+        if (cyclic && granularity == Granularity.DAY) {
+            throw new IllegalArgumentException("day buckets cannot be cyclic");
+        }
+        this.rules = zone.getRules();
+        this.granularity = granularity;
+        this.cyclic = cyclic;
+        this.window = new OffsetWindow(0, 0, 0);
+    }
+
+    /**
+     * @param zone the zone the hours are in
+     * @return a bucketer of the 24 hours of the day, merging all days together
+     */
+    public static TimeBucketer hourOfDay(ZoneId zone) {
+        return new TimeBucketer(zone, Granularity.HOUR, true);
+    }
+
+    /**
+     * @param epochSecond the timestamp in epoch seconds
+     * @return the bucket of the timestamp
+     */
+    public long bucket(long epochSecond) {
+        OffsetWindow current = window;
+        if (epochSecond < current.start || epochSecond >= current.end) {
+            current = offsetWindow(epochSecond);
+            window = current;
+        }
+
+        long localSecond = epochSecond + current.offsetSeconds;
+        if (cyclic) {
+            return Math.floorMod(localSecond, SECONDS_PER_DAY) / granularity.seconds;
+        }
+        return Math.floorDiv(localSecond, granularity.seconds) * granularity.seconds;
+    }
+
+    /**
+     * @param bucket a bucket returned by {@link #bucket(long)}
+     * @return a readable label of the bucket, e.g. "13 o'clock" for the hour of the day or "2019-02-26T01:00"
+     */
+    public String label(long bucket) {
+        if (cyclic) {
+            if (granularity == Granularity.HOUR) {
+                return bucket + " o'clock";
+            }
+            return String.format("%02d:%02d", bucket / 60, bucket % 60);
+        }
+        try {
+            LocalDateTime start = LocalDateTime.ofEpochSecond(bucket, 0, ZoneOffset.UTC);
+            return granularity == Granularity.DAY ? start.toLocalDate().toString() : start.toString();
+        } catch (RuntimeException e) {
+            // beyond the supported years
+            return String.valueOf(bucket);
+        }
+    }
+
+    public Granularity getGranularity() {
+        return granularity;
+    }
+
+    public boolean isCyclic() {
+        return cyclic;
+    }
+
+    private OffsetWindow offsetWindow(long epochSecond) {
+        if (rules.isFixedOffset()) {
+            return new OffsetWindow(Long.MIN_VALUE, Long.MAX_VALUE, rules.getOffset(Instant.EPOCH).getTotalSeconds());
+        }
+
+        long second = Math.min(epochSecond, MAX_INSTANT_SECOND - 1);
+        Instant instant = Instant.ofEpochSecond(second);
+        // transitions at or before the timestamp
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        long start = previous == null ? Long.MIN_VALUE : previous.toEpochSecond();
+        long end = next == null || second == MAX_INSTANT_SECOND - 1 ? Long.MAX_VALUE : next.toEpochSecond();
+        return new OffsetWindow(start, end, rules.getOffset(instant).getTotalSeconds());
+    }
+
+    /**
+     * A zone offset and the [start, end) epoch seconds it is valid for.
+     */
+    private static final class OffsetWindow {
+
+        private final long start;
+        private final long end;
+        private final int offsetSeconds;
+
+        OffsetWindow(long start, long end, int offsetSeconds) {
+            this.start = start;
+            this.end = end;
+            this.offsetSeconds = offsetSeconds;
+        }
+    }
+}
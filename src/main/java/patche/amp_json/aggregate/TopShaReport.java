@@ -0,0 +1,162 @@
+package patche.amp_json.aggregate;
+
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     The k most seen shas per time bucket, in fixed memory per bucket, instead of every sha like
+ *     {@link HourlyShaAggregator}. Every bucket is a {@link SpaceSaving} sketch monitoring capacity shas,
+ *     so counts are upper bounds whose error is at most the bucket's records / capacity, and printed with it.
+ * </pre>
+ */
+public class TopShaReport implements Report<TopShaReport>, Checkpointable {
+
+    /** the capacity per k by default, the more counters the smaller the errors */
+    public static final int DEFAULT_CAPACITY_PER_K = 10;
+    /** a map node, its table slot and a boxed Long */
+    private static final long BYTES_PER_BUCKET = 80;
+
+    private final TimeBucketer timeBucketer;
+    private final int k;
+    private final int capacity;
+    private final Map<Long, SpaceSaving> buckets = new TreeMap<>();
+
+    /**
+     * @param k the number of shas reported per hour of the day, in the default zone
+     */
+    public TopShaReport(int k) {
+        this(TimeBucketer.hourOfDay(ZoneId.systemDefault()), k, k * DEFAULT_CAPACITY_PER_K);
+    }
+
+    /**
+     * @param timeBucketer the time buckets
+     * @param k the number of shas reported per bucket
+     * @param capacity the number of shas monitored per bucket, at least k
+     */
+    public TopShaReport(TimeBucketer timeBucketer, int k, int capacity) {
+        if (k < 1 || capacity < k) {
+            throw new IllegalArgumentException("k must be positive and the capacity at least k");
+        }
+        this.timeBucketer = timeBucketer;
+        this.k = k;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void accept(IFileMetaData record) {
+        long bucket = timeBucketer.bucket(record.getTimestamp());
+        buckets.computeIfAbsent(bucket, b -> new SpaceSaving(capacity)).add(record.getSha());
+    }
+
+    @Override
+    public Set<Field> getFields() {
+        return EnumSet.of(Field.TIMESTAMP, Field.SHA);
+    }
+
+    /**
+     * Merges the other's sketches into sketches of this report's own, an empty one merging in an exact copy,
+     * so the two never share a sketch.
+     */
+    @Override
+    public TopShaReport merge(TopShaReport other) {
+        for (Map.Entry<Long, SpaceSaving> entry : other.buckets.entrySet()) {
+            buckets.computeIfAbsent(entry.getKey(), b -> new SpaceSaving(capacity)).merge(entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of monitored time bucket and sha pairs
+     */
+    @Override
+    public long getCardinality() {
+        long cardinality = 0;
+        for (SpaceSaving sketch : buckets.values()) {
+            cardinality += sketch.size();
+        }
+        return cardinality;
+    }
+
+    @Override
+    public long estimateHeapBytes() {
+        long bytes = 0;
+        for (SpaceSaving sketch : buckets.values()) {
+            bytes += BYTES_PER_BUCKET + sketch.estimateHeapBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public void writeCheckpoint(DataOutput out) throws IOException {
+        out.writeInt(buckets.size());
+        for (Map.Entry<Long, SpaceSaving> entry : buckets.entrySet()) {
+            out.writeLong(entry.getKey());
+            entry.getValue().writeCheckpoint(out);
+        }
+    }
+
+    @Override
+    public void readCheckpoint(DataInput in) throws IOException {
+        for (int remaining = in.readInt(); remaining > 0; remaining--) {
+            buckets.computeIfAbsent(in.readLong(), b -> new SpaceSaving(capacity)).readCheckpoint(in);
+        }
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return the time buckets seen so far, in ascending order
+     */
+    public Set<Long> getBuckets() {
+        return Collections.unmodifiableSet(buckets.keySet());
+    }
+
+    /**
+     * @param bucket the time bucket
+     * @return the k most seen shas of the bucket, most seen first, with their error bounds
+     */
+    public List<SpaceSaving.HeavyHitter> getTop(long bucket) {
+        SpaceSaving sketch = buckets.get(bucket);
+        return sketch == null ? Collections.emptyList() : sketch.top(k);
+    }
+
+    /**
+     * @param bucket the time bucket
+     * @return the largest possible error of the bucket's counts
+     */
+    public long getMaxError(long bucket) {
+        SpaceSaving sketch = buckets.get(bucket);
+        return sketch == null ? 0 : sketch.getMaxError();
+    }
+
+    /**
+     * Prints every time bucket, its record count and error bound, followed by its top shas.
+     */
+    @Override
+    public void print(Consumer<String> out) {
+        for (Map.Entry<Long, SpaceSaving> entry : buckets.entrySet()) {
+            SpaceSaving sketch = entry.getValue();
+            out.accept(timeBucketer.label(entry.getKey()) + ": top " + k + " of " + sketch.getTotal()
+                    + " shas, counts overestimated by at most " + sketch.getMaxError() + ":");
+            for (SpaceSaving.HeavyHitter hitter : sketch.top(k)) {
+                out.accept("sha: " + hitter.getItem() + ", count: " + hitter.getCount()
+                        + (hitter.getError() == 0 ? "" : " (at least " + hitter.getGuaranteedCount() + ")"));
+            }
+        }
+    }
+}
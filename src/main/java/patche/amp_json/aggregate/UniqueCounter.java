@@ -0,0 +1,45 @@
+package patche.amp_json.aggregate;
+
+import java.util.UUID;
+
+/**
+ * Counts the distinct values added to it, either exactly or as an estimate.
+ * A checkpoint of a counter is read back by a counter of the same kind.
+ */
+public interface UniqueCounter extends Checkpointable {
+
+    void add(String value);
+
+    /**
+     * Adds a UUID by its two halves, counters of UUIDs override it to add them without allocating.
+     * A counter must be given a value either always this way or always as a String, the two may not count
+     * the same value as one.
+     * @param mostSigBits the most significant bits of the UUID
+     * @param leastSigBits the least significant bits of the UUID
+     */
+    default void add(long mostSigBits, long leastSigBits) {
+        add(new UUID(mostSigBits, leastSigBits).toString());
+    }
+
+    /**
+     * @return the number of distinct values added, or an estimate of it
+     */
+    long count();
+
+    /**
+     * @return the relative standard error of {@link #count()}, 0 for an exact count
+     */
+    double relativeError();
+
+    /**
+     * @return a rough estimate of the heap held by the counter in bytes
+     */
+    long estimateHeapBytes();
+
+    /**
+     * Merges a counter of the same kind into this one.
+     * @param other the counter to merge
+     * @return this counter
+     */
+    UniqueCounter merge(UniqueCounter other);
+}
@@ -0,0 +1,26 @@
+package patche.amp_json.columnar;
+
+/**
+ * <pre>
+ *     The columns of a row group, written in this order.
+ *     Timestamps and processing times are zigzag varint deltas from the previous row of the group,
+ *     UUIDs are 16 bytes and canonical shas 32 bytes per row, the disposition one byte,
+ *     and file name, extension, path and non canonical shas varint dictionary ids.
+ * </pre>
+ */
+enum Column {
+    TIMESTAMP,
+    PROCESSING_TIME,
+    SESSION_ID,
+    USER_ID,
+    BUSINESS_ID,
+    SHA,
+    /** 0 for a canonical sha in {@link #SHA}, otherwise the sha dictionary id + 1 */
+    OTHER_SHA,
+    DISPOSITION,
+    FILE_NAME,
+    EXTENSION,
+    FILE_PATH;
+
+    static final int COUNT = values().length;
+}
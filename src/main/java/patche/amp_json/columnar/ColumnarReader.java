@@ -0,0 +1,139 @@
+package patche.amp_json.columnar;
+
+import patche.amp_json.aggregate.Aggregator;
+import patche.amp_json.pojos.IFileMetaData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     Reads a file written by {@link ColumnarWriter}.
+ *     The dictionaries are loaded when the file is opened, the row groups are memory mapped one at a time
+ *     and scanned in place through a single reused {@link ColumnarRecord}.
+ * </pre>
+ */
+public class ColumnarReader implements Closeable {
+
+    private final Path file;
+    private final FileChannel channel;
+    private final String[][] dictionaries = new String[ColumnarWriter.DICTIONARY_COUNT][];
+    private final long[] rowGroupOffsets;
+    private final long footerOffset;
+    private final long rowCount;
+
+    /**
+     * @param file a columnar file
+     * @throws IOException if the file cannot be read or is not a complete columnar file
+     */
+    public ColumnarReader(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < 8 + ColumnarWriter.TRAILER_SIZE) {
+                throw new IOException("not a columnar file: " + file);
+            }
+            ByteBuffer header = read(0, 8);
+            if (header.getInt() != ColumnarWriter.MAGIC) {
+                throw new IOException("not a columnar file: " + file);
+            }
+            int version = header.getInt();
+            if (version != ColumnarWriter.VERSION) {
+                throw new IOException("unsupported columnar file version " + version + ": " + file);
+            }
+            ByteBuffer trailer = read(size - ColumnarWriter.TRAILER_SIZE, ColumnarWriter.TRAILER_SIZE);
+            footerOffset = trailer.getLong();
+            if (trailer.getInt() != ColumnarWriter.MAGIC || footerOffset < 8 || footerOffset > size - ColumnarWriter.TRAILER_SIZE) {
+                throw new IOException("incomplete columnar file: " + file);
+            }
+
+            ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset,
+                    size - ColumnarWriter.TRAILER_SIZE - footerOffset);
+            for (int i = 0; i < dictionaries.length; i++) {
+                String[] values = new String[footer.getInt()];
+                for (int j = 0; j < values.length; j++) {
+                    byte[] bytes = new byte[footer.getInt()];
+                    footer.get(bytes);
+                    values[j] = new String(bytes, StandardCharsets.UTF_8);
+                }
+                dictionaries[i] = values;
+            }
+            rowGroupOffsets = new long[footer.getInt()];
+            for (int i = 0; i < rowGroupOffsets.length; i++) {
+                rowGroupOffsets[i] = footer.getLong();
+            }
+            rowCount = footer.getLong();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw new IOException("corrupt columnar file: " + file, e);
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Calls the consumer with every row in file order.
+     * The record is reused for the next row, so the consumer must copy what it keeps.
+     * @param consumer the row consumer
+     * @throws IOException if the file cannot be read
+     */
+    public void forEach(Consumer<? super IFileMetaData> consumer) throws IOException {
+        ColumnarRecord record = new ColumnarRecord(dictionaries);
+        int[] columnLengths = new int[Column.COUNT];
+        for (int i = 0; i < rowGroupOffsets.length; i++) {
+            long start = rowGroupOffsets[i];
+            long end = i + 1 < rowGroupOffsets.length ? rowGroupOffsets[i + 1] : footerOffset;
+            MappedByteBuffer group = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+            int rows = group.getInt();
+            for (int column = 0; column < Column.COUNT; column++) {
+                columnLengths[column] = group.getInt();
+            }
+            record.reset(group, columnLengths);
+            for (int row = 0; row < rows; row++) {
+                record.next();
+                consumer.accept(record);
+            }
+        }
+    }
+
+    /**
+     * Feeds every row to the aggregator.
+     * @param aggregator the aggregator
+     * @return the aggregator
+     * @throws IOException if the file cannot be read
+     */
+    public <A extends Aggregator<A>> A aggregate(A aggregator) throws IOException {
+        forEach(aggregator::accept);
+        return aggregator;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of columnar file: " + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
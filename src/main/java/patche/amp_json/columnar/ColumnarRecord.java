@@ -0,0 +1,202 @@
+package patche.amp_json.columnar;
+
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * <pre>
+ *     Reusable view of the current row of a mapped row group, moved along by {@link ColumnarReader}.
+ *     Fixed width columns are read in place, varint columns are decoded once per row, and strings come
+ *     from the file's dictionaries so getters only allocate for UUIDs and canonical shas.
+ * </pre>
+ */
+public class ColumnarRecord implements IFileMetaData {
+
+    private static final int UUID_BYTES = 16;
+    private static final int SHA_BYTES = 32;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final String[][] dictionaries;
+    private final int[] cursors = new int[Column.COUNT];
+    private final int[] starts = new int[Column.COUNT];
+
+    private ByteBuffer group;
+    private int row = -1;
+    private long timestamp;
+    private long processingTime;
+    private int otherSha;
+    private Disposition disposition;
+    private int fileName;
+    private int extension;
+    private int filePath;
+
+    ColumnarRecord(String[][] dictionaries) {
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Points the record before the first row of a row group.
+     * @param group the row group, its position at the first column
+     * @param columnLengths the byte length of every column
+     */
+    void reset(ByteBuffer group, int[] columnLengths) {
+        this.group = group;
+        int start = group.position();
+        for (int i = 0; i < Column.COUNT; i++) {
+            starts[i] = start;
+            cursors[i] = start;
+            start += columnLengths[i];
+        }
+        row = -1;
+        timestamp = 0;
+        processingTime = 0;
+    }
+
+    /**
+     * Moves to the next row of the group.
+     */
+    void next() {
+        row++;
+        timestamp += readZigZag(Column.TIMESTAMP);
+        processingTime += readZigZag(Column.PROCESSING_TIME);
+        otherSha = (int) readVarLong(Column.OTHER_SHA);
+        disposition = Disposition.fromSerializedLabel(group.get(starts[Column.DISPOSITION.ordinal()] + row));
+        fileName = (int) readVarLong(Column.FILE_NAME);
+        extension = (int) readVarLong(Column.EXTENSION);
+        filePath = (int) readVarLong(Column.FILE_PATH);
+    }
+
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public long getProcessingTime() {
+        return processingTime;
+    }
+
+    @Override
+    public UUID getSessionID() {
+        return getUUID(Column.SESSION_ID);
+    }
+
+    @Override
+    public UUID getUserID() {
+        return getUUID(Column.USER_ID);
+    }
+
+    @Override
+    public UUID getBusinessID() {
+        return getUUID(Column.BUSINESS_ID);
+    }
+
+    @Override
+    public long getSessionIDMostSigBits() {
+        return getUUIDBits(Column.SESSION_ID, 0);
+    }
+
+    @Override
+    public long getSessionIDLeastSigBits() {
+        return getUUIDBits(Column.SESSION_ID, 8);
+    }
+
+    @Override
+    public long getUserIDMostSigBits() {
+        return getUUIDBits(Column.USER_ID, 0);
+    }
+
+    @Override
+    public long getUserIDLeastSigBits() {
+        return getUUIDBits(Column.USER_ID, 8);
+    }
+
+    @Override
+    public long getBusinessIDMostSigBits() {
+        return getUUIDBits(Column.BUSINESS_ID, 0);
+    }
+
+    @Override
+    public long getBusinessIDLeastSigBits() {
+        return getUUIDBits(Column.BUSINESS_ID, 8);
+    }
+
+    @Override
+    public String getSha() {
+        if (otherSha != 0) {
+            return dictionaries[ColumnarWriter.SHA_DICTIONARY][otherSha - 1];
+        }
+        int offset = starts[Column.SHA.ordinal()] + row * SHA_BYTES;
+        char[] hex = new char[SHA_BYTES * 2];
+        for (int i = 0; i < SHA_BYTES; i++) {
+            int b = group.get(offset + i);
+            hex[i * 2] = HEX_DIGITS[(b >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(hex);
+    }
+
+    @Override
+    public String getFileName() {
+        return dictionaries[ColumnarWriter.FILE_NAME_DICTIONARY][fileName];
+    }
+
+    /**
+     * @return the extension of the file name, as split by the writer
+     */
+    @Override
+    public String getFileExtension() {
+        return dictionaries[ColumnarWriter.EXTENSION_DICTIONARY][extension];
+    }
+
+    @Override
+    public String getFilePath() {
+        return dictionaries[ColumnarWriter.FILE_PATH_DICTIONARY][filePath];
+    }
+
+    @Override
+    public Disposition getDisposition() {
+        return disposition;
+    }
+
+    /**
+     * @return a detached {@link FileMetaData} holding every field of the row
+     */
+    public FileMetaData toFileMetaData() {
+        return new FileMetaData(timestamp, processingTime, getSessionID(), getUserID(), getBusinessID(),
+                getSha(), getFileName(), getFilePath(), disposition);
+    }
+
+    private UUID getUUID(Column column) {
+        return new UUID(getUUIDBits(column, 0), getUUIDBits(column, 8));
+    }
+
+    /**
+     * @param half 0 for the most significant bits, 8 for the least significant ones
+     */
+    private long getUUIDBits(Column column, int half) {
+        return group.getLong(starts[column.ordinal()] + row * UUID_BYTES + half);
+    }
+
+    private long readZigZag(Column column) {
+        long value = readVarLong(column);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong(Column column) {
+        int cursor = cursors[column.ordinal()];
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = group.get(cursor++);
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        cursors[column.ordinal()] = cursor;
+        return value;
+    }
+}
@@ -0,0 +1,327 @@
+package patche.amp_json.columnar;
+
+import com.google.common.annotations.VisibleForTesting;
+import patche.amp_json.ingest.BatchProcessor;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     Writes valid records into a columnar file read back by {@link ColumnarReader}.
+ *
+ *     Layout, all numbers big endian:
+ *     - header: magic, version
+ *     - row groups: row count, the byte length of every {@link Column}, then the columns in order
+ *     - footer: the file name, extension, path and sha dictionaries (count, then length prefixed UTF-8),
+ *       the row group offsets and the total row count
+ *     - trailer: the footer offset and the magic
+ *
+ *     Rows are buffered per row group, dictionaries are kept for the whole file and written on close.
+ *     Not thread safe. A write error is kept and thrown by {@link #close()}, later writes are dropped,
+ *     so {@link #write(IFileMetaData)} can be used as a record handler.
+ * </pre>
+ */
+public class ColumnarWriter implements Closeable {
+
+    static final int MAGIC = 0x414d5043;
+    static final int VERSION = 1;
+    static final int TRAILER_SIZE = 12;
+    static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+
+    static final int FILE_NAME_DICTIONARY = 0;
+    static final int EXTENSION_DICTIONARY = 1;
+    static final int FILE_PATH_DICTIONARY = 2;
+    static final int SHA_DICTIONARY = 3;
+    static final int DICTIONARY_COUNT = 4;
+
+    private static final int SHA_HEX_LENGTH = 64;
+
+    private final AmpJsonReader jsonReader;
+    private final int rowGroupSize;
+    private final DataOutputStream out;
+    private final ColumnBuffer[] columns = new ColumnBuffer[Column.COUNT];
+    private final Dictionary[] dictionaries = new Dictionary[DICTIONARY_COUNT];
+    private final List<Long> rowGroupOffsets = new ArrayList<>();
+    /** the extension dictionary id of every file name dictionary id */
+    private int[] fileNameExtensions = new int[1024];
+    private int fileNameExtensionCount;
+
+    private long position;
+    private int groupRows;
+    private long rowCount;
+    private long previousTimestamp;
+    private long previousProcessingTime;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * @param file the columnar file, replaced if it exists
+     * @param jsonReader splits the file names into the extension column
+     * @throws IOException if the file cannot be created
+     */
+    public ColumnarWriter(Path file, AmpJsonReader jsonReader) throws IOException {
+        this(file, jsonReader, DEFAULT_ROW_GROUP_SIZE);
+    }
+
+    @VisibleForTesting
+    ColumnarWriter(Path file, AmpJsonReader jsonReader, int rowGroupSize) throws IOException {
+        if (rowGroupSize < 1) {
+            throw new IllegalArgumentException("row group size must be positive");
+        }
+        this.jsonReader = jsonReader;
+        this.rowGroupSize = rowGroupSize;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new ColumnBuffer();
+        }
+        for (int i = 0; i < dictionaries.length; i++) {
+            dictionaries[i] = new Dictionary();
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1024 * 1024));
+        writeInt(MAGIC);
+        writeInt(VERSION);
+    }
+
+    /**
+     * Converts log files, plain or gzipped, into one columnar file, dropping invalid lines.
+     * The rows are written to a temporary file next to the columnar file, moved into place only once every log file
+     * was read, an existing columnar file is left as is otherwise.
+     * @param jsonFiles the log files, in the order their rows are written
+     * @param columnarFile the columnar file
+     * @param jsonReader splits the file names into the extension column
+     * @return the number of rows written
+     * @throws IOException if a log file cannot be read or the columnar file cannot be written
+     */
+    public static long convert(List<Path> jsonFiles, Path columnarFile, AmpJsonReader jsonReader) throws IOException {
+        Path directory = columnarFile.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, columnarFile.getFileName().toString(), ".tmp");
+        try {
+            long rowCount;
+            BatchProcessor processor = new BatchProcessor(1);
+            try (ColumnarWriter writer = new ColumnarWriter(temp, jsonReader)) {
+                // one file at a time, every file writing into the same writer, which a failed file must not close
+                Consumer<IFileMetaData> rows = writer::write;
+                processor.process(jsonFiles, () -> rows, Consumer::accept, (a, b) -> a);
+                rowCount = writer.rowCount;
+            }
+            if (processor.getFailedFileCount() > 0) {
+                throw new IOException(processor.getFailedFileCount() + " of " + jsonFiles.size()
+                        + " files could not be read, " + columnarFile + " is not written");
+            }
+            Files.move(temp, columnarFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return rowCount;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Appends the record to the current row group.
+     * @param record a valid record
+     */
+    public void write(IFileMetaData record) {
+        if (failure != null) {
+            return;
+        }
+        if (closed) {
+            throw new IllegalStateException("writer is closed");
+        }
+
+        columns[Column.TIMESTAMP.ordinal()].writeZigZag(record.getTimestamp() - previousTimestamp);
+        previousTimestamp = record.getTimestamp();
+        columns[Column.PROCESSING_TIME.ordinal()].writeZigZag(record.getProcessingTime() - previousProcessingTime);
+        previousProcessingTime = record.getProcessingTime();
+
+        writeUUID(Column.SESSION_ID, record.getSessionID());
+        writeUUID(Column.USER_ID, record.getUserID());
+        writeUUID(Column.BUSINESS_ID, record.getBusinessID());
+        writeSha(record.getSha());
+        columns[Column.DISPOSITION.ordinal()].writeByte(record.getDisposition().getSerializedLabel());
+
+        String fileName = record.getFileName();
+        Dictionary fileNames = dictionaries[FILE_NAME_DICTIONARY];
+        int fileNameId = fileNames.id(fileName);
+        if (fileNameId == fileNameExtensionCount) {
+            // a new file name, split its extension once
+            addFileNameExtension(dictionaries[EXTENSION_DICTIONARY].id(jsonReader.getFileExt(fileName)));
+        }
+        columns[Column.FILE_NAME.ordinal()].writeVarLong(fileNameId);
+        columns[Column.EXTENSION.ordinal()].writeVarLong(fileNameExtensions[fileNameId]);
+        columns[Column.FILE_PATH.ordinal()].writeVarLong(dictionaries[FILE_PATH_DICTIONARY].id(record.getFilePath()));
+
+        rowCount++;
+        if (++groupRows == rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Writes the last row group and the footer.
+     * @throws IOException if any write failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flushRowGroup();
+            if (failure == null) {
+                writeFooter();
+            }
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void flushRowGroup() {
+        if (groupRows == 0 || failure != null) {
+            return;
+        }
+        try {
+            rowGroupOffsets.add(position);
+            writeInt(groupRows);
+            for (ColumnBuffer column : columns) {
+                writeInt(column.size());
+            }
+            for (ColumnBuffer column : columns) {
+                column.writeTo(out);
+                position += column.size();
+                column.reset();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+        groupRows = 0;
+        previousTimestamp = 0;
+        previousProcessingTime = 0;
+    }
+
+    private void writeFooter() throws IOException {
+        long footerOffset = position;
+        for (Dictionary dictionary : dictionaries) {
+            writeInt(dictionary.size());
+            for (String value : dictionary.values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                writeInt(bytes.length);
+                out.write(bytes);
+                position += bytes.length;
+            }
+        }
+        writeInt(rowGroupOffsets.size());
+        for (long offset : rowGroupOffsets) {
+            writeLong(offset);
+        }
+        writeLong(rowCount);
+
+        writeLong(footerOffset);
+        writeInt(MAGIC);
+    }
+
+    private void writeUUID(Column column, UUID uuid) {
+        columns[column.ordinal()].writeLong(uuid.getMostSignificantBits());
+        columns[column.ordinal()].writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private void writeSha(String sha) {
+        ColumnBuffer shaColumn = columns[Column.SHA.ordinal()];
+        if (isCanonicalSha(sha)) {
+            for (int i = 0; i < SHA_HEX_LENGTH; i += 16) {
+                shaColumn.writeLong(Long.parseUnsignedLong(sha.substring(i, i + 16), 16));
+            }
+            columns[Column.OTHER_SHA.ordinal()].writeVarLong(0);
+        } else {
+            // keeps the rows of the sha column fixed width
+            shaColumn.writeLong(0);
+            shaColumn.writeLong(0);
+            shaColumn.writeLong(0);
+            shaColumn.writeLong(0);
+            columns[Column.OTHER_SHA.ordinal()].writeVarLong(dictionaries[SHA_DICTIONARY].id(sha) + 1L);
+        }
+    }
+
+    /**
+     * @return true if the sha is 64 lowercase hex characters, the form turned back into hex by the reader
+     */
+    private static boolean isCanonicalSha(String sha) {
+        if (sha.length() != SHA_HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < SHA_HEX_LENGTH; i++) {
+            char c = sha.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addFileNameExtension(int extensionId) {
+        if (fileNameExtensionCount == fileNameExtensions.length) {
+            fileNameExtensions = Arrays.copyOf(fileNameExtensions, fileNameExtensionCount * 2);
+        }
+        fileNameExtensions[fileNameExtensionCount++] = extensionId;
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.writeInt(value);
+        position += 4;
+    }
+
+    private void writeLong(long value) throws IOException {
+        out.writeLong(value);
+        position += 8;
+    }
+
+    /**
+     * String to id dictionary, ids are given in order of first use.
+     */
+    private static final class Dictionary {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int id(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package patche.amp_json.ingest;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import patche.amp_json.aggregate.Aggregator;
+import patche.amp_json.aggregate.Report;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.reader.FileMetaDataScanner;
+import patche.amp_json.reader.ScannedRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <pre>
+ *     Processes many log files concurrently, plain or gzipped (*.gz), and merges their results into one.
+ *
+ *     At most maxConcurrentFiles files are open at a time: a file is only submitted once a permit is free,
+ *     so the open files, read buffers and per file results stay bounded however many files there are.
+ *     A file's result is merged into the total as soon as the file is done.
+ *     Files run on virtual threads when the JVM has them, on a fixed pool otherwise.
+ * </pre>
+ */
+public class BatchProcessor {
+
+    private static final Logger LOG = LogManager.getLogger(BatchProcessor.class);
+
+    static final String DEFAULT_GLOB = "*.{jsonl,jsonl.gz}";
+    static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final int maxConcurrentFiles;
+    private final int blockSize;
+    private final DeadLetterSink deadLetters;
+    private final LongAdder lineCount = new LongAdder();
+    private final LongAdder failedFileCount = new LongAdder();
+
+    public BatchProcessor(int maxConcurrentFiles) {
+        this(maxConcurrentFiles, new DeadLetterSink());
+    }
+
+    /**
+     * @param maxConcurrentFiles the number of files read at a time
+     * @param deadLetters receives the invalid lines, closed by the caller
+     */
+    public BatchProcessor(int maxConcurrentFiles, DeadLetterSink deadLetters) {
+        this(maxConcurrentFiles, DEFAULT_BLOCK_SIZE, deadLetters);
+    }
+
+    @VisibleForTesting
+    BatchProcessor(int maxConcurrentFiles, int blockSize, DeadLetterSink deadLetters) {
+        if (maxConcurrentFiles < 1 || blockSize < 1) {
+            throw new IllegalArgumentException("max concurrent files and block size must be positive");
+        }
+        this.maxConcurrentFiles = maxConcurrentFiles;
+        this.blockSize = blockSize;
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * <pre>
+     *     Resolves the files of a batch:
+     *     - a file is the only file of the batch
+     *     - a directory holds the *.jsonl and *.jsonl.gz files of the batch
+     *     - anything else is a glob, e.g. /logs/2019-02-*&#47;*.jsonl.gz, matched from its first literal directories
+     * </pre>
+     * @param pathOrGlob a file, directory or glob
+     * @return the files sorted by path
+     * @throws IOException if the files cannot be listed
+     */
+    public static List<Path> resolveFiles(String pathOrGlob) throws IOException {
+        if (!hasGlobCharacters(pathOrGlob)) {
+            Path path = Paths.get(pathOrGlob);
+            if (!Files.isDirectory(path)) {
+                return Collections.singletonList(path);
+            }
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, DEFAULT_GLOB)) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file)) {
+                        files.add(file);
+                    }
+                }
+            }
+            Collections.sort(files);
+            return files;
+        }
+
+        Path pattern = Paths.get(pathOrGlob);
+        Path base = pattern.getRoot();
+        for (Path name : pattern) {
+            if (hasGlobCharacters(name.toString())) {
+                break;
+            }
+            base = base == null ? name : base.resolve(name);
+        }
+        if (base == null) {
+            base = Paths.get("");
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pathOrGlob);
+        if (!Files.isDirectory(base)) {
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.find(base, Integer.MAX_VALUE,
+                (path, attributes) -> attributes.isRegularFile() && matcher.matches(path))) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * <pre>
+     *     Feeds every valid log line of the files to the record handler and merges the per file results,
+     *     the invalid ones go to the dead letters.
+     *     The record passed to the handler is reused for the next line, so the handler must copy what it keeps.
+     *     A file that cannot be read is logged and left out of the result, its partial result closed if it is
+     *     {@link java.io.Closeable}.
+     * </pre>
+     * @param files the log files, *.gz files are gunzipped
+     * @param resultFactory creates the empty result of a file
+     * @param recordHandler adds a valid record to a file's result
+     * @param merger merges two results
+     * @return the merged result
+     * @throws InterruptedIOException if interrupted while waiting for the files
+     */
+    public <R> R process(List<Path> files,
+                         Supplier<R> resultFactory,
+                         BiConsumer<R, IFileMetaData> recordHandler,
+                         BinaryOperator<R> merger) throws InterruptedIOException {
+        Semaphore permits = new Semaphore(maxConcurrentFiles);
+        AtomicInteger failedFiles = new AtomicInteger();
+        AtomicReference<R> total = new AtomicReference<>(resultFactory.get());
+
+        ExecutorService executor = newExecutor(Math.min(maxConcurrentFiles, Math.max(1, files.size())));
+        try {
+            for (Path file : files) {
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        FileTask<R> task = new FileTask<>(resultFactory.get(), recordHandler, deadLetters, blockSize);
+                        try {
+                            task.process(file);
+                        } catch (IOException | RuntimeException e) {
+                            // releases what the partial result holds, e.g. spilled runs and memory budget
+                            try {
+                                Report.closeAll(List.of(task.result));
+                            } catch (UncheckedIOException closeFailure) {
+                                e.addSuppressed(closeFailure);
+                            }
+                            throw e;
+                        } finally {
+                            lineCount.add(task.lineCount);
+                        }
+                        // merged one at a time, results are not thread safe
+                        synchronized (total) {
+                            total.set(merger.apply(total.get(), task.result));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        failedFiles.incrementAndGet();
+                        failedFileCount.increment();
+                        LOG.error("failed to read file: " + file, e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            // every permit back means every file is done
+            permits.acquire(maxConcurrentFiles);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while processing " + files.size() + " files");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        deadLetters.summarize();
+        if (failedFiles.get() > 0) {
+            LOG.error("{} of {} files could not be read", failedFiles.get(), files.size());
+        }
+        synchronized (total) {
+            return total.get();
+        }
+    }
+
+    /**
+     * Aggregates every valid log line of the files, every file accumulating into its own aggregator.
+     * @param files the log files, *.gz files are gunzipped
+     * @param aggregatorFactory creates the empty aggregator of a file
+     * @return the merged aggregator
+     * @throws InterruptedIOException if interrupted while waiting for the files
+     */
+    public <A extends Aggregator<A>> A process(List<Path> files, Supplier<A> aggregatorFactory) throws InterruptedIOException {
+        return process(files, aggregatorFactory, Aggregator::accept, Aggregator::merge);
+    }
+
+    /**
+     * @return the number of lines read by this processor so far, valid or not
+     */
+    public long getLineCount() {
+        return lineCount.sum();
+    }
+
+    /**
+     * @return the number of files this processor failed to read so far, their records left out of the results
+     */
+    public long getFailedFileCount() {
+        return failedFileCount.sum();
+    }
+
+    /**
+     * @return a virtual thread per task executor on JVMs that have one, a fixed pool of the given size otherwise
+     */
+    @VisibleForTesting
+    static ExecutorService newExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // before Java 21, or preview features off
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    /**
+     * @return a stream over the file's bytes, gunzipped if the file name ends in .gz
+     */
+    static InputStream open(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            try {
+                return new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+        return in;
+    }
+
+    private static boolean hasGlobCharacters(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Streams one file through a reusable block, gunzipping *.gz files on the fly.
+     */
+    private static final class FileTask<R> {
+
+        private final R result;
+        private final BiConsumer<R, IFileMetaData> recordHandler;
+        private final DeadLetterSink deadLetters;
+        private final FileMetaDataScanner scanner = new FileMetaDataScanner();
+        private final ScannedRecord record = new ScannedRecord();
+        private final LineSplitter lines;
+        private long lineCount;
+
+        FileTask(R result, BiConsumer<R, IFileMetaData> recordHandler, DeadLetterSink deadLetters, int blockSize) {
+            this.result = result;
+            this.recordHandler = recordHandler;
+            this.deadLetters = deadLetters;
+            this.lines = new LineSplitter(blockSize);
+        }
+
+        void process(Path file) throws IOException {
+            try (InputStream in = open(file)) {
+                int read;
+                while ((read = in.read(lines.buffer(), lines.fillStart(), lines.room())) >= 0) {
+                    lines.filled(read, this::processLine);
+                }
+                lines.finish(this::processLine);
+            }
+        }
+
+        private void processLine(byte[] buf, int lineStart, int lineEnd) {
+            lineCount++;
+            if (scanner.scan(buf, lineStart, lineEnd - lineStart, record)) {
+                recordHandler.accept(result, record);
+            } else {
+                deadLetters.reject(record.getLine(), record.getRejectReason());
+            }
+        }
+    }
+}
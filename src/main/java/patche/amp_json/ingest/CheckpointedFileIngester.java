@@ -0,0 +1,242 @@
+package patche.amp_json.ingest;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import patche.amp_json.aggregate.Checkpointable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * <pre>
+ *     Reads a log file line by line, plain or gzipped, and checkpoints the state built from the lines, so a
+ *     run that dies part way resumes where the last checkpoint was taken instead of starting over.
+ *
+ *     Every checkpoint interval, after a complete line, the state and the byte offset following that line are
+ *     written to a temp file next to the checkpoint file, synced and moved over the checkpoint file atomically,
+ *     so the checkpoint file is always a complete checkpoint. A run starts by reading the checkpoint back into
+ *     the empty state and skipping the bytes before the offset, the lines read after the checkpoint by the run
+ *     that died were never part of it, so nothing is counted twice. The checkpoint is deleted once the whole
+ *     file is read.
+ *
+ *     A checkpoint of another file, of a file whose first bytes changed, or whose checksum does not match is
+ *     ignored with a warning and the file is read from the start.
+ *     Lines end in \n, \r\n or \r, see {@link LineSplitter}, offsets of gzipped files are offsets into the
+ *     decompressed content.
+ * </pre>
+ */
+public class CheckpointedFileIngester {
+
+    private static final Logger LOG = LogManager.getLogger(CheckpointedFileIngester.class);
+
+    static final long DEFAULT_CHECKPOINT_BYTES = 256L * 1024 * 1024;
+    private static final int MAGIC = 0x414d5043;
+    private static final int VERSION = 1;
+    private static final int FINGERPRINT_BYTES = 64 * 1024;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path checkpointFile;
+    private final long checkpointBytes;
+
+    /**
+     * @param checkpointFile the checkpoint file, read if it exists
+     */
+    public CheckpointedFileIngester(Path checkpointFile) {
+        this(checkpointFile, DEFAULT_CHECKPOINT_BYTES);
+    }
+
+    /**
+     * @param checkpointFile the checkpoint file, read if it exists
+     * @param checkpointBytes how many bytes are read between two checkpoints
+     */
+    @VisibleForTesting
+    CheckpointedFileIngester(Path checkpointFile, long checkpointBytes) {
+        if (checkpointBytes < 1) {
+            throw new IllegalArgumentException("checkpoint bytes must be positive");
+        }
+        this.checkpointFile = checkpointFile.toAbsolutePath();
+        this.checkpointBytes = checkpointBytes;
+    }
+
+    /**
+     * Feeds every line of the file after the checkpoint to the line handler, checkpointing the state.
+     * @param file the log file
+     * @param state an empty state, the checkpoint is read into it, then the line handler builds it
+     * @param lineHandler adds a line to the state
+     * @return the number of lines read by this run, not counting those before the checkpoint
+     * @throws IOException if the file cannot be read or a checkpoint cannot be written
+     */
+    public long ingest(Path file, Checkpointable state, Consumer<String> lineHandler) throws IOException {
+        String fileName = file.toAbsolutePath().toString();
+        long fingerprint = fingerprint(file);
+        long offset = restore(fileName, fingerprint, file, state);
+
+        CheckpointingLines lines = new CheckpointingLines(fileName, fingerprint, offset, state, lineHandler);
+        try (InputStream in = BatchProcessor.open(file)) {
+            skip(in, offset, file);
+            LineSplitter splitter = lines.splitter;
+            int read;
+            while ((read = in.read(splitter.buffer(), splitter.fillStart(), splitter.room())) != -1) {
+                splitter.filled(read, lines);
+            }
+            splitter.finish(lines);
+        }
+        Files.deleteIfExists(checkpointFile);
+        return lines.count;
+    }
+
+    /**
+     * @return the offset of the checkpoint read into the state, 0 without a usable checkpoint
+     */
+    private long restore(String fileName, long fingerprint, Path file, Checkpointable state) throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        if (!hasValidChecksum()) {
+            LOG.warn("ignoring checkpoint {}, its checksum does not match", checkpointFile);
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warn("ignoring checkpoint {}, it is not a checkpoint of this version", checkpointFile);
+                return 0;
+            }
+            String checkpointFileName = Checkpointable.readString(in);
+            long checkpointFingerprint = in.readLong();
+            long offset = in.readLong();
+            if (!checkpointFileName.equals(fileName) || checkpointFingerprint != fingerprint) {
+                LOG.warn("ignoring checkpoint {} of {}, it is not a checkpoint of {}", checkpointFile,
+                        checkpointFileName, fileName);
+                return 0;
+            }
+            state.readCheckpoint(in);
+            LOG.info("resuming {} at byte {} from checkpoint {}", fileName, offset, checkpointFile);
+            return offset;
+        }
+    }
+
+    private boolean hasValidChecksum() throws IOException {
+        long size = Files.size(checkpointFile);
+        if (size < Long.BYTES) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(checkpointFile))) {
+            byte[] buffer = new byte[8192];
+            long remaining = size - Long.BYTES;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    return false;
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+            return new DataInputStream(in).readLong() == crc.getValue();
+        }
+    }
+
+    /**
+     * Writes the checkpoint to a temp file, syncs it and moves it over the checkpoint file.
+     */
+    private void checkpoint(String fileName, long fingerprint, long offset, Checkpointable state) throws IOException {
+        Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream raw = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(raw, crc)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            Checkpointable.writeString(out, fileName);
+            out.writeLong(fingerprint);
+            out.writeLong(offset);
+            state.writeCheckpoint(out);
+            out.flush();
+            new DataOutputStream(raw).writeLong(crc.getValue());
+            raw.flush();
+            channel.force(true);
+        }
+        Files.move(temp, checkpointFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        LOG.debug("checkpointed {} at byte {}", fileName, offset);
+    }
+
+    /**
+     * @return a checksum of the first bytes of the content, to tell whether a checkpoint is of this content
+     */
+    private static long fingerprint(Path file) throws IOException {
+        try (InputStream in = BatchProcessor.open(file)) {
+            byte[] bytes = in.readNBytes(FINGERPRINT_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            return crc.getValue();
+        }
+    }
+
+    private static void skip(InputStream in, long bytes, Path file) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new IOException(file + " ends before the checkpoint offset " + bytes);
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Hands the lines to the line handler, checkpointing the state every checkpoint interval.
+     */
+    private final class CheckpointingLines implements LineSplitter.LineHandler<IOException> {
+
+        private final LineSplitter splitter = new LineSplitter(BUFFER_SIZE);
+        private final String fileName;
+        private final long fingerprint;
+        private final long startOffset;
+        private final Checkpointable state;
+        private final Consumer<String> lineHandler;
+        private long lastCheckpoint;
+        private long count;
+
+        CheckpointingLines(String fileName, long fingerprint, long startOffset, Checkpointable state,
+                           Consumer<String> lineHandler) {
+            this.fileName = fileName;
+            this.fingerprint = fingerprint;
+            this.startOffset = startOffset;
+            this.state = state;
+            this.lineHandler = lineHandler;
+            this.lastCheckpoint = startOffset;
+        }
+
+        @Override
+        public void line(byte[] buf, int start, int end) throws IOException {
+            lineHandler.accept(new String(buf, start, end - start, StandardCharsets.UTF_8));
+            count++;
+            // the offset following the line end
+            long offset = startOffset + splitter.getPosition();
+            if (offset - lastCheckpoint >= checkpointBytes) {
+                checkpoint(fileName, fingerprint, offset, state);
+                lastCheckpoint = offset;
+            }
+        }
+    }
+}
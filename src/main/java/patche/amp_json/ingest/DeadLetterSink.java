@@ -0,0 +1,253 @@
+package patche.amp_json.ingest;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import patche.amp_json.reader.RejectReason;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ *     Collects rejected log lines without logging each of them.
+ *
+ *     Every rejection is counted per {@link RejectReason}, and at most one summary of the rejections since
+ *     the previous one is logged per summary interval. With a dead-letter file, the rejected lines are
+ *     queued and appended to it by a background writer in batches, one "REASON\tline" per line, so the
+ *     threads rejecting lines never wait on the disk. If the writer falls behind and the queue is full,
+ *     the line is still counted but not written, the summaries report how many were dropped.
+ * </pre>
+ */
+public class DeadLetterSink implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger(DeadLetterSink.class);
+
+    static final Duration DEFAULT_SUMMARY_INTERVAL = Duration.ofSeconds(10);
+    static final int DEFAULT_QUEUE_CAPACITY = 64 * 1024;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final RejectReason[] REASONS = RejectReason.values();
+
+    private final Path file;
+    private final long summaryIntervalNanos;
+    private final Consumer<String> summaryLog;
+    private final LongAdder[] counts = new LongAdder[REASONS.length];
+    private final long[] summarizedCounts = new long[REASONS.length];
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong nextSummaryNanos;
+    private final RingBuffer<Rejection> queue;
+    private final Writer out;
+    private final Thread writerThread;
+    private long lastSummaryNanos;
+    private volatile boolean closed;
+    private volatile IOException writeError;
+
+    /**
+     * Only counts and summarizes the rejections.
+     */
+    public DeadLetterSink() {
+        this.file = null;
+        this.summaryIntervalNanos = DEFAULT_SUMMARY_INTERVAL.toNanos();
+        this.summaryLog = LOG::warn;
+        this.nextSummaryNanos = new AtomicLong(System.nanoTime() + summaryIntervalNanos);
+        this.lastSummaryNanos = System.nanoTime();
+        this.queue = null;
+        this.out = null;
+        this.writerThread = null;
+        initCounts();
+    }
+
+    /**
+     * @param file the dead-letter file, appended to if it exists
+     * @throws IOException if the file cannot be opened
+     */
+    public DeadLetterSink(Path file) throws IOException {
+        this(file, DEFAULT_SUMMARY_INTERVAL, DEFAULT_QUEUE_CAPACITY, LOG::warn);
+    }
+
+    @VisibleForTesting
+    DeadLetterSink(Path file, Duration summaryInterval, int queueCapacity, Consumer<String> summaryLog) throws IOException {
+        this.file = file;
+        this.summaryIntervalNanos = summaryInterval.toNanos();
+        this.summaryLog = summaryLog;
+        this.nextSummaryNanos = new AtomicLong(System.nanoTime() + summaryIntervalNanos);
+        this.lastSummaryNanos = System.nanoTime();
+        this.queue = new RingBuffer<>(queueCapacity);
+        this.out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+        this.writerThread = new Thread(this::writeLoop, "dead-letter-writer");
+        this.writerThread.setDaemon(true);
+        initCounts();
+        writerThread.start();
+    }
+
+    /**
+     * Counts the rejected line and queues it for the dead-letter file, never blocking.
+     * @param line the rejected log line
+     * @param reason why it was rejected
+     */
+    public void reject(String line, RejectReason reason) {
+        counts[reason.ordinal()].increment();
+        if (queue != null && !queue.offer(new Rejection(reason, line))) {
+            dropped.increment();
+        }
+
+        long next = nextSummaryNanos.get();
+        long now = System.nanoTime();
+        if (now - next >= 0 && nextSummaryNanos.compareAndSet(next, now + summaryIntervalNanos)) {
+            summarize();
+        }
+    }
+
+    /**
+     * @return the lines rejected for the reason so far
+     */
+    public long getCount(RejectReason reason) {
+        return counts[reason.ordinal()].sum();
+    }
+
+    /**
+     * @return the lines rejected so far
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (LongAdder count : counts) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return the rejected lines not written to the dead-letter file, because its queue was full or it failed
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes the queued lines, closes the dead-letter file and logs a summary of what was not summarized yet.
+     * @throws IOException if the dead-letter file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (writerThread != null) {
+            LockSupport.unpark(writerThread);
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            out.close();
+        }
+        summarize();
+        if (writeError != null) {
+            throw writeError;
+        }
+    }
+
+    /**
+     * Logs a summary of the rejections since the previous one, if there were any.
+     */
+    public synchronized void summarize() {
+        long total = 0;
+        StringJoiner byReason = new StringJoiner(", ");
+        for (int i = 0; i < counts.length; i++) {
+            long count = counts[i].sum();
+            if (count > summarizedCounts[i]) {
+                byReason.add(REASONS[i] + "=" + (count - summarizedCounts[i]));
+                total += count - summarizedCounts[i];
+                summarizedCounts[i] = count;
+            }
+        }
+        long now = System.nanoTime();
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(now - lastSummaryNanos);
+        lastSummaryNanos = now;
+        if (total == 0) {
+            return;
+        }
+        String summary = "rejected " + total + " log lines in the last " + seconds + "s: " + byReason;
+        if (dropped.sum() > 0) {
+            summary += ", " + dropped.sum() + " in total not written to " + file;
+        }
+        summaryLog.accept(summary);
+    }
+
+    private void initCounts() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Drains the queue into the file, flushing whenever it runs empty, until closed.
+     */
+    private void writeLoop() {
+        while (true) {
+            // read before draining, so every line queued before close is written
+            boolean closing = closed;
+            Rejection rejection;
+            while ((rejection = queue.poll()) != null) {
+                write(rejection);
+            }
+            if (writeError == null) {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            if (closing) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+    }
+
+    private void write(Rejection rejection) {
+        if (writeError != null) {
+            dropped.increment();
+            return;
+        }
+        try {
+            out.write(rejection.reason.name());
+            out.write('\t');
+            out.write(rejection.line);
+            out.write('\n');
+        } catch (IOException e) {
+            dropped.increment();
+            fail(e);
+        }
+    }
+
+    private void fail(IOException e) {
+        writeError = e;
+        LOG.error("failed to write dead letters to " + file + ", later rejected lines are only counted", e);
+    }
+
+    private static final class Rejection {
+
+        private final RejectReason reason;
+        private final String line;
+
+        Rejection(RejectReason reason, String line) {
+            this.reason = reason;
+            this.line = line;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package patche.amp_json.ingest;
+
+import patche.amp_json.reader.StructuralIndex;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ *     Splits blocks of bytes into log lines, shared by the ingesters reading bytes instead of a BufferedReader.
+ *
+ *     Like {@link java.io.BufferedReader#readLine()}, a line ends at \n, \r\n or a lone \r, which is not part
+ *     of the line. The bytes are read into {@link #buffer()} from {@link #fillStart()}, and every complete line
+ *     is handed out as a range of the buffer. The partial last line is moved to the front of the buffer and
+ *     completed by the next read, the buffer doubling when one line does not fit. A \r ending the bytes read
+ *     so far is held back until the next byte tells whether a \n follows.
+ *
+ *     With a structural index, every fill is indexed and the lines are split at its newlines and carriage
+ *     returns instead of looking at every byte, the handler can then scan the lines through the same index.
+ *     Instances are reused from block to block and are not thread safe, use one per thread.
+ * </pre>
+ */
+final class LineSplitter {
+
+    /**
+     * Takes the lines, the bytes of the buffer only valid until it returns.
+     */
+    @FunctionalInterface
+    interface LineHandler<X extends Exception> {
+
+        /**
+         * @param buf the buffer holding the line
+         * @param start the index of the first byte of the line
+         * @param end the index after the last byte of the line, its line end excluded
+         */
+        void line(byte[] buf, int start, int end) throws X;
+    }
+
+    private final StructuralIndex index;
+    private byte[] block;
+    private int length;
+    private int scanFrom;
+    private long offset;
+    private long position;
+
+    /**
+     * @param blockSize the initial size of the buffer
+     */
+    LineSplitter(int blockSize) {
+        this(blockSize, null);
+    }
+
+    /**
+     * @param blockSize the initial size of the buffer
+     * @param index the index of the fills, or null to look at every byte
+     */
+    LineSplitter(int blockSize, StructuralIndex index) {
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive");
+        }
+        this.block = new byte[blockSize];
+        this.index = index;
+    }
+
+    /**
+     * @return the buffer to read the next bytes into, from {@link #fillStart()} up to its end, never full
+     */
+    byte[] buffer() {
+        if (length == block.length) {
+            // a line longer than the block, grow until it fits
+            block = Arrays.copyOf(block, block.length * 2);
+        }
+        return block;
+    }
+
+    /**
+     * @return the index of the buffer to read the next bytes at, after the partial line
+     */
+    int fillStart() {
+        return length;
+    }
+
+    /**
+     * @return the number of bytes that can be read into the buffer
+     */
+    int room() {
+        return buffer().length - length;
+    }
+
+    /**
+     * Hands every line completed by the bytes read to the handler, keeping the partial last line.
+     * @param read the number of bytes read into the buffer at {@link #fillStart()}
+     */
+    <X extends Exception> void filled(int read, LineHandler<X> handler) throws X {
+        length += read;
+        int lineStart = split(this, block, scanFrom, length, false, handler);
+        offset += lineStart;
+        length -= lineStart;
+        System.arraycopy(block, lineStart, block, 0, length);
+        // the partial line holds no line end but a trailing \r, looked at again with the next bytes
+        scanFrom = length > 0 && block[length - 1] == '\r' ? length - 1 : length;
+    }
+
+    /**
+     * Hands the partial last line to the handler, if the bytes did not end with a line end, and empties
+     * the buffer.
+     */
+    <X extends Exception> void finish(LineHandler<X> handler) throws X {
+        int lineStart = split(this, block, scanFrom, length, true, handler);
+        if (lineStart < length) {
+            position = offset + length;
+            handler.line(block, lineStart, length);
+        }
+        offset += length;
+        length = 0;
+        scanFrom = 0;
+    }
+
+    /**
+     * Hands every line of the bytes to the handler, the bytes ending with the last line, e.g. a batch of lines
+     * cut at {@link #lastLineEnd(byte[], int)}.
+     * @param buf the buffer holding the lines
+     * @param length the number of bytes of the lines, from the start of the buffer
+     */
+    static <X extends Exception> void splitAll(byte[] buf, int length, LineHandler<X> handler) throws X {
+        int lineStart = split(null, buf, 0, length, true, handler);
+        if (lineStart < length) {
+            handler.line(buf, lineStart, length);
+        }
+    }
+
+    /**
+     * @return the partial line held in the buffer, or null if there is none, and empties the buffer so it can
+     *         be reused for another source, see {@link #restorePartialLine(byte[])}
+     */
+    byte[] takePartialLine() {
+        byte[] partialLine = length == 0 ? null : Arrays.copyOf(block, length);
+        offset += length;
+        length = 0;
+        scanFrom = 0;
+        return partialLine;
+    }
+
+    /**
+     * Puts back a partial line taken from the buffer, completed by the next bytes read.
+     * @param partialLine the partial line, or null if there is none
+     */
+    void restorePartialLine(byte[] partialLine) {
+        length = 0;
+        scanFrom = 0;
+        if (partialLine != null) {
+            while (block.length < partialLine.length + 1) {
+                block = Arrays.copyOf(block, block.length * 2);
+            }
+            System.arraycopy(partialLine, 0, block, 0, partialLine.length);
+            length = partialLine.length;
+            scanFrom = block[length - 1] == '\r' ? length - 1 : length;
+        }
+    }
+
+    /**
+     * Only valid while a line is handled.
+     * @return the number of bytes up to the end of the line handled, line end included, counted from the
+     *         first byte read
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the index after the last line end of the bytes, or 0 if they have none, a \r ending the bytes
+     *         not counting as it may be the start of a \r\n
+     */
+    static int lastLineEnd(byte[] buf, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buf[i] == '\n' || buf[i] == '\r' && i + 1 < length) {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param splitter the splitter owning the buffer, its index used and its position kept, or null
+     * @param from the index to look for line ends from, the partial line before it holding none
+     * @param last true if no byte follows, so a trailing \r ends a line
+     * @return the start of the partial last line, length if there is none
+     */
+    private static <X extends Exception> int split(LineSplitter splitter, byte[] buf, int from, int length,
+                                                   boolean last, LineHandler<X> handler) throws X {
+        StructuralIndex index = splitter == null ? null : splitter.index;
+        int lineStart = 0;
+        if (index != null) {
+            // the quotes of the partial line are indexed again, so the handler can scan it
+            index.build(buf, 0, length);
+            int newlineCount = index.getNewlineCount();
+            int carriageReturnCount = index.getCarriageReturnCount();
+            for (int n = 0, r = 0; n < newlineCount || r < carriageReturnCount; ) {
+                int lineEnd = r == carriageReturnCount
+                        || n < newlineCount && index.getNewline(n) < index.getCarriageReturn(r)
+                        ? index.getNewline(n++) : index.getCarriageReturn(r++);
+                if (lineEnd >= from && lineEnd >= lineStart) {
+                    lineStart = endLine(splitter, buf, lineStart, lineEnd, length, last, handler);
+                }
+            }
+        } else {
+            for (int i = from; i < length; i++) {
+                byte b = buf[i];
+                if ((b == '\n' || b == '\r') && i >= lineStart) {
+                    lineStart = endLine(splitter, buf, lineStart, i, length, last, handler);
+                }
+            }
+        }
+        return lineStart;
+    }
+
+    /**
+     * @param lineEnd the index of the \n or \r ending the line
+     * @return the start of the next line, or lineStart if the line end is a \r which may be followed by a \n
+     */
+    private static <X extends Exception> int endLine(LineSplitter splitter, byte[] buf, int lineStart, int lineEnd,
+                                                     int length, boolean last, LineHandler<X> handler) throws X {
+        int next = lineEnd + 1;
+        if (buf[lineEnd] == '\r') {
+            if (next == length) {
+                if (!last) {
+                    return lineStart;
+                }
+            } else if (buf[next] == '\n') {
+                next++;
+            }
+        }
+        if (splitter != null) {
+            splitter.position = splitter.offset + next;
+        }
+        handler.line(buf, lineStart, lineEnd);
+        return next;
+    }
+}
@@ -0,0 +1,300 @@
+package patche.amp_json.ingest;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.reader.FileMetaDataScanner;
+import patche.amp_json.reader.ScannedRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * <pre>
+ *     Follows a growing log file, or a directory of rotated log files, and feeds every new valid line
+ *     to a record consumer as it is appended, the invalid ones to the dead letters.
+ *
+ *     Files are tracked by their file key (inode) and read with positional reads from the last position,
+ *     so a file renamed by rotation is not read twice and a truncated file is read again from the start.
+ *     A file that disappears from the followed path is read to its end before it is closed.
+ *     A line is processed once its line end is written, see {@link LineSplitter}.
+ *     A {@link WatchService} wakes the follower up when files change, with a periodic re-check as a fallback.
+ *
+ *     Everything, including the snapshot listener, runs on the thread calling {@link #follow()},
+ *     so the aggregates fed by the record consumer need no locking.
+ * </pre>
+ */
+public class LogFileFollower implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger(LogFileFollower.class);
+
+    static final String DEFAULT_GLOB = "*.jsonl";
+    private static final int BLOCK_SIZE = 1024 * 1024;
+    private static final long MAX_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path target;
+    private final String glob;
+    private final long snapshotIntervalNanos;
+    private final Consumer<IFileMetaData> recordConsumer;
+    private final Runnable snapshotListener;
+    private final DeadLetterSink deadLetters;
+
+    private final FileMetaDataScanner scanner = new FileMetaDataScanner();
+    private final ScannedRecord record = new ScannedRecord();
+    private final Map<Object, TrackedFile> trackedFiles = new HashMap<>();
+    private long lineCount;
+    private final LineSplitter lines = new LineSplitter(BLOCK_SIZE);
+
+    private volatile boolean running = true;
+    private volatile WatchService watchService;
+
+    /**
+     * @param target the log file, or a directory of log files
+     * @param glob the file name pattern followed in a directory, null for {@value #DEFAULT_GLOB}
+     * @param snapshotInterval how often the snapshot listener is called
+     * @param recordConsumer receives every valid record, the record is reused for the next line
+     * @param snapshotListener publishes a snapshot of the aggregates
+     */
+    public LogFileFollower(Path target,
+                           String glob,
+                           Duration snapshotInterval,
+                           Consumer<IFileMetaData> recordConsumer,
+                           Runnable snapshotListener) {
+        this(target, glob, snapshotInterval, recordConsumer, snapshotListener, new DeadLetterSink());
+    }
+
+    /**
+     * @param target the log file, or a directory of log files
+     * @param glob the file name pattern followed in a directory, null for {@value #DEFAULT_GLOB}
+     * @param snapshotInterval how often the snapshot listener is called
+     * @param recordConsumer receives every valid record, the record is reused for the next line
+     * @param snapshotListener publishes a snapshot of the aggregates
+     * @param deadLetters receives the invalid lines, closed by the caller
+     */
+    public LogFileFollower(Path target,
+                           String glob,
+                           Duration snapshotInterval,
+                           Consumer<IFileMetaData> recordConsumer,
+                           Runnable snapshotListener,
+                           DeadLetterSink deadLetters) {
+        if (snapshotInterval.isNegative() || snapshotInterval.isZero()) {
+            throw new IllegalArgumentException("snapshot interval must be positive");
+        }
+        this.target = target.toAbsolutePath();
+        this.glob = glob == null ? DEFAULT_GLOB : glob;
+        this.snapshotIntervalNanos = snapshotInterval.toNanos();
+        this.recordConsumer = recordConsumer;
+        this.snapshotListener = snapshotListener;
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * Follows the target until {@link #close()} is called or the thread is interrupted,
+     * then reads what is left and publishes a last snapshot.
+     * @throws IOException if the target cannot be watched or read
+     */
+    public void follow() throws IOException {
+        Path directory = Files.isDirectory(target) ? target : target.getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            watchService = watcher;
+            directory.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+
+            long nextSnapshot = System.nanoTime() + snapshotIntervalNanos;
+            while (running) {
+                readFiles();
+
+                long now = System.nanoTime();
+                if (now - nextSnapshot >= 0) {
+                    publishSnapshot();
+                    nextSnapshot = now + snapshotIntervalNanos;
+                }
+
+                long wait = Math.min(MAX_WAIT_NANOS, Math.max(1, nextSnapshot - now));
+                WatchKey key = watcher.poll(wait, TimeUnit.NANOSECONDS);
+                while (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                    key = watcher.poll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // closed to stop following
+        } finally {
+            try {
+                readFiles();
+                for (TrackedFile trackedFile : trackedFiles.values()) {
+                    finish(trackedFile);
+                }
+                trackedFiles.clear();
+            } finally {
+                publishSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Stops following, {@link #follow()} returns after a last read and snapshot.
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        WatchService watcher = watchService;
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Only read on the following thread, e.g. by the snapshot listener.
+     * @return the number of lines read so far, valid or not
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    private void readFiles() throws IOException {
+        Map<Object, Path> files = listFiles();
+
+        Iterator<Map.Entry<Object, TrackedFile>> iterator = trackedFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Object, TrackedFile> entry = iterator.next();
+            if (!files.containsKey(entry.getKey())) {
+                // rotated away or deleted, the open channel still reads what was written before
+                finish(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        for (Map.Entry<Object, Path> file : files.entrySet()) {
+            TrackedFile trackedFile = trackedFiles.get(file.getKey());
+            if (trackedFile == null) {
+                try {
+                    trackedFile = new TrackedFile(file.getValue(), FileChannel.open(file.getValue(), StandardOpenOption.READ));
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                trackedFiles.put(file.getKey(), trackedFile);
+            }
+            trackedFile.path = file.getValue();
+            read(trackedFile);
+        }
+    }
+
+    /**
+     * @return the followed files by file key, in directory order
+     */
+    private Map<Object, Path> listFiles() throws IOException {
+        Map<Object, Path> files = new LinkedHashMap<>();
+        if (Files.isDirectory(target)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(target, glob)) {
+                for (Path path : stream) {
+                    addFile(files, path);
+                }
+            }
+        } else {
+            addFile(files, target);
+        }
+        return files;
+    }
+
+    private static void addFile(Map<Object, Path> files, Path path) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.isRegularFile()) {
+                files.put(attributes.fileKey() == null ? path : attributes.fileKey(), path);
+            }
+        } catch (NoSuchFileException e) {
+            // removed while listing
+        }
+    }
+
+    private void read(TrackedFile trackedFile) throws IOException {
+        long size = trackedFile.channel.size();
+        if (size < trackedFile.position) {
+            LOG.warn("{} was truncated, reading it from the start", trackedFile.path);
+            trackedFile.position = 0;
+            trackedFile.partialLine = null;
+        }
+
+        lines.restorePartialLine(trackedFile.partialLine);
+        try {
+            while (trackedFile.position < size) {
+                int read = trackedFile.channel.read(
+                        ByteBuffer.wrap(lines.buffer(), lines.fillStart(), lines.room()), trackedFile.position);
+                if (read <= 0) {
+                    return;
+                }
+                trackedFile.position += read;
+                lines.filled(read, this::processLine);
+            }
+        } finally {
+            // the rest of the line has not been written yet
+            trackedFile.partialLine = lines.takePartialLine();
+        }
+    }
+
+    /**
+     * Processes the last line of a file that is not followed anymore and closes it.
+     */
+    private void finish(TrackedFile trackedFile) throws IOException {
+        try {
+            read(trackedFile);
+            lines.restorePartialLine(trackedFile.partialLine);
+            trackedFile.partialLine = null;
+            lines.finish(this::processLine);
+        } finally {
+            trackedFile.channel.close();
+        }
+    }
+
+    private void processLine(byte[] buf, int lineStart, int lineEnd) {
+        lineCount++;
+        if (scanner.scan(buf, lineStart, lineEnd - lineStart, record)) {
+            recordConsumer.accept(record);
+        } else {
+            deadLetters.reject(record.getLine(), record.getRejectReason());
+        }
+    }
+
+    private void publishSnapshot() {
+        deadLetters.summarize();
+        snapshotListener.run();
+    }
+
+    private static final class TrackedFile {
+
+        private final FileChannel channel;
+        private Path path;
+        private long position;
+        private byte[] partialLine;
+
+        TrackedFile(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+}
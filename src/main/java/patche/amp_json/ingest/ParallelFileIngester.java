@@ -0,0 +1,257 @@
+package patche.amp_json.ingest;
+
+import com.google.common.annotations.VisibleForTesting;
+import patche.amp_json.aggregate.Aggregator;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.reader.FileMetaDataScanner;
+import patche.amp_json.reader.ScannedRecord;
+import patche.amp_json.reader.StructuralIndex;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ *     Ingests a single log file on a pool of workers.
+ *     The file is split into newline aligned chunks which are memory mapped and scanned by whichever worker
+ *     is free. Every worker accumulates into its own result, the results are merged once all chunks are done.
+ *     Lines end in \n, \r\n or \r, see {@link LineSplitter}.
+ *
+ *     With the structural index, each block is indexed in one SWAR pass, see {@link StructuralIndex},
+ *     its line ends split the lines and its quotes let the scanner skip over the strings.
+ * </pre>
+ */
+public class ParallelFileIngester {
+
+    static final long DEFAULT_CHUNK_SIZE = 64L * 1024 * 1024;
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final int workers;
+    private final long chunkSize;
+    private final int blockSize;
+    private final boolean structuralIndex;
+    private final DeadLetterSink deadLetters;
+    private final LongAdder lineCount = new LongAdder();
+
+    public ParallelFileIngester(int workers) {
+        this(workers, false);
+    }
+
+    /**
+     * @param workers the number of worker threads
+     * @param structuralIndex true to split and scan the lines through a {@link StructuralIndex} of every block
+     */
+    public ParallelFileIngester(int workers, boolean structuralIndex) {
+        this(workers, structuralIndex, new DeadLetterSink());
+    }
+
+    /**
+     * @param workers the number of worker threads
+     * @param structuralIndex true to split and scan the lines through a {@link StructuralIndex} of every block
+     * @param deadLetters receives the invalid lines, closed by the caller
+     */
+    public ParallelFileIngester(int workers, boolean structuralIndex, DeadLetterSink deadLetters) {
+        this(workers, DEFAULT_CHUNK_SIZE, DEFAULT_BLOCK_SIZE, structuralIndex, deadLetters);
+    }
+
+    @VisibleForTesting
+    ParallelFileIngester(int workers, long chunkSize, int blockSize) {
+        this(workers, chunkSize, blockSize, false, new DeadLetterSink());
+    }
+
+    @VisibleForTesting
+    ParallelFileIngester(int workers, long chunkSize, int blockSize, boolean structuralIndex,
+                         DeadLetterSink deadLetters) {
+        if (workers < 1 || chunkSize < 1 || blockSize < 1) {
+            throw new IllegalArgumentException("workers, chunk size and block size must be positive");
+        }
+        this.workers = workers;
+        this.chunkSize = chunkSize;
+        this.blockSize = blockSize;
+        this.structuralIndex = structuralIndex;
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * <pre>
+     *     Feeds every valid log line of the file to the record handler and merges the per worker results,
+     *     the invalid ones go to the dead letters.
+     *     The record passed to the handler is reused for the next line, so the handler must copy what it keeps.
+     * </pre>
+     * @param path the log file
+     * @param resultFactory creates the empty result of a worker
+     * @param recordHandler adds a valid record to a worker's result
+     * @param merger merges two results
+     * @return the merged result
+     * @throws IOException if the file cannot be read
+     */
+    public <R> R ingest(Path path,
+                        Supplier<R> resultFactory,
+                        BiConsumer<R, IFileMetaData> recordHandler,
+                        BinaryOperator<R> merger) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] boundaries = chunkBoundaries(channel);
+            int chunkCount = boundaries.length - 1;
+            int threads = Math.max(1, Math.min(workers, chunkCount));
+            AtomicInteger nextChunk = new AtomicInteger();
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<R>> futures = new ArrayList<>(threads);
+                for (int i = 0; i < threads; i++) {
+                    futures.add(executor.submit(() -> {
+                        Worker<R> worker = new Worker<>(resultFactory.get(), recordHandler, deadLetters, blockSize,
+                                structuralIndex ? new StructuralIndex() : null);
+                        int chunk;
+                        while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+                            worker.processChunk(channel, boundaries[chunk], boundaries[chunk + 1]);
+                        }
+                        lineCount.add(worker.lineCount);
+                        return worker.result;
+                    }));
+                }
+
+                R merged = null;
+                for (Future<R> future : futures) {
+                    R result = future.get();
+                    merged = merged == null ? result : merger.apply(merged, result);
+                }
+                deadLetters.summarize();
+                return merged;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while ingesting " + path);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("failed to ingest " + path, cause);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Aggregates every valid log line of the file, every worker accumulating into its own aggregator.
+     * @param path the log file
+     * @param aggregatorFactory creates the empty aggregator of a worker
+     * @return the merged aggregator
+     * @throws IOException if the file cannot be read
+     */
+    public <A extends Aggregator<A>> A ingest(Path path, Supplier<A> aggregatorFactory) throws IOException {
+        return ingest(path, aggregatorFactory, Aggregator::accept, Aggregator::merge);
+    }
+
+    /**
+     * @return the number of lines read by this ingester so far, valid or not
+     */
+    public long getLineCount() {
+        return lineCount.sum();
+    }
+
+    /**
+     * @return the chunk start offsets followed by the file size, every chunk starts at the beginning of a line
+     */
+    @VisibleForTesting
+    long[] chunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+
+        long start = 0;
+        while (start < size) {
+            long end = size - start <= chunkSize ? size : nextLineStart(channel, start + chunkSize, size);
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("log line too long at offset " + start);
+            }
+            boundaries.add(end);
+            start = end;
+        }
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Scans mapped chunks by copying them block by block into a reusable array.
+     */
+    private static final class Worker<R> {
+
+        private final R result;
+        private final BiConsumer<R, IFileMetaData> recordHandler;
+        private final DeadLetterSink deadLetters;
+        private final FileMetaDataScanner scanner = new FileMetaDataScanner();
+        private final ScannedRecord record = new ScannedRecord();
+        private final StructuralIndex index;
+        private final LineSplitter lines;
+        private long lineCount;
+
+        /**
+         * @param index the index of the blocks, or null to look at every byte
+         */
+        Worker(R result, BiConsumer<R, IFileMetaData> recordHandler, DeadLetterSink deadLetters, int blockSize,
+               StructuralIndex index) {
+            this.result = result;
+            this.recordHandler = recordHandler;
+            this.deadLetters = deadLetters;
+            this.index = index;
+            this.lines = new LineSplitter(blockSize, index);
+        }
+
+        void processChunk(FileChannel channel, long start, long end) throws IOException {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            while (mapped.hasRemaining()) {
+                int read = Math.min(lines.room(), mapped.remaining());
+                mapped.get(lines.buffer(), lines.fillStart(), read);
+                lines.filled(read, this::processLine);
+            }
+            lines.finish(this::processLine);
+        }
+
+        private void processLine(byte[] buf, int lineStart, int lineEnd) {
+            lineCount++;
+            boolean valid = index != null
+                    ? scanner.scan(buf, lineStart, lineEnd - lineStart, index, record)
+                    : scanner.scan(buf, lineStart, lineEnd - lineStart, record);
+            if (valid) {
+                recordHandler.accept(result, record);
+            } else {
+                deadLetters.reject(record.getLine(), record.getRejectReason());
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package patche.amp_json.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <pre>
+ *     Bounded lock-free multi producer multi consumer queue, after Dmitry Vyukov's bounded MPMC queue.
+ *     Every slot carries a sequence number telling whether it is free for the producer at a position or
+ *     holds the element for the consumer at a position, so producers and consumers only contend on their
+ *     own position counter. The capacity is rounded up to a power of two, two at least.
+ *
+ *     {@link #put(Object)} and {@link #take()} spin, then yield, then park briefly while the queue is full
+ *     or empty, which is how a slow stage holds back the one feeding it.
+ * </pre>
+ */
+final class RingBuffer<E> {
+
+    private static final int SPINS = 64;
+    private static final int YIELDS = 64;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    RingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        // with a single slot a full and a drained slot would carry the same sequence
+        int size = Math.max(2, Integer.highestOneBit(capacity));
+        if (size < capacity) {
+            size <<= 1;
+        }
+        elements = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    int capacity() {
+        return elements.length;
+    }
+
+    /**
+     * @param element the element to add, not null
+     * @return false if the queue is full
+     */
+    boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[index] = element;
+                    // publishes the element to the consumer of this position
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * @return the oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = (E) elements[index];
+                    elements[index] = null;
+                    // frees the slot for the producer one lap ahead
+                    sequences.lazySet(index, position + mask + 1);
+                    return element;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Adds the element, waiting while the queue is full.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void put(E element) throws InterruptedException {
+        int idle = 0;
+        while (!offer(element)) {
+            idle = idle(idle);
+        }
+    }
+
+    /**
+     * Removes the oldest element, waiting while the queue is empty.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    E take() throws InterruptedException {
+        int idle = 0;
+        E element;
+        while ((element = poll()) == null) {
+            idle = idle(idle);
+        }
+        return element;
+    }
+
+    private static int idle(int idle) throws InterruptedException {
+        if (idle < SPINS) {
+            Thread.onSpinWait();
+        } else if (idle < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            return idle;
+        }
+        return idle + 1;
+    }
+}
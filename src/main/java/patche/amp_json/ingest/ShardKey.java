@@ -0,0 +1,29 @@
+package patche.amp_json.ingest;
+
+import patche.amp_json.pojos.IFileMetaData;
+
+/**
+ * <pre>
+ *     The key sharding the records over the aggregator threads, a UUID read as its two halves so routing a
+ *     record creates no key object.
+ * </pre>
+ */
+public interface ShardKey {
+
+    /** the business group of a record */
+    ShardKey BUSINESS_GROUP = new ShardKey() {
+        @Override
+        public long getMostSigBits(IFileMetaData record) {
+            return record.getBusinessIDMostSigBits();
+        }
+
+        @Override
+        public long getLeastSigBits(IFileMetaData record) {
+            return record.getBusinessIDLeastSigBits();
+        }
+    };
+
+    long getMostSigBits(IFileMetaData record);
+
+    long getLeastSigBits(IFileMetaData record);
+}
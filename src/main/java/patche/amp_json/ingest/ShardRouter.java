@@ -0,0 +1,87 @@
+package patche.amp_json.ingest;
+
+import patche.amp_json.aggregate.LongPairSet;
+
+import java.util.Arrays;
+
+/**
+ * <pre>
+ *     Picks the shard of a record by its key, one router per thread handing out the records.
+ *
+ *     A key goes to its home shard, chosen by its hash, so its state lives in one shard. The router counts the
+ *     keys it has seen, halving the counts every {@value #WINDOW} records so they follow the recent traffic, and
+ *     a key taking more than a shard's fair share of them is hot: its records go round robin over all the
+ *     shards, whose states of the key are merged later, so one huge key keeps every shard busy instead of one.
+ *
+ *     The keys are pairs of longs numbered by a {@link LongPairSet}, indexing a dense array of counts, so counting
+ *     a record boxes nothing. A halving renumbers the keys still counted, forgetting the others.
+ * </pre>
+ */
+final class ShardRouter {
+
+    /** the records between two halvings of the counts */
+    static final int WINDOW = 1 << 16;
+    /** the records counted before any key is hot */
+    static final int WARM_UP = 1024;
+
+    private final int shards;
+    private LongPairSet keys = new LongPairSet();
+    private long[] counts = new long[16];
+    private long total;
+    private int nextSpread;
+
+    /**
+     * @param shards the number of shards
+     */
+    ShardRouter(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
+        this.shards = shards;
+    }
+
+    /**
+     * @param mostSigBits the most significant bits of the record's key
+     * @param leastSigBits the least significant bits of the record's key
+     * @return the shard of the record, from 0 to shards - 1
+     */
+    int shard(long mostSigBits, long leastSigBits) {
+        if (shards == 1) {
+            return 0;
+        }
+        long h = (mostSigBits ^ Long.rotateLeft(leastSigBits, 32)) * 0x9e3779b97f4a7c15L;
+        int home = Math.floorMod((int) (h ^ (h >>> 32)), shards);
+
+        int key = keys.intern(mostSigBits, leastSigBits);
+        if (key == counts.length) {
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        long count = ++counts[key];
+        if (++total == WINDOW) {
+            decay();
+        }
+        if (total < WARM_UP || count * shards <= total) {
+            return home;
+        }
+        int shard = nextSpread;
+        nextSpread = nextSpread + 1 == shards ? 0 : nextSpread + 1;
+        return shard;
+    }
+
+    /**
+     * Halves the counts, forgetting the keys not seen lately.
+     */
+    private void decay() {
+        total >>= 1;
+        LongPairSet liveKeys = new LongPairSet();
+        long[] liveCounts = new long[counts.length];
+        for (int key = 0; key < keys.count(); key++) {
+            long count = counts[key] >> 1;
+            if (count > 0) {
+                liveCounts[liveKeys.intern(keys.getMostSigBits(key), keys.getLeastSigBits(key))] = count;
+            }
+        }
+        keys = liveKeys;
+        counts = liveCounts;
+    }
+}
@@ -0,0 +1,573 @@
+package patche.amp_json.ingest;
+
+import com.google.common.annotations.VisibleForTesting;
+import patche.amp_json.aggregate.Report;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+import patche.amp_json.reader.FileMetaDataScanner;
+import patche.amp_json.reader.ScannedRecord;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Supplier;
+
+/**
+ * <pre>
+ *     Ingests a log file, plain or gzipped, through three stages running at the same time:
+ *
+ *     - one reader thread fills large byte batches from the file, every batch ending at a line end,
+ *     - parser threads scan the batches and decode the wanted fields of their valid lines into record batches,
+ *     - aggregator threads feed the record batches to their own results, merged once the file is done.
+ *
+ *     The stages are joined by bounded {@link RingBuffer}s and the byte batches are recycled through a
+ *     fixed pool, so reading overlaps parsing and a slow stage makes the one before it wait instead of
+ *     letting batches pile up: at most (ringCapacity + parsers + 1) byte batches and ringCapacity record
+ *     batches (plus one being filled per parser) exist at any time.
+ *
+ *     Sharded by a key, e.g. the business group, every aggregator owns the keys hashed to it and reads its own
+ *     ring, so a key's state is only touched by one thread and needs no locks. A key taking more than an
+ *     aggregator's fair share of a parser's records is spread over all of them instead, see {@link ShardRouter},
+ *     so one huge key does not serialize the run. There are then ringCapacity record batches per aggregator
+ *     (plus one being filled per parser and aggregator).
+ *     Lines end in \n, \r\n or \r, see {@link LineSplitter}.
+ *
+ *     The record batches are recycled too, through a free ring sized for every batch that can be in flight,
+ *     and their records are reusable slots the parsers decode into: UUIDs stay pairs of longs and only the
+ *     strings of the wanted fields are created, so a record costs no objects of its own. A record handed to
+ *     the record handler is therefore only valid during the call, a handler keeping records copies them.
+ * </pre>
+ */
+public class StagedFileIngester {
+
+    static final int DEFAULT_BATCH_SIZE = 1024 * 1024;
+    static final int DEFAULT_RECORD_BATCH_SIZE = 1024;
+    static final int DEFAULT_RING_CAPACITY = 16;
+
+    private static final ByteBatch END_OF_BYTES = new ByteBatch(0);
+    private static final RecordBatch END_OF_RECORDS = new RecordBatch(0);
+
+    private final int parsers;
+    private final int aggregators;
+    private final int batchSize;
+    private final int recordBatchSize;
+    private final int ringCapacity;
+    private final DeadLetterSink deadLetters;
+    private final LongAdder lineCount = new LongAdder();
+
+    public StagedFileIngester(int parsers, int aggregators) {
+        this(parsers, aggregators, new DeadLetterSink());
+    }
+
+    /**
+     * @param parsers the number of parser threads
+     * @param aggregators the number of aggregator threads
+     * @param deadLetters receives the invalid lines, closed by the caller
+     */
+    public StagedFileIngester(int parsers, int aggregators, DeadLetterSink deadLetters) {
+        this(parsers, aggregators, DEFAULT_BATCH_SIZE, DEFAULT_RECORD_BATCH_SIZE, DEFAULT_RING_CAPACITY, deadLetters);
+    }
+
+    @VisibleForTesting
+    StagedFileIngester(int parsers, int aggregators, int batchSize, int recordBatchSize, int ringCapacity) {
+        this(parsers, aggregators, batchSize, recordBatchSize, ringCapacity, new DeadLetterSink());
+    }
+
+    @VisibleForTesting
+    StagedFileIngester(int parsers, int aggregators, int batchSize, int recordBatchSize, int ringCapacity,
+                       DeadLetterSink deadLetters) {
+        if (parsers < 1 || aggregators < 1 || batchSize < 1 || recordBatchSize < 1 || ringCapacity < 1) {
+            throw new IllegalArgumentException("thread counts, batch sizes and ring capacity must be positive");
+        }
+        this.parsers = parsers;
+        this.aggregators = aggregators;
+        this.batchSize = batchSize;
+        this.recordBatchSize = recordBatchSize;
+        this.ringCapacity = ringCapacity;
+        this.deadLetters = deadLetters;
+    }
+
+    /**
+     * <pre>
+     *     Feeds every valid log line of the file to the record handler and merges the per aggregator results,
+     *     the invalid ones go to the dead letters.
+     *     The parsers only copy the given fields out of a line, the others are null or 0 on the handed records.
+     *     A handed record is reused once the handler returns, a handler keeping records copies them.
+     * </pre>
+     * @param path the log file, gunzipped if its name ends in .gz
+     * @param fields the fields the record handler reads
+     * @param resultFactory creates the empty result of an aggregator thread
+     * @param recordHandler adds a valid record to an aggregator thread's result
+     * @param merger merges two results
+     * @return the merged result
+     * @throws IOException if the file cannot be read
+     */
+    public <R> R ingest(Path path,
+                        Set<Field> fields,
+                        Supplier<R> resultFactory,
+                        BiConsumer<R, IFileMetaData> recordHandler,
+                        BinaryOperator<R> merger) throws IOException {
+        return ingest(path, fields, resultFactory, recordHandler, merger, null);
+    }
+
+    /**
+     * <pre>
+     *     Like {@link #ingest(Path, Set, Supplier, BiConsumer, BinaryOperator)}, with the records sharded over
+     *     the aggregators by their key, so an aggregator thread sees all the records of the keys it owns,
+     *     except for the hot keys spread over all of them, whose results are combined by the merger.
+     * </pre>
+     * @param shardKey the key of a record, e.g. {@link ShardKey#BUSINESS_GROUP}, read from the given fields
+     */
+    public <R> R ingestSharded(Path path,
+                               Set<Field> fields,
+                               Supplier<R> resultFactory,
+                               BiConsumer<R, IFileMetaData> recordHandler,
+                               BinaryOperator<R> merger,
+                               ShardKey shardKey) throws IOException {
+        return ingest(path, fields, resultFactory, recordHandler, merger, shardKey);
+    }
+
+    /**
+     * @param shardKey the key sharding the records over the aggregators, null to let any aggregator take any batch
+     */
+    private <R> R ingest(Path path,
+                         Set<Field> fields,
+                         Supplier<R> resultFactory,
+                         BiConsumer<R, IFileMetaData> recordHandler,
+                         BinaryOperator<R> merger,
+                         ShardKey shardKey) throws IOException {
+        RingBuffer<ByteBatch> freeBatches = new RingBuffer<>(ringCapacity + parsers + 1);
+        RingBuffer<ByteBatch> byteBatches = new RingBuffer<>(ringCapacity);
+        List<RingBuffer<RecordBatch>> recordRings = new ArrayList<>();
+        for (int i = 0; i < (shardKey == null ? 1 : aggregators); i++) {
+            recordRings.add(new RingBuffer<>(ringCapacity));
+        }
+        for (int i = 0; i < ringCapacity + parsers + 1; i++) {
+            freeBatches.offer(new ByteBatch(batchSize));
+        }
+        // room for every record batch in flight: queued, being filled by a parser or read by an aggregator
+        RingBuffer<RecordBatch> freeRecords =
+                new RingBuffer<>(recordRings.size() * (ringCapacity + parsers) + aggregators);
+        AtomicInteger liveParsers = new AtomicInteger(parsers);
+        Object[] results = new Object[aggregators];
+        for (int i = 0; i < aggregators; i++) {
+            results[i] = resultFactory.get();
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(1 + parsers + aggregators);
+        CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+        try (InputStream in = BatchProcessor.open(path)) {
+            stages.submit(stage(() -> read(in, freeBatches, byteBatches)));
+            for (int i = 0; i < parsers; i++) {
+                stages.submit(stage(() -> {
+                    parse(fields, shardKey, freeBatches, byteBatches, freeRecords, recordRings);
+                    if (liveParsers.decrementAndGet() == 0) {
+                        for (int j = 0; j < aggregators; j++) {
+                            recordRings.get(j % recordRings.size()).put(END_OF_RECORDS);
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < aggregators; i++) {
+                @SuppressWarnings("unchecked")
+                R result = (R) results[i];
+                RingBuffer<RecordBatch> recordBatches = recordRings.get(i % recordRings.size());
+                stages.submit(stage(() -> aggregate(result, recordHandler, recordBatches, freeRecords)));
+            }
+
+            // the first failing stage cancels the others, which may be waiting on it
+            for (int i = 0; i < 1 + parsers + aggregators; i++) {
+                stages.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while ingesting " + path);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("failed to ingest " + path, cause);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        deadLetters.summarize();
+        @SuppressWarnings("unchecked")
+        R merged = (R) results[0];
+        for (int i = 1; i < aggregators; i++) {
+            @SuppressWarnings("unchecked")
+            R result = (R) results[i];
+            merged = merger.apply(merged, result);
+        }
+        return merged;
+    }
+
+    /**
+     * Builds a report over every valid log line of the file, the parsers only copying the fields it reads.
+     * @param path the log file, gunzipped if its name ends in .gz
+     * @param reportFactory creates the empty report of an aggregator thread
+     * @return the merged report
+     * @throws IOException if the file cannot be read
+     */
+    public <A extends Report<A>> A ingest(Path path, Supplier<A> reportFactory) throws IOException {
+        A first = reportFactory.get();
+        return ingest(path, first.getFields(), startingWith(first, reportFactory), Report::accept, Report::merge);
+    }
+
+    /**
+     * Builds a report over every valid log line of the file, sharding the records over the aggregators by key,
+     * see {@link #ingestSharded(Path, Set, Supplier, BiConsumer, BinaryOperator, ShardKey)}.
+     * @param path the log file, gunzipped if its name ends in .gz
+     * @param reportFactory creates the empty report of an aggregator thread, reading the key's fields
+     * @param shardKey the key of a record, e.g. its business group
+     * @return the merged report
+     * @throws IOException if the file cannot be read
+     */
+    public <A extends Report<A>> A ingestSharded(Path path, Supplier<A> reportFactory,
+                                                 ShardKey shardKey) throws IOException {
+        A first = reportFactory.get();
+        return ingestSharded(path, first.getFields(), startingWith(first, reportFactory), Report::accept,
+                Report::merge, shardKey);
+    }
+
+    /**
+     * @return the number of lines read by this ingester so far, valid or not
+     */
+    public long getLineCount() {
+        return lineCount.sum();
+    }
+
+    /**
+     * @return a factory handing out the report built to read the fields first, so it is used and not left
+     *         unclosed, then new ones
+     */
+    private static <A> Supplier<A> startingWith(A first, Supplier<A> reportFactory) {
+        AtomicReference<A> next = new AtomicReference<>(first);
+        return () -> {
+            A report = next.getAndSet(null);
+            return report != null ? report : reportFactory.get();
+        };
+    }
+
+    /**
+     * Reader stage, hands the file over in batches which end at the last line end they hold.
+     */
+    private void read(InputStream in, RingBuffer<ByteBatch> freeBatches, RingBuffer<ByteBatch> byteBatches)
+            throws IOException, InterruptedException {
+        ByteBatch batch = freeBatches.take();
+        int filled = 0;
+        while (true) {
+            int read = in.read(batch.bytes, filled, batch.bytes.length - filled);
+            if (read < 0) {
+                if (filled > 0) {
+                    batch.length = filled;
+                    byteBatches.put(batch);
+                } else {
+                    freeBatches.put(batch);
+                }
+                break;
+            }
+            filled += read;
+            if (filled < batch.bytes.length) {
+                continue;
+            }
+
+            int end = LineSplitter.lastLineEnd(batch.bytes, filled);
+            if (end == 0) {
+                // a line longer than the batch, grow until it fits
+                batch.bytes = Arrays.copyOf(batch.bytes, batch.bytes.length * 2);
+                continue;
+            }
+            ByteBatch next = freeBatches.take();
+            int carry = filled - end;
+            if (next.bytes.length <= carry) {
+                next.bytes = new byte[batch.bytes.length];
+            }
+            System.arraycopy(batch.bytes, end, next.bytes, 0, carry);
+            batch.length = end;
+            byteBatches.put(batch);
+            batch = next;
+            filled = carry;
+        }
+        // one end marker per parser, queued behind the last batch
+        for (int i = 0; i < parsers; i++) {
+            byteBatches.put(END_OF_BYTES);
+        }
+    }
+
+    /**
+     * Parser stage, runs until the reader's end marker.
+     */
+    private void parse(Set<Field> fields,
+                       ShardKey shardKey,
+                       RingBuffer<ByteBatch> freeBatches,
+                       RingBuffer<ByteBatch> byteBatches,
+                       RingBuffer<RecordBatch> freeRecords,
+                       List<RingBuffer<RecordBatch>> recordRings) throws InterruptedException {
+        Parser parser = new Parser(fields, shardKey, freeRecords, recordRings);
+        ByteBatch batch;
+        while ((batch = byteBatches.take()) != END_OF_BYTES) {
+            LineSplitter.splitAll(batch.bytes, batch.length, parser);
+            freeBatches.put(batch);
+        }
+        parser.flush();
+        lineCount.add(parser.lineCount);
+    }
+
+    /**
+     * Aggregator stage, runs until the last parser's end marker, handing the read batches back to the parsers.
+     */
+    private static <R> void aggregate(R result, BiConsumer<R, IFileMetaData> recordHandler,
+                                      RingBuffer<RecordBatch> recordBatches,
+                                      RingBuffer<RecordBatch> freeRecords) throws InterruptedException {
+        RecordBatch records;
+        while ((records = recordBatches.take()) != END_OF_RECORDS) {
+            for (int i = 0; i < records.size; i++) {
+                recordHandler.accept(result, records.records[i]);
+            }
+            records.size = 0;
+            freeRecords.offer(records);
+        }
+    }
+
+    private static Callable<Void> stage(Stage stage) {
+        return () -> {
+            stage.run();
+            return null;
+        };
+    }
+
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws IOException, InterruptedException;
+    }
+
+    /**
+     * Decodes the valid lines of a parser's batches into record slots, batched per shard.
+     */
+    private final class Parser implements LineSplitter.LineHandler<InterruptedException> {
+
+        private final Set<Field> fields;
+        private final ShardKey shardKey;
+        private final RingBuffer<RecordBatch> freeRecords;
+        private final List<RingBuffer<RecordBatch>> recordRings;
+        private final FileMetaDataScanner scanner = new FileMetaDataScanner();
+        private final ScannedRecord record = new ScannedRecord();
+        private final ShardRouter router;
+        private final RecordBatch[] pending;
+        private long lineCount;
+
+        Parser(Set<Field> fields, ShardKey shardKey, RingBuffer<RecordBatch> freeRecords,
+               List<RingBuffer<RecordBatch>> recordRings) {
+            this.fields = fields;
+            this.shardKey = shardKey;
+            this.freeRecords = freeRecords;
+            this.recordRings = recordRings;
+            this.router = new ShardRouter(recordRings.size());
+            this.pending = new RecordBatch[recordRings.size()];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = nextBatch();
+            }
+        }
+
+        @Override
+        public void line(byte[] buf, int start, int end) throws InterruptedException {
+            lineCount++;
+            if (!scanner.scan(buf, start, end - start, record)) {
+                deadLetters.reject(record.getLine(), record.getRejectReason());
+                return;
+            }
+            int shard = shardKey == null ? 0
+                    : router.shard(shardKey.getMostSigBits(record), shardKey.getLeastSigBits(record));
+            RecordBatch records = pending[shard];
+            records.records[records.size++].decode(record, fields);
+            if (records.size == records.records.length) {
+                recordRings.get(shard).put(records);
+                pending[shard] = nextBatch();
+            }
+        }
+
+        /**
+         * @return a batch read by an aggregator already, or a new one while fewer than the ring holds exist
+         */
+        private RecordBatch nextBatch() {
+            RecordBatch records = freeRecords.poll();
+            return records != null ? records : new RecordBatch(recordBatchSize);
+        }
+
+        /**
+         * Hands over the records batched so far.
+         */
+        void flush() throws InterruptedException {
+            for (int shard = 0; shard < pending.length; shard++) {
+                if (pending[shard].size > 0) {
+                    recordRings.get(shard).put(pending[shard]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytes of whole lines, except for the last batch of a file not ending in a line end.
+     */
+    private static final class ByteBatch {
+
+        private byte[] bytes;
+        private int length;
+
+        ByteBatch(int size) {
+            this.bytes = new byte[size];
+        }
+    }
+
+    private static final class RecordBatch {
+
+        private final DecodedRecord[] records;
+        private int size;
+
+        RecordBatch(int size) {
+            this.records = new DecodedRecord[size];
+            for (int i = 0; i < size; i++) {
+                records[i] = new DecodedRecord();
+            }
+        }
+    }
+
+    /**
+     * Reusable slot of a record batch holding the wanted fields of a scanned line, its UUIDs as pairs of longs.
+     */
+    private static final class DecodedRecord implements IFileMetaData {
+
+        private Set<Field> fields;
+        private long timestamp;
+        private long processingTime;
+        private long sessionIDMostSigBits;
+        private long sessionIDLeastSigBits;
+        private long userIDMostSigBits;
+        private long userIDLeastSigBits;
+        private long businessIDMostSigBits;
+        private long businessIDLeastSigBits;
+        private String sha;
+        private String fileName;
+        private String filePath;
+        private Disposition disposition;
+
+        void decode(ScannedRecord record, Set<Field> fields) {
+            this.fields = fields;
+            timestamp = fields.contains(Field.TIMESTAMP) ? record.getTimestamp() : 0;
+            processingTime = fields.contains(Field.PROCESSING_TIME) ? record.getProcessingTime() : 0;
+            if (fields.contains(Field.SESSION_ID)) {
+                sessionIDMostSigBits = record.getSessionIDMostSigBits();
+                sessionIDLeastSigBits = record.getSessionIDLeastSigBits();
+            }
+            if (fields.contains(Field.USER_ID)) {
+                userIDMostSigBits = record.getUserIDMostSigBits();
+                userIDLeastSigBits = record.getUserIDLeastSigBits();
+            }
+            if (fields.contains(Field.BUSINESS_ID)) {
+                businessIDMostSigBits = record.getBusinessIDMostSigBits();
+                businessIDLeastSigBits = record.getBusinessIDLeastSigBits();
+            }
+            sha = fields.contains(Field.SHA) ? record.getSha() : null;
+            fileName = fields.contains(Field.FILE_NAME) ? record.getFileName() : null;
+            filePath = fields.contains(Field.FILE_PATH) ? record.getFilePath() : null;
+            disposition = fields.contains(Field.DISPOSITION) ? record.getDisposition() : null;
+        }
+
+        @Override
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        @Override
+        public long getProcessingTime() {
+            return processingTime;
+        }
+
+        @Override
+        public UUID getSessionID() {
+            return fields.contains(Field.SESSION_ID) ? new UUID(sessionIDMostSigBits, sessionIDLeastSigBits) : null;
+        }
+
+        @Override
+        public UUID getUserID() {
+            return fields.contains(Field.USER_ID) ? new UUID(userIDMostSigBits, userIDLeastSigBits) : null;
+        }
+
+        @Override
+        public UUID getBusinessID() {
+            return fields.contains(Field.BUSINESS_ID) ? new UUID(businessIDMostSigBits, businessIDLeastSigBits) : null;
+        }
+
+        @Override
+        public long getSessionIDMostSigBits() {
+            return sessionIDMostSigBits;
+        }
+
+        @Override
+        public long getSessionIDLeastSigBits() {
+            return sessionIDLeastSigBits;
+        }
+
+        @Override
+        public long getUserIDMostSigBits() {
+            return userIDMostSigBits;
+        }
+
+        @Override
+        public long getUserIDLeastSigBits() {
+            return userIDLeastSigBits;
+        }
+
+        @Override
+        public long getBusinessIDMostSigBits() {
+            return businessIDMostSigBits;
+        }
+
+        @Override
+        public long getBusinessIDLeastSigBits() {
+            return businessIDLeastSigBits;
+        }
+
+        @Override
+        public String getSha() {
+            return sha;
+        }
+
+        @Override
+        public String getFileName() {
+            return fileName;
+        }
+
+        @Override
+        public String getFilePath() {
+            return filePath;
+        }
+
+        @Override
+        public Disposition getDisposition() {
+            return disposition;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package patche.amp_json.metrics;
+
+/**
+ * A monotonically increasing count, e.g. lines or bytes read.
+ */
+public interface Counter {
+
+    void add(long delta);
+
+    default void increment() {
+        add(1);
+    }
+
+    long get();
+}
@@ -0,0 +1,11 @@
+package patche.amp_json.metrics;
+
+/**
+ * A value that is set rather than counted, e.g. the cardinality of a report after a run.
+ */
+public interface Gauge {
+
+    void set(long value);
+
+    long get();
+}
@@ -0,0 +1,14 @@
+package patche.amp_json.metrics;
+
+/**
+ * A thread safe distribution of values, e.g. latencies in nanoseconds, in {@link LogHistogram} buckets.
+ */
+public interface Histogram {
+
+    void record(long value);
+
+    /**
+     * @return a copy of the values recorded so far
+     */
+    LogHistogram snapshot();
+}
@@ -0,0 +1,255 @@
+package patche.amp_json.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * <pre>
+ *     {@link MetricsRegistry} exposed as one MBean, patche.amp_json:type=Metrics,name=&lt;name&gt;, whose read only
+ *     long attributes are:
+ *
+ *     - every counter, and &lt;counter&gt;PerSecond, its rate since the previous read of that attribute
+ *       (since the registry was created for the first read, reads less than a second apart repeat the last rate),
+ *     - every gauge,
+ *     - &lt;histogram&gt;.count, .mean, .p50, .p90, .p99, .p999 and .max of every histogram.
+ *
+ *     Counters are {@link LongAdder}s and histograms atomic bucket arrays, so recording never locks.
+ * </pre>
+ */
+public class JmxMetricsRegistry implements MetricsRegistry, Closeable {
+
+    private static final String DOMAIN = "patche.amp_json";
+    private static final long MIN_RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final ObjectName objectName;
+    private final MBeanServer server;
+    private final ConcurrentMap<String, AdderCounter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicGauge> gauges = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, AtomicHistogram> histograms = new ConcurrentHashMap<>();
+    private final long createdNanos = System.nanoTime();
+
+    /**
+     * Registers the MBean on the platform MBean server.
+     * @param name the name key of the MBean, e.g. the name of the run
+     * @throws IllegalStateException if an MBean of that name is already registered
+     */
+    public JmxMetricsRegistry(String name) {
+        this.server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            this.objectName = ObjectName.getInstance(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+            server.registerMBean(new MetricsMBean(), objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register metrics " + name, e);
+        }
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new AdderCounter(createdNanos));
+    }
+
+    @Override
+    public Gauge gauge(String name) {
+        return gauges.computeIfAbsent(name, k -> new AtomicGauge());
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, k -> new AtomicHistogram());
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * Unregisters the MBean.
+     */
+    @Override
+    public void close() {
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            // already unregistered
+        }
+    }
+
+    /**
+     * @return every attribute of the MBean by name, sorted
+     */
+    private Map<String, LongSupplier> attributes() {
+        Map<String, LongSupplier> attributes = new TreeMap<>();
+        counters.forEach((name, counter) -> {
+            attributes.put(name, counter::get);
+            attributes.put(name + "PerSecond", counter::ratePerSecond);
+        });
+        gauges.forEach((name, gauge) -> attributes.put(name, gauge::get));
+        histograms.forEach((name, histogram) -> {
+            attributes.put(name + ".count", () -> histogram.snapshot().getCount());
+            attributes.put(name + ".mean", () -> Math.round(histogram.snapshot().getMean()));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                double percentile = PERCENTILES[i];
+                attributes.put(name + "." + PERCENTILE_NAMES[i], () -> histogram.snapshot().getValueAtPercentile(percentile));
+            }
+            attributes.put(name + ".max", () -> histogram.snapshot().getMax());
+        });
+        return attributes;
+    }
+
+    private final class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier value = attributes().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value.getAsLong();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            Map<String, LongSupplier> attributes = attributes();
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                LongSupplier value = attributes.get(name);
+                if (value != null) {
+                    list.add(new Attribute(name, value.getAsLong()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("read only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> infos = new ArrayList<>();
+            for (String name : attributes().keySet()) {
+                infos.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+            }
+            return new MBeanInfo(JmxMetricsRegistry.class.getName(), "amp-json metrics",
+                    infos.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0],
+                    new MBeanNotificationInfo[0]);
+        }
+    }
+
+    private static final class AdderCounter implements Counter {
+
+        private final LongAdder value = new LongAdder();
+        private long lastReadNanos;
+        private long lastReadValue;
+        private long lastRate;
+
+        AdderCounter(long createdNanos) {
+            this.lastReadNanos = createdNanos;
+        }
+
+        @Override
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        @Override
+        public long get() {
+            return value.sum();
+        }
+
+        synchronized long ratePerSecond() {
+            long now = System.nanoTime();
+            if (now - lastReadNanos >= MIN_RATE_WINDOW_NANOS) {
+                long current = value.sum();
+                lastRate = Math.round((current - lastReadValue) * 1e9 / (now - lastReadNanos));
+                lastReadNanos = now;
+                lastReadValue = current;
+            }
+            return lastRate;
+        }
+    }
+
+    private static final class AtomicGauge implements Gauge {
+
+        private volatile long value;
+
+        @Override
+        public void set(long value) {
+            this.value = value;
+        }
+
+        @Override
+        public long get() {
+            return value;
+        }
+    }
+
+    private static final class AtomicHistogram implements Histogram {
+
+        private final AtomicLongArray counts = new AtomicLongArray(LogHistogram.BUCKET_COUNT);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        @Override
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            counts.getAndIncrement(LogHistogram.bucketOf(value));
+            sum.add(value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        @Override
+        public LogHistogram snapshot() {
+            long[] copy = new long[LogHistogram.BUCKET_COUNT];
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = counts.get(i);
+            }
+            return new LogHistogram(copy, sum.sum(), max.get());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package patche.amp_json.metrics;
+
+/**
+ * <pre>
+ *     Histogram of non negative longs in log buckets, HdrHistogram style: values below 8 get a bucket each,
+ *     every power of two above is split into 8 buckets, so a recorded value is known within 12.5%
+ *     over the whole long range with a fixed 488 counters.
+ *     Percentiles are reported as the highest value of their bucket, capped by the largest value recorded.
+ *     Not thread safe, see {@link Histogram} for one that is.
+ * </pre>
+ */
+public final class LogHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long max;
+
+    public LogHistogram() {
+        this.counts = new long[BUCKET_COUNT];
+    }
+
+    LogHistogram(long[] counts, long sum, long max) {
+        this.counts = counts;
+        for (long bucketCount : counts) {
+            this.count += bucketCount;
+        }
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds the values recorded by the other histogram to this one.
+     * @param other the histogram to merge
+     * @return this histogram
+     */
+    public LogHistogram merge(LogHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the largest value recorded, 0 if none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @return the exact mean of the values recorded, 0 if none
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile within the bucket precision, 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    static long upperBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+}
@@ -0,0 +1,22 @@
+package patche.amp_json.metrics;
+
+/**
+ * <pre>
+ *     Creates and exposes the metrics of a run. Asking twice for the same name returns the same metric.
+ *     Instrumented code checks {@link #isEnabled()} once, when it is built, and skips the clock reads
+ *     altogether when the registry is the {@link NoopMetricsRegistry}.
+ * </pre>
+ */
+public interface MetricsRegistry {
+
+    Counter counter(String name);
+
+    Gauge gauge(String name);
+
+    Histogram histogram(String name);
+
+    /**
+     * @return false if the metrics are discarded, so timing them is not worth its cost
+     */
+    boolean isEnabled();
+}
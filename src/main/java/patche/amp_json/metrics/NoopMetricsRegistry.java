@@ -0,0 +1,65 @@
+package patche.amp_json.metrics;
+
+/**
+ * The default {@link MetricsRegistry}, its metrics discard everything they are given.
+ */
+public final class NoopMetricsRegistry implements MetricsRegistry {
+
+    public static final NoopMetricsRegistry INSTANCE = new NoopMetricsRegistry();
+
+    private static final Counter COUNTER = new Counter() {
+        @Override
+        public void add(long delta) {
+        }
+
+        @Override
+        public long get() {
+            return 0;
+        }
+    };
+
+    private static final Gauge GAUGE = new Gauge() {
+        @Override
+        public void set(long value) {
+        }
+
+        @Override
+        public long get() {
+            return 0;
+        }
+    };
+
+    private static final Histogram HISTOGRAM = new Histogram() {
+        @Override
+        public void record(long value) {
+        }
+
+        @Override
+        public LogHistogram snapshot() {
+            return new LogHistogram();
+        }
+    };
+
+    private NoopMetricsRegistry() {
+    }
+
+    @Override
+    public Counter counter(String name) {
+        return COUNTER;
+    }
+
+    @Override
+    public Gauge gauge(String name) {
+        return GAUGE;
+    }
+
+    @Override
+    public Histogram histogram(String name) {
+        return HISTOGRAM;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+}
@@ -2,6 +2,7 @@ package patche.amp_json.pojos;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -109,26 +110,26 @@ public class FileMetaData implements IFileMetaData {
 
         if (timestamp != that.timestamp) return false;
         if (processingTime != that.processingTime) return false;
-        if (!sessionID.equals(that.sessionID)) return false;
-        if (!userID.equals(that.userID)) return false;
-        if (!businessID.equals(that.businessID)) return false;
-        if (!sha.equals(that.sha)) return false;
-        if (!fileName.equals(that.fileName)) return false;
-        if (!filePath.equals(that.filePath)) return false;
-        return disposition.equals(that.disposition);
+        if (!Objects.equals(sessionID, that.sessionID)) return false;
+        if (!Objects.equals(userID, that.userID)) return false;
+        if (!Objects.equals(businessID, that.businessID)) return false;
+        if (!Objects.equals(sha, that.sha)) return false;
+        if (!Objects.equals(fileName, that.fileName)) return false;
+        if (!Objects.equals(filePath, that.filePath)) return false;
+        return disposition == that.disposition;
     }
 
     @Override
     public int hashCode() {
         int result = (int) (timestamp ^ (timestamp >>> 32));
         result = 31 * result + (int) (processingTime ^ (processingTime >>> 32));
-        result = 31 * result + sessionID.hashCode();
-        result = 31 * result + userID.hashCode();
-        result = 31 * result + businessID.hashCode();
-        result = 31 * result + sha.hashCode();
-        result = 31 * result + fileName.hashCode();
-        result = 31 * result + filePath.hashCode();
-        result = 31 * result + disposition.hashCode();
+        result = 31 * result + Objects.hashCode(sessionID);
+        result = 31 * result + Objects.hashCode(userID);
+        result = 31 * result + Objects.hashCode(businessID);
+        result = 31 * result + Objects.hashCode(sha);
+        result = 31 * result + Objects.hashCode(fileName);
+        result = 31 * result + Objects.hashCode(filePath);
+        result = 31 * result + Objects.hashCode(disposition);
         return result;
     }
 }
@@ -3,8 +3,10 @@ package patche.amp_json.pojos;
 import com.google.gson.annotations.SerializedName;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 public interface IFileMetaData {
 
@@ -20,6 +22,119 @@ public interface IFileMetaData {
     String FILENAME_KEY = "nm";
     String DISPOSITION_KEY = "dp";
 
+    long getTimestamp();
+
+    long getProcessingTime();
+
+    UUID getSessionID();
+
+    UUID getUserID();
+
+    UUID getBusinessID();
+
+    /*
+     * The UUIDs as their two halves, implementations holding them as primitives return them without allocating.
+     */
+
+    default long getSessionIDMostSigBits() {
+        return getSessionID().getMostSignificantBits();
+    }
+
+    default long getSessionIDLeastSigBits() {
+        return getSessionID().getLeastSignificantBits();
+    }
+
+    default long getUserIDMostSigBits() {
+        return getUserID().getMostSignificantBits();
+    }
+
+    default long getUserIDLeastSigBits() {
+        return getUserID().getLeastSignificantBits();
+    }
+
+    default long getBusinessIDMostSigBits() {
+        return getBusinessID().getMostSignificantBits();
+    }
+
+    default long getBusinessIDLeastSigBits() {
+        return getBusinessID().getLeastSignificantBits();
+    }
+
+    String getSha();
+
+    String getFileName();
+
+    /**
+     * @return the extension of the file name if the record holds it already split, e.g. a record read from a
+     *         columnar file, or null, the file name is then split by the reader
+     */
+    default String getFileExtension() {
+        return null;
+    }
+
+    String getFilePath();
+
+    Disposition getDisposition();
+
+    /**
+     * The serialized keys of a {@link FileMetaData}, in log line order.
+     */
+    enum Field {
+        TIMESTAMP("ts"),
+        PROCESSING_TIME("pt"),
+        SESSION_ID("si"),
+        USER_ID("uu"),
+        BUSINESS_ID("bg"),
+        SHA("sha"),
+        FILE_NAME("nm"),
+        FILE_PATH("ph"),
+        DISPOSITION("dp");
+
+        /** Bitmask with one bit set for every field. */
+        public static final int ALL_FIELDS_MASK = (1 << values().length) - 1;
+
+        private final String key;
+
+        Field(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public int mask() {
+            return 1 << ordinal();
+        }
+
+        /**
+         * @param fields a set of fields
+         * @return the bitmask of the fields
+         */
+        public static int maskOf(Collection<Field> fields) {
+            int mask = 0;
+            for (Field field : fields) {
+                mask |= field.mask();
+            }
+            return mask;
+        }
+
+        public static Field fromKey(String key) {
+            switch (key) {
+                case "ts": return TIMESTAMP;
+                case "pt": return PROCESSING_TIME;
+                case "si": return SESSION_ID;
+                case "uu": return USER_ID;
+                case "bg": return BUSINESS_ID;
+                case "sha": return SHA;
+                case "nm": return FILE_NAME;
+                case "ph": return FILE_PATH;
+                case "dp": return DISPOSITION;
+                default: return null;
+            }
+        }
+    }
+
     enum Disposition {
         @SerializedName("1")
         MALICIOUS(1),
@@ -28,6 +143,20 @@ public interface IFileMetaData {
         @SerializedName("3")
         UKNOWN(3);
 
+        /** the dispositions indexed by their label, null for the unused labels */
+        private static final Disposition[] BY_LABEL;
+
+        static {
+            int maxLabel = 0;
+            for (Disposition dis : values()) {
+                maxLabel = Math.max(maxLabel, dis.serializedLabel);
+            }
+            BY_LABEL = new Disposition[maxLabel + 1];
+            for (Disposition dis : values()) {
+                BY_LABEL[dis.serializedLabel] = dis;
+            }
+        }
+
         private final int serializedLabel;
 
         Disposition(int label) {
@@ -38,13 +167,12 @@ public interface IFileMetaData {
             return serializedLabel;
         }
 
+        /**
+         * @param label the serialized label
+         * @return the disposition of the label, or null if there is none, found by a table lookup
+         */
         public static Disposition fromSerializedLabel(int label) {
-            for (Disposition dis : Disposition.values()) {
-                if (dis.getSerializedLabel() == label) {
-                    return dis;
-                }
-            }
-            return null;
+            return label >= 0 && label < BY_LABEL.length ? BY_LABEL[label] : null;
         }
     }
 }
@@ -6,23 +6,58 @@ import com.google.gson.stream.JsonReader;
 import com.google.gson.stream.JsonToken;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import patche.amp_json.metrics.Counter;
+import patche.amp_json.metrics.Histogram;
+import patche.amp_json.metrics.MetricsRegistry;
+import patche.amp_json.metrics.NoopMetricsRegistry;
 import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 
+import static com.google.gson.stream.JsonToken.BEGIN_OBJECT;
 import static com.google.gson.stream.JsonToken.END_DOCUMENT;
+import static com.google.gson.stream.JsonToken.NUMBER;
+import static com.google.gson.stream.JsonToken.STRING;
 import static patche.amp_json.pojos.IFileMetaData.*;
-import static patche.amp_json.pojos.IFileMetaData.VALID_KEYS;
 
 public class AmpJsonReader {
 
     private static final Logger LOG = LogManager.getLogger(AmpJsonReader.class);
+    private static final Set<Field> ALL_FIELDS = Collections.unmodifiableSet(EnumSet.allOf(Field.class));
+    private static final int UUID_LENGTH = 36;
+
     private final Gson gson;
+    private final boolean timed;
+    private final Histogram validateNanos;
+    private final Histogram decodeNanos;
+    private final Histogram fromJsonNanos;
+    private final Counter[] rejections = new Counter[RejectReason.values().length];
 
     public AmpJsonReader() {
+        this(NoopMetricsRegistry.INSTANCE);
+    }
+
+    /**
+     * <pre>
+     *     Records into the registry:
+     *     - reader.validateNanos, reader.decodeNanos and reader.fromJsonNanos, the latency of
+     *       {@link #isValidFileMetaData(String)}, {@link #tryDecode(String, Set)} and {@link #fromJson(String)},
+     *       only when the registry is enabled,
+     *     - reader.rejected.&lt;reason&gt;, the lines rejected per {@link RejectReason}.
+     * </pre>
+     * @param metrics the metrics registry
+     */
+    public AmpJsonReader(MetricsRegistry metrics) {
         this.gson = new Gson();
+        this.timed = metrics.isEnabled();
+        this.validateNanos = metrics.histogram("reader.validateNanos");
+        this.decodeNanos = metrics.histogram("reader.decodeNanos");
+        this.fromJsonNanos = metrics.histogram("reader.fromJsonNanos");
+        for (RejectReason reason : RejectReason.values()) {
+            rejections[reason.ordinal()] = metrics.counter("reader.rejected." + reason);
+        }
     }
 
     /**
@@ -31,69 +66,163 @@ public class AmpJsonReader {
      * @return true if the log line is a valid json entry, false otherwise.
      */
     public boolean isValidFileMetaData(String logLine) {
-        Deque<Character> bracketStack = new ArrayDeque<>();
-        Map<String, Integer> keyCounts = new HashMap<>();
-
-        try (InputStream is = new ByteArrayInputStream(logLine.getBytes(StandardCharsets.UTF_8));
-             InputStreamReader isr = new InputStreamReader(is);
-             BufferedReader bufferedIsr = new BufferedReader(isr);
-             JsonReader jsonReader = new JsonReader(bufferedIsr)) {
-
-            String prevKey = "";
-            JsonToken jsonToken;
-            while ((jsonToken = jsonReader.peek()) != END_DOCUMENT) {
-                switch (jsonToken) {
-                    case BEGIN_OBJECT:
-                        bracketStack.push('{');
-                        jsonReader.beginObject();
-                        break;
-                    case END_OBJECT:
-                        if (bracketStack.isEmpty() || bracketStack.peek() != '{') {
-                            return false;
+        long start = timed ? System.nanoTime() : 0;
+        DecodeResult result = decode(logLine, ALL_FIELDS);
+        if (timed) {
+            validateNanos.record(System.nanoTime() - start);
+        }
+        if (!result.isValid()) {
+            rejections[result.getRejectReason().ordinal()].increment();
+        }
+        return result.isValid();
+    }
+
+    /**
+     * <pre>
+     *     Validates and deserializes the log line in a single pass.
+     *     A valid line is a single json object holding every key in {@link IFileMetaData#VALID_KEYS}
+     *     exactly once, with positive numbers for ts/pt/dp, UUIDs for si/uu/bg, a known disposition,
+     *     a valid filename and non blank strings everywhere else.
+     * </pre>
+     * @param logLine the json log line
+     * @return the decoded {@link FileMetaData}, or the {@link RejectReason} if the line is invalid
+     */
+    public DecodeResult tryDecode(String logLine) {
+        return tryDecode(logLine, ALL_FIELDS);
+    }
+
+    /**
+     * <pre>
+     *     Same as {@link #tryDecode(String)} but only the projected fields are set on the decoded {@link FileMetaData},
+     *     the others are validated by the same rules and then dropped: no UUID objects are created for them
+     *     and their strings are not kept, the other getters return null or 0. The strings of the dropped
+     *     fields are still read, gson only hands out a value as a String, so they are short lived garbage.
+     * </pre>
+     * @param logLine the json log line
+     * @param projection the fields the caller uses
+     * @return the decoded projection, or the {@link RejectReason} if the line is invalid
+     */
+    public DecodeResult tryDecode(String logLine, Set<Field> projection) {
+        long start = timed ? System.nanoTime() : 0;
+        DecodeResult result = decode(logLine, projection);
+        if (timed) {
+            decodeNanos.record(System.nanoTime() - start);
+        }
+        if (!result.isValid()) {
+            rejections[result.getRejectReason().ordinal()].increment();
+        }
+        return result;
+    }
+
+    private DecodeResult decode(String logLine, Set<Field> projection) {
+        int projected = Field.maskOf(projection);
+        long timestamp = 0;
+        long processingTime = 0;
+        UUID sessionID = null;
+        UUID userID = null;
+        UUID businessID = null;
+        String sha = null;
+        String fileName = null;
+        String filePath = null;
+        Disposition disposition = null;
+        int seenFields = 0;
+
+        try (JsonReader jsonReader = new JsonReader(new StringReader(logLine))) {
+            if (jsonReader.peek() != BEGIN_OBJECT) {
+                return DecodeResult.rejected(RejectReason.MALFORMED_JSON);
+            }
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                Field field = Field.fromKey(jsonReader.nextName());
+                if (field == null) {
+                    return DecodeResult.rejected(RejectReason.UNKNOWN_KEY);
+                }
+                if ((seenFields & field.mask()) != 0) {
+                    return DecodeResult.rejected(RejectReason.DUPLICATE_KEY);
+                }
+                seenFields |= field.mask();
+
+                JsonToken token = jsonReader.peek();
+                boolean keep = (projected & field.mask()) != 0;
+                switch (field) {
+                    case TIMESTAMP:
+                    case PROCESSING_TIME:
+                    case DISPOSITION:
+                        long num = token == NUMBER ? parsePositiveLong(jsonReader.nextString()) : -1;
+                        if (num < 0) {
+                            return DecodeResult.rejected(RejectReason.INVALID_NUMBER);
+                        }
+                        if (field == Field.TIMESTAMP) {
+                            timestamp = keep ? num : 0;
+                        } else if (field == Field.PROCESSING_TIME) {
+                            processingTime = keep ? num : 0;
                         } else {
-                            bracketStack.pop();
-                            jsonReader.endObject();
+                            Disposition dis = num > Integer.MAX_VALUE ? null : Disposition.fromSerializedLabel((int) num);
+                            if (dis == null) {
+                                return DecodeResult.rejected(RejectReason.INVALID_DISPOSITION);
+                            }
+                            disposition = keep ? dis : null;
                         }
                         break;
-                    case NAME:
-                        String key = jsonReader.nextName();
-                        int count = keyCounts.getOrDefault(key, 0) + 1;
-                        if (count > 1) {
-                            return false;
+                    case SESSION_ID:
+                    case USER_ID:
+                    case BUSINESS_ID:
+                        if (!keep) {
+                            if (token != STRING || !isUUIDString(jsonReader.nextString())) {
+                                return DecodeResult.rejected(RejectReason.INVALID_UUID);
+                            }
+                            break;
                         }
-                        keyCounts.put(key, count);
-                        prevKey = key;
-                        break;
-                    case NUMBER:
-                        String numString = jsonReader.nextString();
-                        if (!NUMBER_KEYS.contains(prevKey)  ||
-                                (NUMBER_KEYS.contains(prevKey) && !isValidPositiveLong(numString)) ||
-                                (DISPOSITION_KEY.contains(prevKey) && !isValidDisposition(numString))) {
-                            return false;
+                        UUID uuid = token == STRING ? parseUUID(jsonReader.nextString()) : null;
+                        if (uuid == null) {
+                            return DecodeResult.rejected(RejectReason.INVALID_UUID);
+                        }
+                        if (field == Field.SESSION_ID) {
+                            sessionID = uuid;
+                        } else if (field == Field.USER_ID) {
+                            userID = uuid;
+                        } else {
+                            businessID = uuid;
                         }
                         break;
-                    case STRING:
-                        String val = jsonReader.nextString();
-                        if ((UUID_KEYS.contains(prevKey) &&!isValidUUID(val)) ||
-                                (FILENAME_KEY.equals(prevKey) && !isValidFileName(val)) ||
-                                (val.isEmpty() || val.isBlank()) || NUMBER_KEYS.contains(prevKey)) {
-                            return false;
+                    case FILE_NAME:
+                        String name = token == STRING ? jsonReader.nextString() : null;
+                        if (name == null || !isValidFileName(name)) {
+                            return DecodeResult.rejected(RejectReason.INVALID_FILENAME);
                         }
+                        fileName = keep ? name : null;
                         break;
-                    case NULL:
-                    case BOOLEAN:
-                    case BEGIN_ARRAY:
-                    case END_ARRAY:
                     default:
-                        return false;
+                        String val = token == STRING ? jsonReader.nextString() : null;
+                        if (val == null || val.isBlank()) {
+                            return DecodeResult.rejected(RejectReason.INVALID_VALUE);
+                        }
+                        if (!keep) {
+                            break;
+                        }
+                        if (field == Field.SHA) {
+                            sha = val;
+                        } else {
+                            filePath = val;
+                        }
+                        break;
                 }
             }
-        } catch (IOException e) {
-            LOG.warn(e);
-            return false;
+            jsonReader.endObject();
+            if (jsonReader.peek() != END_DOCUMENT) {
+                return DecodeResult.rejected(RejectReason.MALFORMED_JSON);
+            }
+        } catch (IOException | NumberFormatException e) {
+            // the json reader reports a bad unicode escape as a NumberFormatException
+            LOG.debug(e);
+            return DecodeResult.rejected(RejectReason.MALFORMED_JSON);
         }
 
-        return bracketStack.isEmpty() && keyCounts.size() == VALID_KEYS.size();
+        if (seenFields != Field.ALL_FIELDS_MASK) {
+            return DecodeResult.rejected(RejectReason.MISSING_KEY);
+        }
+        return DecodeResult.valid(new FileMetaData(timestamp, processingTime, sessionID, userID, businessID,
+                sha, fileName, filePath, disposition));
     }
 
     /**
@@ -146,30 +275,58 @@ public class AmpJsonReader {
      * @return a {@link FileMetaData}
      */
     public FileMetaData fromJson(String line) {
-        return gson.fromJson(line, FileMetaData.class);
+        if (!timed) {
+            return gson.fromJson(line, FileMetaData.class);
+        }
+        long start = System.nanoTime();
+        FileMetaData fileMetaData = gson.fromJson(line, FileMetaData.class);
+        fromJsonNanos.record(System.nanoTime() - start);
+        return fileMetaData;
     }
 
     @VisibleForTesting
     protected boolean isValidPositiveLong(String num) {
+        return parsePositiveLong(num) >= 0;
+    }
+
+    @VisibleForTesting
+    protected boolean isValidUUID(String uuid) {
+        return parseUUID(uuid) != null;
+    }
+
+    private static long parsePositiveLong(String num) {
         try {
-            long l = Long.parseLong(num);
-            if (l < 0) {
-                return false;
-            }
+            return Long.parseLong(num);
         } catch (NumberFormatException e) {
-            return false;
+            return -1;
         }
+    }
 
+    /**
+     * @return true if {@link #parseUUID(String)} would succeed, without creating the UUID in the common canonical case
+     */
+    private static boolean isUUIDString(String uuid) {
+        if (uuid.length() != UUID_LENGTH) {
+            return parseUUID(uuid) != null;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            char c = uuid.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return parseUUID(uuid) != null;
+                }
+            } else if ((c < '0' || c > '9') && (c < 'a' || c > 'f') && (c < 'A' || c > 'F')) {
+                return parseUUID(uuid) != null;
+            }
+        }
         return true;
     }
 
-    @VisibleForTesting
-    protected boolean isValidUUID(String uuid) {
+    private static UUID parseUUID(String uuid) {
         try {
-            UUID.fromString(uuid);
-            return true;
+            return UUID.fromString(uuid);
         } catch (IllegalArgumentException e) {
-            return false;
+            return null;
         }
     }
 
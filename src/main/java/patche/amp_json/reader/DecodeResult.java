@@ -0,0 +1,56 @@
+package patche.amp_json.reader;
+
+import patche.amp_json.pojos.FileMetaData;
+
+/**
+ * Outcome of decoding a single log line: either a {@link FileMetaData} or the reason it was rejected.
+ */
+public final class DecodeResult {
+
+    private static final DecodeResult[] REJECTIONS = new DecodeResult[RejectReason.values().length];
+
+    static {
+        for (RejectReason reason : RejectReason.values()) {
+            REJECTIONS[reason.ordinal()] = new DecodeResult(null, reason);
+        }
+    }
+
+    private final FileMetaData fileMetaData;
+    private final RejectReason rejectReason;
+
+    private DecodeResult(FileMetaData fileMetaData, RejectReason rejectReason) {
+        this.fileMetaData = fileMetaData;
+        this.rejectReason = rejectReason;
+    }
+
+    public static DecodeResult valid(FileMetaData fileMetaData) {
+        return new DecodeResult(fileMetaData, null);
+    }
+
+    public static DecodeResult rejected(RejectReason reason) {
+        return REJECTIONS[reason.ordinal()];
+    }
+
+    public boolean isValid() {
+        return fileMetaData != null;
+    }
+
+    /**
+     * @return the decoded {@link FileMetaData}, or null if the line was rejected
+     */
+    public FileMetaData getFileMetaData() {
+        return fileMetaData;
+    }
+
+    /**
+     * @return the {@link RejectReason}, or null if the line was valid
+     */
+    public RejectReason getRejectReason() {
+        return rejectReason;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "DecodeResult{" + fileMetaData + '}' : "DecodeResult{" + rejectReason + '}';
+    }
+}
@@ -0,0 +1,522 @@
+package patche.amp_json.reader;
+
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Disposition;
+import patche.amp_json.pojos.IFileMetaData.Field;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * <pre>
+ *     Parser for the fixed {@link FileMetaData} log line schema that works directly on UTF-8 bytes.
+ *     It applies the same rules as {@link AmpJsonReader#tryDecode(String)}, tracking the seen keys in a
+ *     bitmask and parsing numbers and UUIDs in place, so a valid line produces no garbage.
+ *     String values stay in the buffer until a caller asks the {@link ScannedRecord} for them.
+ *
+ *     Instances keep a cursor and are not thread safe, use one per thread.
+ * </pre>
+ */
+public class FileMetaDataScanner {
+
+    private static final long MALFORMED_NUMBER = -2;
+    private static final long INVALID_NUMBER = -1;
+
+    private byte[] buf;
+    private int pos;
+    private int end;
+    private boolean escaped;
+    private StructuralIndex index;
+
+    /**
+     * <pre>
+     *     Scans a single log line, without its line terminator, into the record.
+     *     The record refers to the buffer, so the buffer must not change while the record is in use.
+     * </pre>
+     * @param buf the buffer holding the line
+     * @param offset the offset of the first byte of the line
+     * @param length the length of the line in bytes
+     * @param record the record to fill
+     * @return true if the line is valid, otherwise {@link ScannedRecord#getRejectReason()} holds the reason
+     */
+    public boolean scan(byte[] buf, int offset, int length, ScannedRecord record) {
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+        record.reset(buf, offset, length);
+        try {
+            RejectReason reason = scanObject(record);
+            record.setRejectReason(reason);
+            return reason == null;
+        } finally {
+            this.buf = null;
+        }
+    }
+
+    /**
+     * <pre>
+     *     Scans a single log line like {@link #scan(byte[], int, int, ScannedRecord)}, with the same result,
+     *     finding the ends of its strings through the structural index of the block holding the line.
+     * </pre>
+     * @param index the index of a block of the buffer holding the line
+     */
+    public boolean scan(byte[] buf, int offset, int length, StructuralIndex index, ScannedRecord record) {
+        this.index = index;
+        try {
+            return scan(buf, offset, length, record);
+        } finally {
+            this.index = null;
+        }
+    }
+
+    private RejectReason scanObject(ScannedRecord record) {
+        // the json reader skips a leading byte order mark
+        if (end - pos >= 3 && buf[pos] == (byte) 0xEF && buf[pos + 1] == (byte) 0xBB && buf[pos + 2] == (byte) 0xBF) {
+            pos += 3;
+        }
+        if (nextNonWhitespace() != '{') {
+            return RejectReason.MALFORMED_JSON;
+        }
+        pos++;
+
+        int seenFields = 0;
+        int c = nextNonWhitespace();
+        if (c == '}') {
+            pos++;
+        } else {
+            while (true) {
+                if (c != '"') {
+                    return RejectReason.MALFORMED_JSON;
+                }
+                int keyStart = pos + 1;
+                int keyEnd = scanString();
+                if (keyEnd < 0) {
+                    return RejectReason.MALFORMED_JSON;
+                }
+                Field field = matchKey(keyStart, keyEnd);
+                if (field == null) {
+                    return RejectReason.UNKNOWN_KEY;
+                }
+                if ((seenFields & field.mask()) != 0) {
+                    return RejectReason.DUPLICATE_KEY;
+                }
+                seenFields |= field.mask();
+
+                if (nextNonWhitespace() != ':') {
+                    return RejectReason.MALFORMED_JSON;
+                }
+                pos++;
+                RejectReason reason = scanValue(field, record);
+                if (reason != null) {
+                    return reason;
+                }
+
+                c = nextNonWhitespace();
+                if (c == ',') {
+                    pos++;
+                    c = nextNonWhitespace();
+                } else if (c == '}') {
+                    pos++;
+                    break;
+                } else {
+                    return RejectReason.MALFORMED_JSON;
+                }
+            }
+        }
+
+        if (nextNonWhitespace() != -1) {
+            return RejectReason.MALFORMED_JSON;
+        }
+        return seenFields == Field.ALL_FIELDS_MASK ? null : RejectReason.MISSING_KEY;
+    }
+
+    private RejectReason scanValue(Field field, ScannedRecord record) {
+        int c = nextNonWhitespace();
+        switch (field) {
+            case TIMESTAMP:
+            case PROCESSING_TIME:
+            case DISPOSITION:
+                if (c != '-' && (c < '0' || c > '9')) {
+                    return wrongType(c, RejectReason.INVALID_NUMBER);
+                }
+                long num = scanNumber();
+                if (num == MALFORMED_NUMBER) {
+                    return RejectReason.MALFORMED_JSON;
+                }
+                if (num == INVALID_NUMBER) {
+                    return RejectReason.INVALID_NUMBER;
+                }
+                if (field == Field.TIMESTAMP) {
+                    record.setTimestamp(num);
+                } else if (field == Field.PROCESSING_TIME) {
+                    record.setProcessingTime(num);
+                } else {
+                    Disposition disposition = num > Integer.MAX_VALUE ? null : Disposition.fromSerializedLabel((int) num);
+                    if (disposition == null) {
+                        return RejectReason.INVALID_DISPOSITION;
+                    }
+                    record.setDisposition(disposition);
+                }
+                return null;
+            case SESSION_ID:
+            case USER_ID:
+            case BUSINESS_ID:
+                if (c != '"') {
+                    return wrongType(c, RejectReason.INVALID_UUID);
+                }
+                int uuidStart = pos + 1;
+                int uuidEnd = scanString();
+                if (uuidEnd < 0) {
+                    return RejectReason.MALFORMED_JSON;
+                }
+                return scanUUID(field, uuidStart, uuidEnd, record) ? null : RejectReason.INVALID_UUID;
+            case FILE_NAME:
+                if (c != '"') {
+                    return wrongType(c, RejectReason.INVALID_FILENAME);
+                }
+                int nameStart = pos + 1;
+                int nameEnd = scanString();
+                if (nameEnd < 0) {
+                    return RejectReason.MALFORMED_JSON;
+                }
+                if (!isValidFileName(nameStart, nameEnd)) {
+                    return RejectReason.INVALID_FILENAME;
+                }
+                record.setString(field, nameStart, nameEnd, escaped);
+                return null;
+            default:
+                if (c != '"') {
+                    return wrongType(c, RejectReason.INVALID_VALUE);
+                }
+                int start = pos + 1;
+                int stringEnd = scanString();
+                if (stringEnd < 0) {
+                    return RejectReason.MALFORMED_JSON;
+                }
+                if (isBlank(start, stringEnd)) {
+                    return RejectReason.INVALID_VALUE;
+                }
+                record.setString(field, start, stringEnd, escaped);
+                return null;
+        }
+    }
+
+    /**
+     * A well formed json value of the wrong type is rejected with the field's reason, anything else is malformed.
+     */
+    private RejectReason wrongType(int c, RejectReason reason) {
+        switch (c) {
+            case '"':
+            case '{':
+            case '[':
+                return reason;
+            case '-':
+            case '0': case '1': case '2': case '3': case '4':
+            case '5': case '6': case '7': case '8': case '9':
+                return scanNumber() == MALFORMED_NUMBER ? RejectReason.MALFORMED_JSON : reason;
+            case 't':
+            case 'T':
+                return matchKeyword("true") ? reason : RejectReason.MALFORMED_JSON;
+            case 'f':
+            case 'F':
+                return matchKeyword("false") ? reason : RejectReason.MALFORMED_JSON;
+            case 'n':
+            case 'N':
+                return matchKeyword("null") ? reason : RejectReason.MALFORMED_JSON;
+            default:
+                return RejectReason.MALFORMED_JSON;
+        }
+    }
+
+    /**
+     * Keywords are matched case insensitively, like the json reader does.
+     */
+    private boolean matchKeyword(String keyword) {
+        int length = keyword.length();
+        if (end - pos < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((buf[pos + i] | 0x20) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return pos + length == end || isTerminator(buf[pos + length]);
+    }
+
+    /**
+     * <pre>
+     *     Scans a json number starting at the cursor.
+     *     Returns the value if it is a positive long, {@link #INVALID_NUMBER} if it is a well formed number
+     *     that is not (negative, fractional, exponent or too large), or {@link #MALFORMED_NUMBER}.
+     * </pre>
+     */
+    private long scanNumber() {
+        boolean negative = false;
+        boolean fitsInLong = true;
+        long value = 0;
+
+        if (buf[pos] == '-') {
+            negative = true;
+            pos++;
+        }
+        if (pos == end || buf[pos] < '0' || buf[pos] > '9') {
+            return MALFORMED_NUMBER;
+        }
+        if (buf[pos] == '0') {
+            pos++;
+            if (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+                return MALFORMED_NUMBER;
+            }
+        } else {
+            while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+                int digit = buf[pos++] - '0';
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    fitsInLong = false;
+                }
+                value = value * 10 + digit;
+            }
+        }
+
+        boolean integral = true;
+        if (pos < end && buf[pos] == '.') {
+            integral = false;
+            pos++;
+            if (!skipDigits()) {
+                return MALFORMED_NUMBER;
+            }
+        }
+        if (pos < end && (buf[pos] == 'e' || buf[pos] == 'E')) {
+            integral = false;
+            pos++;
+            if (pos < end && (buf[pos] == '+' || buf[pos] == '-')) {
+                pos++;
+            }
+            if (!skipDigits()) {
+                return MALFORMED_NUMBER;
+            }
+        }
+        if (pos < end && !isTerminator(buf[pos])) {
+            return MALFORMED_NUMBER;
+        }
+
+        if (!integral || !fitsInLong || (negative && value != 0)) {
+            return INVALID_NUMBER;
+        }
+        return value;
+    }
+
+    private boolean skipDigits() {
+        int start = pos;
+        while (pos < end && buf[pos] >= '0' && buf[pos] <= '9') {
+            pos++;
+        }
+        return pos > start;
+    }
+
+    /**
+     * <pre>
+     *     Scans a json string whose opening quote is at the cursor, leaving the cursor after the closing quote.
+     *     Sets {@link #escaped} if the string holds escape sequences.
+     * </pre>
+     * @return the index of the closing quote, or -1 if the string is malformed
+     */
+    private int scanString() {
+        escaped = false;
+        pos++;
+        while (pos < end) {
+            if (index != null) {
+                // only a quote or a backslash ends the run of plain bytes
+                pos = Math.min(index.nextStringByte(pos), end);
+                if (pos == end) {
+                    break;
+                }
+            }
+            byte b = buf[pos];
+            if (b == '"') {
+                return pos++;
+            }
+            if (b == '\\') {
+                escaped = true;
+                if (++pos == end) {
+                    return -1;
+                }
+                switch (buf[pos]) {
+                    case 'u':
+                        if (end - pos <= 4) {
+                            return -1;
+                        }
+                        for (int i = 1; i <= 4; i++) {
+                            if (Character.digit(buf[pos + i], 16) < 0) {
+                                return -1;
+                            }
+                        }
+                        pos += 4;
+                        break;
+                    case 't': case 'b': case 'n': case 'r': case 'f':
+                    case '\n': case '\'': case '"': case '\\': case '/':
+                        break;
+                    default:
+                        return -1;
+                }
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private Field matchKey(int start, int stringEnd) {
+        if (escaped) {
+            return Field.fromKey(decodeString(buf, start, stringEnd, true));
+        }
+        int length = stringEnd - start;
+        if (length == 2) {
+            byte second = buf[start + 1];
+            switch (buf[start]) {
+                case 't': return second == 's' ? Field.TIMESTAMP : null;
+                case 'p': return second == 't' ? Field.PROCESSING_TIME : second == 'h' ? Field.FILE_PATH : null;
+                case 's': return second == 'i' ? Field.SESSION_ID : null;
+                case 'u': return second == 'u' ? Field.USER_ID : null;
+                case 'b': return second == 'g' ? Field.BUSINESS_ID : null;
+                case 'n': return second == 'm' ? Field.FILE_NAME : null;
+                case 'd': return second == 'p' ? Field.DISPOSITION : null;
+                default: return null;
+            }
+        }
+        if (length == 3 && buf[start] == 's' && buf[start + 1] == 'h' && buf[start + 2] == 'a') {
+            return Field.SHA;
+        }
+        return null;
+    }
+
+    /**
+     * Parses the canonical 8-4-4-4-12 form in place, anything else goes through {@link UUID#fromString(String)}.
+     */
+    private boolean scanUUID(Field field, int start, int stringEnd, ScannedRecord record) {
+        if (!escaped && stringEnd - start == 36
+                && buf[start + 8] == '-' && buf[start + 13] == '-' && buf[start + 18] == '-' && buf[start + 23] == '-') {
+            long msb = parseHex(start, 8);
+            long msb2 = parseHex(start + 9, 4);
+            long msb3 = parseHex(start + 14, 4);
+            long lsb = parseHex(start + 19, 4);
+            long lsb2 = parseHex(start + 24, 12);
+            if ((msb | msb2 | msb3 | lsb | lsb2) >= 0) {
+                record.setUUID(field, msb << 32 | msb2 << 16 | msb3, lsb << 48 | lsb2);
+                return true;
+            }
+        }
+
+        try {
+            UUID uuid = UUID.fromString(decodeString(buf, start, stringEnd, escaped));
+            record.setUUID(field, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the value of the hex digits, or -1 if any of them is not a hex digit
+     */
+    private long parseHex(int start, int digits) {
+        long value = 0;
+        for (int i = start; i < start + digits; i++) {
+            int digit = Character.digit(buf[i], 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = value << 4 | digit;
+        }
+        return value;
+    }
+
+    private boolean isValidFileName(int start, int stringEnd) {
+        if (escaped) {
+            String filename = decodeString(buf, start, stringEnd, true);
+            return !filename.isBlank() && !".".equals(filename) && !"..".equals(filename);
+        }
+        int length = stringEnd - start;
+        if (length == 1 && buf[start] == '.' || length == 2 && buf[start] == '.' && buf[start + 1] == '.') {
+            return false;
+        }
+        return !isBlank(start, stringEnd);
+    }
+
+    private boolean isBlank(int start, int stringEnd) {
+        for (int i = start; i < stringEnd; i++) {
+            byte b = buf[i];
+            if (b < 0 || b == '\\') {
+                return decodeString(buf, start, stringEnd, escaped).isBlank();
+            }
+            if (!Character.isWhitespace(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int nextNonWhitespace() {
+        while (pos < end) {
+            byte b = buf[pos];
+            if (b != ' ' && b != '\n' && b != '\t' && b != '\r') {
+                return b & 0xFF;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private static boolean isTerminator(byte b) {
+        switch (b) {
+            case '{': case '}': case '[': case ']': case ':': case ',':
+            case ' ': case '\t': case '\f': case '\r': case '\n':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * <pre>
+     *     Decodes the contents of a scanned json string, resolving escape sequences if it has any.
+     * </pre>
+     * @param buf the buffer holding the string
+     * @param start the index after the opening quote
+     * @param stringEnd the index of the closing quote
+     * @param escaped whether the string holds escape sequences
+     * @return the decoded string
+     */
+    static String decodeString(byte[] buf, int start, int stringEnd, boolean escaped) {
+        if (!escaped) {
+            return new String(buf, start, stringEnd - start, StandardCharsets.UTF_8);
+        }
+
+        StringBuilder builder = new StringBuilder(stringEnd - start);
+        int runStart = start;
+        int i = start;
+        while (i < stringEnd) {
+            if (buf[i] != '\\') {
+                i++;
+                continue;
+            }
+            builder.append(new String(buf, runStart, i - runStart, StandardCharsets.UTF_8));
+            byte escape = buf[i + 1];
+            i += 2;
+            switch (escape) {
+                case 'u':
+                    builder.append((char) Integer.parseInt(new String(buf, i, 4, StandardCharsets.US_ASCII), 16));
+                    i += 4;
+                    break;
+                case 't': builder.append('\t'); break;
+                case 'b': builder.append('\b'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 'f': builder.append('\f'); break;
+                default: builder.append((char) escape); break;
+            }
+            runStart = i;
+        }
+        builder.append(new String(buf, runStart, stringEnd - runStart, StandardCharsets.UTF_8));
+        return builder.toString();
+    }
+}
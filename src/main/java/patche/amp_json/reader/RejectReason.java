@@ -0,0 +1,16 @@
+package patche.amp_json.reader;
+
+/**
+ * Reasons a log line can be rejected by {@link AmpJsonReader#tryDecode(String)}.
+ */
+public enum RejectReason {
+    MALFORMED_JSON,
+    UNKNOWN_KEY,
+    DUPLICATE_KEY,
+    MISSING_KEY,
+    INVALID_NUMBER,
+    INVALID_UUID,
+    INVALID_DISPOSITION,
+    INVALID_FILENAME,
+    INVALID_VALUE
+}
@@ -0,0 +1,202 @@
+package patche.amp_json.reader;
+
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * <pre>
+ *     Reusable view of a log line filled by {@link FileMetaDataScanner}.
+ *     Numbers and UUIDs are held as primitives and strings as offsets into the scanned buffer,
+ *     they are only turned into objects when a getter asks for them.
+ * </pre>
+ */
+public class ScannedRecord implements IFileMetaData {
+
+    private static final int FIELD_COUNT = Field.values().length;
+
+    private final int[] stringStarts = new int[FIELD_COUNT];
+    private final int[] stringEnds = new int[FIELD_COUNT];
+    private final String[] strings = new String[FIELD_COUNT];
+    private final long[] uuidBits = new long[FIELD_COUNT * 2];
+
+    private byte[] buf;
+    private int lineOffset;
+    private int lineLength;
+    private int escapedFields;
+    private long timestamp;
+    private long processingTime;
+    private Disposition disposition;
+    private RejectReason rejectReason;
+
+    void reset(byte[] buf, int lineOffset, int lineLength) {
+        this.buf = buf;
+        this.lineOffset = lineOffset;
+        this.lineLength = lineLength;
+        this.escapedFields = 0;
+        this.disposition = null;
+        this.rejectReason = null;
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            strings[i] = null;
+        }
+    }
+
+    void setRejectReason(RejectReason rejectReason) {
+        this.rejectReason = rejectReason;
+    }
+
+    void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    void setProcessingTime(long processingTime) {
+        this.processingTime = processingTime;
+    }
+
+    void setDisposition(Disposition disposition) {
+        this.disposition = disposition;
+    }
+
+    void setUUID(Field field, long mostSigBits, long leastSigBits) {
+        uuidBits[field.ordinal() * 2] = mostSigBits;
+        uuidBits[field.ordinal() * 2 + 1] = leastSigBits;
+    }
+
+    void setString(Field field, int start, int stringEnd, boolean escaped) {
+        stringStarts[field.ordinal()] = start;
+        stringEnds[field.ordinal()] = stringEnd;
+        if (escaped) {
+            escapedFields |= field.mask();
+        }
+    }
+
+    /**
+     * @return the {@link RejectReason} of the last scan, or null if the line was valid
+     */
+    public RejectReason getRejectReason() {
+        return rejectReason;
+    }
+
+    /**
+     * @return the raw log line, mostly useful for reporting rejected lines
+     */
+    public String getLine() {
+        return new String(buf, lineOffset, lineLength, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public long getProcessingTime() {
+        return processingTime;
+    }
+
+    @Override
+    public UUID getSessionID() {
+        return getUUID(Field.SESSION_ID);
+    }
+
+    @Override
+    public UUID getUserID() {
+        return getUUID(Field.USER_ID);
+    }
+
+    @Override
+    public UUID getBusinessID() {
+        return getUUID(Field.BUSINESS_ID);
+    }
+
+    @Override
+    public long getSessionIDMostSigBits() {
+        return uuidBits[Field.SESSION_ID.ordinal() * 2];
+    }
+
+    @Override
+    public long getSessionIDLeastSigBits() {
+        return uuidBits[Field.SESSION_ID.ordinal() * 2 + 1];
+    }
+
+    @Override
+    public long getUserIDMostSigBits() {
+        return uuidBits[Field.USER_ID.ordinal() * 2];
+    }
+
+    @Override
+    public long getUserIDLeastSigBits() {
+        return uuidBits[Field.USER_ID.ordinal() * 2 + 1];
+    }
+
+    @Override
+    public long getBusinessIDMostSigBits() {
+        return uuidBits[Field.BUSINESS_ID.ordinal() * 2];
+    }
+
+    @Override
+    public long getBusinessIDLeastSigBits() {
+        return uuidBits[Field.BUSINESS_ID.ordinal() * 2 + 1];
+    }
+
+    @Override
+    public String getSha() {
+        return getString(Field.SHA);
+    }
+
+    @Override
+    public String getFileName() {
+        return getString(Field.FILE_NAME);
+    }
+
+    @Override
+    public String getFilePath() {
+        return getString(Field.FILE_PATH);
+    }
+
+    @Override
+    public Disposition getDisposition() {
+        return disposition;
+    }
+
+    /**
+     * @return a detached {@link FileMetaData} holding every field of the record
+     */
+    public FileMetaData toFileMetaData() {
+        return new FileMetaData(timestamp, processingTime, getSessionID(), getUserID(), getBusinessID(),
+                getSha(), getFileName(), getFilePath(), disposition);
+    }
+
+    /**
+     * @param fields the fields to copy, see {@link AmpJsonReader#tryDecode(String, Set)}
+     * @return a detached {@link FileMetaData} holding the given fields, the others are null or 0
+     */
+    public FileMetaData toFileMetaData(Set<Field> fields) {
+        return new FileMetaData(
+                fields.contains(Field.TIMESTAMP) ? timestamp : 0,
+                fields.contains(Field.PROCESSING_TIME) ? processingTime : 0,
+                fields.contains(Field.SESSION_ID) ? getSessionID() : null,
+                fields.contains(Field.USER_ID) ? getUserID() : null,
+                fields.contains(Field.BUSINESS_ID) ? getBusinessID() : null,
+                fields.contains(Field.SHA) ? getSha() : null,
+                fields.contains(Field.FILE_NAME) ? getFileName() : null,
+                fields.contains(Field.FILE_PATH) ? getFilePath() : null,
+                fields.contains(Field.DISPOSITION) ? disposition : null);
+    }
+
+    private UUID getUUID(Field field) {
+        return new UUID(uuidBits[field.ordinal() * 2], uuidBits[field.ordinal() * 2 + 1]);
+    }
+
+    private String getString(Field field) {
+        int i = field.ordinal();
+        if (strings[i] == null) {
+            strings[i] = FileMetaDataScanner.decodeString(buf, stringStarts[i], stringEnds[i],
+                    (escapedFields & field.mask()) != 0);
+        }
+        return strings[i];
+    }
+}
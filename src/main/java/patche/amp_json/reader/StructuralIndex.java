@@ -0,0 +1,163 @@
+package patche.amp_json.reader;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * <pre>
+ *     Positions of the newlines, carriage returns, quotes and backslashes of a block of log lines, found eight
+ *     bytes at a time.
+ *
+ *     Like the first stage of simdjson, one pass over the block finds the bytes the parsing cares about
+ *     without branching per byte: every 8 byte word is compared against each character with SWAR (SIMD
+ *     within a register) arithmetic, giving a mask with the high bit set in every matching byte, and the
+ *     positions are read off the masks with {@link Long#numberOfTrailingZeros(long)}. The newlines and carriage
+ *     returns split the block into lines, and {@link FileMetaDataScanner#scan(byte[], int, int, StructuralIndex, ScannedRecord)}
+ *     jumps from quote to quote instead of looking at every byte of the strings, which are most of a line.
+ *     Colons, commas and braces are not indexed, the scanner reaches them right after a string or a number.
+ *
+ *     UTF-8 never encodes another character with these byte values, so no decoding is needed.
+ *     Instances are reused from block to block and are not thread safe, use one per thread.
+ * </pre>
+ */
+public final class StructuralIndex {
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7f7f7f7f7f7f7f7fL;
+    private static final long NEWLINES = ONES * '\n';
+    private static final long CARRIAGE_RETURNS = ONES * '\r';
+    private static final long QUOTES = ONES * '"';
+    private static final long BACKSLASHES = ONES * '\\';
+
+    private int[] newlines = new int[64];
+    private int newlineCount;
+    private int[] carriageReturns = new int[16];
+    private int carriageReturnCount;
+    private int[] stringBytes = new int[512];
+    private int stringByteCount;
+    private int cursor;
+
+    /**
+     * Indexes the bytes of the block, replacing the previous index.
+     * @param buf the buffer holding the block
+     * @param from the index of the first byte of the block
+     * @param to the index after the last byte of the block
+     */
+    public void build(byte[] buf, int from, int to) {
+        newlineCount = 0;
+        carriageReturnCount = 0;
+        stringByteCount = 0;
+        cursor = 0;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = (long) LONGS.get(buf, i);
+            long newlineMask = matches(word, NEWLINES);
+            while (newlineMask != 0) {
+                addNewline(i + (Long.numberOfTrailingZeros(newlineMask) >>> 3));
+                newlineMask &= newlineMask - 1;
+            }
+            long carriageReturnMask = matches(word, CARRIAGE_RETURNS);
+            while (carriageReturnMask != 0) {
+                addCarriageReturn(i + (Long.numberOfTrailingZeros(carriageReturnMask) >>> 3));
+                carriageReturnMask &= carriageReturnMask - 1;
+            }
+            long stringMask = matches(word, QUOTES) | matches(word, BACKSLASHES);
+            while (stringMask != 0) {
+                addStringByte(i + (Long.numberOfTrailingZeros(stringMask) >>> 3));
+                stringMask &= stringMask - 1;
+            }
+        }
+        for (; i < to; i++) {
+            byte b = buf[i];
+            if (b == '\n') {
+                addNewline(i);
+            } else if (b == '\r') {
+                addCarriageReturn(i);
+            } else if (b == '"' || b == '\\') {
+                addStringByte(i);
+            }
+        }
+    }
+
+    /**
+     * @return the number of newlines in the block
+     */
+    public int getNewlineCount() {
+        return newlineCount;
+    }
+
+    /**
+     * @param i the newline, from 0 to {@link #getNewlineCount()} - 1
+     * @return the position of the newline in the buffer, in ascending order
+     */
+    public int getNewline(int i) {
+        return newlines[i];
+    }
+
+    /**
+     * @return the number of carriage returns in the block
+     */
+    public int getCarriageReturnCount() {
+        return carriageReturnCount;
+    }
+
+    /**
+     * @param i the carriage return, from 0 to {@link #getCarriageReturnCount()} - 1
+     * @return the position of the carriage return in the buffer, in ascending order
+     */
+    public int getCarriageReturn(int i) {
+        return carriageReturns[i];
+    }
+
+    /**
+     * Lookups are expected in ascending order, as the lines of the block are scanned one after the other,
+     * the index keeps a cursor so they cost nothing but the step to the next position.
+     * @param position a position in the block
+     * @return the position of the first quote or backslash at or after the position, or
+     *         {@link Integer#MAX_VALUE} if there is none
+     */
+    int nextStringByte(int position) {
+        if (cursor > 0 && stringBytes[cursor - 1] >= position) {
+            int found = Arrays.binarySearch(stringBytes, 0, stringByteCount, position);
+            cursor = found >= 0 ? found : -found - 1;
+        }
+        while (cursor < stringByteCount && stringBytes[cursor] < position) {
+            cursor++;
+        }
+        return cursor < stringByteCount ? stringBytes[cursor] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return a mask with the high bit of every byte of the word equal to the byte of the pattern set, and
+     *         no other bit, exact unlike the shorter (x - 0x01..) &amp; ~x &amp; 0x80.. test which may flag
+     *         a byte above a match
+     */
+    static long matches(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+    }
+
+    private void addNewline(int position) {
+        if (newlineCount == newlines.length) {
+            newlines = Arrays.copyOf(newlines, newlines.length * 2);
+        }
+        newlines[newlineCount++] = position;
+    }
+
+    private void addCarriageReturn(int position) {
+        if (carriageReturnCount == carriageReturns.length) {
+            carriageReturns = Arrays.copyOf(carriageReturns, carriageReturns.length * 2);
+        }
+        carriageReturns[carriageReturnCount++] = position;
+    }
+
+    private void addStringByte(int position) {
+        if (stringByteCount == stringBytes.length) {
+            stringBytes = Arrays.copyOf(stringBytes, stringBytes.length * 2);
+        }
+        stringBytes[stringByteCount++] = position;
+    }
+}
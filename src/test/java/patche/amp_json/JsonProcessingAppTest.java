@@ -3,18 +3,30 @@ package patche.amp_json;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import patche.amp_json.aggregate.ExtensionAggregator;
+import patche.amp_json.aggregate.MemoryBudget;
+import patche.amp_json.aggregate.TimeBucketer;
+import patche.amp_json.ingest.DeadLetterSink;
+import patche.amp_json.metrics.JmxMetricsRegistry;
 import patche.amp_json.pojos.FileMetaData;
 import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.DecodeResult;
+import patche.amp_json.reader.RejectReason;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -23,7 +35,7 @@ import static org.mockito.Mockito.*;
 public class JsonProcessingAppTest {
 
     private JsonProcessingApp fixture;
-    private Map<String, Set<String>> extToFilenameCount;
+    private ExtensionAggregator extToFilenameCount;
     @Mock
     private AmpJsonReader jsonReader;
     @Mock
@@ -32,12 +44,14 @@ public class JsonProcessingAppTest {
     private FileMetaData fileMetaData;
 
     @Captor
-    ArgumentCaptor<Map<String, Set<String>>> mapCaptor;
+    ArgumentCaptor<ExtensionAggregator> aggregatorCaptor;
+    @TempDir
+    Path tempDir;
 
     @BeforeEach
     void setup() {
         fixture = new JsonProcessingApp(jsonReader);
-        extToFilenameCount = new HashMap<>();
+        extToFilenameCount = new ExtensionAggregator(jsonReader);
     }
 
     @Test
@@ -47,8 +61,7 @@ public class JsonProcessingAppTest {
         String[] files = new String[] {"f1.ext1", "f.ext4", "f2.ext4", "f2.ext6", "f2.ext1", "f3.ext1", "f1.ext3"};
 
         when(bufferedReader.readLine()).thenReturn("", "", "", "", "", "", "").thenReturn(null);
-        when(jsonReader.isValidFileMetaData(anyString())).thenReturn(true);
-        when(jsonReader.fromJson(anyString())).thenReturn(fileMetaData);
+        when(jsonReader.tryDecode(anyString(), any())).thenReturn(DecodeResult.valid(fileMetaData));
         when(fileMetaData.getFileName()).thenReturn(
                 files[0], files[0],
                 files[1], files[1],
@@ -82,12 +95,12 @@ public class JsonProcessingAppTest {
         fixture.processLogFile(bufferedReader, extToFilenameCount);
 
         verify(fileMetaData, times(14)).getFileName();
-        verify(jsonReader, times(7)).isValidFileMetaData(anyString());
-        assertEquals(4, extToFilenameCount.size());
-        assertEquals(2, extToFilenameCount.get("ext4").size());
-        assertEquals(3, extToFilenameCount.get("ext1").size());
-        assertEquals(1, extToFilenameCount.get("ext3").size());
-        assertEquals(1, extToFilenameCount.get("ext6").size());
+        verify(jsonReader, times(7)).tryDecode(anyString(), any());
+        assertEquals(4, extToFilenameCount.getExtensions().size());
+        assertEquals(2, extToFilenameCount.getUniqueCount("ext4"));
+        assertEquals(3, extToFilenameCount.getUniqueCount("ext1"));
+        assertEquals(1, extToFilenameCount.getUniqueCount("ext3"));
+        assertEquals(1, extToFilenameCount.getUniqueCount("ext6"));
     }
 
     @Test
@@ -97,8 +110,7 @@ public class JsonProcessingAppTest {
         String[] files = new String[] {"f1.ext1", "f2.ext2", "f3.ext3"};
 
         when(bufferedReader.readLine()).thenReturn("", "", "").thenReturn(null);
-        when(jsonReader.isValidFileMetaData(anyString())).thenReturn(true);
-        when(jsonReader.fromJson(anyString())).thenReturn(fileMetaData);
+        when(jsonReader.tryDecode(anyString(), any())).thenReturn(DecodeResult.valid(fileMetaData));
         when(fileMetaData.getFileName()).thenReturn(files[0], files[0], files[1], files[1], files[2], files[2]);
 
         when(jsonReader.getFileExt(files[0])).thenReturn(exts[0]);
@@ -113,10 +125,10 @@ public class JsonProcessingAppTest {
         fixture.processLogFile(bufferedReader, extToFilenameCount);
 
         verify(fileMetaData, times(6)).getFileName();
-        verify(jsonReader, times(3)).isValidFileMetaData(anyString());
-        assertEquals(3, extToFilenameCount.size());
+        verify(jsonReader, times(3)).tryDecode(anyString(), any());
+        assertEquals(3, extToFilenameCount.getExtensions().size());
         for (int i = 0; i < 3; ++i) {
-            assertEquals(1, extToFilenameCount.get(exts[i]).size());
+            assertEquals(1, extToFilenameCount.getUniqueCount(exts[i]));
         }
     }
 
@@ -127,8 +139,7 @@ public class JsonProcessingAppTest {
         String file = "file.pdf";
 
         when(bufferedReader.readLine()).thenReturn("", "", "", "").thenReturn(null);
-        when(jsonReader.isValidFileMetaData(anyString())).thenReturn(true);
-        when(jsonReader.fromJson(anyString())).thenReturn(fileMetaData);
+        when(jsonReader.tryDecode(anyString(), any())).thenReturn(DecodeResult.valid(fileMetaData));
         when(fileMetaData.getFileName()).thenReturn(file);
         when(jsonReader.getFileExt(file)).thenReturn(ext);
         when(jsonReader.getFilenameWithoutExt(file)).thenReturn(filename);
@@ -136,9 +147,9 @@ public class JsonProcessingAppTest {
         fixture.processLogFile(bufferedReader, extToFilenameCount);
 
         verify(fileMetaData, times(8)).getFileName();
-        verify(jsonReader, times(4)).isValidFileMetaData(anyString());
-        assertEquals(1, extToFilenameCount.size());
-        assertEquals(1, extToFilenameCount.get(ext).size());
+        verify(jsonReader, times(4)).tryDecode(anyString(), any());
+        assertEquals(1, extToFilenameCount.getExtensions().size());
+        assertEquals(1, extToFilenameCount.getUniqueCount(ext));
     }
 
     @Test
@@ -148,8 +159,7 @@ public class JsonProcessingAppTest {
         String[] files = new String[] {"f1.ext", "f2.ext", "f3.ext"};
 
         when(bufferedReader.readLine()).thenReturn("", "", "").thenReturn(null);
-        when(jsonReader.isValidFileMetaData(anyString())).thenReturn(true);
-        when(jsonReader.fromJson(anyString())).thenReturn(fileMetaData);
+        when(jsonReader.tryDecode(anyString(), any())).thenReturn(DecodeResult.valid(fileMetaData));
         when(fileMetaData.getFileName()).thenReturn(files[0], files[0], files[1], files[1], files[2], files[2]);
 
         when(jsonReader.getFileExt(files[0])).thenReturn(exts[0]);
@@ -164,9 +174,9 @@ public class JsonProcessingAppTest {
         fixture.processLogFile(bufferedReader, extToFilenameCount);
 
         verify(fileMetaData, times(6)).getFileName();
-        verify(jsonReader, times(3)).isValidFileMetaData(anyString());
-        assertEquals(1, extToFilenameCount.size());
-        assertEquals(3, extToFilenameCount.get("ext").size());
+        verify(jsonReader, times(3)).tryDecode(anyString(), any());
+        assertEquals(1, extToFilenameCount.getExtensions().size());
+        assertEquals(3, extToFilenameCount.getUniqueCount("ext"));
     }
 
     @Test
@@ -176,8 +186,7 @@ public class JsonProcessingAppTest {
         String[] files = new String[] {"f.ext1", "f.ext2", "f.ext3"};
 
         when(bufferedReader.readLine()).thenReturn("", "", "").thenReturn(null);
-        when(jsonReader.isValidFileMetaData(anyString())).thenReturn(true);
-        when(jsonReader.fromJson(anyString())).thenReturn(fileMetaData);
+        when(jsonReader.tryDecode(anyString(), any())).thenReturn(DecodeResult.valid(fileMetaData));
         when(fileMetaData.getFileName()).thenReturn(files[0], files[0], files[1], files[1], files[2], files[2]);
 
         when(jsonReader.getFileExt(files[0])).thenReturn(exts[0]);
@@ -192,11 +201,95 @@ public class JsonProcessingAppTest {
         fixture.processLogFile(bufferedReader, extToFilenameCount);
 
         verify(fileMetaData, times(6)).getFileName();
-        verify(jsonReader, times(3)).isValidFileMetaData(anyString());
-        assertEquals(3, extToFilenameCount.size());
+        verify(jsonReader, times(3)).tryDecode(anyString(), any());
+        assertEquals(3, extToFilenameCount.getExtensions().size());
 
         for (int i = 0; i < 3; ++i) {
-            assertEquals(1, extToFilenameCount.get(exts[i]).size());
+            assertEquals(1, extToFilenameCount.getUniqueCount(exts[i]));
+        }
+    }
+
+    @Test
+    void invalidLinesGoToDeadLettersTest() throws Exception {
+        DeadLetterSink deadLetters = new DeadLetterSink();
+        fixture = JsonProcessingApp.builder(jsonReader)
+                .timeBucketer(TimeBucketer.hourOfDay(ZoneOffset.UTC))
+                .deadLetters(deadLetters)
+                .build();
+
+        when(bufferedReader.readLine()).thenReturn("dup", "uuid", "dup").thenReturn(null);
+        when(jsonReader.tryDecode(eq("dup"), any())).thenReturn(DecodeResult.rejected(RejectReason.DUPLICATE_KEY));
+        when(jsonReader.tryDecode(eq("uuid"), any())).thenReturn(DecodeResult.rejected(RejectReason.INVALID_UUID));
+
+        fixture.processLogFile(bufferedReader, extToFilenameCount);
+
+        assertEquals(2, deadLetters.getCount(RejectReason.DUPLICATE_KEY));
+        assertEquals(1, deadLetters.getCount(RejectReason.INVALID_UUID));
+        assertTrue(extToFilenameCount.getExtensions().isEmpty());
+    }
+
+    @Test
+    void batchInvalidLinesGoToDeadLettersTest() throws Exception {
+        Path file = tempDir.resolve("log.jsonl");
+        String valid = Files.readAllLines(Paths.get("src/test/resources/inputData_std.jsonl")).get(0);
+        Files.write(file, List.of(valid, "{\"ts\":", valid.replace("\"dp\":", "\"xx\":")));
+        try (DeadLetterSink deadLetters = new DeadLetterSink(tempDir.resolve("dead-letters.txt"))) {
+            fixture = JsonProcessingApp.builder(new AmpJsonReader())
+                    .timeBucketer(TimeBucketer.hourOfDay(ZoneOffset.UTC))
+                    .deadLetters(deadLetters)
+                    .build();
+
+            fixture.processBatch(file.toString(), 1);
+
+            assertEquals(1, deadLetters.getCount(RejectReason.MALFORMED_JSON));
+            assertEquals(1, deadLetters.getCount(RejectReason.UNKNOWN_KEY));
+            assertEquals(2, deadLetters.getTotalCount());
+        }
+        assertEquals(List.of("MALFORMED_JSON\t{\"ts\":", "UNKNOWN_KEY\t" + valid.replace("\"dp\":", "\"xx\":")),
+                Files.readAllLines(tempDir.resolve("dead-letters.txt")));
+    }
+
+    @Test
+    void batchLinesAndRejectionsMetricsTest() throws Exception {
+        Path file = tempDir.resolve("log.jsonl");
+        List<String> lines = new ArrayList<>(Files.readAllLines(Paths.get("src/test/resources/inputData_std.jsonl")));
+        lines.add("{\"ts\":");
+        Files.write(file, lines);
+        try (JmxMetricsRegistry metrics = new JmxMetricsRegistry("batchLinesAndRejectionsMetricsTest")) {
+            fixture = JsonProcessingApp.builder(new AmpJsonReader(metrics))
+                    .timeBucketer(TimeBucketer.hourOfDay(ZoneOffset.UTC))
+                    .metrics(metrics)
+                    .build();
+
+            fixture.processBatch(file.toString(), 1);
+
+            assertEquals(lines.size(), metrics.counter("app.lines").get());
+            assertEquals(Files.size(file), metrics.counter("app.bytes").get());
+            assertEquals(1, metrics.counter("reader.rejected.MALFORMED_JSON").get());
+        }
+    }
+
+    @Test
+    void memoryBudgetSerialRunTest() throws Exception {
+        Path spillDirectory = Files.createDirectory(tempDir.resolve("spill"));
+        MemoryBudget budget = new MemoryBudget(1024 * 1024);
+        try (JmxMetricsRegistry metrics = new JmxMetricsRegistry("memoryBudgetSerialRunTest")) {
+            fixture = JsonProcessingApp.builder(new AmpJsonReader())
+                    .metrics(metrics)
+                    .memoryBudget(budget, spillDirectory)
+                    .build();
+
+            fixture.processLogFile("src/test/resources/test.example");
+            fixture.getUniqueSha("src/test/resources/inputData_std.jsonl");
+
+            assertTrue(metrics.gauge("report.SpillingExtensionAggregator.cardinality").get() > 0);
+            assertTrue(metrics.gauge("report.SpillingHourlyShaAggregator.cardinality").get() > 0);
+            assertEquals(0, metrics.gauge("report.ExtensionAggregator.cardinality").get());
+            assertEquals(0, metrics.gauge("report.HourlyShaAggregator.cardinality").get());
+        }
+        assertEquals(0, budget.getUsedBytes());
+        try (Stream<Path> files = Files.list(spillDirectory)) {
+            assertEquals(0, files.count(), "the runs are deleted once printed");
         }
     }
 
@@ -208,10 +301,10 @@ public class JsonProcessingAppTest {
         File resourceDirectory = new File("src/test/resources");
         fixture.processLogFile(resourceDirectory + "/test.example");
 
-        verify(fixture).processLogFile(any(BufferedReader.class) , mapCaptor.capture());
+        verify(fixture).processLogFile(any(BufferedReader.class) , aggregatorCaptor.capture());
 
-        Map<String, Set<String>> actualMap = mapCaptor.getValue();
-        assertEquals(2, actualMap.size());
-        assertEquals(1, actualMap.get("ext").size());
+        ExtensionAggregator actual = aggregatorCaptor.getValue();
+        assertEquals(2, actual.getExtensions().size());
+        assertEquals(1, actual.getUniqueCount("ext"));
     }
 }
@@ -0,0 +1,153 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregatorMergeTest {
+
+    private static final AmpJsonReader JSON_READER = new AmpJsonReader();
+
+    private static List<FileMetaData> records;
+
+    @BeforeAll
+    static void setup() {
+        Random random = new Random(7);
+        String[] exts = new String[] {"pdf", "exe", "doc", "", "tar.gz"};
+        records = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String ext = exts[random.nextInt(exts.length)];
+            String filename = "file" + random.nextInt(300) + (ext.isEmpty() ? "" : "." + ext);
+            records.add(new FileMetaData(
+                    1551140352L + random.nextInt(3 * 24 * 3600),
+                    random.nextInt(1000),
+                    UUID.randomUUID(),
+                    UUID.randomUUID(),
+                    UUID.randomUUID(),
+                    "sha" + random.nextInt(50),
+                    filename,
+                    "/path/" + filename,
+                    FileMetaData.Disposition.CLEAN));
+        }
+    }
+
+    @Test
+    void extensionAggregatorMergeEqualsSerialTest() {
+        assertMergeEqualsSerial(() -> new ExtensionAggregator(JSON_READER), AggregatorMergeTest::uniqueCounts);
+    }
+
+    @Test
+    void approximateExtensionAggregatorMergeEqualsSerialTest() {
+        assertMergeEqualsSerial(() -> new ExtensionAggregator(JSON_READER, () -> new HyperLogLog(10)),
+                AggregatorMergeTest::uniqueCounts);
+    }
+
+    @Test
+    void hourlyShaAggregatorMergeEqualsSerialTest() {
+        assertMergeEqualsSerial(HourlyShaAggregator::new, AggregatorMergeTest::shaCounts);
+    }
+
+    @Test
+    void mergeCopiesCountersTest() {
+        assertMergeCopies(() -> new ExtensionAggregator(JSON_READER), AggregatorMergeTest::uniqueCounts);
+        assertMergeCopies(HourlyShaAggregator::new, AggregatorMergeTest::shaCounts);
+        assertMergeCopies(() -> new TopShaReport(5), AggregatorMergeTest::topShas);
+    }
+
+    /**
+     * Merges the first half of the records into an empty aggregator, then feeds the other half to the merged one.
+     */
+    private static <A extends Aggregator<A>, S> void assertMergeCopies(Supplier<A> factory, Function<A, S> snapshot) {
+        A other = factory.get();
+        records.subList(0, records.size() / 2).forEach(other::accept);
+        S expected = snapshot.apply(other);
+
+        A merged = factory.get().merge(other);
+        records.subList(records.size() / 2, records.size()).forEach(merged::accept);
+        assertEquals(expected, snapshot.apply(other), "the merged aggregator shares no counter with the other");
+    }
+
+    private static <A extends Aggregator<A>, S> void assertMergeEqualsSerial(Supplier<A> factory, Function<A, S> snapshot) {
+        A serial = factory.get();
+        records.forEach(serial::accept);
+        S expected = snapshot.apply(serial);
+
+        for (int parts : new int[] {1, 2, 3, 8}) {
+            // (a + b) + c
+            assertEquals(expected, snapshot.apply(mergeLeft(partition(factory, parts))), parts + " parts merged left");
+            // a + (b + c)
+            assertEquals(expected, snapshot.apply(mergeRight(partition(factory, parts))), parts + " parts merged right");
+        }
+
+        A empty = factory.get();
+        A single = factory.get();
+        records.forEach(single::accept);
+        assertEquals(expected, snapshot.apply(single.merge(empty)));
+    }
+
+    private static <A extends Aggregator<A>> List<A> partition(Supplier<A> factory, int parts) {
+        Random random = new Random(parts);
+        List<A> aggregators = new ArrayList<>();
+        for (int i = 0; i < parts; i++) {
+            aggregators.add(factory.get());
+        }
+        for (FileMetaData record : records) {
+            aggregators.get(random.nextInt(parts)).accept(record);
+        }
+        return aggregators;
+    }
+
+    private static <A extends Aggregator<A>> A mergeLeft(List<A> aggregators) {
+        A merged = aggregators.get(0);
+        for (int i = 1; i < aggregators.size(); i++) {
+            merged = merged.merge(aggregators.get(i));
+        }
+        return merged;
+    }
+
+    private static <A extends Aggregator<A>> A mergeRight(List<A> aggregators) {
+        A merged = aggregators.get(aggregators.size() - 1);
+        for (int i = aggregators.size() - 2; i >= 0; i--) {
+            merged = aggregators.get(i).merge(merged);
+        }
+        return merged;
+    }
+
+    private static Map<String, Long> uniqueCounts(ExtensionAggregator aggregator) {
+        Map<String, Long> counts = new HashMap<>();
+        for (String ext : aggregator.getExtensions()) {
+            counts.put(ext, aggregator.getUniqueCount(ext));
+        }
+        return counts;
+    }
+
+    private static Map<Long, String> topShas(TopShaReport report) {
+        Map<Long, String> top = new HashMap<>();
+        for (long bucket : report.getBuckets()) {
+            top.put(bucket, report.getTop(bucket).toString());
+        }
+        return top;
+    }
+
+    private static Map<Long, Map<String, Integer>> shaCounts(HourlyShaAggregator aggregator) {
+        Map<Long, Map<String, Integer>> counts = new HashMap<>();
+        for (long bucket : aggregator.getBuckets()) {
+            Map<String, Integer> shaCounts = new HashMap<>();
+            aggregator.forEachSha(bucket, shaCounts::put);
+            counts.put(bucket, shaCounts);
+        }
+        return counts;
+    }
+}
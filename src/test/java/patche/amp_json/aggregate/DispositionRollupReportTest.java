@@ -0,0 +1,117 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Disposition;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DispositionRollupReportTest {
+
+    private static final AmpJsonReader JSON_READER = new AmpJsonReader();
+    private static final TimeBucketer HOUR_OF_DAY = TimeBucketer.hourOfDay(ZoneOffset.UTC);
+
+    @Test
+    void fromSerializedLabelTest() {
+        for (Disposition disposition : Disposition.values()) {
+            assertSame(disposition, Disposition.fromSerializedLabel(disposition.getSerializedLabel()));
+        }
+        assertNull(Disposition.fromSerializedLabel(0));
+        assertNull(Disposition.fromSerializedLabel(-1));
+        assertNull(Disposition.fromSerializedLabel(4));
+        assertNull(Disposition.fromSerializedLabel(Integer.MAX_VALUE));
+        assertNull(Disposition.fromSerializedLabel(Integer.MIN_VALUE));
+    }
+
+    @Test
+    void countsAndMergeMatchRecordsTest() {
+        Random random = new Random(22);
+        String[] exts = new String[] {"pdf", "exe", "doc", "", "tar.gz"};
+        UUID[] businessIDs = new UUID[] {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+        Disposition[] dispositions = Disposition.values();
+        List<FileMetaData> records = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            String ext = exts[random.nextInt(exts.length)];
+            String filename = "file" + random.nextInt(300) + (ext.isEmpty() ? "" : "." + ext);
+            records.add(new FileMetaData(1551140352L + random.nextInt(24 * 3600), 1, null, null,
+                    businessIDs[random.nextInt(businessIDs.length)], "sha", filename, "/path/" + filename,
+                    dispositions[random.nextInt(dispositions.length)]));
+        }
+
+        Map<String, Long> expected = new HashMap<>();
+        DispositionRollupReport serial = new DispositionRollupReport(JSON_READER, HOUR_OF_DAY);
+        DispositionRollupReport[] parts = new DispositionRollupReport[3];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new DispositionRollupReport(JSON_READER, HOUR_OF_DAY);
+        }
+        for (FileMetaData record : records) {
+            serial.accept(record);
+            parts[random.nextInt(parts.length)].accept(record);
+            expected.merge("ext " + JSON_READER.getFileExt(record.getFileName()) + " " + record.getDisposition(), 1L, Long::sum);
+            expected.merge("bucket " + HOUR_OF_DAY.bucket(record.getTimestamp()) + " " + record.getDisposition(), 1L, Long::sum);
+            expected.merge("bg " + record.getBusinessID() + " " + record.getDisposition(), 1L, Long::sum);
+        }
+        DispositionRollupReport merged = parts[0].merge(parts[1]).merge(parts[2]);
+
+        for (DispositionRollupReport report : new DispositionRollupReport[] {serial, merged}) {
+            assertEquals(exts.length + 24 + businessIDs.length, report.getCardinality());
+            Map<String, Long> actual = new HashMap<>();
+            for (Disposition disposition : dispositions) {
+                for (String ext : report.getExtensions()) {
+                    actual.put("ext " + ext + " " + disposition, report.getExtensionCount(ext, disposition));
+                }
+                for (long bucket : report.getBuckets()) {
+                    actual.put("bucket " + bucket + " " + disposition, report.getBucketCount(bucket, disposition));
+                }
+                for (UUID businessID : report.getBusinessGroups()) {
+                    actual.put("bg " + businessID + " " + disposition, report.getBusinessGroupCount(businessID, disposition));
+                }
+            }
+            actual.values().removeIf(count -> count == 0);
+            assertEquals(expected, actual);
+        }
+        assertEquals(0, serial.getExtensionCount("iso", Disposition.MALICIOUS));
+
+        List<String> lines = new ArrayList<>();
+        serial.print(lines::add);
+        assertEquals(3 + exts.length + 24 + businessIDs.length, lines.size());
+        assertEquals("dispositions per extension:", lines.get(0));
+    }
+
+    @Test
+    void absoluteBucketsTest() {
+        TimeBucketer days = new TimeBucketer(ZoneOffset.UTC, TimeBucketer.Granularity.DAY, false);
+        DispositionRollupReport first = new DispositionRollupReport(JSON_READER, days);
+        DispositionRollupReport second = new DispositionRollupReport(JSON_READER, days);
+        UUID businessID = UUID.randomUUID();
+        for (int day = 0; day < 40; day++) {
+            FileMetaData record = new FileMetaData(1551140352L + day * 86400L, 1, null, null, businessID, "sha",
+                    "file.pdf", "/path/file.pdf", Disposition.CLEAN);
+            first.accept(record);
+            if (day % 2 == 0) {
+                second.accept(record);
+            }
+        }
+
+        DispositionRollupReport merged = first.merge(second);
+        assertEquals(40, merged.getBuckets().size());
+        long firstDay = days.bucket(1551140352L);
+        for (long bucket : merged.getBuckets()) {
+            // the even days went to both reports
+            long day = (bucket - firstDay) / 86400;
+            assertEquals(day % 2 == 0 ? 2 : 1, merged.getBucketCount(bucket, Disposition.CLEAN), "day " + day);
+        }
+        assertEquals(0, merged.getBucketCount(0, Disposition.CLEAN));
+        assertEquals(60, merged.getBusinessGroupCount(businessID, Disposition.CLEAN));
+        assertEquals(1 + 40 + 1, merged.getCardinality());
+    }
+}
@@ -0,0 +1,55 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HyperLogLogTest {
+
+    @Test
+    void estimateWithinErrorBoundTest() {
+        for (int precision : new int[] {10, 14}) {
+            for (int cardinality : new int[] {10, 1000, 100000}) {
+                HyperLogLog fixture = new HyperLogLog(precision);
+                for (int i = 0; i < cardinality; i++) {
+                    fixture.add("file" + i);
+                    fixture.add("file" + i);
+                }
+                double error = Math.abs(fixture.count() - cardinality) / (double) cardinality;
+                assertTrue(error < 3 * fixture.relativeError() || Math.abs(fixture.count() - cardinality) <= 1,
+                        "precision " + precision + ", cardinality " + cardinality + ", estimate " + fixture.count());
+            }
+        }
+    }
+
+    @Test
+    void emptySketchTest() {
+        HyperLogLog fixture = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        assertEquals(0, fixture.count());
+        assertEquals(1.04 / Math.sqrt(1 << 14), fixture.relativeError(), 1e-12);
+    }
+
+    @Test
+    void mergeEqualsSketchOfUnionTest() {
+        HyperLogLog left = new HyperLogLog(12);
+        HyperLogLog right = new HyperLogLog(12);
+        HyperLogLog union = new HyperLogLog(12);
+        for (int i = 0; i < 50000; i++) {
+            String value = "file" + i;
+            (i % 3 == 0 ? left : right).add(value);
+            union.add(value);
+            if (i % 5 == 0) {
+                left.add(value);
+            }
+        }
+
+        assertEquals(union.count(), left.merge(right).count());
+    }
+
+    @Test
+    void invalidPrecisionTest() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MIN_PRECISION - 1));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(HyperLogLog.MAX_PRECISION + 1));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(10).merge(new HyperLogLog(11)));
+    }
+}
@@ -0,0 +1,72 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongPairSetTest {
+
+    @Test
+    void sameAsHashSetTest() {
+        Random random = new Random(24);
+        Set<UUID> expected = new HashSet<>();
+        LongPairSet fixture = new LongPairSet(2);
+        for (int i = 0; i < 100_000; i++) {
+            // sequential halves as well as random ones, and the nil UUID
+            UUID uuid = i % 3 == 0 ? new UUID(i % 1000, 0) : new UUID(random.nextInt(10_000), random.nextLong());
+            expected.add(uuid);
+            fixture.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+        assertEquals(expected.size(), fixture.count());
+        for (UUID uuid : expected) {
+            int number = fixture.indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            assertEquals(uuid.getMostSignificantBits(), fixture.getMostSigBits(number));
+            assertEquals(uuid.getLeastSignificantBits(), fixture.getLeastSigBits(number));
+        }
+        assertEquals(-1, fixture.indexOf(-1, -1));
+
+        String uuid = "77e28e28-745a-474b-a496-3c0e086eaec0";
+        fixture.add(uuid);
+        assertEquals(fixture.count() - 1, fixture.indexOf(UUID.fromString(uuid).getMostSignificantBits(),
+                UUID.fromString(uuid).getLeastSignificantBits()));
+    }
+
+    @Test
+    void internNumbersInOrderTest() {
+        LongPairSet fixture = new LongPairSet();
+        assertEquals(0, fixture.intern(0, 0));
+        assertEquals(1, fixture.intern(1, 2));
+        assertEquals(0, fixture.intern(0, 0));
+        assertEquals(2, fixture.intern(2, 1));
+        assertEquals(1, fixture.intern(1, 2));
+        assertEquals(3, fixture.count());
+    }
+
+    @Test
+    void mergeAndCheckpointTest() throws Exception {
+        LongPairSet a = new LongPairSet();
+        LongPairSet b = new LongPairSet();
+        for (int i = 0; i < 1000; i++) {
+            a.add(i, i);
+            b.add(i + 500, i + 500);
+        }
+        assertEquals(1500, a.merge(b).count());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        a.writeCheckpoint(new DataOutputStream(bytes));
+        LongPairSet restored = new LongPairSet();
+        restored.add(5000, 5000);
+        restored.readCheckpoint(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(1501, restored.count());
+        assertEquals(1, restored.indexOf(0, 0));
+    }
+}
@@ -0,0 +1,109 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.LongUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapUniqueCounterTest {
+
+    @Test
+    void sameCountAsExactTest() {
+        List<String> values = randomValues(new Random(3), 50_000);
+        OffHeapUniqueCounter fixture = new OffHeapUniqueCounter(2, 256, LongUnaryOperator.identity());
+        ExactUniqueCounter expected = new ExactUniqueCounter();
+        for (String value : values) {
+            fixture.add(value);
+            expected.add(value);
+        }
+        assertEquals(expected.count(), fixture.count());
+        assertEquals(0, fixture.relativeError());
+        assertTrue(fixture.offHeapBytes() > fixture.estimateHeapBytes());
+    }
+
+    @Test
+    void exactUnderHashCollisionsTest() {
+        OffHeapUniqueCounter fixture = new OffHeapUniqueCounter(4, 64, hash -> hash & 3);
+        Set<String> expected = new HashSet<>();
+        for (String value : randomValues(new Random(4), 2000)) {
+            fixture.add(value);
+            expected.add(value);
+        }
+        assertEquals(expected.size(), fixture.count());
+    }
+
+    @Test
+    void mergeTest() {
+        Random random = new Random(5);
+        List<String> values = randomValues(random, 20_000);
+        OffHeapUniqueCounter a = new OffHeapUniqueCounter(2, 128, LongUnaryOperator.identity());
+        OffHeapUniqueCounter b = new OffHeapUniqueCounter();
+        Set<String> expected = new HashSet<>(values);
+        for (int i = 0; i < values.size(); i++) {
+            (i % 3 == 0 ? a : b).add(values.get(i));
+        }
+        assertEquals(expected.size(), a.merge(b).count());
+        assertEquals(expected.size(), a.merge(b).count(), "merging again adds nothing");
+    }
+
+    @Test
+    void extensionAggregatorTest() {
+        ExtensionAggregator offHeap = new ExtensionAggregator(new AmpJsonReader(), OffHeapUniqueCounter::new);
+        ExtensionAggregator onHeap = new ExtensionAggregator(new AmpJsonReader());
+        Random random = new Random(6);
+        for (String value : randomValues(random, 10_000)) {
+            FileMetaData record = new FileMetaData(1, 1, null, null, null,
+                    "sha", value + "." + "ext" + random.nextInt(5), "/", null);
+            offHeap.accept(record);
+            onHeap.accept(record);
+        }
+        assertEquals(onHeap.getExtensions(), offHeap.getExtensions());
+        for (String ext : onHeap.getExtensions()) {
+            assertEquals(onHeap.getUniqueCount(ext), offHeap.getUniqueCount(ext));
+        }
+    }
+
+    @Test
+    void closeReleasesBuffersTest() {
+        List<OffHeapUniqueCounter> counters = new ArrayList<>();
+        ReportPipeline reports = new ReportPipeline(List.of(new ExtensionAggregator(new AmpJsonReader(), () -> {
+            OffHeapUniqueCounter counter = new OffHeapUniqueCounter();
+            counters.add(counter);
+            return counter;
+        })));
+        for (String value : randomValues(new Random(7), 1000)) {
+            reports.accept(new FileMetaData(1, 1, null, null, null, "sha", value + ".ext" + value.length() % 3, "/", null));
+        }
+        long count = counters.get(0).count();
+        assertTrue(counters.get(0).offHeapBytes() > 0);
+
+        reports.close();
+        for (OffHeapUniqueCounter counter : counters) {
+            assertEquals(0, counter.offHeapBytes());
+        }
+        assertEquals(count, counters.get(0).count(), "a closed counter keeps its count");
+        assertThrows(IllegalStateException.class, () -> counters.get(0).add("value"));
+    }
+
+    private static List<String> randomValues(Random random, int count) {
+        String alphabet = "abcxyz_-0123é中";
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder value = new StringBuilder();
+            int length = random.nextInt(10) == 0 ? 100 + random.nextInt(200) : 1 + random.nextInt(6);
+            for (int j = 0; j < length; j++) {
+                value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            values.add(value.toString());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,81 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+import patche.amp_json.metrics.LogHistogram;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProcessingTimeReportTest {
+
+    private static final AmpJsonReader JSON_READER = new AmpJsonReader();
+    private static final TimeBucketer HOUR_OF_DAY = TimeBucketer.hourOfDay(ZoneOffset.UTC);
+
+    @Test
+    void percentilesWithinBucketPrecisionTest() {
+        Random random = new Random(25);
+        String[] exts = new String[] {"pdf", "exe"};
+        ProcessingTimeReport serial = new ProcessingTimeReport(JSON_READER, HOUR_OF_DAY);
+        ProcessingTimeReport[] parts = new ProcessingTimeReport[] {
+                new ProcessingTimeReport(JSON_READER, HOUR_OF_DAY), new ProcessingTimeReport(JSON_READER, HOUR_OF_DAY)};
+        long[][] values = new long[exts.length][10_000];
+        for (int i = 0; i < 10_000; i++) {
+            for (int e = 0; e < exts.length; e++) {
+                // exe files take ten times longer, with a long tail
+                long processingTime = (long) (Math.exp(random.nextGaussian()) * 100 * (e == 0 ? 1 : 10));
+                values[e][i] = processingTime;
+                FileMetaData record = new FileMetaData(1551139200L + random.nextInt(2 * 3600), processingTime,
+                        null, null, null, "sha", "file." + exts[e], "/file." + exts[e], FileMetaData.Disposition.CLEAN);
+                serial.accept(record);
+                parts[random.nextInt(parts.length)].accept(record);
+            }
+        }
+        ProcessingTimeReport merged = parts[0].merge(parts[1]);
+
+        for (ProcessingTimeReport report : new ProcessingTimeReport[] {serial, merged}) {
+            assertEquals(2, report.getBuckets().size());
+            assertEquals(4, report.getCardinality());
+            for (int e = 0; e < exts.length; e++) {
+                long[] sorted = values[e].clone();
+                Arrays.sort(sorted);
+                LogHistogram histogram = report.getExtensionHistogram(exts[e]);
+                assertEquals(sorted.length, histogram.getCount());
+                assertEquals(sorted[sorted.length - 1], histogram.getMax());
+                for (double percentile : new double[] {50, 95, 99}) {
+                    long exact = sorted[(int) Math.ceil(percentile / 100 * sorted.length) - 1];
+                    long reported = histogram.getValueAtPercentile(percentile);
+                    assertTrue(reported >= exact && reported <= exact * 1.125 + 1,
+                            exts[e] + " p" + percentile + ": " + reported + " for " + exact);
+                }
+            }
+        }
+        assertNull(serial.getExtensionHistogram("doc"));
+
+        List<String> lines = new ArrayList<>();
+        serial.print(lines::add);
+        assertEquals(2 + 2 + exts.length, lines.size());
+        assertTrue(lines.get(4).startsWith("exe: count: 10000, p50: "), lines.get(4));
+    }
+
+    @Test
+    void mergeCopiesHistogramsTest() {
+        ProcessingTimeReport fixture = new ProcessingTimeReport(JSON_READER, HOUR_OF_DAY);
+        ProcessingTimeReport other = new ProcessingTimeReport(JSON_READER, HOUR_OF_DAY);
+        FileMetaData record = new FileMetaData(1551139200L, 100, null, null, null, "sha", "file.pdf", "/file.pdf",
+                FileMetaData.Disposition.CLEAN);
+        other.accept(record);
+        fixture.merge(other);
+        other.accept(record);
+
+        assertEquals(1, fixture.getExtensionHistogram("pdf").getCount());
+        assertEquals(1, fixture.getBucketHistogram(HOUR_OF_DAY.bucket(1551139200L)).getCount());
+        assertEquals(2, other.getExtensionHistogram("pdf").getCount());
+    }
+}
@@ -0,0 +1,90 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Disposition;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReportPipelineTest {
+
+    private final AmpJsonReader jsonReader = new AmpJsonReader();
+    private final List<Supplier<? extends Report<?>>> reportFactories = Arrays.asList(
+            () -> new ExtensionAggregator(jsonReader),
+            () -> new HourlyShaAggregator(TimeBucketer.hourOfDay(ZoneOffset.UTC)),
+            DispositionReport::new,
+            BusinessGroupReport::new);
+
+    @Test
+    void onePassEqualsSeparatePassesTest() throws Exception {
+        List<FileMetaData> records = records();
+        ReportPipeline pipeline = ReportPipeline.create(reportFactories);
+        records.forEach(pipeline::accept);
+
+        for (int i = 0; i < reportFactories.size(); i++) {
+            Report<?> separate = reportFactories.get(i).get();
+            records.forEach(separate::accept);
+            assertEquals(printed(separate), printed(pipeline.getReports().get(i)));
+        }
+
+        DispositionReport dispositions = pipeline.getReport(DispositionReport.class);
+        assertEquals(records.size(), Arrays.stream(Disposition.values()).mapToLong(dispositions::getCount).sum());
+        BusinessGroupReport businessGroups = pipeline.getReport(BusinessGroupReport.class);
+        assertEquals(records.size(), businessGroups.getBusinessGroups().stream().mapToLong(businessGroups::getCount).sum());
+        assertNull(pipeline.getReport(ReportPipeline.class));
+    }
+
+    @Test
+    void mergeTest() throws Exception {
+        List<FileMetaData> records = records();
+        ReportPipeline serial = ReportPipeline.create(reportFactories);
+        records.forEach(serial::accept);
+
+        ReportPipeline left = ReportPipeline.create(reportFactories);
+        ReportPipeline right = ReportPipeline.create(reportFactories);
+        records.subList(0, records.size() / 3).forEach(left::accept);
+        records.subList(records.size() / 3, records.size()).forEach(right::accept);
+
+        assertEquals(sorted(printed(serial)), sorted(printed(left.merge(right))));
+    }
+
+    @Test
+    void mergeDifferentReportsTest() {
+        ReportPipeline pipeline = ReportPipeline.create(reportFactories);
+        assertThrows(IllegalArgumentException.class,
+                () -> pipeline.merge(new ReportPipeline(Arrays.asList(new DispositionReport()))));
+        assertThrows(IllegalArgumentException.class, () -> pipeline.merge(new ReportPipeline(Arrays.asList(
+                new DispositionReport(), new BusinessGroupReport(), new DispositionReport(), new BusinessGroupReport()))));
+    }
+
+    private List<FileMetaData> records() throws Exception {
+        List<FileMetaData> records = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get("src/test/resources/inputData_random.jsonl"))) {
+            if (jsonReader.isValidFileMetaData(line)) {
+                records.add(jsonReader.fromJson(line));
+            }
+        }
+        return records;
+    }
+
+    private static List<String> printed(Report<?> report) {
+        List<String> lines = new ArrayList<>();
+        report.print(lines::add);
+        return lines;
+    }
+
+    private static List<String> sorted(List<String> lines) {
+        List<String> sorted = new ArrayList<>(lines);
+        sorted.sort(null);
+        return sorted;
+    }
+}
@@ -0,0 +1,108 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+import patche.amp_json.pojos.FileMetaData;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionUserReportTest {
+
+    private static final TimeBucketer HOUR_OF_DAY = TimeBucketer.hourOfDay(ZoneOffset.UTC);
+
+    @Test
+    void exactCountsAndMergeTest() {
+        Random random = new Random(24);
+        UUID[] businessIDs = new UUID[] {UUID.randomUUID(), UUID.randomUUID(), new UUID(0, 0)};
+        List<FileMetaData> records = new ArrayList<>();
+        Map<String, Set<UUID>> expected = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            long timestamp = 1551140352L + random.nextInt(24 * 3600);
+            UUID session = new UUID(7, random.nextInt(5000));
+            UUID user = new UUID(random.nextInt(800), 9);
+            UUID businessID = businessIDs[random.nextInt(businessIDs.length)];
+            records.add(new FileMetaData(timestamp, 1, session, user, businessID, "sha", "file.pdf", "/file.pdf",
+                    FileMetaData.Disposition.CLEAN));
+            long bucket = HOUR_OF_DAY.bucket(timestamp);
+            expected.computeIfAbsent("users " + bucket, k -> new HashSet<>()).add(user);
+            expected.computeIfAbsent("sessions " + bucket, k -> new HashSet<>()).add(session);
+            expected.computeIfAbsent("users " + businessID, k -> new HashSet<>()).add(user);
+            expected.computeIfAbsent("sessions " + businessID, k -> new HashSet<>()).add(session);
+        }
+
+        SessionUserReport serial = new SessionUserReport(HOUR_OF_DAY, LongPairSet::new);
+        SessionUserReport[] parts = new SessionUserReport[] {
+                new SessionUserReport(HOUR_OF_DAY, LongPairSet::new),
+                new SessionUserReport(HOUR_OF_DAY, LongPairSet::new),
+                new SessionUserReport(HOUR_OF_DAY, LongPairSet::new)};
+        for (FileMetaData record : records) {
+            serial.accept(record);
+            parts[random.nextInt(parts.length)].accept(record);
+        }
+        SessionUserReport merged = parts[2].merge(parts[0]).merge(parts[1]);
+
+        for (SessionUserReport report : new SessionUserReport[] {serial, merged}) {
+            assertEquals(24, report.getBuckets().size());
+            assertEquals(new HashSet<>(List.of(businessIDs)), report.getBusinessGroups());
+            for (long bucket : report.getBuckets()) {
+                assertEquals(expected.get("users " + bucket).size(), report.getUserCount(bucket));
+                assertEquals(expected.get("sessions " + bucket).size(), report.getSessionCount(bucket));
+            }
+            for (UUID businessID : businessIDs) {
+                assertEquals(expected.get("users " + businessID).size(), report.getBusinessGroupUserCount(businessID));
+                assertEquals(expected.get("sessions " + businessID).size(), report.getBusinessGroupSessionCount(businessID));
+            }
+        }
+        assertEquals(0, serial.getBusinessGroupUserCount(UUID.randomUUID()));
+
+        List<String> lines = new ArrayList<>();
+        serial.print(lines::add);
+        assertEquals(2 + 24 + businessIDs.length, lines.size());
+    }
+
+    @Test
+    void approximateCountsTest() {
+        SessionUserReport fixture = new SessionUserReport(HOUR_OF_DAY, () -> new HyperLogLog(12));
+        UUID businessID = UUID.randomUUID();
+        for (int i = 0; i < 50_000; i++) {
+            // sequential UUIDs, which the hash has to spread
+            fixture.accept(new FileMetaData(1551140352L, 1, new UUID(0, i), new UUID(i % 10_000, 0), businessID,
+                    "sha", "file.pdf", "/file.pdf", FileMetaData.Disposition.CLEAN));
+        }
+        long bucket = HOUR_OF_DAY.bucket(1551140352L);
+        assertEquals(50_000, fixture.getSessionCount(bucket), 50_000 * 0.05);
+        assertEquals(10_000, fixture.getUserCount(bucket), 10_000 * 0.05);
+        assertEquals(10_000, fixture.getBusinessGroupUserCount(businessID), 10_000 * 0.05);
+
+        List<String> lines = new ArrayList<>();
+        fixture.print(lines::add);
+        assertTrue(lines.get(1).contains("users: ~"), lines.get(1));
+    }
+
+    @Test
+    void mergeCopiesCountersTest() {
+        UUID businessID = UUID.randomUUID();
+        SessionUserReport fixture = new SessionUserReport(HOUR_OF_DAY, LongPairSet::new);
+        SessionUserReport other = new SessionUserReport(HOUR_OF_DAY, LongPairSet::new);
+        other.accept(new FileMetaData(1551139200L, 1, new UUID(1, 1), new UUID(2, 2), businessID, "sha",
+                "file.pdf", "/file.pdf", FileMetaData.Disposition.CLEAN));
+        fixture.merge(other);
+        other.accept(new FileMetaData(1551139200L, 1, new UUID(1, 3), new UUID(2, 4), businessID, "sha",
+                "file.pdf", "/file.pdf", FileMetaData.Disposition.CLEAN));
+
+        long bucket = HOUR_OF_DAY.bucket(1551139200L);
+        assertEquals(1, fixture.getUserCount(bucket));
+        assertEquals(1, fixture.getBusinessGroupSessionCount(businessID));
+        assertEquals(2, other.getUserCount(bucket));
+        assertEquals(2, other.getBusinessGroupSessionCount(businessID));
+    }
+}
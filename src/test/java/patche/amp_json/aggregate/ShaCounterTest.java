@@ -0,0 +1,78 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShaCounterTest {
+
+    private static final String SHA = "abb3ec1b8174043d5cd21d21fbe3c3fb3e9a11c7ceff3314a3222404feedda52";
+
+    @Test
+    void countsCanonicalAndOtherShasTest() {
+        ShaCounter fixture = new ShaCounter();
+        String zeroSha = "0000000000000000000000000000000000000000000000000000000000000000";
+        String upperSha = SHA.toUpperCase();
+
+        fixture.add(SHA);
+        fixture.add(SHA);
+        fixture.add(zeroSha);
+        fixture.add(upperSha);
+        fixture.add("random-sha");
+        fixture.add("random-sha", 3);
+
+        assertEquals(4, fixture.size());
+        assertEquals(2, fixture.get(SHA));
+        assertEquals(1, fixture.get(zeroSha));
+        assertEquals(1, fixture.get(upperSha));
+        assertEquals(4, fixture.get("random-sha"));
+        assertEquals(0, fixture.get("unknown"));
+        assertEquals(0, fixture.get(SHA.replace('a', 'b')));
+
+        Map<String, Integer> counts = new HashMap<>();
+        fixture.forEach(counts::put);
+        assertEquals(Map.of(SHA, 2, zeroSha, 1, upperSha, 1, "random-sha", 4), counts);
+    }
+
+    @Test
+    void rejectsCountsNotPositiveTest() {
+        ShaCounter fixture = new ShaCounter();
+        assertThrows(IllegalArgumentException.class, () -> fixture.add(SHA, 0));
+        assertThrows(IllegalArgumentException.class, () -> fixture.add("random-sha", -1));
+        assertEquals(0, fixture.size());
+        assertEquals(0, fixture.get(SHA));
+    }
+
+    @Test
+    void sameCountsAsMapTest() {
+        Random random = new Random(3);
+        ShaCounter fixture = new ShaCounter();
+        ShaCounter other = new ShaCounter();
+        Map<String, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            String sha = randomSha(random.nextInt(20000));
+            (i % 2 == 0 ? fixture : other).add(sha);
+            expected.merge(sha, 1, Integer::sum);
+        }
+
+        fixture.merge(other);
+
+        Map<String, Integer> actual = new HashMap<>();
+        fixture.forEach(actual::put);
+        assertEquals(expected, actual);
+        assertEquals(expected.size(), fixture.size());
+    }
+
+    private static String randomSha(int seed) {
+        Random shaRandom = new Random(seed);
+        StringBuilder sha = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            sha.append(Character.forDigit(shaRandom.nextInt(16), 16));
+        }
+        return sha.toString();
+    }
+}
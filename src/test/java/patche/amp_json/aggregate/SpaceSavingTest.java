@@ -0,0 +1,99 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpaceSavingTest {
+
+    @Test
+    void exactWhileNotFullTest() {
+        SpaceSaving fixture = new SpaceSaving(10);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j <= i; j++) {
+                fixture.add("sha" + i);
+            }
+        }
+        List<SpaceSaving.HeavyHitter> top = fixture.top(3);
+        assertEquals(3, top.size());
+        assertEquals("sha4", top.get(0).getItem());
+        assertEquals(5, top.get(0).getCount());
+        assertEquals("sha2", top.get(2).getItem());
+        for (SpaceSaving.HeavyHitter hitter : top) {
+            assertEquals(0, hitter.getError());
+            assertTrue(hitter.isGuaranteed());
+        }
+        assertEquals(0, fixture.getMaxError());
+        assertEquals(15, fixture.getTotal());
+    }
+
+    @Test
+    void boundsHoldOnSkewedStreamTest() {
+        Random random = new Random(9);
+        Map<String, Long> trueCounts = new HashMap<>();
+        SpaceSaving fixture = new SpaceSaving(50);
+        for (int i = 0; i < 100_000; i++) {
+            String sha = "sha" + zipf(random, 5000);
+            trueCounts.merge(sha, 1L, Long::sum);
+            fixture.add(sha);
+        }
+        assertBounds(fixture, trueCounts, 100_000);
+
+        List<SpaceSaving.HeavyHitter> top = fixture.top(5);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("sha" + i, top.get(i).getItem());
+        }
+        assertTrue(top.get(0).isGuaranteed());
+    }
+
+    @Test
+    void mergedBoundsHoldTest() {
+        Random random = new Random(10);
+        Map<String, Long> trueCounts = new HashMap<>();
+        SpaceSaving[] parts = new SpaceSaving[4];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = new SpaceSaving(40);
+        }
+        for (int i = 0; i < 80_000; i++) {
+            // every part sees a differently skewed stream
+            int part = i % parts.length;
+            String sha = "sha" + (zipf(random, 3000) + part * 3) % 3000;
+            trueCounts.merge(sha, 1L, Long::sum);
+            parts[part].add(sha);
+        }
+        SpaceSaving merged = parts[0].merge(parts[1]).merge(parts[2].merge(parts[3]));
+        assertEquals(80_000, merged.getTotal());
+        assertBounds(merged, trueCounts, 80_000);
+
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new SpaceSaving(10)));
+    }
+
+    private static void assertBounds(SpaceSaving sketch, Map<String, Long> trueCounts, long total) {
+        assertTrue(sketch.getMaxError() <= total / sketch.getCapacity(), "max error " + sketch.getMaxError());
+        for (SpaceSaving.HeavyHitter hitter : sketch.top(sketch.getCapacity())) {
+            long trueCount = trueCounts.getOrDefault(hitter.getItem(), 0L);
+            assertTrue(hitter.getCount() >= trueCount, hitter + " true " + trueCount);
+            assertTrue(hitter.getGuaranteedCount() <= trueCount, hitter + " true " + trueCount);
+            assertTrue(hitter.getError() <= sketch.getMaxError());
+        }
+        // every item seen more than total / capacity times is monitored
+        for (Map.Entry<String, Long> entry : trueCounts.entrySet()) {
+            if (entry.getValue() > total / sketch.getCapacity()) {
+                assertTrue(sketch.top(sketch.getCapacity()).stream().anyMatch(h -> h.getItem().equals(entry.getKey())),
+                        entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @return a value from 0 to n - 1, value i about twice as likely as value 2i + 1
+     */
+    private static int zipf(Random random, int n) {
+        return (int) Math.min(n - 1, Math.floor(Math.exp(random.nextDouble() * Math.log(n + 1)) - 1));
+    }
+}
@@ -0,0 +1,134 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SpillingAggregatorTest {
+
+    private static final AmpJsonReader JSON_READER = new AmpJsonReader();
+    private static final TimeBucketer BUCKETER = TimeBucketer.hourOfDay(ZoneOffset.UTC);
+
+    private static List<FileMetaData> records;
+
+    @TempDir
+    Path spillDirectory;
+
+    @BeforeAll
+    static void setup() {
+        Random random = new Random(11);
+        String[] exts = new String[] {"pdf", "exe", "doc", "", "tar.gz"};
+        records = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            String ext = exts[random.nextInt(exts.length)];
+            String filename = "file" + random.nextInt(5000) + (ext.isEmpty() ? "" : "." + ext);
+            records.add(new FileMetaData(1551140352L + random.nextInt(24 * 3600), 1, null, null, null,
+                    "sha" + random.nextInt(2000), filename, "/" + filename, null));
+        }
+    }
+
+    @Test
+    void extensionCountsEqualInMemoryTest() throws IOException {
+        ExtensionAggregator expected = new ExtensionAggregator(JSON_READER);
+        records.forEach(expected::accept);
+        Map<String, Long> expectedCounts = new TreeMap<>();
+        expected.getExtensions().forEach(ext -> expectedCounts.put(ext, expected.getUniqueCount(ext)));
+
+        MemoryBudget budget = new MemoryBudget(32 * 1024);
+        try (SpillingExtensionAggregator fixture = new SpillingExtensionAggregator(JSON_READER, budget, spillDirectory)) {
+            records.forEach(fixture::accept);
+            assertTrue(fixture.getRunCount() > SpillingCounts.MAX_MERGE_RUNS, "spilled " + fixture.getRunCount() + " runs");
+            assertTrue(fixture.estimateHeapBytes() <= budget.getLimitBytes());
+            assertEquals(expectedCounts, fixture.getUniqueCounts());
+            assertEquals(expectedCounts, fixture.getUniqueCounts(), "reading twice gives the same counts");
+        }
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(0, countFiles(spillDirectory), "closing deletes the runs");
+    }
+
+    @Test
+    void shaCountsEqualInMemoryAfterMergeTest() throws IOException {
+        HourlyShaAggregator expected = new HourlyShaAggregator(BUCKETER);
+        records.forEach(expected::accept);
+        Map<String, Long> expectedCounts = new HashMap<>();
+        for (long bucket : expected.getBuckets()) {
+            expected.forEachSha(bucket, (sha, count) -> expectedCounts.put(bucket + " " + sha, Long.valueOf(count)));
+        }
+
+        MemoryBudget budget = new MemoryBudget(256 * 1024);
+        List<SpillingHourlyShaAggregator> parts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            parts.add(new SpillingHourlyShaAggregator(BUCKETER, budget, spillDirectory));
+        }
+        for (int i = 0; i < records.size(); i++) {
+            parts.get(i % parts.size()).accept(records.get(i));
+        }
+        try (SpillingHourlyShaAggregator fixture = parts.get(0).merge(parts.get(1)).merge(parts.get(2).merge(parts.get(3)))) {
+            assertTrue(fixture.getRunCount() > 0);
+            Map<String, Long> counts = new HashMap<>();
+            List<String> printed = new ArrayList<>();
+            fixture.forEach((bucket, sha, count) -> assertNull(counts.put(bucket + " " + sha, count)));
+            fixture.print(printed::add);
+            assertEquals(expectedCounts, counts);
+            assertEquals(expected.getBuckets().size() + expectedCounts.size(), printed.size());
+        }
+        assertEquals(0, countFiles(spillDirectory));
+    }
+
+    @Test
+    void extensionsMayHoldAnyCharacterTest() {
+        try (SpillingExtensionAggregator fixture = new SpillingExtensionAggregator(JSON_READER, new MemoryBudget(1),
+                spillDirectory)) {
+            for (String filename : new String[] {"a.b\u0000c", "a.b", "a\u0000.b", "b.b\u0000c", "1:x.y"}) {
+                fixture.accept(new FileMetaData(1551140352L, 1, null, null, null, "sha", filename, "/" + filename, null));
+            }
+            assertTrue(fixture.getRunCount() > 0);
+            assertEquals(Map.of("b", 2L, "b\u0000c", 2L, "y", 1L), fixture.getUniqueCounts());
+        }
+    }
+
+    @Test
+    void checkpointHoldsSpilledCountsTest() throws IOException {
+        MemoryBudget budget = new MemoryBudget(32 * 1024);
+        ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+        Map<String, Long> expectedCounts;
+        try (SpillingExtensionAggregator fixture = new SpillingExtensionAggregator(JSON_READER, budget, spillDirectory)) {
+            records.forEach(fixture::accept);
+            assertTrue(fixture.getRunCount() > 0);
+            expectedCounts = fixture.getUniqueCounts();
+            fixture.writeCheckpoint(new DataOutputStream(checkpoint));
+        }
+        try (SpillingExtensionAggregator restored = new SpillingExtensionAggregator(JSON_READER, budget, spillDirectory)) {
+            restored.readCheckpoint(new DataInputStream(new ByteArrayInputStream(checkpoint.toByteArray())));
+            assertEquals(expectedCounts, restored.getUniqueCounts());
+        }
+        assertEquals(0, budget.getUsedBytes());
+        assertEquals(0, countFiles(spillDirectory));
+    }
+
+    private static long countFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
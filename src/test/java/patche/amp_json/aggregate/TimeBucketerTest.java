@@ -0,0 +1,92 @@
+package patche.amp_json.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeBucketerTest {
+
+    private static final String[] ZONES = new String[] {"UTC", "America/New_York", "Australia/Lord_Howe", "Asia/Kolkata"};
+
+    @Test
+    void hourOfDaySameAsCalendarTest() {
+        Random random = new Random(11);
+        for (String zone : ZONES) {
+            TimeBucketer fixture = TimeBucketer.hourOfDay(ZoneId.of(zone));
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(zone));
+            for (int i = 0; i < 20000; i++) {
+                long ts = 1_500_000_000L + random.nextInt(200_000_000);
+                calendar.setTime(new Date(ts * 1000));
+                assertEquals(calendar.get(Calendar.HOUR_OF_DAY), fixture.bucket(ts), zone + " " + ts);
+            }
+        }
+    }
+
+    @Test
+    void bucketsAroundDstTransitionsTest() {
+        ZoneId zone = ZoneId.of("America/New_York");
+        TimeBucketer minutes = new TimeBucketer(zone, TimeBucketer.Granularity.MINUTE, true);
+        TimeBucketer hours = new TimeBucketer(zone, TimeBucketer.Granularity.HOUR, false);
+        TimeBucketer days = new TimeBucketer(zone, TimeBucketer.Granularity.DAY, false);
+
+        // spring forward on 2019-03-10 and fall back on 2019-11-03, walked backwards and forwards
+        long[] starts = new long[] {1552197600L, 1572757200L};
+        for (long start : starts) {
+            for (long ts = start + 6 * 3600; ts >= start - 6 * 3600; ts -= 299) {
+                assertBuckets(zone, minutes, hours, days, ts);
+            }
+            for (long ts = start - 6 * 3600; ts <= start + 6 * 3600; ts += 299) {
+                assertBuckets(zone, minutes, hours, days, ts);
+            }
+        }
+    }
+
+    @Test
+    void labelTest() {
+        ZoneId utc = ZoneId.of("UTC");
+        long ts = 1551140352L; // 2019-02-26T00:19:12Z
+        TimeBucketer hourOfDay = TimeBucketer.hourOfDay(utc);
+        assertEquals("0 o'clock", hourOfDay.label(hourOfDay.bucket(ts)));
+
+        TimeBucketer minuteOfDay = new TimeBucketer(utc, TimeBucketer.Granularity.MINUTE, true);
+        assertEquals("00:19", minuteOfDay.label(minuteOfDay.bucket(ts)));
+
+        TimeBucketer hours = new TimeBucketer(utc, TimeBucketer.Granularity.HOUR, false);
+        assertEquals("2019-02-26T00:00", hours.label(hours.bucket(ts)));
+
+        TimeBucketer days = new TimeBucketer(utc, TimeBucketer.Granularity.DAY, false);
+        assertEquals("2019-02-26", days.label(days.bucket(ts)));
+    }
+
+    @Test
+    void extremeTimestampsTest() {
+        TimeBucketer fixture = new TimeBucketer(ZoneId.of("Europe/Paris"), TimeBucketer.Granularity.HOUR, false);
+        assertEquals(0, fixture.bucket(0) % 3600);
+        fixture.bucket(Long.MAX_VALUE / 2);
+        assertEquals(0, fixture.bucket(1) % 3600);
+    }
+
+    @Test
+    void cyclicDaysNotSupportedTest() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TimeBucketer(ZoneId.of("UTC"), TimeBucketer.Granularity.DAY, true));
+    }
+
+    private static void assertBuckets(ZoneId zone, TimeBucketer minutes, TimeBucketer hours, TimeBucketer days, long ts) {
+        ZonedDateTime local = Instant.ofEpochSecond(ts).atZone(zone);
+        assertEquals(local.getHour() * 60 + local.getMinute(), minutes.bucket(ts), "ts " + ts);
+        assertEquals(local.toLocalDateTime().truncatedTo(ChronoUnit.HOURS).toEpochSecond(ZoneOffset.UTC),
+                hours.bucket(ts), "ts " + ts);
+        assertEquals(local.toLocalDate().toEpochDay() * 86400, days.bucket(ts), "ts " + ts);
+    }
+}
@@ -0,0 +1,183 @@
+package patche.amp_json.columnar;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patche.amp_json.aggregate.ExtensionAggregator;
+import patche.amp_json.aggregate.HourlyShaAggregator;
+import patche.amp_json.aggregate.ReportPipeline;
+import patche.amp_json.aggregate.TimeBucketer;
+import patche.amp_json.ingest.BatchProcessor;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.reader.AmpJsonReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ColumnarFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AmpJsonReader jsonReader = new AmpJsonReader();
+
+    @Test
+    void roundTripTest() throws Exception {
+        Random random = new Random(11);
+        String[] shas = {
+                "abb3ec1b8174043d5cd21d21fbe3c3fb3e9a11c7ceff3314a3222404feedda52",
+                "ABB3EC1B8174043D5CD21D21FBE3C3FB3E9A11C7CEFF3314A3222404FEEDDA52",
+                "not-a-sha",
+                "0000000000000000000000000000000000000000000000000000000000000000"};
+        String[] fileNames = {"a.pdf", "b.tar.gz", "noext", "trailing.", ".hidden", "ünïcode.doc"};
+        List<FileMetaData> records = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            records.add(new FileMetaData(
+                    random.nextInt(10) == 0 ? Long.MAX_VALUE - random.nextInt(100) : 1 + random.nextInt(Integer.MAX_VALUE),
+                    1 + random.nextInt(random.nextBoolean() ? 100 : 1_000_000),
+                    new UUID(random.nextLong(), random.nextLong()),
+                    new UUID(random.nextLong(), random.nextLong()),
+                    new UUID(random.nextLong(), random.nextLong()),
+                    random.nextInt(3) == 0 ? randomSha(random) : shas[random.nextInt(shas.length)],
+                    fileNames[random.nextInt(fileNames.length)],
+                    "/path/" + random.nextInt(50),
+                    IFileMetaData.Disposition.values()[random.nextInt(3)]));
+        }
+
+        for (int rowGroupSize : new int[] {1, 7, 1000, 5000}) {
+            Path file = tempDir.resolve("records-" + rowGroupSize + ".amp");
+            try (ColumnarWriter writer = new ColumnarWriter(file, jsonReader, rowGroupSize)) {
+                records.forEach(writer::write);
+                assertEquals(records.size(), writer.getRowCount());
+            }
+
+            List<FileMetaData> actual = new ArrayList<>();
+            List<String> extensions = new ArrayList<>();
+            try (ColumnarReader reader = new ColumnarReader(file)) {
+                assertEquals(records.size(), reader.getRowCount());
+                reader.forEach(record -> {
+                    actual.add(((ColumnarRecord) record).toFileMetaData());
+                    extensions.add(((ColumnarRecord) record).getFileExtension());
+                    assertEquals(record.getUserID(), new UUID(record.getUserIDMostSigBits(), record.getUserIDLeastSigBits()));
+                });
+            }
+            assertEquals(records, actual, "row group size " + rowGroupSize);
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(jsonReader.getFileExt(records.get(i).getFileName()), extensions.get(i));
+            }
+        }
+    }
+
+    @Test
+    void sameReportsAsJsonTest() throws Exception {
+        List<Path> jsonFiles = Arrays.asList(Paths.get("src/test/resources/inputData_random.jsonl"),
+                Paths.get("src/test/resources/inputData_std.jsonl"));
+        Path file = tempDir.resolve("reports.amp");
+        long rows = ColumnarWriter.convert(jsonFiles, file, jsonReader);
+
+        ReportPipeline fromJson = new BatchProcessor(1).process(jsonFiles, this::newReports);
+        ReportPipeline fromColumnar;
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            assertEquals(rows, reader.getRowCount());
+            fromColumnar = reader.aggregate(newReports());
+        }
+
+        ExtensionAggregator jsonExtensions = fromJson.getReport(ExtensionAggregator.class);
+        ExtensionAggregator columnarExtensions = fromColumnar.getReport(ExtensionAggregator.class);
+        assertEquals(jsonExtensions.getExtensions(), columnarExtensions.getExtensions());
+        for (String ext : jsonExtensions.getExtensions()) {
+            assertEquals(jsonExtensions.getUniqueCount(ext), columnarExtensions.getUniqueCount(ext));
+        }
+        HourlyShaAggregator jsonShas = fromJson.getReport(HourlyShaAggregator.class);
+        HourlyShaAggregator columnarShas = fromColumnar.getReport(HourlyShaAggregator.class);
+        assertEquals(jsonShas.getBuckets(), columnarShas.getBuckets());
+        for (long bucket : jsonShas.getBuckets()) {
+            jsonShas.forEachSha(bucket, (sha, count) -> assertEquals(count, columnarShas.getCount(bucket, sha)));
+        }
+    }
+
+    @Test
+    void storedExtensionIsAggregatedTest() throws Exception {
+        Path file = tempDir.resolve("extensions.amp");
+        ColumnarWriter.convert(List.of(Paths.get("src/test/resources/inputData_std.jsonl")), file, jsonReader);
+        AmpJsonReader noSplitting = new AmpJsonReader() {
+            @Override
+            public String getFileExt(String filename) {
+                throw new AssertionError("the extension column is read instead");
+            }
+        };
+
+        ExtensionAggregator fromColumnar;
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            fromColumnar = reader.aggregate(new ExtensionAggregator(noSplitting));
+        }
+        ExtensionAggregator fromJson = new BatchProcessor(1).process(
+                List.of(Paths.get("src/test/resources/inputData_std.jsonl")), () -> new ExtensionAggregator(jsonReader));
+        assertEquals(fromJson.getExtensions(), fromColumnar.getExtensions());
+    }
+
+    @Test
+    void failedInputLeavesColumnarFileTest() throws Exception {
+        Path file = tempDir.resolve("records.amp");
+        Files.write(file, "previous".getBytes());
+        Path corrupt = tempDir.resolve("corrupt.jsonl.gz");
+        Files.write(corrupt, "not gzipped".getBytes());
+
+        assertThrows(IOException.class, () -> ColumnarWriter.convert(
+                List.of(Paths.get("src/test/resources/inputData_std.jsonl"), corrupt), file, jsonReader));
+        assertEquals("previous", new String(Files.readAllBytes(file)));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(2, files.count(), "no temporary file is left behind");
+        }
+    }
+
+    @Test
+    void emptyFileTest() throws Exception {
+        Path file = tempDir.resolve("empty.amp");
+        new ColumnarWriter(file, jsonReader).close();
+        try (ColumnarReader reader = new ColumnarReader(file)) {
+            assertEquals(0, reader.getRowCount());
+            reader.forEach(record -> fail("no rows expected"));
+        }
+    }
+
+    @Test
+    void incompleteFileTest() throws Exception {
+        Path file = tempDir.resolve("records.amp");
+        ColumnarWriter writer = new ColumnarWriter(file, jsonReader, 2);
+        writer.write(jsonReader.tryDecode(Files.readAllLines(Paths.get("src/test/resources/inputData_std.jsonl")).get(0))
+                .getFileMetaData());
+        writer.close();
+
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> new ColumnarReader(file));
+        Files.write(file, Collections.nCopies(40, "x").toString().getBytes());
+        assertThrows(IOException.class, () -> new ColumnarReader(file));
+    }
+
+    private ReportPipeline newReports() {
+        return new ReportPipeline(Arrays.asList(new ExtensionAggregator(jsonReader),
+                new HourlyShaAggregator(TimeBucketer.hourOfDay(ZoneOffset.UTC))));
+    }
+
+    private static String randomSha(Random random) {
+        StringBuilder sha = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            sha.append("0123456789abcdef".charAt(random.nextInt(16)));
+        }
+        return sha.toString();
+    }
+}
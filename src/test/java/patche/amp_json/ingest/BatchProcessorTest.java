@@ -0,0 +1,174 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patche.amp_json.aggregate.MemoryBudget;
+import patche.amp_json.aggregate.SpillingExtensionAggregator;
+import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.DecodeResult;
+import patche.amp_json.reader.ScannedRecord;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void plainAndGzippedFilesTest() throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get("src/test/resources/inputData_random.jsonl"));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            List<String> fileLines = new ArrayList<>(lines);
+            fileLines.add(i, "{invalid}");
+            Path file = tempDir.resolve("log-" + i + (i % 2 == 0 ? ".jsonl" : ".jsonl.gz"));
+            write(file, String.join(i == 3 ? "\r\n" : "\n", fileLines));
+            expected.addAll(serialRead(lines));
+        }
+        Collections.sort(expected);
+
+        for (int maxConcurrentFiles : new int[] {1, 2, 8}) {
+            List<Path> files = BatchProcessor.resolveFiles(tempDir.toString());
+            assertEquals(5, files.size());
+            DeadLetterSink deadLetters = new DeadLetterSink();
+            List<String> actual = new BatchProcessor(maxConcurrentFiles, 64, deadLetters).process(files, ArrayList::new,
+                    (result, record) -> result.add(((ScannedRecord) record).toFileMetaData().toString()),
+                    (a, b) -> {
+                        a.addAll(b);
+                        return a;
+                    });
+            Collections.sort(actual);
+            assertEquals(expected, actual, "max concurrent files " + maxConcurrentFiles);
+            assertEquals(5 * (lines.size() + 1) - expected.size(), deadLetters.getTotalCount());
+        }
+    }
+
+    @Test
+    void concurrentFilesAreBoundedTest() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            Path file = tempDir.resolve("log-" + i + ".jsonl");
+            write(file, String.join("\n", Files.readAllLines(Paths.get("src/test/resources/inputData_std.jsonl"))));
+            files.add(file);
+        }
+
+        AtomicInteger openResults = new AtomicInteger();
+        AtomicInteger maxOpenResults = new AtomicInteger();
+        int records = new BatchProcessor(3).process(files,
+                () -> {
+                    maxOpenResults.accumulateAndGet(openResults.incrementAndGet(), Math::max);
+                    return new int[1];
+                },
+                (result, record) -> {
+                    result[0]++;
+                    sleep();
+                },
+                (a, b) -> {
+                    openResults.decrementAndGet();
+                    a[0] += b[0];
+                    return a;
+                })[0];
+
+        assertEquals(12 * 5, records);
+        // the total plus one result per file being read
+        assertTrue(maxOpenResults.get() <= 4, "max open results " + maxOpenResults.get());
+    }
+
+    @Test
+    void unreadableFileIsSkippedTest() throws Exception {
+        Path file = tempDir.resolve("log.jsonl");
+        write(file, String.join("\n", Files.readAllLines(Paths.get("src/test/resources/inputData_std.jsonl"))));
+        Path corrupt = tempDir.resolve("corrupt.jsonl.gz");
+        Files.write(corrupt, "not gzipped".getBytes(StandardCharsets.UTF_8));
+
+        int records = new BatchProcessor(2).process(Arrays.asList(file, corrupt, tempDir.resolve("missing.jsonl")),
+                () -> new int[1], (result, record) -> result[0]++, (a, b) -> {
+                    a[0] += b[0];
+                    return a;
+                })[0];
+        assertEquals(5, records);
+    }
+
+    @Test
+    void failedFileResultIsClosedTest() throws Exception {
+        List<String> lines = Files.readAllLines(Paths.get("src/test/resources/inputData_random.jsonl"));
+        List<String> manyLines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            manyLines.addAll(lines);
+        }
+        Path truncated = tempDir.resolve("truncated.jsonl.gz");
+        write(truncated, String.join("\n", manyLines));
+        byte[] gzipped = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(gzipped, gzipped.length / 2));
+        Path spillDirectory = Files.createDirectory(tempDir.resolve("spill"));
+        MemoryBudget budget = new MemoryBudget(1024 * 1024);
+
+        BatchProcessor fixture = new BatchProcessor(1, 64, new DeadLetterSink());
+        try (SpillingExtensionAggregator total = fixture.process(List.of(truncated),
+                () -> new SpillingExtensionAggregator(new AmpJsonReader(), budget, spillDirectory))) {
+            assertTrue(fixture.getLineCount() > 0, "the file failed part way");
+            assertTrue(total.getUniqueCounts().isEmpty());
+        }
+        assertEquals(0, budget.getUsedBytes());
+    }
+
+    @Test
+    void resolveFilesTest() throws Exception {
+        Path day = Files.createDirectories(tempDir.resolve("2019-02-26"));
+        Path other = Files.createDirectories(tempDir.resolve("2019-03-01"));
+        write(day.resolve("00.jsonl"), "");
+        write(day.resolve("01.jsonl.gz"), "");
+        write(day.resolve("notes.txt"), "");
+        write(other.resolve("00.jsonl"), "");
+
+        assertEquals(Arrays.asList(day.resolve("00.jsonl"), day.resolve("01.jsonl.gz")),
+                BatchProcessor.resolveFiles(day.toString()));
+        assertEquals(Arrays.asList(day.resolve("00.jsonl"), other.resolve("00.jsonl")),
+                BatchProcessor.resolveFiles(tempDir + "/2019-*/*.jsonl"));
+        assertEquals(Collections.singletonList(day.resolve("01.jsonl.gz")),
+                BatchProcessor.resolveFiles(tempDir + "/**.gz"));
+        assertEquals(Collections.singletonList(day.resolve("notes.txt")),
+                BatchProcessor.resolveFiles(day.resolve("notes.txt").toString()));
+        assertTrue(BatchProcessor.resolveFiles(tempDir + "/missing/*.jsonl").isEmpty());
+    }
+
+    private static void write(Path file, String content) throws Exception {
+        try (OutputStream out = file.getFileName().toString().endsWith(".gz")
+                ? new GZIPOutputStream(Files.newOutputStream(file)) : Files.newOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<String> serialRead(List<String> lines) {
+        AmpJsonReader jsonReader = new AmpJsonReader();
+        List<String> records = new ArrayList<>();
+        for (String line : lines) {
+            DecodeResult result = jsonReader.tryDecode(line);
+            if (result.isValid()) {
+                records.add(result.getFileMetaData().toString());
+            }
+        }
+        return records;
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patche.amp_json.aggregate.ExtensionAggregator;
+import patche.amp_json.aggregate.HourlyShaAggregator;
+import patche.amp_json.aggregate.OffHeapUniqueCounter;
+import patche.amp_json.aggregate.ReportPipeline;
+import patche.amp_json.aggregate.TimeBucketer;
+import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.DecodeResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CheckpointedFileIngesterTest {
+
+    private static final AmpJsonReader JSON_READER = new AmpJsonReader();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void resumeAfterCrashEqualsUninterruptedRunTest() throws Exception {
+        Path plain = tempDir.resolve("log.jsonl");
+        Files.write(plain, logContent().getBytes(StandardCharsets.UTF_8));
+        Path gzipped = tempDir.resolve("log.jsonl.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+            Files.copy(plain, out);
+        }
+
+        for (Path file : new Path[] {plain, gzipped}) {
+            Path checkpoint = tempDir.resolve(file.getFileName() + ".checkpoint");
+            ReportPipeline expected = newReports();
+            long lines = new CheckpointedFileIngester(checkpoint, 1000).ingest(file, expected, line -> accept(expected, line));
+            assertFalse(Files.exists(checkpoint));
+
+            for (long crashAfter : new long[] {1, 37, 500, lines - 1}) {
+                ReportPipeline crashed = newReports();
+                long[] seen = {0};
+                assertThrows(IllegalStateException.class, () -> new CheckpointedFileIngester(checkpoint, 1000).ingest(
+                        file, crashed, line -> {
+                            if (++seen[0] > crashAfter) {
+                                throw new IllegalStateException("crash");
+                            }
+                            accept(crashed, line);
+                        }));
+
+                ReportPipeline resumed = newReports();
+                long resumedLines = new CheckpointedFileIngester(checkpoint, 1000).ingest(file, resumed,
+                        line -> accept(resumed, line));
+                assertTrue(resumedLines <= lines - crashAfter + 1000, "resumed near the crash");
+                assertEquals(snapshot(expected), snapshot(resumed), file.getFileName() + " crashed after " + crashAfter);
+                assertFalse(Files.exists(checkpoint));
+            }
+        }
+    }
+
+    @Test
+    void ignoresCheckpointOfChangedFileTest() throws Exception {
+        Path file = tempDir.resolve("log.jsonl");
+        String content = logContent();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Path checkpoint = tempDir.resolve("checkpoint");
+        assertThrows(IllegalStateException.class, () -> new CheckpointedFileIngester(checkpoint, 100).ingest(
+                file, newReports(), new CrashAfter(300)));
+        assertTrue(Files.exists(checkpoint));
+
+        Files.write(file, (" " + content).getBytes(StandardCharsets.UTF_8));
+        List<String> read = new ArrayList<>();
+        new CheckpointedFileIngester(checkpoint, 100).ingest(file, newReports(), read::add);
+        assertEquals((" " + content).split("\r?\n").length, read.size());
+    }
+
+    @Test
+    void ignoresCorruptCheckpointTest() throws Exception {
+        Path file = tempDir.resolve("log.jsonl");
+        Files.write(file, logContent().getBytes(StandardCharsets.UTF_8));
+        Path checkpoint = tempDir.resolve("checkpoint");
+        assertThrows(IllegalStateException.class, () -> new CheckpointedFileIngester(checkpoint, 100).ingest(
+                file, newReports(), new CrashAfter(300)));
+
+        byte[] bytes = Files.readAllBytes(checkpoint);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(checkpoint, bytes);
+        ReportPipeline expected = newReports();
+        new CheckpointedFileIngester(tempDir.resolve("other"), 100).ingest(file, expected, line -> accept(expected, line));
+        ReportPipeline actual = newReports();
+        new CheckpointedFileIngester(checkpoint, 100).ingest(file, actual, line -> accept(actual, line));
+        assertEquals(snapshot(expected), snapshot(actual));
+    }
+
+    private static String logContent() throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get("src/test/resources/inputData_random.jsonl"));
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            for (String line : lines) {
+                content.append(line).append(i % 3 == 0 ? "\r\n" : "\n");
+            }
+            content.append("{invalid}\n");
+        }
+        return content.append(lines.get(0)).toString();
+    }
+
+    private static ReportPipeline newReports() {
+        return new ReportPipeline(List.of(new ExtensionAggregator(JSON_READER, OffHeapUniqueCounter::new),
+                new HourlyShaAggregator(TimeBucketer.hourOfDay(ZoneOffset.UTC))));
+    }
+
+    private static void accept(ReportPipeline reports, String line) {
+        DecodeResult result = JSON_READER.tryDecode(line, reports.getFields());
+        if (result.isValid()) {
+            reports.accept(result.getFileMetaData());
+        }
+    }
+
+    private static Map<String, Long> snapshot(ReportPipeline reports) {
+        Map<String, Long> snapshot = new HashMap<>();
+        ExtensionAggregator extensions = reports.getReport(ExtensionAggregator.class);
+        for (String ext : extensions.getExtensions()) {
+            snapshot.put("ext " + ext, extensions.getUniqueCount(ext));
+        }
+        HourlyShaAggregator shas = reports.getReport(HourlyShaAggregator.class);
+        for (long bucket : shas.getBuckets()) {
+            shas.forEachSha(bucket, (sha, count) -> snapshot.put(bucket + " " + sha, Long.valueOf(count)));
+        }
+        return snapshot;
+    }
+
+    private static final class CrashAfter implements Consumer<String> {
+
+        private final int lines;
+        private int seen;
+
+        CrashAfter(int lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public void accept(String line) {
+            if (++seen > lines) {
+                throw new IllegalStateException("crash");
+            }
+        }
+    }
+}
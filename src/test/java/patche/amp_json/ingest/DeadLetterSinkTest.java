@@ -0,0 +1,76 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patche.amp_json.reader.RejectReason;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadLetterSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void writesRejectedLinesTest() throws Exception {
+        Path file = tempDir.resolve("dead-letters.tsv");
+        Files.write(file, Arrays.asList("MALFORMED_JSON\t{"));
+        List<String> summaries = new ArrayList<>();
+        DeadLetterSink fixture = new DeadLetterSink(file, Duration.ofHours(1), 4, summaries::add);
+
+        for (int i = 0; i < 1000; i++) {
+            fixture.reject("{\"line\":" + i + "}", i % 10 == 0 ? RejectReason.DUPLICATE_KEY : RejectReason.INVALID_UUID);
+        }
+        assertEquals(100, fixture.getCount(RejectReason.DUPLICATE_KEY));
+        assertEquals(900, fixture.getCount(RejectReason.INVALID_UUID));
+        assertEquals(1000, fixture.getTotalCount());
+        fixture.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals("MALFORMED_JSON\t{", lines.get(0));
+        assertEquals(1001 - fixture.getDroppedCount(), lines.size());
+        for (String line : lines.subList(1, lines.size())) {
+            int i = Integer.parseInt(line.substring(line.indexOf(':') + 1, line.length() - 1));
+            String reason = i % 10 == 0 ? "DUPLICATE_KEY" : "INVALID_UUID";
+            assertEquals(reason + "\t{\"line\":" + i + "}", line);
+        }
+
+        assertEquals(1, summaries.size());
+        assertTrue(summaries.get(0).startsWith("rejected 1000 log lines in the last "), summaries.get(0));
+        assertTrue(summaries.get(0).contains("DUPLICATE_KEY=100, INVALID_UUID=900"), summaries.get(0));
+    }
+
+    @Test
+    void rateLimitedSummariesTest() throws Exception {
+        List<String> summaries = new ArrayList<>();
+        DeadLetterSink fixture = new DeadLetterSink(tempDir.resolve("dead-letters.tsv"), Duration.ZERO,
+                DeadLetterSink.DEFAULT_QUEUE_CAPACITY, summaries::add);
+        fixture.reject("a", RejectReason.MISSING_KEY);
+        fixture.reject("b", RejectReason.INVALID_DISPOSITION);
+        assertEquals(2, summaries.size());
+        assertTrue(summaries.get(1).endsWith(": INVALID_DISPOSITION=1"), summaries.get(1));
+
+        fixture.summarize();
+        fixture.close();
+        assertEquals(2, summaries.size(), "nothing new to summarize");
+        assertEquals(0, fixture.getDroppedCount());
+        assertEquals(Arrays.asList("MISSING_KEY\ta", "INVALID_DISPOSITION\tb"),
+                Files.readAllLines(tempDir.resolve("dead-letters.tsv")));
+    }
+
+    @Test
+    void countOnlyTest() throws Exception {
+        DeadLetterSink fixture = new DeadLetterSink();
+        fixture.reject("a", RejectReason.MALFORMED_JSON);
+        fixture.close();
+        assertEquals(1, fixture.getCount(RejectReason.MALFORMED_JSON));
+        assertEquals(0, fixture.getDroppedCount());
+    }
+}
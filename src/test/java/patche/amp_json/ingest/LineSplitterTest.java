@@ -0,0 +1,129 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.Test;
+import patche.amp_json.reader.StructuralIndex;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineSplitterTest {
+
+    @Test
+    void sameLinesAsReadLineTest() throws Exception {
+        Random random = new Random(11);
+        String[] pieces = {"a", "\"b\"", "\n", "\r", "\r\n", "\n\r", "cd"};
+        for (int i = 0; i < 500; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(40); j > 0; j--) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            List<String> expected = readLines(text.toString());
+            byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            int blockSize = 1 + random.nextInt(8);
+
+            assertEquals(expected, split(bytes, new LineSplitter(blockSize), random), text.toString());
+            assertEquals(expected, split(bytes, new LineSplitter(blockSize, new StructuralIndex()), random),
+                    text.toString());
+
+            List<String> all = new ArrayList<>();
+            LineSplitter.splitAll(bytes, bytes.length, (buf, start, end) -> all.add(string(buf, start, end)));
+            assertEquals(expected, all, text.toString());
+        }
+    }
+
+    @Test
+    void positionFollowsLineEndTest() {
+        byte[] bytes = "ab\r\ncd\ref\ngh".getBytes(StandardCharsets.UTF_8);
+        LineSplitter fixture = new LineSplitter(3);
+        List<Long> positions = new ArrayList<>();
+        LineSplitter.LineHandler<RuntimeException> handler = (buf, start, end) -> positions.add(fixture.getPosition());
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = Math.min(fixture.room(), Math.min(2, bytes.length - offset));
+            System.arraycopy(bytes, offset, fixture.buffer(), fixture.fillStart(), read);
+            offset += read;
+            fixture.filled(read, handler);
+        }
+        fixture.finish(handler);
+        assertEquals(List.of(4L, 7L, 10L, 12L), positions);
+    }
+
+    @Test
+    void partialLineIsCarriedOverTest() {
+        LineSplitter fixture = new LineSplitter(16);
+        List<String> lines = new ArrayList<>();
+        LineSplitter.LineHandler<RuntimeException> handler = (buf, start, end) -> lines.add(string(buf, start, end));
+
+        fill(fixture, "one\ntw", handler);
+        byte[] partialLine = fixture.takePartialLine();
+        assertArrayEquals("tw".getBytes(StandardCharsets.UTF_8), partialLine);
+        assertNull(fixture.takePartialLine());
+
+        fill(fixture, "x\r", handler);
+        byte[] other = fixture.takePartialLine();
+
+        fixture.restorePartialLine(partialLine);
+        fill(fixture, "o\r", handler);
+        fill(fixture, "\nthree", handler);
+        fixture.finish(handler);
+
+        fixture.restorePartialLine(other);
+        fixture.finish(handler);
+        assertEquals(List.of("one", "two", "three", "x"), lines);
+    }
+
+    @Test
+    void lastLineEndTest() {
+        assertEquals(0, LineSplitter.lastLineEnd(bytes("abc"), 3));
+        assertEquals(4, LineSplitter.lastLineEnd(bytes("abc\n"), 4));
+        assertEquals(4, LineSplitter.lastLineEnd(bytes("abc\nd"), 5));
+        assertEquals(4, LineSplitter.lastLineEnd(bytes("abc\rd"), 5));
+        // the \r may be followed by a \n in the next bytes
+        assertEquals(2, LineSplitter.lastLineEnd(bytes("a\nb\r"), 4));
+        assertEquals(0, LineSplitter.lastLineEnd(bytes("ab\r"), 3));
+    }
+
+    private static List<String> split(byte[] bytes, LineSplitter splitter, Random random) {
+        List<String> lines = new ArrayList<>();
+        LineSplitter.LineHandler<RuntimeException> handler = (buf, start, end) -> lines.add(string(buf, start, end));
+        int offset = 0;
+        while (offset < bytes.length) {
+            int read = Math.min(splitter.room(), 1 + random.nextInt(bytes.length - offset));
+            System.arraycopy(bytes, offset, splitter.buffer(), splitter.fillStart(), read);
+            offset += read;
+            splitter.filled(read, handler);
+        }
+        splitter.finish(handler);
+        return lines;
+    }
+
+    private static void fill(LineSplitter splitter, String text, LineSplitter.LineHandler<RuntimeException> handler) {
+        byte[] bytes = bytes(text);
+        System.arraycopy(bytes, 0, splitter.buffer(), splitter.fillStart(), bytes.length);
+        splitter.filled(bytes.length, handler);
+    }
+
+    private static List<String> readLines(String text) throws Exception {
+        List<String> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static String string(byte[] buf, int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,190 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.ScannedRecord;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogFileFollowerTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path tempDir;
+
+    private final List<FileMetaData> records = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger snapshots = new AtomicInteger();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private LogFileFollower fixture;
+    private Thread followThread;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (fixture != null) {
+            fixture.close();
+            followThread.join(TIMEOUT_MILLIS);
+        }
+    }
+
+    @Test
+    void appendedLinesTest() throws Exception {
+        List<String> lines = validLines();
+        Path file = tempDir.resolve("log.jsonl");
+        append(file, lines.get(0) + "\n{invalid}\n" + lines.get(1) + "\r\n");
+        follow(file, null);
+        awaitRecords(2);
+
+        // a line is only read once its newline is written
+        String line = lines.get(2);
+        append(file, line.substring(0, 20));
+        awaitSnapshots(snapshots.get() + 2);
+        assertEquals(2, records.size());
+        append(file, line.substring(20) + "\n");
+        awaitRecords(3);
+
+        assertEquals(decode(lines.subList(0, 3)), new ArrayList<>(records));
+    }
+
+    @Test
+    void renamedFileIsNotReadTwiceTest() throws Exception {
+        List<String> lines = validLines();
+        Path file = tempDir.resolve("log.jsonl");
+        append(file, lines.get(0) + "\n");
+        follow(tempDir, "*.jsonl*");
+        awaitRecords(1);
+
+        append(file, lines.get(1) + "\n");
+        Files.move(file, tempDir.resolve("log.jsonl.1"));
+        append(file, lines.get(2) + "\n");
+        awaitRecords(3);
+        append(tempDir.resolve("log.jsonl.1"), lines.get(3) + "\n");
+        awaitRecords(4);
+
+        awaitSnapshots(snapshots.get() + 2);
+        assertEquals(4, records.size());
+        assertEquals(sorted(decode(lines.subList(0, 4))), sorted(records));
+    }
+
+    @Test
+    void rotatedFileIsDrainedTest() throws Exception {
+        List<String> lines = validLines();
+        Path file = tempDir.resolve("log.jsonl");
+        append(file, lines.get(0) + "\n");
+        follow(file, null);
+        awaitRecords(1);
+
+        // written just before the rotation, without a newline, then a new file replaces it
+        append(file, lines.get(1));
+        Files.move(file, tempDir.resolve("log.jsonl.1"));
+        append(file, lines.get(2) + "\n");
+        awaitRecords(3);
+
+        assertEquals(sorted(decode(lines.subList(0, 3))), sorted(records));
+    }
+
+    @Test
+    void truncatedFileIsReadFromTheStartTest() throws Exception {
+        List<String> lines = validLines();
+        Path file = tempDir.resolve("log.jsonl");
+        append(file, lines.get(0) + "\n" + lines.get(1) + "\n");
+        follow(file, null);
+        awaitRecords(2);
+
+        Files.write(file, (lines.get(2) + "\n").getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+        awaitRecords(3);
+        assertEquals(decode(lines.subList(0, 3)), new ArrayList<>(records));
+    }
+
+    @Test
+    void closePublishesLastSnapshotTest() throws Exception {
+        List<String> lines = validLines();
+        Path file = tempDir.resolve("log.jsonl");
+        follow(file, null);
+        append(file, lines.get(0));
+
+        int before = snapshots.get();
+        fixture.close();
+        followThread.join(TIMEOUT_MILLIS);
+        assertFalse(followThread.isAlive());
+        assertNull(failure.get());
+        assertTrue(snapshots.get() > before);
+        // the unterminated last line is read once following stops
+        assertEquals(decode(lines.subList(0, 1)), new ArrayList<>(records));
+    }
+
+    @Test
+    void invalidSnapshotIntervalTest() {
+        assertThrows(IllegalArgumentException.class, () -> new LogFileFollower(tempDir, null, Duration.ZERO,
+                record -> { }, () -> { }));
+    }
+
+    private void follow(Path target, String glob) {
+        fixture = new LogFileFollower(target, glob, Duration.ofMillis(20),
+                record -> records.add(((ScannedRecord) record).toFileMetaData()),
+                snapshots::incrementAndGet);
+        followThread = new Thread(() -> {
+            try {
+                fixture.follow();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        followThread.start();
+    }
+
+    private void awaitRecords(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (records.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNull(failure.get());
+        assertEquals(count, records.size());
+    }
+
+    private void awaitSnapshots(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (snapshots.get() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(snapshots.get() >= count);
+    }
+
+    private static void append(Path file, String content) throws Exception {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static List<String> validLines() throws Exception {
+        AmpJsonReader jsonReader = new AmpJsonReader();
+        return Files.readAllLines(Paths.get("src/test/resources/inputData_random.jsonl")).stream()
+                .filter(jsonReader::isValidFileMetaData)
+                .collect(Collectors.toList());
+    }
+
+    private static List<FileMetaData> decode(List<String> lines) {
+        AmpJsonReader jsonReader = new AmpJsonReader();
+        return lines.stream().map(line -> jsonReader.tryDecode(line).getFileMetaData()).collect(Collectors.toList());
+    }
+
+    private static List<String> sorted(List<FileMetaData> records) {
+        synchronized (records) {
+            return records.stream().map(FileMetaData::toString).sorted().collect(Collectors.toList());
+        }
+    }
+}
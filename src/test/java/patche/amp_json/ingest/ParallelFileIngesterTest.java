@@ -0,0 +1,95 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.DecodeResult;
+import patche.amp_json.reader.ScannedRecord;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ParallelFileIngesterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sameRecordsAsSerialReadTest() throws Exception {
+        List<String> lines = new ArrayList<>(Files.readAllLines(Paths.get("src/test/resources/inputData_random.jsonl")));
+        lines.add(3, "");
+        lines.add(7, "{invalid}");
+        String content = String.join("\n", lines.subList(0, 10)) + "\r\n" + String.join("\r\n", lines.subList(10, lines.size()));
+        Path file = tempDir.resolve("log.jsonl");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+
+        List<FileMetaData> expected = serialRead(lines);
+        for (boolean structuralIndex : new boolean[] {false, true}) {
+            for (int workers : new int[] {1, 3, 8}) {
+                for (long chunkSize : new long[] {1, 100, 1000, Long.MAX_VALUE}) {
+                    DeadLetterSink deadLetters = new DeadLetterSink();
+                    ParallelFileIngester fixture = new ParallelFileIngester(workers, chunkSize, 64, structuralIndex,
+                            deadLetters);
+                    List<FileMetaData> actual = fixture.ingest(file, ArrayList::new,
+                            (result, record) -> result.add(((ScannedRecord) record).toFileMetaData()),
+                            (a, b) -> {
+                                a.addAll(b);
+                                return a;
+                            });
+                    actual.sort(Comparator.comparing(FileMetaData::toString));
+                    assertEquals(expected, actual, "workers " + workers + ", chunk size " + chunkSize
+                            + ", structural index " + structuralIndex);
+                    assertEquals(lines.size() - expected.size(), deadLetters.getTotalCount());
+                }
+            }
+        }
+    }
+
+    @Test
+    void chunkBoundariesAreLineAlignedTest() throws Exception {
+        Path file = tempDir.resolve("lines.jsonl");
+        Files.write(file, "aaaa\nbb\ncccccc\nd".getBytes(StandardCharsets.UTF_8));
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertArrayEquals(new long[] {0, 8, 15, 16}, new ParallelFileIngester(1, 6, 64).chunkBoundaries(channel));
+            assertArrayEquals(new long[] {0, 16}, new ParallelFileIngester(1, 16, 64).chunkBoundaries(channel));
+        }
+    }
+
+    @Test
+    void emptyFileTest() throws Exception {
+        Path file = Files.createFile(tempDir.resolve("empty.jsonl"));
+        List<FileMetaData> actual = new ParallelFileIngester(4).ingest(file, ArrayList::new,
+                (result, record) -> fail("no records expected"), (a, b) -> a);
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    void missingFileTest() {
+        assertThrows(IOException.class, () -> new ParallelFileIngester(2).ingest(tempDir.resolve("missing.jsonl"),
+                ArrayList::new, (result, record) -> { }, (a, b) -> a));
+    }
+
+    private static List<FileMetaData> serialRead(List<String> lines) {
+        AmpJsonReader jsonReader = new AmpJsonReader();
+        List<FileMetaData> records = new ArrayList<>();
+        for (String line : lines) {
+            DecodeResult result = jsonReader.tryDecode(line);
+            if (result.isValid()) {
+                records.add(result.getFileMetaData());
+            }
+        }
+        records.sort(Comparator.comparing(FileMetaData::toString));
+        return records;
+    }
+}
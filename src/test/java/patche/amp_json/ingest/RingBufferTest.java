@@ -0,0 +1,91 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RingBufferTest {
+
+    @Test
+    void boundedFifoTest() {
+        RingBuffer<Integer> fixture = new RingBuffer<>(3);
+        assertEquals(4, fixture.capacity());
+        assertEquals(2, new RingBuffer<>(1).capacity());
+        assertNull(fixture.poll());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(fixture.offer(i));
+            }
+            assertFalse(fixture.offer(4));
+            for (int i = 0; i < 4; i++) {
+                assertEquals(i, fixture.poll());
+            }
+            assertNull(fixture.poll());
+        }
+    }
+
+    @Test
+    void concurrentProducersAndConsumersTest() throws Exception {
+        int producers = 4;
+        int consumers = 4;
+        int perProducer = 100_000;
+        RingBuffer<Integer> fixture = new RingBuffer<>(8);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                executor.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        fixture.put(producer * perProducer + i);
+                    }
+                    return null;
+                });
+            }
+            List<Future<boolean[]>> seen = new ArrayList<>();
+            for (int c = 0; c < consumers; c++) {
+                seen.add(executor.submit(() -> {
+                    boolean[] taken = new boolean[producers * perProducer];
+                    for (int i = 0; i < producers * perProducer / consumers; i++) {
+                        taken[fixture.take()] = true;
+                    }
+                    return taken;
+                }));
+            }
+
+            boolean[] all = new boolean[producers * perProducer];
+            for (Future<boolean[]> future : seen) {
+                boolean[] taken = future.get(60, TimeUnit.SECONDS);
+                for (int i = 0; i < taken.length; i++) {
+                    if (taken[i]) {
+                        assertFalse(all[i], "taken twice: " + i);
+                        all[i] = true;
+                    }
+                }
+            }
+            for (int i = 0; i < all.length; i++) {
+                assertTrue(all[i], "never taken: " + i);
+            }
+            assertNull(fixture.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void interruptedWhileFullTest() throws Exception {
+        RingBuffer<Integer> fixture = new RingBuffer<>(2);
+        fixture.put(1);
+        fixture.put(1);
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> fixture.put(2));
+        assertFalse(Thread.interrupted());
+    }
+}
@@ -0,0 +1,47 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardRouterTest {
+
+    @Test
+    void hotKeySpreadColdKeysStayHomeTest() {
+        ShardRouter fixture = new ShardRouter(4);
+        Random random = new Random(23);
+        UUID hot = new UUID(random.nextLong(), random.nextLong());
+        Map<UUID, Set<Integer>> shards = new HashMap<>();
+        for (int i = 0; i < 3 * ShardRouter.WINDOW; i++) {
+            // half the records are of one key, the others of 100 keys
+            UUID key = random.nextBoolean() ? hot : new UUID(7, random.nextInt(100));
+            int shard = fixture.shard(key.getMostSignificantBits(), key.getLeastSignificantBits());
+            shards.computeIfAbsent(key, k -> new HashSet<>()).add(shard);
+        }
+        assertEquals(Set.of(0, 1, 2, 3), shards.get(hot));
+        Set<Integer> homes = new HashSet<>();
+        for (Map.Entry<UUID, Set<Integer>> entry : shards.entrySet()) {
+            if (!entry.getKey().equals(hot)) {
+                assertEquals(1, entry.getValue().size(), entry.getKey().toString());
+                homes.addAll(entry.getValue());
+            }
+        }
+        assertEquals(Set.of(0, 1, 2, 3), homes);
+    }
+
+    @Test
+    void singleShardTest() {
+        ShardRouter fixture = new ShardRouter(1);
+        for (int i = 0; i < 2 * ShardRouter.WARM_UP; i++) {
+            assertEquals(0, fixture.shard(1, 2));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ShardRouter(0));
+    }
+}
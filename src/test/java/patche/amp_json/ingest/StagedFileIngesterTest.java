@@ -0,0 +1,182 @@
+package patche.amp_json.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import patche.amp_json.aggregate.ExtensionAggregator;
+import patche.amp_json.aggregate.PerBusinessGroupReport;
+import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
+import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.DecodeResult;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StagedFileIngesterTest {
+
+    private static final Set<Field> ALL_FIELDS = EnumSet.allOf(Field.class);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void sameRecordsAsSerialReadTest() throws Exception {
+        List<String> lines = new ArrayList<>(Files.readAllLines(Paths.get("src/test/resources/inputData_random.jsonl")));
+        lines.add(3, "");
+        lines.add(7, "{invalid}");
+        String content = String.join("\n", lines.subList(0, 10)) + "\r\n" + String.join("\r\n", lines.subList(10, lines.size()));
+        Path file = tempDir.resolve("log.jsonl");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+
+        List<FileMetaData> expected = serialRead(lines);
+        for (int parsers : new int[] {1, 3}) {
+            for (int aggregators : new int[] {1, 2}) {
+                for (int batchSize : new int[] {16, 1000, 1 << 20}) {
+                    StagedFileIngester fixture = new StagedFileIngester(parsers, aggregators, batchSize, 3, 2);
+                    assertEquals(expected, ingestAll(fixture, file),
+                            "parsers " + parsers + ", aggregators " + aggregators + ", batch size " + batchSize);
+                }
+            }
+        }
+    }
+
+    @Test
+    void gzippedFileTest() throws Exception {
+        Path plain = Paths.get("src/test/resources/inputData_std.jsonl");
+        Path gzipped = tempDir.resolve("log.jsonl.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped))) {
+            Files.copy(plain, out);
+        }
+        StagedFileIngester fixture = new StagedFileIngester(2, 2, 64, 2, 4);
+        assertEquals(serialRead(Files.readAllLines(plain)), ingestAll(fixture, gzipped));
+    }
+
+    @Test
+    void projectedReportTest() throws Exception {
+        AmpJsonReader jsonReader = new AmpJsonReader();
+        Path file = Paths.get("src/test/resources/inputData_random.jsonl");
+        ExtensionAggregator expected = new BatchProcessor(1).process(List.of(file), () -> new ExtensionAggregator(jsonReader));
+        ExtensionAggregator actual = new StagedFileIngester(2, 3, 128, 4, 2).ingest(file,
+                () -> new ExtensionAggregator(jsonReader));
+
+        assertEquals(expected.getExtensions(), actual.getExtensions());
+        for (String ext : expected.getExtensions()) {
+            assertEquals(expected.getUniqueCount(ext), actual.getUniqueCount(ext));
+        }
+        new StagedFileIngester(1, 1).ingest(file, EnumSet.of(Field.FILE_NAME), ArrayList::new,
+                (result, record) -> {
+                    assertNotNull(record.getFileName());
+                    assertNull(record.getSha());
+                }, (a, b) -> a);
+    }
+
+    @Test
+    void shardedByBusinessGroupTest() throws Exception {
+        Random random = new Random(23);
+        String[] businessIDs = new String[21];
+        for (int i = 0; i < businessIDs.length; i++) {
+            businessIDs[i] = new UUID(23, i).toString();
+        }
+        String[] exts = new String[] {"pdf", "exe", "doc", "tar.gz"};
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            // half the records are of the first business group
+            String businessID = businessIDs[random.nextBoolean() ? 0 : 1 + random.nextInt(businessIDs.length - 1)];
+            String name = "file" + random.nextInt(500) + "." + exts[random.nextInt(exts.length)];
+            lines.add(String.format("{\"ts\":%d,\"pt\":1,\"si\":\"%s\",\"uu\":\"%s\",\"bg\":\"%s\","
+                            + "\"sha\":\"%064x\",\"nm\":\"%s\",\"ph\":\"/path/%s\",\"dp\":2}",
+                    1551140352L + random.nextInt(24 * 3600), UUID.randomUUID(), UUID.randomUUID(), businessID,
+                    random.nextInt(100), name, name));
+        }
+        Path file = tempDir.resolve("log.jsonl");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        AmpJsonReader jsonReader = new AmpJsonReader();
+        Supplier<PerBusinessGroupReport<ExtensionAggregator>> factory =
+                () -> new PerBusinessGroupReport<>(() -> new ExtensionAggregator(jsonReader));
+        PerBusinessGroupReport<ExtensionAggregator> expected = new BatchProcessor(1).process(List.of(file), factory);
+        PerBusinessGroupReport<ExtensionAggregator> actual = new StagedFileIngester(2, 4, 4096, 64, 4)
+                .ingestSharded(file, factory, ShardKey.BUSINESS_GROUP);
+
+        assertEquals(businessIDs.length, actual.getBusinessGroups().size());
+        assertEquals(expected.getBusinessGroups(), actual.getBusinessGroups());
+        for (UUID businessID : expected.getBusinessGroups()) {
+            ExtensionAggregator expectedGroup = expected.getReport(businessID);
+            ExtensionAggregator actualGroup = actual.getReport(businessID);
+            assertEquals(expectedGroup.getExtensions(), actualGroup.getExtensions());
+            for (String ext : expectedGroup.getExtensions()) {
+                assertEquals(expectedGroup.getUniqueCount(ext), actualGroup.getUniqueCount(ext), businessID + " " + ext);
+            }
+        }
+        List<String> printed = new ArrayList<>();
+        actual.print(printed::add);
+        assertEquals(businessIDs.length * (1 + exts.length), printed.size());
+        assertEquals("business group " + businessIDs[0] + ":", printed.get(0));
+        assertEquals("business group " + businessIDs[1] + ":", printed.get(1 + exts.length));
+    }
+
+    @Test
+    void emptyFileTest() throws Exception {
+        Path file = Files.createFile(tempDir.resolve("empty.jsonl"));
+        List<IFileMetaData> actual = new StagedFileIngester(2, 2).ingest(file, ALL_FIELDS, ArrayList::new,
+                (result, record) -> fail("no records expected"), (a, b) -> a);
+        assertTrue(actual.isEmpty());
+    }
+
+    @Test
+    void failingStageTest() {
+        assertThrows(IOException.class, () -> new StagedFileIngester(2, 2).ingest(tempDir.resolve("missing.jsonl"),
+                ALL_FIELDS, ArrayList::new, (result, record) -> { }, (a, b) -> a));
+
+        Path file = Paths.get("src/test/resources/inputData_random.jsonl");
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new StagedFileIngester(2, 2, 64, 1, 1).ingest(file, ALL_FIELDS, ArrayList::new,
+                        (result, record) -> {
+                            throw new IllegalStateException("aggregator failed");
+                        }, (a, b) -> a));
+        assertEquals("aggregator failed", e.getMessage());
+    }
+
+    private static List<FileMetaData> ingestAll(StagedFileIngester fixture, Path file) throws IOException {
+        List<FileMetaData> actual = fixture.ingest(file, ALL_FIELDS, ArrayList::new,
+                // the handed records are reused, kept ones are copied
+                (result, record) -> result.add(new FileMetaData(record.getTimestamp(), record.getProcessingTime(),
+                        record.getSessionID(), record.getUserID(), record.getBusinessID(), record.getSha(),
+                        record.getFileName(), record.getFilePath(), record.getDisposition())),
+                (a, b) -> {
+                    a.addAll(b);
+                    return a;
+                });
+        actual.sort(Comparator.comparing(FileMetaData::toString));
+        return actual;
+    }
+
+    private static List<FileMetaData> serialRead(List<String> lines) {
+        AmpJsonReader jsonReader = new AmpJsonReader();
+        List<FileMetaData> records = new ArrayList<>();
+        for (String line : lines) {
+            DecodeResult result = jsonReader.tryDecode(line);
+            if (result.isValid()) {
+                records.add(result.getFileMetaData());
+            }
+        }
+        records.sort(Comparator.comparing(FileMetaData::toString));
+        return records;
+    }
+}
@@ -0,0 +1,61 @@
+package patche.amp_json.metrics;
+
+import org.junit.jupiter.api.Test;
+import patche.amp_json.reader.AmpJsonReader;
+import patche.amp_json.reader.RejectReason;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JmxMetricsRegistryTest {
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    @Test
+    void exposesMetricsTest() throws Exception {
+        try (JmxMetricsRegistry fixture = new JmxMetricsRegistry("exposesMetricsTest")) {
+            fixture.counter("lines").add(41);
+            fixture.counter("lines").increment();
+            fixture.gauge("cardinality").set(7);
+            for (long value = 1; value <= 100; value++) {
+                fixture.histogram("latency").record(value);
+            }
+
+            assertEquals(42L, server.getAttribute(fixture.getObjectName(), "lines"));
+            assertEquals(7L, server.getAttribute(fixture.getObjectName(), "cardinality"));
+            assertEquals(100L, server.getAttribute(fixture.getObjectName(), "latency.count"));
+            assertEquals(100L, server.getAttribute(fixture.getObjectName(), "latency.max"));
+            long p50 = Long.class.cast(server.getAttribute(fixture.getObjectName(), "latency.p50"));
+            assertTrue(p50 >= 50 && p50 <= 56, "p50 " + p50);
+            assertTrue(Long.class.cast(server.getAttribute(fixture.getObjectName(), "linesPerSecond")) >= 0);
+
+            List<String> names = Arrays.stream(server.getMBeanInfo(fixture.getObjectName()).getAttributes())
+                    .map(MBeanAttributeInfo::getName).collect(Collectors.toList());
+            assertTrue(names.containsAll(Arrays.asList("lines", "linesPerSecond", "cardinality",
+                    "latency.mean", "latency.p99", "latency.p999")), names.toString());
+            assertThrows(IllegalStateException.class, () -> new JmxMetricsRegistry("exposesMetricsTest"));
+        }
+        assertTrue(server.queryNames(null, null).stream().noneMatch(name -> name.toString().contains("exposesMetricsTest")));
+    }
+
+    @Test
+    void readerMetricsTest() {
+        try (JmxMetricsRegistry fixture = new JmxMetricsRegistry("readerMetricsTest")) {
+            AmpJsonReader jsonReader = new AmpJsonReader(fixture);
+            jsonReader.tryDecode("{invalid}");
+            jsonReader.tryDecode("{\"ts\":1}");
+            assertFalse(jsonReader.isValidFileMetaData("[]"));
+
+            assertEquals(2, fixture.counter("reader.rejected." + RejectReason.MALFORMED_JSON).get());
+            assertEquals(1, fixture.counter("reader.rejected." + RejectReason.MISSING_KEY).get());
+            assertEquals(2, fixture.histogram("reader.decodeNanos").snapshot().getCount());
+            assertEquals(1, fixture.histogram("reader.validateNanos").snapshot().getCount());
+        }
+    }
+}
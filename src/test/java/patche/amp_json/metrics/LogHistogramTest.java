@@ -0,0 +1,69 @@
+package patche.amp_json.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogHistogramTest {
+
+    @Test
+    void bucketBoundsTest() {
+        for (int bucket = 0; bucket < LogHistogram.BUCKET_COUNT; bucket++) {
+            long lower = LogHistogram.lowerBound(bucket);
+            long upper = LogHistogram.upperBound(bucket);
+            assertEquals(bucket, LogHistogram.bucketOf(lower), "lower bound of " + bucket);
+            assertEquals(bucket, LogHistogram.bucketOf(upper), "upper bound of " + bucket);
+            assertTrue(upper - lower <= lower / 8, "width of " + bucket);
+            if (bucket > 0) {
+                assertEquals(LogHistogram.upperBound(bucket - 1) + 1, lower);
+            }
+        }
+        assertEquals(0, LogHistogram.lowerBound(0));
+        assertEquals(Long.MAX_VALUE, LogHistogram.upperBound(LogHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    void percentilesWithinPrecisionTest() {
+        Random random = new Random(5);
+        long[] values = new long[100_000];
+        LogHistogram fixture = new LogHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            fixture.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertEquals(values.length, fixture.getCount());
+        assertEquals(values[values.length - 1], fixture.getMax());
+        assertEquals(Arrays.stream(values).average().getAsDouble(), fixture.getMean(), 1e-6);
+        for (double percentile : new double[] {0, 1, 50, 90, 99, 99.9, 100}) {
+            long exact = values[Math.max(0, (int) Math.ceil(percentile / 100 * values.length) - 1)];
+            long actual = fixture.getValueAtPercentile(percentile);
+            assertTrue(actual >= exact && actual <= exact + exact / 8, percentile + ": " + actual + " vs " + exact);
+        }
+    }
+
+    @Test
+    void mergeTest() {
+        LogHistogram a = new LogHistogram();
+        LogHistogram b = new LogHistogram();
+        LogHistogram all = new LogHistogram();
+        for (long value = 0; value < 10_000; value += 7) {
+            (value % 2 == 0 ? a : b).record(value);
+            all.record(value);
+        }
+        a.merge(b);
+        assertEquals(all.getCount(), a.getCount());
+        assertEquals(all.getMax(), a.getMax());
+        assertEquals(all.getMean(), a.getMean());
+        assertEquals(all.getValueAtPercentile(95), a.getValueAtPercentile(95));
+
+        LogHistogram empty = new LogHistogram();
+        assertEquals(0, empty.getValueAtPercentile(50));
+        empty.record(-5);
+        assertEquals(0, empty.getMax());
+    }
+}
@@ -6,7 +6,9 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import patche.amp_json.pojos.FileMetaData;
+import patche.amp_json.pojos.IFileMetaData.Field;
 
+import java.util.EnumSet;
 import java.util.Random;
 import java.util.UUID;
 
@@ -258,6 +260,89 @@ public class AmpJsonReaderTest {
         assertEquals(validMetaData, actualMetaData);
     }
 
+    @Test
+    void tryDecodeValidLogLineTest() {
+        DecodeResult result = fixture.tryDecode(metaDataJsonObject.toString());
+        assertTrue(result.isValid());
+        assertNull(result.getRejectReason());
+        assertEquals(validMetaData, result.getFileMetaData());
+    }
+
+    @Test
+    void tryDecodeRejectReasonsTest() {
+        assertRejected(RejectReason.MALFORMED_JSON, "{invalid}");
+        assertRejected(RejectReason.MALFORMED_JSON, "");
+        assertRejected(RejectReason.MALFORMED_JSON, "[]");
+        assertRejected(RejectReason.MALFORMED_JSON, metaDataJsonObject + "{}");
+
+        String json = metaDataJsonObject.toString();
+        assertRejected(RejectReason.DUPLICATE_KEY, json.replace("\"sha\"", "\"sha\":\"dup\",\"sha\""));
+
+        JsonObject missing = metaDataJsonObject.deepCopy();
+        missing.remove("ph");
+        assertRejected(RejectReason.MISSING_KEY, missing.toString());
+
+        JsonObject unknown = metaDataJsonObject.deepCopy();
+        unknown.remove("ph");
+        unknown.addProperty("extra", "prop");
+        assertRejected(RejectReason.UNKNOWN_KEY, unknown.toString());
+
+        assertRejected(RejectReason.INVALID_NUMBER, withProperty("ts", "100000"));
+        assertRejected(RejectReason.INVALID_NUMBER, withProperty("pt", -1));
+        assertRejected(RejectReason.INVALID_NUMBER, withProperty("pt", 1.5));
+        assertRejected(RejectReason.INVALID_UUID, withProperty("si", "invalid-uuid"));
+        assertRejected(RejectReason.INVALID_UUID, withProperty("bg", 1000));
+        assertRejected(RejectReason.INVALID_DISPOSITION, withProperty("dp", 0));
+        assertRejected(RejectReason.INVALID_DISPOSITION, withProperty("dp", 99999999999L));
+        assertRejected(RejectReason.INVALID_FILENAME, withProperty("nm", ".."));
+        assertRejected(RejectReason.INVALID_VALUE, withProperty("sha", " "));
+        assertRejected(RejectReason.INVALID_VALUE, withProperty("ph", (String) null));
+    }
+
+    @Test
+    void tryDecodeProjectionTest() {
+        String line = metaDataJsonObject.toString();
+        FileMetaData projected = fixture.tryDecode(line, EnumSet.of(Field.TIMESTAMP, Field.SHA)).getFileMetaData();
+        assertEquals(validMetaData.getTimestamp(), projected.getTimestamp());
+        assertEquals(validMetaData.getSha(), projected.getSha());
+        assertEquals(0, projected.getProcessingTime());
+        assertNull(projected.getSessionID());
+        assertNull(projected.getBusinessID());
+        assertNull(projected.getFileName());
+        assertNull(projected.getFilePath());
+        assertNull(projected.getDisposition());
+
+        assertEquals(validMetaData, fixture.tryDecode(line, EnumSet.allOf(Field.class)).getFileMetaData());
+        assertEquals(RejectReason.INVALID_UUID, fixture.tryDecode(withProperty("si", "invalid-uuid"),
+                EnumSet.of(Field.FILE_NAME)).getRejectReason());
+        assertEquals(RejectReason.INVALID_FILENAME, fixture.tryDecode(withProperty("nm", ".."),
+                EnumSet.noneOf(Field.class)).getRejectReason());
+        assertEquals(RejectReason.INVALID_DISPOSITION, fixture.tryDecode(withProperty("dp", 0),
+                EnumSet.of(Field.SHA)).getRejectReason());
+    }
+
+    private void assertRejected(RejectReason expectedReason, String line) {
+        DecodeResult result = fixture.tryDecode(line);
+        assertFalse(result.isValid());
+        assertNull(result.getFileMetaData());
+        assertEquals(expectedReason, result.getRejectReason());
+        assertFalse(fixture.isValidFileMetaData(line));
+    }
+
+    private String withProperty(String key, String value) {
+        JsonObject jsonObject = metaDataJsonObject.deepCopy();
+        jsonObject.remove(key);
+        jsonObject.addProperty(key, value);
+        return jsonObject.toString();
+    }
+
+    private String withProperty(String key, Number value) {
+        JsonObject jsonObject = metaDataJsonObject.deepCopy();
+        jsonObject.remove(key);
+        jsonObject.addProperty(key, value);
+        return jsonObject.toString();
+    }
+
     private JsonObject fileMetaDataJsonObjectBuilder(
             long expectedTimestamp,
             long expectedProcessingTime,
@@ -0,0 +1,152 @@
+package patche.amp_json.reader;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import patche.amp_json.pojos.FileMetaData;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileMetaDataScannerTest {
+
+    private static final String VALID_LINE = "{\"ts\":1551140352,\"pt\":55,"
+            + "\"si\":\"3380fb19-0bdb-46ab-8781-e4c5cd448074\",\"uu\":\"0dd24034-36d6-4b1e-a6c1-a52cc984f105\","
+            + "\"bg\":\"77e28e28-745a-474b-a496-3c0e086eaec0\","
+            + "\"sha\":\"abb3ec1b8174043d5cd21d21fbe3c3fb3e9a11c7ceff3314a3222404feedda52\","
+            + "\"nm\":\"phkkrw.ext\",\"ph\":\"/efvrfutgp/expgh/phkkrw\",\"dp\":2}";
+
+    private AmpJsonReader jsonReader;
+    private FileMetaDataScanner fixture;
+    private ScannedRecord record;
+
+    @BeforeEach
+    void setup() {
+        jsonReader = new AmpJsonReader();
+        fixture = new FileMetaDataScanner();
+        record = new ScannedRecord();
+    }
+
+    @Test
+    void validLineTest() {
+        byte[] bytes = VALID_LINE.getBytes(StandardCharsets.UTF_8);
+        assertTrue(fixture.scan(bytes, 0, bytes.length, record));
+        assertNull(record.getRejectReason());
+        assertEquals(jsonReader.tryDecode(VALID_LINE).getFileMetaData(), record.toFileMetaData());
+        assertEquals(1551140352L, record.getTimestamp());
+        assertEquals("phkkrw.ext", record.getFileName());
+        assertEquals(FileMetaData.Disposition.CLEAN, record.getDisposition());
+        assertEquals(VALID_LINE, record.getLine());
+        assertEquals(record.getSessionID().getMostSignificantBits(), record.getSessionIDMostSigBits());
+        assertEquals(record.getSessionID().getLeastSignificantBits(), record.getSessionIDLeastSigBits());
+        assertEquals(record.getUserID().getMostSignificantBits(), record.getUserIDMostSigBits());
+        assertEquals(record.getUserID().getLeastSignificantBits(), record.getUserIDLeastSigBits());
+        assertEquals(record.getBusinessID().getMostSignificantBits(), record.getBusinessIDMostSigBits());
+        assertEquals(record.getBusinessID().getLeastSignificantBits(), record.getBusinessIDLeastSigBits());
+    }
+
+    @Test
+    void lineInsideLargerBufferTest() {
+        String text = "garbage\n" + VALID_LINE + "\n{";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        assertTrue(fixture.scan(bytes, 8, VALID_LINE.length(), record));
+        assertEquals(VALID_LINE, record.getLine());
+        assertFalse(fixture.scan(bytes, 0, 7, record));
+        assertEquals(RejectReason.MALFORMED_JSON, record.getRejectReason());
+    }
+
+    @Test
+    void sameResultAsJsonReaderTest() {
+        String[] lines = new String[] {
+                VALID_LINE,
+                " \t" + VALID_LINE + "\r ",
+                "\uFEFF" + VALID_LINE,
+                VALID_LINE.replace(":", " : ").replace(",", " ,\n "),
+                VALID_LINE.replace("phkkrw.ext", "ph\\u006brw\\\"\\\\\\/.\\t\u00e9xt"),
+                VALID_LINE.replace("\"ts\"", "\"\\u0074s\""),
+                VALID_LINE.replace("3380fb19-0bdb-46ab-8781-e4c5cd448074", "3380FB19-0BDB-46AB-8781-E4C5CD448074"),
+                VALID_LINE.replace("3380fb19-0bdb-46ab-8781-e4c5cd448074", "1-2-3-4-5"),
+                VALID_LINE.replace("3380fb19-0bdb-46ab-8781-e4c5cd448074", "3380fb19-0bdb-46ab-8781-e4c5cd44807g"),
+                VALID_LINE.replace("3380fb19-0bdb-46ab-8781-e4c5cd448074", "3380fb19+0bdb-46ab-8781-e4c5cd448074"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":-0"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":-55"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":055"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":5.5"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":5e5"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":5."),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":-"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":9223372036854775807"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":9223372036854775808"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":\"55\""),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":TRUE"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":nul"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\":[55]"),
+                VALID_LINE.replace("\"pt\":55", "\"pt\" 55"),
+                VALID_LINE.replace("\"dp\":2", "\"dp\":4"),
+                VALID_LINE.replace("\"dp\":2", "\"dp\":3"),
+                VALID_LINE.replace("\"dp\":2", "\"dp\":2,"),
+                VALID_LINE.replace("\"nm\":\"phkkrw.ext\"", "\"nm\":\"..\""),
+                VALID_LINE.replace("\"nm\":\"phkkrw.ext\"", "\"nm\":\"\\u002e\""),
+                VALID_LINE.replace("\"nm\":\"phkkrw.ext\"", "\"nm\":\" \\t\""),
+                VALID_LINE.replace("\"nm\":\"phkkrw.ext\"", "\"nm\":\"\u2003\""),
+                VALID_LINE.replace("\"nm\":\"phkkrw.ext\"", "\"nm\":12"),
+                VALID_LINE.replace("\"nm\":\"phkkrw.ext\"", "\"nm\":\"a\\x\""),
+                VALID_LINE.replace("\"nm\":\"phkkrw.ext\"", "\"nm\":\"a\\u12\""),
+                VALID_LINE.replace("\"sha\"", "\"sha\":\"dup\",\"sha\""),
+                VALID_LINE.replace("\"sha\"", "\"shaa\""),
+                VALID_LINE.replace("\"ph\":\"/efvrfutgp/expgh/phkkrw\",", ""),
+                VALID_LINE.replace("\"ph\":\"/efvrfutgp/expgh/phkkrw\"", "\"ph\":null"),
+                VALID_LINE + "{}",
+                VALID_LINE + "x",
+                VALID_LINE.substring(0, VALID_LINE.length() - 1),
+                "{}",
+                "[]",
+                "",
+                "   ",
+                "{invalid}",
+                "{,}",
+        };
+
+        for (String line : lines) {
+            assertSameResult(line);
+        }
+    }
+
+    @Test
+    void randomlyCorruptedLinesTest() {
+        Random random = new Random(42);
+        String alphabet = "{}[]:,\"\\ .-0123456789eEtfnuabcdefx\u00e9";
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder line = new StringBuilder(VALID_LINE);
+            int edits = 1 + random.nextInt(3);
+            for (int j = 0; j < edits; j++) {
+                int at = random.nextInt(line.length());
+                switch (random.nextInt(3)) {
+                    case 0:
+                        line.deleteCharAt(at);
+                        break;
+                    case 1:
+                        line.insert(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                        break;
+                    default:
+                        line.setCharAt(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                        break;
+                }
+            }
+            assertSameResult(line.toString());
+        }
+    }
+
+    private void assertSameResult(String line) {
+        DecodeResult expected = jsonReader.tryDecode(line);
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        boolean valid = fixture.scan(bytes, 0, bytes.length, record);
+
+        assertEquals(expected.isValid(), valid, line);
+        assertEquals(expected.getRejectReason(), record.getRejectReason(), line);
+        if (valid) {
+            assertEquals(expected.getFileMetaData(), record.toFileMetaData(), line);
+        }
+    }
+}
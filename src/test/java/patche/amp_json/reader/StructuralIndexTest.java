@@ -0,0 +1,133 @@
+package patche.amp_json.reader;
+
+import org.junit.jupiter.api.Test;
+import patche.amp_json.pojos.FileMetaData;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StructuralIndexTest {
+
+    private static final String VALID_LINE = "{\"ts\":1551140352,\"pt\":55,"
+            + "\"si\":\"3380fb19-0bdb-46ab-8781-e4c5cd448074\",\"uu\":\"0dd24034-36d6-4b1e-a6c1-a52cc984f105\","
+            + "\"bg\":\"77e28e28-745a-474b-a496-3c0e086eaec0\","
+            + "\"sha\":\"abb3ec1b8174043d5cd21d21fbe3c3fb3e9a11c7ceff3314a3222404feedda52\","
+            + "\"nm\":\"phkkrw.ext\",\"ph\":\"/efvrfutgp/expgh/phkkrw\",\"dp\":2}";
+
+    @Test
+    void sameMatchesAsByteComparisonTest() {
+        Random random = new Random(5);
+        byte[] alphabet = {'\n', '\r', '"', '\\', 'a', ' ', (byte) 0x8a, (byte) 0xa2, (byte) 0xdc, 0x0b, 0x21, 0x5d, 0};
+        for (int i = 0; i < 1000; i++) {
+            byte[] bytes = new byte[random.nextInt(100)];
+            for (int j = 0; j < bytes.length; j++) {
+                bytes[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            int from = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+            StructuralIndex fixture = new StructuralIndex();
+            fixture.build(bytes, from, bytes.length);
+
+            List<Integer> newlines = new ArrayList<>();
+            List<Integer> carriageReturns = new ArrayList<>();
+            List<Integer> stringBytes = new ArrayList<>();
+            for (int j = from; j < bytes.length; j++) {
+                if (bytes[j] == '\n') {
+                    newlines.add(j);
+                } else if (bytes[j] == '\r') {
+                    carriageReturns.add(j);
+                } else if (bytes[j] == '"' || bytes[j] == '\\') {
+                    stringBytes.add(j);
+                }
+            }
+            assertEquals(newlines.size(), fixture.getNewlineCount());
+            for (int j = 0; j < newlines.size(); j++) {
+                assertEquals(newlines.get(j), fixture.getNewline(j));
+            }
+            assertEquals(carriageReturns.size(), fixture.getCarriageReturnCount());
+            for (int j = 0; j < carriageReturns.size(); j++) {
+                assertEquals(carriageReturns.get(j), fixture.getCarriageReturn(j));
+            }
+            for (int position = from; position <= bytes.length; position++) {
+                int expected = Integer.MAX_VALUE;
+                for (int stringByte : stringBytes) {
+                    if (stringByte >= position) {
+                        expected = stringByte;
+                        break;
+                    }
+                }
+                assertEquals(expected, fixture.nextStringByte(position));
+            }
+            // lookups going backwards still find the right position
+            if (!stringBytes.isEmpty()) {
+                assertEquals(stringBytes.get(0), fixture.nextStringByte(from));
+            }
+        }
+    }
+
+    /**
+     * Differential test of the indexed scan of a whole block against {@link AmpJsonReader#isValidFileMetaData(String)}
+     * and {@link AmpJsonReader#fromJson(String)}, line by line.
+     */
+    @Test
+    void indexedBlockScanEqualsJsonReaderTest() {
+        AmpJsonReader jsonReader = new AmpJsonReader();
+        Random random = new Random(42);
+        String alphabet = "{}[]:,\"\\ .-0123456789eEtfnuabcdefx\u00e9\u4e2d";
+        List<String> lines = new ArrayList<>();
+        lines.add(VALID_LINE);
+        lines.add(VALID_LINE.replace("phkkrw.ext", "ph\\u006brw\\\"\\\\\\/.\\t\u00e9xt"));
+        lines.add(VALID_LINE.replace("\"ts\"", "\"\\u0074s\""));
+        lines.add(VALID_LINE.replace("phkkrw.ext", "\\\\\\\\\\\"\\\\.\u4e2d"));
+        lines.add("");
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder line = new StringBuilder(VALID_LINE);
+            int edits = random.nextInt(4);
+            for (int j = 0; j < edits; j++) {
+                int at = random.nextInt(line.length());
+                switch (random.nextInt(3)) {
+                    case 0:
+                        line.deleteCharAt(at);
+                        break;
+                    case 1:
+                        line.insert(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                        break;
+                    default:
+                        line.setCharAt(at, alphabet.charAt(random.nextInt(alphabet.length())));
+                        break;
+                }
+            }
+            lines.add(random.nextInt(10) == 0 ? line + "\r" : line.toString());
+        }
+
+        // an offset so the words straddle the lines differently from the start of the array
+        byte[] block = ("xyz" + String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+        StructuralIndex index = new StructuralIndex();
+        index.build(block, 3, block.length);
+        assertEquals(lines.size(), index.getNewlineCount());
+
+        FileMetaDataScanner scanner = new FileMetaDataScanner();
+        ScannedRecord record = new ScannedRecord();
+        int lineStart = 3;
+        for (int i = 0; i < index.getNewlineCount(); i++) {
+            String line = lines.get(i);
+            int lineEnd = index.getNewline(i);
+            if (lineEnd > lineStart && block[lineEnd - 1] == '\r') {
+                lineEnd--;
+                line = line.substring(0, line.length() - 1);
+            }
+            boolean valid = scanner.scan(block, lineStart, lineEnd - lineStart, index, record);
+
+            assertEquals(jsonReader.isValidFileMetaData(line), valid, line);
+            assertEquals(jsonReader.tryDecode(line).getRejectReason(), record.getRejectReason(), line);
+            if (valid) {
+                FileMetaData expected = jsonReader.fromJson(line);
+                assertEquals(expected, record.toFileMetaData(), line);
+            }
+            lineStart = index.getNewline(i) + 1;
+        }
+    }
+}